@@ -20,15 +20,24 @@
 package de.calamanari.adl;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Common interface for expression types on different levels in the Audlang world.
+ * <p>
+ * <b>Lazily computed values:</b> The immutable implementations of this library compute derived values (e.g., the inline format, {@link #depth()},
+ * {@link #allFields()} or {@link #stats()}) on first request and keep them in a plain transient field without any synchronization. This is a benign race:
+ * each cached value is a primitive or immutable and safely published through its final fields (strings, unmodifiable lists of fields, records). Thus, a
+ * concurrent reader either sees the initial value (null resp. 0) and computes the value again or it sees the complete value.
  * 
  * @param <T> The concrete expression type (parameterized with itself)
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
@@ -41,6 +50,8 @@ public interface AudlangExpression<T extends AudlangExpression<T, V>, V> extends
     }
 
     /**
+     * By default the fields are collected on every call, immutable implementations should collect them only once.
+     * 
      * @return duplicate-free list of all fields referenced in an expression, ordered by argName, values and references are ordered
      */
     @Override
@@ -51,6 +62,9 @@ public interface AudlangExpression<T extends AudlangExpression<T, V>, V> extends
     }
 
     /**
+     * The composite expressions of this library collect the fields of their members without recursion, so there is no limit regarding the depth of an
+     * expression.
+     * 
      * @param fieldMap map to collect all fields recursively in the given map, by default a no-op
      */
     default void collectFieldsInternal(Map<String, AudlangField.Builder> fieldMap) {
@@ -78,10 +92,19 @@ public interface AudlangExpression<T extends AudlangExpression<T, V>, V> extends
         @SuppressWarnings("unchecked")
         T thisCasted = (T) this;
 
-        if (filter.test(thisCasted)) {
-            result.add(thisCasted);
+        // iterative (no recursion), same order as depth-first recursion
+        Deque<T> stack = new ArrayDeque<>();
+        stack.push(thisCasted);
+        while (!stack.isEmpty()) {
+            T expression = stack.pop();
+            if (filter.test(expression)) {
+                result.add(expression);
+            }
+            List<T> children = expression.childExpressions();
+            for (int idx = children.size() - 1; idx > -1; idx--) {
+                stack.push(children.get(idx));
+            }
         }
-        childExpressions().forEach(child -> child.collectExpressions(filter, result));
 
     }
 
@@ -110,19 +133,60 @@ public interface AudlangExpression<T extends AudlangExpression<T, V>, V> extends
      * @return result (ordered, duplicates removed, <b>mutable</b>)
      */
     default List<T> collectExpressionsUnique(Predicate<T> filter) {
-        return new ArrayList<>(collectExpressions(filter).stream().distinct().toList());
+        return new ArrayList<>(streamExpressionsUnique().filter(filter).sorted().toList());
+    }
+
+    /**
+     * Returns a lazy stream of this expression and all its descendants in depth-first pre-order (the order of
+     * {@link #collectExpressions(Predicate, List)}), <b>not</b> sorted.
+     * <p>
+     * Unlike {@link #collectExpressions(Predicate)} nothing gets materialized, so short-circuiting operations like {@link Stream#anyMatch(Predicate)} stop
+     * the traversal as soon as the answer is known. A {@link Stream#parallel()} stream splits the pending sub-trees (resp. the members of wide nodes).
+     * <p>
+     * <b>Clarification</b>: Even <i>this</i> expression is part of the stream.
+     * 
+     * @return stream of all expressions of this tree, duplicates included
+     */
+    default Stream<T> streamExpressions() {
+        @SuppressWarnings("unchecked")
+        T thisCasted = (T) this;
+        return StreamSupport.stream(new ExpressionSpliterator<>(thisCasted, false), false);
+    }
+
+    /**
+     * Returns a lazy stream of this expression and all its descendants like {@link #streamExpressions()} but without duplicates.
+     * <p>
+     * No sorting required: a sub-tree equal to one visited before gets skipped entirely (all its nodes have been visited before as well). A sequential stream
+     * returns the first occurrences in pre-order. The stream is <i>unordered</i>, so in a {@link Stream#parallel()} stream any of the equal expressions may
+     * survive.
+     * 
+     * @return stream of all expressions of this tree, duplicates removed
+     */
+    default Stream<T> streamExpressionsUnique() {
+        @SuppressWarnings("unchecked")
+        T thisCasted = (T) this;
+        return StreamSupport.stream(new ExpressionSpliterator<>(thisCasted, true), false);
     }
 
     /**
+     * By default the depth is computed on every call (without collecting the fields like {@link #stats()}), immutable implementations should compute it only
+     * once.
+     * 
      * @return depth of this expression &gt;=1 (leaf, no children), each nested level adds 1
      */
     default int depth() {
-        if (childExpressions().isEmpty()) {
-            return 1;
-        }
-        else {
-            return childExpressions().stream().mapToInt(AudlangExpression::depth).max().getAsInt() + 1;
-        }
+        return ExpressionStats.depthOf(this);
+    }
+
+    /**
+     * Returns the structural metrics of this expression.
+     * <p>
+     * By default the stats are computed on every call, immutable implementations should compute them only once.
+     * 
+     * @return depth, node count, leaf count and number of distinct argument names of this expression
+     */
+    default ExpressionStats stats() {
+        return ExpressionStats.of(this);
     }
 
     /**
@@ -19,6 +19,8 @@
 
 package de.calamanari.adl;
 
+import java.io.IOException;
+
 /**
  * Interface to be implemented by objects that can be printed as a String inline more sophisticated than toString().
  * 
@@ -75,4 +77,18 @@ public interface AudlangFormattable {
         return sb.toString();
     }
 
+    /**
+     * Formats this object according to the given style information and writes the result to the given destination (e.g., a {@link java.io.Writer}).
+     * <p>
+     * The output is identical to {@link #format(FormatStyle)}, but large expressions (e.g., a catalog exported in {@link FormatStyle#PRETTY_PRINT}) do not
+     * get materialized as a single string: completed parts are passed to the destination in chunks of a few KB.
+     * 
+     * @param appendable destination
+     * @param style how to format the output
+     * @throws IOException if writing to the destination failed
+     */
+    default void format(Appendable appendable, FormatStyle style) throws IOException {
+        FormatSink.format(this, style, appendable, FormatSink.DEFAULT_FLUSH_THRESHOLD);
+    }
+
 }
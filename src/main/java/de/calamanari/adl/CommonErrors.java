@@ -56,7 +56,9 @@ public enum CommonErrors implements AudlangUserMessage {
 
     ERR_4002_CONFIG_ERROR("Configuration error (technical issue)."),
 
-    ERR_4003_GENERAL_ERROR("General technical error.");
+    ERR_4003_GENERAL_ERROR("General technical error."),
+
+    ERR_4004_INPUT_LIMIT_EXCEEDED("The expression exceeds the input limits (size, nesting depth or number of list items).");
 
     private final String userMessage;
 
@@ -0,0 +1,48 @@
+//@formatter:off
+/*
+ * CompactJsonModule
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl;
+
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+import de.calamanari.adl.erl.PlExpression;
+import de.calamanari.adl.erl.PlExpressionSerializer;
+import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.CoreExpressionSerializer;
+
+/**
+ * JACKSON module to write expressions in the <i>compact</i> JSON-form (no <code>inline</code> fields), see {@link CoreExpressionSerializer} and
+ * {@link PlExpressionSerializer}.
+ * <p>
+ * Register the module with the object mapper (<code>mapper.registerModule(new CompactJsonModule())</code>) to store and ship large amounts of expressions.
+ * Reading does not require the module, the compact form and the default form can both be read with any object mapper.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public class CompactJsonModule extends SimpleModule {
+
+    private static final long serialVersionUID = -3150296431186063524L;
+
+    public CompactJsonModule() {
+        super(CompactJsonModule.class.getSimpleName());
+        addSerializer(CoreExpression.class, new CoreExpressionSerializer());
+        addSerializer(new PlExpressionSerializer());
+    }
+
+}
@@ -26,8 +26,30 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
+import de.calamanari.adl.erl.PlCombinedExpression;
+import de.calamanari.adl.erl.PlCurbExpression;
+import de.calamanari.adl.erl.PlMatchExpression;
+import de.calamanari.adl.erl.PlNegationExpression;
+import de.calamanari.adl.erl.PlSpecialSetExpression;
+import de.calamanari.adl.irl.CombinedExpression;
+import de.calamanari.adl.irl.MatchExpression;
+import de.calamanari.adl.irl.NegationExpression;
+import de.calamanari.adl.irl.SpecialSetExpression;
+import de.calamanari.adl.irl.biceps.CoreExpressionCodec;
+import de.calamanari.adl.irl.biceps.EncodedExpressionTree;
+import de.calamanari.adl.irl.biceps.GrowingIntArray;
+import de.calamanari.adl.irl.biceps.MemberArrayRegistry;
+
 /**
- * Utility meant for testing purposes, serializes and de-serializes an object to create deep copy.
+ * Utility to create deep copies of objects.
+ * <p>
+ * Known types get copied without serialization:
+ * <ul>
+ * <li>The expressions of this library are immutable, the same instance will be returned (structural sharing).</li>
+ * <li>{@link EncodedExpressionTree}s, {@link MemberArrayRegistry}s, {@link GrowingIntArray}s and {@link CoreExpressionCodec}s get copied with their
+ * <code>copy</code>-methods (bulk copies of their arrays and maps).</li>
+ * </ul>
+ * Any other object gets serialized and de-serialized (see {@link #serialCopy(Serializable)}).
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
@@ -35,6 +57,8 @@ public class DeepCopyUtils {
 
     /**
      * Creates a deep-copy of the given input object.
+     * <p>
+     * <b>Note:</b> For immutable types (the expressions of this library) the result is the input object itself.
      * 
      * @param <T> serializable type of the object to be copied
      * @param input (null supported)
@@ -42,6 +66,30 @@ public class DeepCopyUtils {
      * @throws DeepCopyException
      */
     public static <T extends Serializable> T deepCopy(T input) throws DeepCopyException {
+        Object res = switch (input) {
+        case null -> null;
+        case CombinedExpression _, MatchExpression _, NegationExpression _, SpecialSetExpression _ -> input;
+        case PlCombinedExpression _, PlCurbExpression _, PlMatchExpression _, PlNegationExpression _, PlSpecialSetExpression _ -> input;
+        case EncodedExpressionTree tree when tree.getClass() == EncodedExpressionTree.class -> tree.deepCopy();
+        case CoreExpressionCodec codec when codec.getClass() == CoreExpressionCodec.class -> codec.copy();
+        case MemberArrayRegistry registry when registry.getClass() == MemberArrayRegistry.class -> registry.copy();
+        case GrowingIntArray array when array.getClass() == GrowingIntArray.class -> array.copy();
+        default -> serialCopy(input);
+        };
+        @SuppressWarnings("unchecked")
+        T resCasted = (T) res;
+        return resCasted;
+    }
+
+    /**
+     * Creates a deep-copy of the given input object by serializing and de-serializing it, e.g., to test the serialization.
+     * 
+     * @param <T> serializable type of the object to be copied
+     * @param input (null supported)
+     * @return copy, unrelated to the input
+     * @throws DeepCopyException
+     */
+    public static <T extends Serializable> T serialCopy(T input) throws DeepCopyException {
         if (input == null) {
             return input;
         }
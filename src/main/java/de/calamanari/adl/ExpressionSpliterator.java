@@ -0,0 +1,132 @@
+//@formatter:off
+/*
+ * ExpressionSpliterator
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Lazy traversal of an expression and all its descendants (pre-order, like {@link AudlangExpression#collectExpressions(java.util.function.Predicate, List)})
+ * backing {@link AudlangExpression#streamExpressions()} and {@link AudlangExpression#streamExpressionsUnique()}.
+ * <p>
+ * The spliterator keeps the pending sub-trees in an explicit stack (no recursion). Splitting for parallel processing hands over the first half of the pending
+ * sub-trees. If there is only a single pending sub-tree, it gets expanded: the node itself and the first half of its children form the split-off part.
+ * <p>
+ * In <i>unique</i> mode the spliterator skips any sub-tree equal to one seen before. All nodes of such a sub-tree have been seen before as well, so the
+ * traversal does not even descend. Because the set of seen expressions is shared by all parts of a split, the unique spliterator does not report
+ * {@link Spliterator#ORDERED}: it is still pre-order, but which of two equal expressions survives depends on the processing order.
+ *
+ * @param <T> type of the expression
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class ExpressionSpliterator<T extends AudlangExpression<T, ?>> implements Spliterator<T> {
+
+    /**
+     * Pending nodes, first element is the next one
+     */
+    private final Deque<Pending<T>> stack;
+
+    /**
+     * Seen expressions (unique mode) or null
+     */
+    private final Set<T> seen;
+
+    /**
+     * @param root start of the traversal
+     * @param unique true to skip duplicates
+     */
+    ExpressionSpliterator(T root, boolean unique) {
+        this(new ArrayDeque<>(), unique ? ConcurrentHashMap.newKeySet() : null);
+        stack.push(new Pending<>(root, true));
+    }
+
+    private ExpressionSpliterator(Deque<Pending<T>> stack, Set<T> seen) {
+        this.stack = stack;
+        this.seen = seen;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (!stack.isEmpty()) {
+            Pending<T> pending = stack.pop();
+            T expression = pending.expression();
+            if (seen != null && !seen.add(expression)) {
+                continue;
+            }
+            if (pending.withChildren()) {
+                List<T> children = expression.childExpressions();
+                for (int idx = children.size() - 1; idx > -1; idx--) {
+                    stack.push(new Pending<>(children.get(idx), true));
+                }
+            }
+            action.accept(expression);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        if (stack.size() == 1 && stack.peek().withChildren() && stack.peek().expression().childExpressions().size() > 1) {
+            // expand the single pending node: the node itself (without children) followed by its children
+            T expression = stack.pop().expression();
+            List<T> children = expression.childExpressions();
+            for (int idx = children.size() - 1; idx > -1; idx--) {
+                stack.push(new Pending<>(children.get(idx), true));
+            }
+            stack.push(new Pending<>(expression, false));
+        }
+        if (stack.size() < 2) {
+            return null;
+        }
+        Deque<Pending<T>> prefix = new ArrayDeque<>();
+        for (int i = stack.size() / 2; i > 0; i--) {
+            prefix.addLast(stack.pop());
+        }
+        return new ExpressionSpliterator<>(prefix, seen);
+    }
+
+    /**
+     * @return {@link Long#MAX_VALUE} (unknown), counting the nodes would require a traversal
+     */
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return (seen == null ? ORDERED : DISTINCT) | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * @param expression node
+     * @param withChildren true if the node's children are still to be traversed, false if only the node itself is pending
+     */
+    private static record Pending<T>(T expression, boolean withChildren) {
+        // stack element
+    }
+
+}
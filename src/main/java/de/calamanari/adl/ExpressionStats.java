@@ -0,0 +1,103 @@
+//@formatter:off
+/*
+ * ExpressionStats
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * {@link ExpressionStats} is a cheap view on the structural metrics of an {@link AudlangExpression}, e.g., for admission control (reject expressions that
+ * are too large) or for metrics.
+ * <p>
+ * The expression implementations of this library are immutable, so they compute their stats (see {@link AudlangExpression#stats()}) and their fields (see
+ * {@link AudlangExpression#allFields()}) only once on first request.
+ *
+ * @param depth depth of the expression &gt;=1 (leaf, no children), each nested level adds 1
+ * @param nodeCount number of expressions in the tree including the root expression
+ * @param leafCount number of expressions without any children
+ * @param argNameCount number of distinct argument names (including referenced arguments), same as the size of {@link AudlangExpression#allFields()}
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public record ExpressionStats(int depth, int nodeCount, int leafCount, int argNameCount) implements Serializable {
+
+    /**
+     * Computes the stats of the given expression by traversing the tree (iteratively, no recursion).
+     * <p>
+     * <b>Note:</b> This method does not consult any cached stats, usually you want to call {@link AudlangExpression#stats()} instead.
+     *
+     * @param expression root of the tree
+     * @return stats
+     */
+    public static ExpressionStats of(AudlangExpression<?, ?> expression) {
+        int depth = 0;
+        int nodeCount = 0;
+        int leafCount = 0;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(new Node(expression, 1));
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            nodeCount++;
+            depth = Math.max(depth, node.level());
+            if (node.expression().childExpressions().isEmpty()) {
+                leafCount++;
+            }
+            for (AudlangExpression<?, ?> child : node.expression().childExpressions()) {
+                stack.push(new Node(child, node.level() + 1));
+            }
+        }
+        return new ExpressionStats(depth, nodeCount, leafCount, expression.allFields().size());
+    }
+
+    /**
+     * Computes only the depth of the given expression by traversing the tree (iteratively, no recursion), this is cheaper than computing the stats because
+     * it does not need the fields.
+     * 
+     * @param expression root of the tree
+     * @return depth of the expression &gt;=1 (leaf, no children), each nested level adds 1
+     */
+    public static int depthOf(AudlangExpression<?, ?> expression) {
+        if (expression.childExpressions().isEmpty()) {
+            return 1;
+        }
+        int depth = 0;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(new Node(expression, 1));
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            depth = Math.max(depth, node.level());
+            for (AudlangExpression<?, ?> child : node.expression().childExpressions()) {
+                stack.push(new Node(child, node.level() + 1));
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Expression and its level while traversing
+     *
+     * @param expression
+     * @param level
+     */
+    private static record Node(AudlangExpression<?, ?> expression, int level) {
+        // traversal element
+    }
+
+}
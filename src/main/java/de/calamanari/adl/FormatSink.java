@@ -0,0 +1,132 @@
+//@formatter:off
+/*
+ * FormatSink
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * The {@link FormatSink} backs {@link AudlangFormattable#format(Appendable, FormatStyle)}: the expression gets formatted into a string builder as usual, but
+ * whenever a member of a list (members of a combined expression, operands of a match) is complete, the {@link FormatUtils#flushIfRequired(StringBuilder)}
+ * hook moves the completed prefix of the builder to the target {@link Appendable} once the builder exceeds a threshold.
+ * <p>
+ * The formatting methods only ever inspect or modify the <i>end</i> of the builder (trailing whitespace plus a few characters like <code>*&#47;</code>) or
+ * check whether the builder is empty. Thus a flush keeps the trailing whitespace and some characters before, so the output is identical to
+ * {@link AudlangFormattable#format(FormatStyle)}.
+ * <p>
+ * The sink is bound to the current thread for the duration of the formatting, the hook does nothing for any other string builder (e.g., a temporary one used
+ * for a member) or if there is no sink.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class FormatSink {
+
+    /**
+     * Number of characters in the builder that triggers a flush
+     */
+    static final int DEFAULT_FLUSH_THRESHOLD = 8192;
+
+    /**
+     * Number of non-whitespace characters we keep in the builder before the trailing whitespace
+     */
+    private static final int RETAINED_TAIL = 8;
+
+    private static final ThreadLocal<FormatSink> CURRENT = new ThreadLocal<>();
+
+    private final StringBuilder sb = new StringBuilder();
+
+    private final Appendable appendable;
+
+    private final int flushThreshold;
+
+    /**
+     * Formats the given object and writes the result to the appendable, see {@link AudlangFormattable#format(Appendable, FormatStyle)}
+     * 
+     * @param formattable object to be formatted
+     * @param style format style
+     * @param appendable destination
+     * @param flushThreshold size of the builder to trigger a flush
+     * @throws IOException if writing to the appendable failed
+     */
+    static void format(AudlangFormattable formattable, FormatStyle style, Appendable appendable, int flushThreshold) throws IOException {
+        FormatSink sink = new FormatSink(appendable, flushThreshold);
+        FormatSink previous = CURRENT.get();
+        CURRENT.set(sink);
+        try {
+            if (formattable.shouldUseMultiLineFormatting(style)) {
+                formattable.appendMultiLine(sink.sb, style, 0);
+            }
+            else {
+                formattable.appendSingleLine(sink.sb, style, 0);
+            }
+            FormatUtils.stripTrailingWhitespace(sink.sb);
+            appendable.append(sink.sb);
+        }
+        catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        finally {
+            if (previous == null) {
+                CURRENT.remove();
+            }
+            else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Flushes the completed part of the builder to the appendable if the given builder belongs to the current sink and exceeds the threshold.
+     * 
+     * @param sb builder of the current formatting
+     */
+    static void flushIfRequired(StringBuilder sb) {
+        FormatSink sink = CURRENT.get();
+        if (sink != null && sink.sb == sb && sb.length() >= sink.flushThreshold) {
+            sink.flush();
+        }
+    }
+
+    private FormatSink(Appendable appendable, int flushThreshold) {
+        this.appendable = appendable;
+        this.flushThreshold = flushThreshold;
+    }
+
+    /**
+     * Writes everything but the trailing whitespace and the {@link #RETAINED_TAIL} characters before to the appendable
+     */
+    private void flush() {
+        int end = sb.length();
+        while (end > 0 && Character.isWhitespace(sb.charAt(end - 1))) {
+            end--;
+        }
+        int cut = end - RETAINED_TAIL;
+        if (cut > 0) {
+            try {
+                appendable.append(sb, 0, cut);
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            sb.delete(0, cut);
+        }
+    }
+
+}
@@ -19,7 +19,9 @@
 
 package de.calamanari.adl;
 
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 
 import de.calamanari.adl.erl.CommentAware;
@@ -43,6 +45,16 @@ import static de.calamanari.adl.erl.PlComment.Position.C1;
  */
 public class FormatUtils {
 
+    /**
+     * Reusable builders for formatting members inline (see {@link #appendMemberInline(StringBuilder, AudlangFormattable, boolean)}), one per nesting level
+     */
+    private static final ThreadLocal<Deque<StringBuilder>> MEMBER_BUFFERS = ThreadLocal.withInitial(ArrayDeque::new);
+
+    /**
+     * Builders that grew beyond this capacity won't be reused to keep the retained memory bounded
+     */
+    private static final int MAX_REUSABLE_MEMBER_BUFFER_CAPACITY = 4096;
+
     /**
      * Removes all white characters from the end of the string builder
      * <p>
@@ -220,6 +232,17 @@ public class FormatUtils {
         return endsWith(sb, FormatConstants.LINE_BREAK);
     }
 
+    /**
+     * Hook to be called after a member of a list (e.g., members of a combined expression, operands) has been completely appended to the given builder. If
+     * the builder belongs to a running {@link AudlangFormattable#format(Appendable, FormatStyle)} and exceeds a threshold, the completed part of the builder
+     * will be passed to the destination. Otherwise this method does nothing.
+     * 
+     * @param sb
+     */
+    public static void flushIfRequired(StringBuilder sb) {
+        FormatSink.flushIfRequired(sb);
+    }
+
     /**
      * Appends a combined (AND/OR) expression inline
      * 
@@ -259,13 +282,8 @@ public class FormatUtils {
                 space(sb);
             }
 
-            AudlangFormattable member = members.get(i);
-            if (formatInfo.style == FormatStyle.INLINE && !(member instanceof CommentAware)) {
-                appendMemberAsStringCopy(sb, member, true);
-            }
-            else {
-                member.appendSingleLine(sb, formatInfo.style, formatInfo.level + 1);
-            }
+            members.get(i).appendSingleLine(sb, formatInfo.style, formatInfo.level + 1);
+            flushIfRequired(sb);
         }
         if (formatInfo.level > 0) {
             closeBrace(sb);
@@ -319,12 +337,14 @@ public class FormatUtils {
 
             int subLevel = formatInfo.level;
 
-            if (member.enforceCompositeFormat() || (member instanceof CommentAware caw && caw.allDirectComments().stream().anyMatch(PlComment::isComplex))) {
+            if (member.enforceCompositeFormat() || (member instanceof CommentAware caw && !caw.allDirectComments().isEmpty()
+                    && caw.allDirectComments().stream().anyMatch(PlComment::isComplex))) {
                 subLevel++;
             }
 
             member.appendMultiLine(sb, formatInfo.style, subLevel);
             newLine(sb);
+            flushIfRequired(sb);
         }
         if (mustUseBraces) {
             appendIndent(sb, formatInfo.style, formatInfo.level);
@@ -366,8 +386,8 @@ public class FormatUtils {
         }
         sb.append(T_NOT);
         space(sb);
-        if (formatInfo.style == FormatStyle.INLINE) {
-            appendMemberAsStringCopy(sb, delegate, false);
+        if (formatInfo.style == FormatStyle.INLINE && delegate instanceof CommentAware) {
+            appendMemberInline(sb, delegate, false);
         }
         else {
             delegate.appendSingleLine(sb, formatInfo.style, formatInfo.level + 1);
@@ -446,7 +466,7 @@ public class FormatUtils {
         space(sb);
 
         if (formatInfo.style == FormatStyle.INLINE && !(delegate instanceof CommentAware)) {
-            appendMemberAsStringCopy(sb, delegate, true);
+            appendMemberInline(sb, delegate, true);
         }
         else if (formatInfo.forceSingleLine) {
             delegate.appendSingleLine(sb, formatInfo.style, formatInfo.level + 1);
@@ -468,31 +488,67 @@ public class FormatUtils {
 
     /**
      * Considers extra braces when directly concatenating composite members in inline-style
+     * <p>
+     * The member gets formatted like {@link AudlangFormattable#format(FormatStyle)} with {@link FormatStyle#INLINE} but into a reusable builder (no
+     * intermediate string).
      * 
      * @param sb
      * @param member
      */
-    private static void appendMemberAsStringCopy(StringBuilder sb, AudlangFormattable member, boolean enforceComposite) {
+    private static void appendMemberInline(StringBuilder sb, AudlangFormattable member, boolean enforceComposite) {
         // @formatter:off
         boolean needsExtraBraces = (
                 ((enforceComposite || member.enforceCompositeFormat()) && (member instanceof CommentAware caw && caw.allDirectComments().isEmpty()))
                 || (!(member instanceof CommentAware) && member.enforceCompositeFormat())
                 );
         // @formatter:on
-        String memberString = member.toString();
-        if (needsExtraBraces) {
-            openBrace(sb);
+        Deque<StringBuilder> memberBuffers = MEMBER_BUFFERS.get();
+        StringBuilder memberSb = memberBuffers.isEmpty() ? new StringBuilder() : memberBuffers.pop();
+        try {
+            if (member.shouldUseMultiLineFormatting(FormatStyle.INLINE)) {
+                member.appendMultiLine(memberSb, FormatStyle.INLINE, 0);
+            }
+            else {
+                member.appendSingleLine(memberSb, FormatStyle.INLINE, 0);
+            }
+            stripTrailingWhitespace(memberSb);
+            if (needsExtraBraces) {
+                openBrace(sb);
+            }
+            if (!sb.isEmpty() && (FormatUtils.endsWith(sb, "(") && startsWith(memberSb, "(") || startsWith(memberSb, "/*"))) {
+                space(sb);
+            }
+            sb.append(memberSb);
+            if (needsExtraBraces) {
+                if (endsWith(memberSb, ")") || endsWith(memberSb, "*/")) {
+                    space(sb);
+                }
+                closeBrace(sb);
+            }
         }
-        if (!sb.isEmpty() && (FormatUtils.endsWith(sb, "(") && memberString.startsWith("(") || memberString.startsWith("/*"))) {
-            space(sb);
+        finally {
+            memberSb.setLength(0);
+            if (memberSb.capacity() <= MAX_REUSABLE_MEMBER_BUFFER_CAPACITY) {
+                memberBuffers.push(memberSb);
+            }
         }
-        sb.append(memberString);
-        if (needsExtraBraces) {
-            if (memberString.endsWith(")") || memberString.endsWith("*/")) {
-                space(sb);
+    }
+
+    /**
+     * @param sb
+     * @param pattern
+     * @return true if the content of the string builder starts with the given pattern
+     */
+    private static boolean startsWith(StringBuilder sb, String pattern) {
+        if (sb.length() < pattern.length()) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length(); i++) {
+            if (sb.charAt(i) != pattern.charAt(i)) {
+                return false;
             }
-            closeBrace(sb);
         }
+        return true;
     }
 
     /**
@@ -0,0 +1,282 @@
+//@formatter:off
+/*
+ * SymbolTable
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link SymbolTable} assigns stable int-ids to strings (argument names and values) and keeps a single canonical instance per string.
+ * <p>
+ * Argument names and values usually pass several components (parser, {@link AudlangField}s, dictionaries, mappings, meta data lookups), each keeping its own
+ * copy of the same text. If these components share a symbol table, every text exists only once in memory, and because {@link String#equals(Object)} starts
+ * with an identity check, comparisons and map lookups of canonical strings don't need to compare the characters anymore. Components that work with numbers
+ * can use the ids (<code>int</code>-comparison) instead of the strings.
+ * <p>
+ * Once assigned, a symbol's id never changes and the symbol never gets removed. To protect a long-running process from unlimited growth, a table can be
+ * <i>bounded</i>: after reaching the maximum size new strings are <i>rejected</i> ({@link #idOf(String)} returns {@link #NO_ID}, {@link #canonical(String)}
+ * returns the given instance).
+ * <p>
+ * Instances are safe to be used concurrently. Lookups of existing symbols are lock-free, only registering a new symbol requires a lock (no synchronized to
+ * avoid pinning virtual threads).
+ * <p>
+ * The process-wide table {@link #global()} is shared by the parser ({@link de.calamanari.adl.erl.PlExpressionBuilder}), the
+ * {@link de.calamanari.adl.irl.biceps.CoreExpressionCodec.Dictionary}, the {@link de.calamanari.adl.cnv.QualifiedArgValue}s of an
+ * {@link de.calamanari.adl.cnv.ArgNameValueMapping} and the {@link de.calamanari.adl.cnv.tps.ArgMetaInfo}s of an
+ * {@link de.calamanari.adl.cnv.tps.ArgMetaInfoLookup}. These components only use it (see {@link #canonicalize(String)}) after
+ * {@link #setGlobalEnabled(boolean)} was called, by default the global table is <b>disabled</b>.
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public final class SymbolTable {
+
+    /**
+     * Returned by {@link #idOf(String)} and {@link #findId(String)} if there is no id for the given string: {@value}
+     */
+    public static final int NO_ID = -1;
+
+    /**
+     * Maximum number of symbols in the {@link #global()} table: {@value}
+     */
+    public static final int DEFAULT_GLOBAL_MAX_SIZE = 4_194_304;
+
+    /**
+     * The symbols are stored in chunks of 2^{@value} entries, so the table can grow without copying
+     */
+    private static final int CHUNK_BITS = 12;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private static final SymbolTable GLOBAL = new SymbolTable(DEFAULT_GLOBAL_MAX_SIZE);
+
+    private static volatile boolean globalEnabled = false;
+
+    private final int maxSize;
+
+    private final Map<String, Integer> symbolToIdMap = new ConcurrentHashMap<>();
+
+    /**
+     * id-to-symbol, the array gets replaced when adding a chunk
+     */
+    private volatile String[][] chunks = new String[0][];
+
+    /**
+     * Number of assigned ids, written after storing the symbol, so any id below is safe to read
+     */
+    private volatile int size = 0;
+
+    private final Lock lock = new ReentrantLock();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * @return the process-wide symbol table, bounded to {@value #DEFAULT_GLOBAL_MAX_SIZE} symbols
+     */
+    public static SymbolTable global() {
+        return GLOBAL;
+    }
+
+    /**
+     * @return true if the components of this library use the {@link #global()} table
+     */
+    public static boolean isGlobalEnabled() {
+        return globalEnabled;
+    }
+
+    /**
+     * Tells the components of this library (parser, dictionaries, mappings and lookups) to use (or no longer use) the {@link #global()} table.
+     *
+     * @param enabled true to share argument names and values via the global table
+     */
+    public static void setGlobalEnabled(boolean enabled) {
+        SymbolTable.globalEnabled = enabled;
+    }
+
+    /**
+     * Returns the canonical instance of the given string from the {@link #global()} table if enabled.
+     *
+     * @param symbol may be null
+     * @return canonical instance or the given string if the global table is disabled or full
+     */
+    public static String canonicalize(String symbol) {
+        if (!globalEnabled || symbol == null) {
+            return symbol;
+        }
+        return GLOBAL.canonical(symbol);
+    }
+
+    /**
+     * Creates an unbounded symbol table
+     */
+    public SymbolTable() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxSize maximum number of symbols, positive
+     */
+    public SymbolTable(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive, given: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the id of the given symbol, a new symbol gets registered.
+     *
+     * @param symbol not null
+     * @return id of the symbol or {@link #NO_ID} if the symbol is new and the table is full
+     */
+    public int idOf(String symbol) {
+        Integer id = symbolToIdMap.get(assertNotNull(symbol));
+        if (id != null) {
+            hitCount.increment();
+            return id;
+        }
+        return register(symbol);
+    }
+
+    /**
+     * Returns the id of the given symbol without registering it.
+     *
+     * @param symbol not null
+     * @return id of the symbol or {@link #NO_ID} if the symbol is unknown
+     */
+    public int findId(String symbol) {
+        Integer id = symbolToIdMap.get(assertNotNull(symbol));
+        return id == null ? NO_ID : id;
+    }
+
+    /**
+     * @param id previously returned by {@link #idOf(String)}
+     * @return the symbol
+     * @throws IllegalArgumentException if the id is unknown
+     */
+    public String symbolOf(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException(String.format("Unknown symbol id, given: %s (size=%s)", id, size));
+        }
+        return chunks[id >>> CHUNK_BITS][id & CHUNK_MASK];
+    }
+
+    /**
+     * Returns the canonical instance of the given symbol, a new symbol gets registered.
+     *
+     * @param symbol not null
+     * @return canonical instance equal to the given symbol or the given instance if the symbol is new and the table is full
+     */
+    public String canonical(String symbol) {
+        int id = idOf(symbol);
+        return id == NO_ID ? symbol : symbolOf(id);
+    }
+
+    /**
+     * @return number of symbols in this table
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return maximum number of symbols in this table
+     */
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return hit/miss counts and size
+     */
+    public SymbolTableStats getStats() {
+        return new SymbolTableStats(hitCount.sum(), missCount.sum(), rejectedCount.sum(), size, maxSize);
+    }
+
+    private int register(String symbol) {
+        lock.lock();
+        try {
+            Integer id = symbolToIdMap.get(symbol);
+            if (id != null) {
+                hitCount.increment();
+                return id;
+            }
+            int newId = size;
+            if (newId >= maxSize) {
+                rejectedCount.increment();
+                return NO_ID;
+            }
+            int chunkIdx = newId >>> CHUNK_BITS;
+            String[][] currentChunks = chunks;
+            if (chunkIdx == currentChunks.length) {
+                String[][] newChunks = new String[chunkIdx + 1][];
+                System.arraycopy(currentChunks, 0, newChunks, 0, chunkIdx);
+                newChunks[chunkIdx] = new String[CHUNK_SIZE];
+                currentChunks = newChunks;
+                chunks = newChunks;
+            }
+            currentChunks[chunkIdx][newId & CHUNK_MASK] = symbol;
+            size = newId + 1;
+            symbolToIdMap.put(symbol, newId);
+            missCount.increment();
+            return newId;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private static String assertNotNull(String symbol) {
+        if (symbol == null) {
+            throw new IllegalArgumentException("symbol must not be null");
+        }
+        return symbol;
+    }
+
+    /**
+     * Statistics of a {@link SymbolTable}
+     *
+     * @param hitCount number of lookups that found an existing symbol
+     * @param missCount number of lookups that registered a new symbol
+     * @param rejectedCount number of new symbols rejected because the table was full
+     * @param size current number of symbols
+     * @param maxSize maximum number of symbols
+     */
+    public static record SymbolTableStats(long hitCount, long missCount, long rejectedCount, int size, int maxSize) {
+
+        /**
+         * @return fraction of lookups answered with an existing symbol (0.0 .. 1.0), 0 if there were no lookups
+         */
+        public double hitRate() {
+            long total = hitCount + missCount + rejectedCount;
+            return total == 0 ? 0.0 : (double) hitCount / total;
+        }
+
+    }
+
+}
@@ -19,10 +19,12 @@
 
 package de.calamanari.adl.cnv;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
 
 import org.slf4j.Logger;
@@ -108,7 +110,8 @@ public class CoreToPlExpressionConverter extends AbstractCoreExpressionConverter
      */
     private static int compareMatches(PlMatchExpression leftMatch, PlMatchExpression rightMatch) {
         int res;
-        res = leftMatch.argName().compareTo(rightMatch.argName());
+        // identical argNames are common (siblings of a large ANY OF, canonical names from the SymbolTable)
+        res = leftMatch.argName() == rightMatch.argName() ? 0 : leftMatch.argName().compareTo(rightMatch.argName());
         if (res == 0 && !leftMatch.operator().isMatchNegation() && rightMatch.operator().isMatchNegation()) {
             // positive before negative
             res = -1;
@@ -248,95 +251,118 @@ public class CoreToPlExpressionConverter extends AbstractCoreExpressionConverter
      * <p>
      * The method eliminates the STRICTs where possible and afterwards cleans-up the redundant IS-UNKNOWNs.<br>
      * It is crucial to call this method <i>before</i> any other grouping (e.g., ANY OF) because it can only handle simple matches.
+     * <p>
+     * The method walks through the expression (without recursion) and applies the IS-UNKNOWN collected from <i>parent ORs</i> to the negations to check where
+     * we can turn a strict negation into a non-strict one because the expression would be true anyway. The members of an AND get processed backwards, see
+     * {@link #enterRemoveRedundantStrictness(PlCombinedExpression, List, List)}.
      * 
      * @param rootExpression to be updated
      * @param aggressive if true we consider STRICT neighbors as non-unknown indicators (can impede grouping)
      * @return rootExpression or updated root
      */
     private PlExpression<?> removeRedundantStrictness(PlExpression<?> rootExpression, boolean aggressive) {
-        return removeRedundantStrictness(rootExpression, Collections.emptyList(), Collections.emptyList(), aggressive);
+        if (!(rootExpression instanceof PlCombinedExpression rootCmb)) {
+            return rootExpression;
+        }
+        PlExpression<?> res = rootExpression;
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(enterRemoveRedundantStrictness(rootCmb, Collections.emptyList(), Collections.emptyList()));
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            if (frame.hasNextMember()) {
+                PlExpression<?> member = frame.members.get(frame.idx);
+                if (member instanceof PlCombinedExpression cmb) {
+                    // the update will be applied when leaving the member
+                    stack.push(enterRemoveRedundantStrictness(cmb, frame.combinedIsUnknowns, deriveIsNotUnknownsForMember(frame, aggressive)));
+                }
+                else if (isStrictIntraNegatedMatch(member)) {
+                    frame.updateMember(removeRedundantStrictIfApplicable((PlMatchExpression) member, frame.parentIsUnknowns, frame.localIsUnknowns,
+                            deriveIsNotUnknownsForMember(frame, aggressive)));
+                }
+                else if (isStrictNegatedMatch(member)) {
+                    frame.updateMember(removeRedundantStrictIfApplicable((PlNegationExpression) member, frame.parentIsUnknowns, frame.localIsUnknowns,
+                            deriveIsNotUnknownsForMember(frame, aggressive)));
+                }
+                else {
+                    frame.updateMember(member);
+                }
+            }
+            else {
+                stack.pop();
+                PlExpression<?> update = exitRemoveRedundantStrictness(frame);
+                if (stack.isEmpty()) {
+                    res = update;
+                }
+                else {
+                    stack.peek().updateMember(update);
+                }
+            }
+        }
+        return res;
     }
 
     /**
-     * Recursively walks through the expression and applies the IS-UNKNOWN collected from <i>parent ORs</i> to the negations to check where we can turn a strict
-     * negation into a non-strict one because the expression would be true anyway.
+     * Prepares the analysis of an AND resp. OR that could still contain STRICT negations which might be turned into non-STRICT negations
+     * <p>
+     * The members of an AND get processed backwards because in a scenario with multiple STRICT AND-members related to the same variable we want to keep the
+     * left outer one only for better readability, e.g.: <code>STRICT a != 0 AND a STRICT NOT CONTAINS "foo"</code> collapses to
+     * <code>STRICT a != 0 AND a NOT CONTAINS "foo"</code>
      * 
      * @param expression to be analyzed
      * @param parentIsUnknowns already collected outer IS-UNKNOWNs
      * @param isNotUnknowns names of arguments we know from outer conditions that they are not unknown
-     * @param aggressive if true we consider STRICT neighbors as non-unknown indicators (can impede grouping)
-     * @return expression or update
+     * @return frame
      */
-    private PlExpression<?> removeRedundantStrictness(PlExpression<?> expression, List<String> parentIsUnknowns, List<String> isNotUnknowns,
-            boolean aggressive) {
-
+    private Frame enterRemoveRedundantStrictness(PlCombinedExpression expression, List<String> parentIsUnknowns, List<String> isNotUnknowns) {
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("removeRedundantStrictness BEFORE: {}", expression);
         }
-        PlExpression<?> update = expression;
-
-        switch (expression) {
-        case PlCombinedExpression cmb when cmb.combiType() == CombinedExpressionType.AND:
-            update = removeRedundantStrictFromAnd(cmb, parentIsUnknowns, isNotUnknowns, aggressive);
-            break;
-        case PlCombinedExpression cmb when cmb.combiType() == CombinedExpressionType.OR:
-            update = removeRedundantStrictFromOr(cmb, parentIsUnknowns, isNotUnknowns, aggressive);
-            break;
-        default:
-
+        if (expression.combiType() == CombinedExpressionType.AND) {
+            return new Frame(expression, parentIsUnknowns, isNotUnknowns, Collections.emptyList(), true);
         }
-
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("removeRedundantStrictness AFTER: {}{}", ((update != expression) ? "*" : " "), update);
+        List<String> localIsUnknowns = new ArrayList<>();
+        for (PlExpression<?> member : expression.childExpressions()) {
+            if (isUnknown(member)) {
+                localIsUnknowns.add(argNameOf(member));
+            }
         }
-
-        return update;
-
+        return new Frame(expression, parentIsUnknowns, isNotUnknowns, localIsUnknowns, false);
     }
 
     /**
-     * Analyzes an OR that could still contain STRICT negations which might be turned into non-STRICT negations
+     * Determines the arguments we know that they are not unknown when looking at the current member of an AND resp. OR
      * 
-     * @param expression to be analyzed
-     * @param parentIsUnknowns already collected outer IS-UNKNOWNs
-     * @param isNotUnknowns names of arguments we know from outer conditions that they are not unknown
+     * @param frame
      * @param aggressive if true we consider STRICT neighbors as non-unknown indicators (can impede grouping)
+     * @return list with argument names we know they are not unknown
+     */
+    private List<String> deriveIsNotUnknownsForMember(Frame frame, boolean aggressive) {
+        if (frame.candidate.combiType() == CombinedExpressionType.AND) {
+            return deriveIsNotUnknownsForAnd(frame.members, frame.idx, frame.isNotUnknowns, aggressive);
+        }
+        return frame.isNotUnknowns;
+    }
+
+    /**
+     * Finishes the analysis of an AND resp. OR after all members have been processed, an OR gets cleaned from redundant IS-UNKNOWNs
+     * 
+     * @param frame
      * @return expression or update
      */
-    private PlExpression<?> removeRedundantStrictFromOr(PlCombinedExpression expression, List<String> parentIsUnknowns, List<String> isNotUnknowns,
-            boolean aggressive) {
+    private PlExpression<?> exitRemoveRedundantStrictness(Frame frame) {
+        PlCombinedExpression expression = frame.candidate;
         PlExpression<?> res = expression;
-        List<PlExpression<?>> members = new ArrayList<>(expression.childExpressions());
-        List<String> localIsUnknowns = new ArrayList<>();
-        boolean modified = false;
-        for (PlExpression<?> member : members) {
-            if (isUnknown(member)) {
-                localIsUnknowns.add(argNameOf(member));
+        if (expression.combiType() == CombinedExpressionType.OR) {
+            frame.modified = removeRedundantIsUnknownsFromOr(frame.members) || frame.modified;
+            if (frame.modified) {
+                res = recreateCombinedExpression(expression.combiType(), frame.members, Collections.emptyList());
             }
         }
-        List<String> combinedIsUnknowns = new ArrayList<>(parentIsUnknowns.size() + localIsUnknowns.size());
-        combinedIsUnknowns.addAll(parentIsUnknowns);
-        combinedIsUnknowns.addAll(localIsUnknowns);
-        for (int idx = 0; idx < members.size(); idx++) {
-            PlExpression<?> member = members.get(idx);
-            PlExpression<?> memberUpd = member;
-            if (member instanceof PlCombinedExpression cmb) {
-                memberUpd = removeRedundantStrictness(cmb, combinedIsUnknowns, isNotUnknowns, aggressive);
-            }
-            else if (isStrictIntraNegatedMatch(member)) {
-                memberUpd = removeRedundantStrictIfApplicable((PlMatchExpression) member, parentIsUnknowns, localIsUnknowns, isNotUnknowns);
-            }
-            else if (isStrictNegatedMatch(member)) {
-                memberUpd = removeRedundantStrictIfApplicable((PlNegationExpression) member, parentIsUnknowns, localIsUnknowns, isNotUnknowns);
-            }
-            if (memberUpd != member) {
-                members.set(idx, memberUpd);
-                modified = true;
-            }
+        else if (frame.modified) {
+            res = new PlCombinedExpression(expression.combiType(), frame.members, expression.comments());
         }
-        modified = removeRedundantIsUnknownsFromOr(members) || modified;
-        if (modified) {
-            res = recreateCombinedExpression(expression.combiType(), members, Collections.emptyList());
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("removeRedundantStrictness AFTER: {}{}", ((res != expression) ? "*" : " "), res);
         }
         return res;
     }
@@ -373,20 +399,67 @@ public class CoreToPlExpressionConverter extends AbstractCoreExpressionConverter
      * Tests whether the candidate <i>covers</i> the case that argName IS UNKNOWN.
      * <p>
      * Example: <code>a != 1</code> <i>implicitly covers</i> <code>a IS UNKNOWN</code>
+     * <p>
+     * An AND covers the IS-UNKNOWN case if all of its members cover it, an OR if any of its members covers it. Combined members get evaluated without
+     * recursion.
+     * <p>
+     * Example 1: <code>a != 1 AND a != 2</code> <i>implicitly covers</i> <code>a IS UNKNOWN</code><br>
+     * Example 2: <code>a != 1 AND b = 2</code> <i>does <b>not</b> implicitly cover</i> <code>a IS UNKNOWN</code><br>
+     * Example 3: <code>a != 1 OR b = 2</code> <i>implicitly covers</i> <code>a IS UNKNOWN</code>
      * 
      * @param argName
      * @param candidate
      * @return true if the candidate covers the IS-UNKNOWN case for the given argName
      */
     private boolean checkIsUnknownCoveredBy(String argName, PlExpression<?> candidate) {
-        boolean res = false;
-        if (candidate instanceof PlCombinedExpression cmb && cmb.combiType() == CombinedExpressionType.AND) {
-            res = checkIsUnknownCoveredByAnd(argName, cmb);
+        if (!(candidate instanceof PlCombinedExpression rootCmb)) {
+            return checkIsUnknownCoveredByLeaf(argName, candidate);
         }
-        else if (candidate instanceof PlCombinedExpression cmb && cmb.combiType() == CombinedExpressionType.OR) {
-            res = checkIsUnknownCoveredByOr(argName, cmb);
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(rootCmb));
+        Boolean memberResult = null;
+        while (true) {
+            Frame frame = stack.peek();
+            boolean isAnd = frame.candidate.combiType() == CombinedExpressionType.AND;
+            if (memberResult == null && frame.hasNextMember()) {
+                PlExpression<?> member = frame.members.get(frame.idx);
+                if (member instanceof PlCombinedExpression cmb) {
+                    stack.push(new Frame(cmb));
+                    continue;
+                }
+                memberResult = checkIsUnknownCoveredByLeaf(argName, member);
+            }
+            Boolean frameResult = null;
+            if (memberResult == null) {
+                // no member decided: all members of an AND cover the case, none of the members of an OR covers the case
+                frameResult = isAnd;
+            }
+            else if (memberResult.booleanValue() != isAnd) {
+                // the first uncovered member decides for an AND, the first covered member for an OR
+                frameResult = memberResult;
+            }
+            else {
+                frame.idx++;
+            }
+            memberResult = null;
+            if (frameResult != null) {
+                stack.pop();
+                if (stack.isEmpty()) {
+                    return frameResult;
+                }
+                memberResult = frameResult;
+            }
         }
-        else if (isNonStrictIntraNegatedMatch(candidate)) {
+    }
+
+    /**
+     * @param argName
+     * @param candidate not a combined expression
+     * @return true if the candidate covers the IS-UNKNOWN case for the given argName
+     */
+    private boolean checkIsUnknownCoveredByLeaf(String argName, PlExpression<?> candidate) {
+        boolean res = false;
+        if (isNonStrictIntraNegatedMatch(candidate)) {
             String memberArgName = argNameOf(candidate);
             String memberReferencedArgName = isReferenceMatch(candidate) ? referencedArgNameOf(candidate) : null;
             res = argName.equals(memberArgName) || argName.equals(memberReferencedArgName);
@@ -401,87 +474,6 @@ public class CoreToPlExpressionConverter extends AbstractCoreExpressionConverter
         return res;
     }
 
-    /**
-     * Tests whether the AND-expression <i>covers</i> the case that argName IS UNKNOWN.
-     * <p>
-     * Example 1: <code>a != 1 AND a != 2</code> <i>implicitly covers</i> <code>a IS UNKNOWN</code><br>
-     * Example 2: <code>a != 1 AND b = 2</code> <i>does <b>not</b> implicitly cover</i> <code>a IS UNKNOWN</code>
-     * 
-     * @param argName
-     * @param candidate
-     * @return true if the AND covers the IS-UNKNOWN case for the given argName
-     */
-    private boolean checkIsUnknownCoveredByAnd(String argName, PlCombinedExpression andExpression) {
-        for (PlExpression<?> member : andExpression.childExpressions()) {
-            if (!checkIsUnknownCoveredBy(argName, member)) {
-                return false;
-            }
-        }
-        return true;
-    }
-
-    /**
-     * Tests whether the OR-expression <i>covers</i> the case that argName IS UNKNOWN.
-     * <p>
-     * Example 1: <code>a != 1 OR a != 2</code> <i>implicitly covers</i> <code>a IS UNKNOWN</code><br>
-     * Example 2: <code>a != 1 OR b = 2</code> <i>implicitly covers</i> <code>a IS UNKNOWN</code>
-     * 
-     * @param argName
-     * @param candidate
-     * @return true if the AND covers the IS-UNKNOWN case for the given argName
-     */
-    private boolean checkIsUnknownCoveredByOr(String argName, PlCombinedExpression orExpression) {
-        for (PlExpression<?> member : orExpression.childExpressions()) {
-            if (checkIsUnknownCoveredBy(argName, member)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Analyzes an AND that could still contain STRICT negations which might be turned into non-STRICT negations
-     * 
-     * @param expression to be analyzed
-     * @param parentIsUnknowns already collected outer IS-UNKNOWNs
-     * @param isNotUnknowns names of arguments we know from outer conditions that they are not unknown
-     * @param aggressive if true we consider STRICT neighbors as non-unknown indicators (can impede grouping)
-     * @return expression or update
-     */
-    private PlExpression<?> removeRedundantStrictFromAnd(PlCombinedExpression expression, List<String> parentIsUnknowns, List<String> isNotUnknowns,
-            boolean aggressive) {
-        PlExpression<?> res = expression;
-        List<PlExpression<?>> members = new ArrayList<>(expression.childExpressions());
-        boolean modified = false;
-
-        // The loop below runs backwards because in a scenario with multiple STRICT AND-members related to the same variable
-        // we want to keep the left outer one only for better readability
-        // e.g.: STRICT a != 0 AND a STRICT NOT CONTAINS "foo" collapses to STRICT a != 0 AND a NOT CONTAINS "foo"
-        for (int idx = members.size() - 1; idx > -1; idx--) {
-            PlExpression<?> member = members.get(idx);
-            PlExpression<?> memberUpd = member;
-            if (member instanceof PlCombinedExpression cmb) {
-                memberUpd = removeRedundantStrictness(cmb, parentIsUnknowns, deriveIsNotUnknownsForAnd(members, idx, isNotUnknowns, aggressive), aggressive);
-            }
-            else if (isStrictIntraNegatedMatch(member)) {
-                memberUpd = removeRedundantStrictIfApplicable((PlMatchExpression) member, parentIsUnknowns, Collections.emptyList(),
-                        deriveIsNotUnknownsForAnd(members, idx, isNotUnknowns, aggressive));
-            }
-            else if (isStrictNegatedMatch(member)) {
-                memberUpd = removeRedundantStrictIfApplicable((PlNegationExpression) member, parentIsUnknowns, Collections.emptyList(),
-                        deriveIsNotUnknownsForAnd(members, idx, isNotUnknowns, aggressive));
-            }
-            if (memberUpd != member) {
-                members.set(idx, memberUpd);
-                modified = true;
-            }
-        }
-        if (modified) {
-            res = new PlCombinedExpression(expression.combiType(), members, expression.comments());
-        }
-        return res;
-    }
-
     /**
      * This method takes the given is-not-unknowns and adds is-not-unknowns according to the <i>neighbors</i> within an AND.
      * <p>
@@ -590,33 +582,13 @@ public class CoreToPlExpressionConverter extends AbstractCoreExpressionConverter
     }
 
     /**
-     * Runs the policy check recursively (rebuild bottom-up)
+     * Runs the policy check bottom-up, see {@link #rewriteBottomUp(PlCombinedExpression, MemberPolicy, boolean, String)}
      * 
      * @param candidate
      * @return candidate or replacement
      */
     private PlExpression<?> recreateCombinedOperatorsInCombinedExpression(PlCombinedExpression candidate) {
-
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("recreateCombinedOperatorsInCombinedExpression BEFORE: {}", candidate);
-        }
-
-        boolean modified = false;
-        PlExpression<?> res = candidate;
-        List<PlExpression<?>> members = new ArrayList<>(candidate.childExpressions());
-        List<PlExpression<?>> consumedMembers = new ArrayList<>();
-        for (int idx = 0; idx < members.size(); idx++) {
-            modified = recreateCombinedOperatorsInCombinedExpression(candidate.combiType(), members, idx, consumedMembers) || modified;
-        }
-        if (modified) {
-            res = recreateCombinedExpression(candidate.combiType(), members, consumedMembers);
-        }
-
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("recreateCombinedOperatorsInCombinedExpression AFTER: {}{}", (modified ? "*" : " "), res);
-        }
-
-        return res;
+        return rewriteBottomUp(candidate, this::applyOperatorCombinationPolicies, false, "recreateCombinedOperatorsInCombinedExpression");
     }
 
     /**
@@ -628,18 +600,10 @@ public class CoreToPlExpressionConverter extends AbstractCoreExpressionConverter
      * @param consumedMembers here we collect members which got obsolete due to combination (for final removal)
      * @return true if the members were modified
      */
-    private boolean recreateCombinedOperatorsInCombinedExpression(CombinedExpressionType parentType, List<PlExpression<?>> members, int idx,
+    private boolean applyOperatorCombinationPolicies(CombinedExpressionType parentType, List<PlExpression<?>> members, int idx,
             List<PlExpression<?>> consumedMembers) {
         boolean modified = false;
-        PlExpression<?> member = members.get(idx);
-        if (member instanceof PlCombinedExpression cmb) {
-            PlExpression<?> memberUpd = recreateCombinedOperatorsInCombinedExpression(cmb);
-            if (memberUpd != member) {
-                modified = true;
-                members.set(idx, memberUpd);
-            }
-        }
-        else if (parentType == CombinedExpressionType.AND) {
+        if (parentType == CombinedExpressionType.AND) {
             for (OperatorCombinationPolicy policy : OperatorCombinationPolicy.values()) {
                 modified = policy.applyInAndParent(members, idx, consumedMembers) || modified;
             }
@@ -667,34 +631,14 @@ public class CoreToPlExpressionConverter extends AbstractCoreExpressionConverter
     }
 
     /**
-     * Runs the recreation of (NOT) (CONTAINS) ANY OFs on an OR resp. AND
+     * Runs the recreation of (NOT) (CONTAINS) ANY OFs on an OR resp. AND bottom-up, see
+     * {@link #rewriteBottomUp(PlCombinedExpression, MemberPolicy, boolean, String)}
      * 
      * @param candidate
      * @return replacement or the candidate if there was no change
      */
     private PlExpression<?> recreateAnyOfCombinationsInCombinedExpression(PlCombinedExpression candidate) {
-
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("recreateAnyOfCombinationsInCombinedExpression BEFORE: {}", candidate);
-        }
-
-        boolean modified = false;
-        PlExpression<?> res = candidate;
-        List<PlExpression<?>> members = new ArrayList<>(candidate.childExpressions());
-        List<PlExpression<?>> consumedMembers = new ArrayList<>();
-        for (int idx = 0; idx < members.size(); idx++) {
-            modified = recreateAnyOfCombinationsInCombinedExpression(candidate.combiType(), members, idx, consumedMembers) || modified;
-        }
-        if (modified) {
-            res = recreateCombinedExpression(candidate.combiType(), members, consumedMembers);
-        }
-
-        if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("recreateAnyOfCombinationsInCombinedExpression AFTER: {}{}", (modified ? "*" : " "), res);
-        }
-
-        return res;
-
+        return rewriteBottomUp(candidate, this::applyAnyOfCombinationPolicies, false, "recreateAnyOfCombinationsInCombinedExpression");
     }
 
     /**
@@ -706,18 +650,10 @@ public class CoreToPlExpressionConverter extends AbstractCoreExpressionConverter
      * @param consumedMembers here we collect members which got obsolete due to combination (for final removal)
      * @return true if the members were modified
      */
-    private boolean recreateAnyOfCombinationsInCombinedExpression(CombinedExpressionType parentType, List<PlExpression<?>> members, int idx,
+    private boolean applyAnyOfCombinationPolicies(CombinedExpressionType parentType, List<PlExpression<?>> members, int idx,
             List<PlExpression<?>> consumedMembers) {
         boolean modified = false;
-        PlExpression<?> member = members.get(idx);
-        if (member instanceof PlCombinedExpression cmb) {
-            PlExpression<?> memberUpd = recreateAnyOfCombinationsInCombinedExpression(cmb);
-            if (memberUpd != member) {
-                modified = true;
-                members.set(idx, memberUpd);
-            }
-        }
-        else if (parentType == CombinedExpressionType.AND) {
+        if (parentType == CombinedExpressionType.AND) {
             for (AnyOfCombinationPolicy policy : AnyOfCombinationPolicy.values()) {
                 modified = policy.applyInAndParent(members, idx, consumedMembers) || modified;
             }
@@ -737,26 +673,88 @@ public class CoreToPlExpressionConverter extends AbstractCoreExpressionConverter
      * @return updated expression or expression if not changed
      */
     private PlExpression<?> applyPrettyMemberOrder(PlExpression<?> expression) {
-        PlExpression<?> res = expression;
         if (expression instanceof PlCombinedExpression cmb) {
+            return rewriteBottomUp(cmb, null, true, "applyPrettyMemberOrder");
+        }
+        return expression;
+    }
 
-            if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace("applyPrettyMemberOrder BEFORE: {}", cmb);
-            }
-
-            List<PlExpression<?>> members = new ArrayList<>(expression.childExpressions());
-            for (int idx = 0; idx < members.size(); idx++) {
-                members.set(idx, applyPrettyMemberOrder(members.get(idx)));
+    /**
+     * Rewrites the given expression bottom-up without recursion: The members of each AND resp. OR get processed in order, a combined member gets rewritten
+     * before the next member, any other member gets checked by the given policy. Afterwards the replacement gets created from the updated members.
+     * 
+     * @param rootExpression
+     * @param memberPolicy to be applied to each member that is not a combined expression, null to skip
+     * @param sortMembers if true, the members get sorted with {@link #MEMBER_PRETTY_ORDER_COMPARATOR} (keeping the comments), otherwise the consumed members
+     *            get removed, see {@link #recreateCombinedExpression(CombinedExpressionType, List, List)}
+     * @param traceLabel for logging
+     * @return replacement or the root expression if there was no change
+     */
+    private PlExpression<?> rewriteBottomUp(PlCombinedExpression rootExpression, MemberPolicy memberPolicy, boolean sortMembers, String traceLabel) {
+        PlExpression<?> res = rootExpression;
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(enterRewrite(rootExpression, traceLabel));
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            if (frame.hasNextMember()) {
+                PlExpression<?> member = frame.members.get(frame.idx);
+                if (member instanceof PlCombinedExpression cmb) {
+                    // the update will be applied when leaving the member
+                    stack.push(enterRewrite(cmb, traceLabel));
+                }
+                else {
+                    if (memberPolicy != null) {
+                        frame.modified = memberPolicy.apply(frame.candidate.combiType(), frame.members, frame.idx, frame.consumedMembers) || frame.modified;
+                    }
+                    frame.idx++;
+                }
             }
-            Collections.sort(members, MEMBER_PRETTY_ORDER_COMPARATOR);
-            if (!members.equals(expression.childExpressions())) {
-                res = new PlCombinedExpression(cmb.combiType(), members, cmb.comments());
+            else {
+                stack.pop();
+                PlExpression<?> update = exitRewrite(frame, sortMembers, traceLabel);
+                if (stack.isEmpty()) {
+                    res = update;
+                }
+                else {
+                    stack.peek().updateMember(update);
+                }
             }
+        }
+        return res;
+    }
 
-            if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace("applyPrettyMemberOrder AFTER: {}{}", ((res != expression) ? "*" : " "), res);
-            }
+    /**
+     * @param candidate
+     * @param traceLabel for logging
+     * @return frame
+     */
+    private Frame enterRewrite(PlCombinedExpression candidate, String traceLabel) {
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{} BEFORE: {}", traceLabel, candidate);
+        }
+        return new Frame(candidate);
+    }
 
+    /**
+     * @param frame
+     * @param sortMembers see {@link #rewriteBottomUp(PlCombinedExpression, MemberPolicy, boolean, String)}
+     * @param traceLabel for logging
+     * @return replacement or the candidate if there was no change
+     */
+    private PlExpression<?> exitRewrite(Frame frame, boolean sortMembers, String traceLabel) {
+        PlCombinedExpression candidate = frame.candidate;
+        PlExpression<?> res = candidate;
+        if (sortMembers) {
+            Collections.sort(frame.members, MEMBER_PRETTY_ORDER_COMPARATOR);
+            if (!frame.members.equals(candidate.childExpressions())) {
+                res = new PlCombinedExpression(candidate.combiType(), frame.members, candidate.comments());
+            }
+        }
+        else if (frame.modified) {
+            res = recreateCombinedExpression(candidate.combiType(), frame.members, frame.consumedMembers);
+        }
+        if (LOGGER.isTraceEnabled()) {
+            LOGGER.trace("{} AFTER: {}{}", traceLabel, ((res != candidate) ? "*" : " "), res);
         }
         return res;
     }
@@ -853,12 +851,63 @@ public class CoreToPlExpressionConverter extends AbstractCoreExpressionConverter
      * Checks the given expression if we can assume any IS-NOT-UNKNOWNs from it
      * <p>
      * Example: <code>a = 1</code> <i>implies</i> that <code>a IS NOT UNKNOWN</code>
+     * <p>
+     * The result of an AND is the union of all member results, the result of an OR is the <i>overlap</i> of all member results. Combined members get
+     * evaluated without recursion.
      * 
      * @param candidate
      * @param aggressive if true we consider STRICT neighbors as non-unknown indicators (can impede grouping)
      * @return list with arguments we can assume that they are NOT UNKNOWN
      */
     private List<String> collectIsNotUnknowns(PlExpression<?> candidate, boolean aggressive) {
+        if (!(candidate instanceof PlCombinedExpression rootCmb)) {
+            return collectIsNotUnknownsFromLeaf(candidate, aggressive);
+        }
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(rootCmb));
+        List<String> memberResult = null;
+        while (true) {
+            Frame frame = stack.peek();
+            if (memberResult == null && frame.hasNextMember()) {
+                PlExpression<?> member = frame.members.get(frame.idx);
+                if (member instanceof PlCombinedExpression cmb) {
+                    stack.push(new Frame(cmb));
+                    continue;
+                }
+                memberResult = collectIsNotUnknownsFromLeaf(member, aggressive);
+            }
+            List<String> frameResult = null;
+            if (memberResult == null) {
+                frameResult = frame.argNames;
+            }
+            else if (frame.candidate.combiType() == CombinedExpressionType.AND) {
+                frame.argNames.addAll(memberResult);
+                frame.idx++;
+            }
+            else {
+                mergeIsNotUnknownsInOrParent(frame, memberResult);
+                if (frame.argNames.isEmpty()) {
+                    frameResult = Collections.emptyList();
+                }
+                frame.idx++;
+            }
+            memberResult = null;
+            if (frameResult != null) {
+                stack.pop();
+                if (stack.isEmpty()) {
+                    return frameResult;
+                }
+                memberResult = frameResult;
+            }
+        }
+    }
+
+    /**
+     * @param candidate not a combined expression
+     * @param aggressive if true we consider STRICT neighbors as non-unknown indicators (can impede grouping)
+     * @return list with arguments we can assume that they are NOT UNKNOWN
+     */
+    private List<String> collectIsNotUnknownsFromLeaf(PlExpression<?> candidate, boolean aggressive) {
         List<String> res = Collections.emptyList();
         if (candidate instanceof PlMatchExpression match && matchImpliesArgumentIsNotUnknown(match, aggressive)) {
             if (isReferenceMatch(candidate)) {
@@ -868,45 +917,27 @@ public class CoreToPlExpressionConverter extends AbstractCoreExpressionConverter
                 res = Arrays.asList(argNameOf(candidate));
             }
         }
-        else if (candidate instanceof PlCombinedExpression cmb && cmb.combiType() == CombinedExpressionType.AND) {
-            res = new ArrayList<>();
-            for (PlExpression<?> member : cmb.childExpressions()) {
-                res.addAll(collectIsNotUnknowns(member, aggressive));
-            }
-        }
-        else if (candidate instanceof PlCombinedExpression cmb && cmb.combiType() == CombinedExpressionType.OR) {
-            res = collectIsNotUnknownsInOrParent(cmb, aggressive);
-        }
         return res;
     }
 
     /**
      * Performs the collection within an OR. The result is the <i>overlap</i> of all member results.
      * 
-     * @param candidate
-     * @param aggressive if true we consider STRICT neighbors as non-unknown indicators (can impede grouping)
-     * @return list with arguments we can assume that they are NOT UNKNOWN
+     * @param frame of the OR
+     * @param memberIsNotUnknowns result of the current member
      */
-    private List<String> collectIsNotUnknownsInOrParent(PlCombinedExpression candidate, boolean aggressive) {
-        List<String> res = new ArrayList<>();
-        List<PlExpression<?>> members = candidate.childExpressions();
-        for (int idx = 0; idx < members.size(); idx++) {
-            List<String> memberIsNotUnknowns = collectIsNotUnknowns(members.get(idx), aggressive);
-            if (idx == 0) {
-                res.addAll(memberIsNotUnknowns);
-            }
-            else {
-                for (int mergeIdx = res.size() - 1; mergeIdx > -1; mergeIdx--) {
-                    if (!memberIsNotUnknowns.contains(res.get(mergeIdx))) {
-                        res.remove(mergeIdx);
-                    }
+    private void mergeIsNotUnknownsInOrParent(Frame frame, List<String> memberIsNotUnknowns) {
+        List<String> res = frame.argNames;
+        if (frame.idx == 0) {
+            res.addAll(memberIsNotUnknowns);
+        }
+        else {
+            for (int mergeIdx = res.size() - 1; mergeIdx > -1; mergeIdx--) {
+                if (!memberIsNotUnknowns.contains(res.get(mergeIdx))) {
+                    res.remove(mergeIdx);
                 }
             }
-            if (res.isEmpty()) {
-                return Collections.emptyList();
-            }
         }
-        return res;
     }
 
     /**
@@ -921,4 +952,102 @@ public class CoreToPlExpressionConverter extends AbstractCoreExpressionConverter
                 || operator == PlMatchOperator.GREATER_THAN || (aggressive && operator.isStrictMatchNegation()));
     }
 
+    /**
+     * Check of a single member of an AND resp. OR, see {@link OperatorCombinationPolicy} and {@link AnyOfCombinationPolicy}
+     */
+    @FunctionalInterface
+    private interface MemberPolicy {
+
+        /**
+         * @param parentType
+         * @param members
+         * @param idx
+         * @param consumedMembers here we collect members which got obsolete due to combination (for final removal)
+         * @return true if the members were modified
+         */
+        boolean apply(CombinedExpressionType parentType, List<PlExpression<?>> members, int idx, List<PlExpression<?>> consumedMembers);
+
+    }
+
+    /**
+     * AND resp. OR being processed and the position of the current member, the nesting is kept in an explicit stack instead of recursion
+     */
+    private static final class Frame {
+
+        private final PlCombinedExpression candidate;
+
+        /**
+         * copy of the candidate's members to be updated
+         */
+        private final List<PlExpression<?>> members;
+
+        private final List<PlExpression<?>> consumedMembers = new ArrayList<>();
+
+        private final List<String> parentIsUnknowns;
+
+        private final List<String> localIsUnknowns;
+
+        /**
+         * IS-UNKNOWNs to be passed to combined members
+         */
+        private final List<String> combinedIsUnknowns;
+
+        private final List<String> isNotUnknowns;
+
+        /**
+         * collected argument names (IS-NOT-UNKNOWN evaluation)
+         */
+        private final List<String> argNames = new ArrayList<>();
+
+        private final boolean backwards;
+
+        private int idx;
+
+        private boolean modified = false;
+
+        private Frame(PlCombinedExpression candidate) {
+            this(candidate, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(), false);
+        }
+
+        private Frame(PlCombinedExpression candidate, List<String> parentIsUnknowns, List<String> isNotUnknowns, List<String> localIsUnknowns,
+                boolean backwards) {
+            this.candidate = candidate;
+            this.members = new ArrayList<>(candidate.childExpressions());
+            this.parentIsUnknowns = parentIsUnknowns;
+            this.isNotUnknowns = isNotUnknowns;
+            this.localIsUnknowns = localIsUnknowns;
+            if (localIsUnknowns.isEmpty()) {
+                this.combinedIsUnknowns = parentIsUnknowns;
+            }
+            else {
+                this.combinedIsUnknowns = new ArrayList<>(parentIsUnknowns.size() + localIsUnknowns.size());
+                this.combinedIsUnknowns.addAll(parentIsUnknowns);
+                this.combinedIsUnknowns.addAll(localIsUnknowns);
+            }
+            this.backwards = backwards;
+            this.idx = backwards ? members.size() - 1 : 0;
+        }
+
+        /**
+         * @return true if the current position is a valid member index
+         */
+        private boolean hasNextMember() {
+            return idx > -1 && idx < members.size();
+        }
+
+        /**
+         * Replaces the current member if the update is a different instance and moves to the next member
+         * 
+         * @param memberUpd
+         */
+        private void updateMember(PlExpression<?> memberUpd) {
+            if (memberUpd != members.get(idx)) {
+                members.set(idx, memberUpd);
+                modified = true;
+            }
+            idx = backwards ? idx - 1 : idx + 1;
+        }
+
+    }
+
 }
@@ -21,6 +21,8 @@ package de.calamanari.adl.cnv;
 
 import java.io.Serializable;
 
+import de.calamanari.adl.SymbolTable;
+
 /**
  * Single value qualified by its argument name, suitable to be key or value.
  * <p>
@@ -40,6 +42,8 @@ public record QualifiedArgValue(String argName, String argValue) implements Comp
         if (argName == null) {
             throw new IllegalArgumentException("argName must not be null, given: argName=null, argValue=" + argValue);
         }
+        argName = SymbolTable.canonicalize(argName);
+        argValue = SymbolTable.canonicalize(argValue);
     }
 
     @Override
@@ -32,6 +32,7 @@ import de.calamanari.adl.TimeOut;
 import de.calamanari.adl.erl.AudlangParseResult;
 import de.calamanari.adl.erl.PlExpression;
 import de.calamanari.adl.erl.PlExpressionBuilder;
+import de.calamanari.adl.erl.PlExpressionParser;
 import de.calamanari.adl.irl.CoreExpression;
 import de.calamanari.adl.irl.biceps.CoreExpressionOptimizer;
 
@@ -92,6 +93,14 @@ public class StandardConversions {
         return PlExpressionBuilder::stringToExpression;
     }
 
+    /**
+     * @param parser to be used (e.g., a {@link de.calamanari.adl.erl.CachingPlExpressionParser})
+     * @return function to parse a string expression into an {@link AudlangParseResult} with the given parser
+     */
+    public static Function<String, AudlangParseResult> parse(PlExpressionParser parser) {
+        return parser::parse;
+    }
+
     @SuppressWarnings("java:S1452")
     public static Function<AudlangExpression<?, ?>, String> asString() {
         return AudlangExpression::toString;
@@ -225,6 +234,19 @@ public class StandardConversions {
      */
     @SuppressWarnings("java:S1452")
     public static PlExpression<?> parsePlExpression(String expr) {
+        return parsePlExpression(expr, PlExpressionParser.getDefaultInstance());
+    }
+
+    /**
+     * Shorthand for quickly parsing a presentation layer expression with the given parser (e.g., a {@link de.calamanari.adl.erl.CachingPlExpressionParser})
+     * 
+     * @param expr not null
+     * @param parser not null
+     * @return parsed {@link PlExpression}
+     * @throws ConversionException in case of an error
+     */
+    @SuppressWarnings("java:S1452")
+    public static PlExpression<?> parsePlExpression(String expr, PlExpressionParser parser) {
         if (expr == null) {
             throw new ConversionException("Cannot convert expr=null.", AudlangMessage.msg(CommonErrors.ERR_1000_PARSE_FAILED));
         }
@@ -232,7 +254,7 @@ public class StandardConversions {
         // The optional below will always be present (or earlier an exception will be thrown)
         // @formatter:off
         return Optional.of(expr)
-                .map(parse())
+                .map(parse(parser))
                 .map(toPlExpression())
                 .orElseThrow(() -> new ConversionException("Unexpected missing value after parsing: " + expr, AudlangMessage.msg(CommonErrors.ERR_1000_PARSE_FAILED)));
         // @formatter:on
@@ -0,0 +1,247 @@
+//@formatter:off
+/*
+ * WarmUp
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.cnv;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.FormatStyle;
+import de.calamanari.adl.erl.AudlangParseResult;
+import de.calamanari.adl.erl.PlExpression;
+import de.calamanari.adl.erl.PlExpressionParser;
+import de.calamanari.adl.erl.PlExpressionParser.ParseMode;
+import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.biceps.CoreExpressionOptimizer;
+
+//@formatter:off
+/**
+ * {@link WarmUp} reduces the cold-start latency of the first expressions processed by a fresh JVM.
+ * <p>
+ * The first parse and conversion runs are expensive: ANTLR deserializes its ATN and builds the DFA caches of lexer and parser on demand, and a couple of
+ * hundred classes (especially from the <b>biceps</b> package) must be loaded and initialized. {@link #warmUp()} pays this price upfront by processing a
+ * built-in corpus of expressions covering all language features:
+ * <ul>
+ * <li>parsing (fast path and ANTLR, valid and invalid expressions)</li>
+ * <li>conversion to {@link CoreExpression} including the {@link CoreExpressionOptimizer}</li>
+ * <li>negation, IS UNKNOWN-removal and conversion back to {@link PlExpression}</li>
+ * <li>formatting (inline and pretty-print)</li>
+ * </ul>
+ * The returned {@link WarmUpResult} reports how long the warm-up took.
+ * <p>
+ * <b>CDS/AppCDS:</b> The {@link #main(String[])} method runs the warm-up and can be used as a training run to create a class data sharing archive, so that
+ * later JVMs start with the classes already loaded and linked:<pre>
+ *      java -XX:ArchiveClassesAtExit=audlang.jsa -cp ... de.calamanari.adl.cnv.WarmUp
+ *      java -XX:SharedArchiveFile=audlang.jsa -cp ... your.Application
+ * </pre>
+ * On newer JVMs the same training run can create an ahead-of-time cache (<code>-XX:AOTCacheOutput=audlang.aot</code>, later
+ * <code>-XX:AOTCache=audlang.aot</code>). An archive only contains classes and linkage information, the ANTLR DFA caches are still built at runtime, so
+ * calling {@link #warmUp()} on startup remains useful.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+//@formatter:on
+public class WarmUp {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WarmUp.class);
+
+    /**
+     * Default number of rounds to process the corpus: {@value}
+     */
+    public static final int DEFAULT_ROUNDS = 3;
+
+    /**
+     * Representative expressions covering all language features, the last ones are intentionally invalid
+     */
+    // @formatter:off
+    private static final List<String> CORPUS = List.of(
+            "color = red",
+            "color != red",
+            "STRICT color != red",
+            "age < 18 OR age > 65",
+            "age <= 18 AND age >= 65",
+            "age BETWEEN (18, 65)",
+            "age NOT BETWEEN (18, 65)",
+            "color ANY OF (red, green, blue)",
+            "color NOT ANY OF (red, @other, blue)",
+            "STRICT NOT color ANY OF (red, green, blue)",
+            "name CONTAINS \"ar\"",
+            "name NOT CONTAINS \"ar\"",
+            "name CONTAINS ANY OF (ar, \"er\", ur)",
+            "name STRICT NOT CONTAINS ANY OF (ar, er, \"or\")",
+            "color IS UNKNOWN",
+            "color IS NOT UNKNOWN",
+            "color = @shade",
+            "STRICT NOT color = @shade",
+            "<ALL>",
+            "<NONE>",
+            "NOT (color = red AND shape = circle)",
+            "(color = red OR color = blue) AND (shape = circle OR shape = square) AND NOT size = big",
+            "((a = 1 OR b = 2) AND (c = 3 OR d = 4)) OR (e = 5 AND f != 6) OR g IS UNKNOWN",
+            "color ANY OF (red, blue) AND NOT color = red AND (size > 10 OR size IS UNKNOWN)",
+            "CURB (color = red OR shape = circle OR size = big) >= 2",
+            "CURB (a = 1 OR b = 2 OR c = 3) = 1 AND NOT CURB (d = 4 OR e = 5) > 1",
+            "\"home country\" = \"Germany\" /* comment */ AND NOT \"provider\" = \"foo \"\"bar\"\"\"",
+            """
+            /* comment before */ color = red AND (
+                shape ANY OF (circle, /* inner comment */ square)
+                OR size BETWEEN ( 1 , 10 )
+            ) /* comment after */
+            """,
+            "color = red OR",
+            "color = red AND shape = circle OR size = big",
+            "color ANY OF ()",
+            "CURB (a = 1 OR b = 2) > 99999999999999999999",
+            "color = \"red"
+            );
+    // @formatter:on
+
+    /**
+     * Number of intentionally invalid expressions at the end of the {@link #CORPUS}
+     */
+    private static final int NUMBER_OF_INVALID_EXPRESSIONS = 5;
+
+    /**
+     * Runs the warm-up with the {@link PlExpressionParser#getDefaultInstance()} and the {@link #DEFAULT_ROUNDS}
+     * 
+     * @return information about the warm-up run
+     */
+    public static WarmUpResult warmUp() {
+        return warmUp(PlExpressionParser.getDefaultInstance(), DEFAULT_ROUNDS);
+    }
+
+    /**
+     * Runs the warm-up with the given parser, so that this parser's pool gets filled as a side-effect.
+     * <p>
+     * Independent from the given parser, every expression will also be parsed with ANTLR to build the (shared) DFA caches.
+     * 
+     * @param parser to be warmed up, NOT NULL
+     * @param rounds number of times the corpus should be processed, positive
+     * @return information about the warm-up run
+     */
+    public static WarmUpResult warmUp(PlExpressionParser parser, int rounds) {
+        if (parser == null) {
+            throw new IllegalArgumentException("parser must not be null");
+        }
+        if (rounds < 1) {
+            throw new IllegalArgumentException(String.format("rounds must be positive, given: %s", rounds));
+        }
+        long startTimeNanos = System.nanoTime();
+
+        // non-pooled parser without fast path, we want ANTLR to process every expression
+        PlExpressionParser antlrParser = new PlExpressionParser(0, ParseMode.LL, false);
+
+        IsUnknownRemovalConverter isUnknownRemovalConverter = new IsUnknownRemovalConverter(List.of("color", "size"));
+
+        int numberOfFailures = 0;
+        for (int round = 0; round < rounds; round++) {
+            numberOfFailures = 0;
+            for (String source : CORPUS) {
+                antlrParser.parse(source);
+                AudlangParseResult parseResult = parser.parse(source);
+                if (parseResult.isError()) {
+                    numberOfFailures++;
+                }
+                else {
+                    processExpression(parseResult.getResultExpression(), parser, isUnknownRemovalConverter);
+                }
+            }
+        }
+        WarmUpResult res = new WarmUpResult(CORPUS.size(), rounds, numberOfFailures, System.nanoTime() - startTimeNanos);
+        LOGGER.debug("{}", res);
+        return res;
+    }
+
+    /**
+     * Runs the typical processing steps on the given valid expression
+     * 
+     * @param plExpression parsed expression
+     * @param parser for re-parsing the formatted expression
+     * @param isUnknownRemovalConverter to be applied to the core expression
+     */
+    private static void processExpression(PlExpression<?> plExpression, PlExpressionParser parser, IsUnknownRemovalConverter isUnknownRemovalConverter) {
+        parser.parse(plExpression.format(FormatStyle.PRETTY_PRINT));
+        CoreExpression coreExpression = StandardConversions.plToCoreExpression().apply(plExpression);
+        isUnknownRemovalConverter.convert(coreExpression);
+        for (CoreExpression expression : List.of(coreExpression, coreExpression.negate(false), coreExpression.negate(true))) {
+            PlExpression<?> converted = StandardConversions.coreToPlExpression().apply(expression);
+            converted.format(FormatStyle.INLINE);
+            expression.format(FormatStyle.PRETTY_PRINT);
+        }
+    }
+
+    /**
+     * Runs the warm-up (e.g., as a CDS/AppCDS training run) and prints the result to {@link System#out}.
+     * <p>
+     * A training run usually has no logging backend on the classpath (slf4j is a provided dependency), so the result gets printed directly. If any of the
+     * valid expressions failed, the JVM exits with status 1, so that a broken training run does not silently produce an archive.
+     * 
+     * @param args optional number of rounds (default: {@link #DEFAULT_ROUNDS})
+     */
+    @SuppressWarnings("java:S106")
+    public static void main(String[] args) {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ROUNDS;
+        WarmUpResult res = warmUp(PlExpressionParser.getDefaultInstance(), rounds);
+        System.out.println(res);
+        if (res.hasUnexpectedFailures()) {
+            System.err.println(
+                    String.format("Warm-up failed, expected failures: %s, actual: %s", NUMBER_OF_INVALID_EXPRESSIONS, res.numberOfFailures()));
+            System.exit(1);
+        }
+    }
+
+    private WarmUp() {
+        // static utility
+    }
+
+    /**
+     * Information about a warm-up run
+     * 
+     * @param numberOfExpressions size of the built-in corpus
+     * @param rounds number of times the corpus was processed
+     * @param numberOfFailures number of expressions in the corpus that could not be parsed (intentionally)
+     * @param elapsedNanos total time of the warm-up
+     */
+    public static record WarmUpResult(int numberOfExpressions, int rounds, int numberOfFailures, long elapsedNanos) {
+
+        /**
+         * @return total time of the warm-up in milliseconds
+         */
+        public long elapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        /**
+         * @return true if any other than the intentionally invalid expressions of the corpus failed (or an invalid one was accepted)
+         */
+        public boolean hasUnexpectedFailures() {
+            return numberOfFailures != NUMBER_OF_INVALID_EXPRESSIONS;
+        }
+
+        @Override
+        public String toString() {
+            return this.getClass().getSimpleName() + " [numberOfExpressions=" + numberOfExpressions + ", rounds=" + rounds + ", numberOfFailures="
+                    + numberOfFailures + ", elapsedMillis=" + elapsedMillis() + "]";
+        }
+
+    }
+
+}
@@ -23,6 +23,7 @@ import java.io.Serializable;
 
 import de.calamanari.adl.AudlangMessage;
 import de.calamanari.adl.CommonErrors;
+import de.calamanari.adl.SymbolTable;
 
 /**
  * An {@link ArgMetaInfo} contains meta data about an argument of an expression.
@@ -59,5 +60,6 @@ public record ArgMetaInfo(String argName, AdlType type, boolean isAlwaysKnown, b
             throw new ConfigException(String.format("Arguments argName and type are mandatory, given: argName=%s, type=%s, isAlwaysKnown=%s, isCollection=%s",
                     argName, type, isAlwaysKnown, isCollection), userMessage);
         }
+        argName = SymbolTable.canonicalize(argName);
     }
 }
@@ -65,7 +65,12 @@ public record DefaultArgMetaInfoLookup(Map<String, ArgMetaInfo> map) implements
             }
 
         }
-        this.map = Collections.unmodifiableMap(new TreeMap<>(map));
+        Map<String, ArgMetaInfo> tempMap = new TreeMap<>();
+        for (ArgMetaInfo entry : map.values()) {
+            // the key equals the name, but only the name is canonical (see SymbolTable)
+            tempMap.put(entry.argName(), entry);
+        }
+        this.map = Collections.unmodifiableMap(tempMap);
     }
 
     /**
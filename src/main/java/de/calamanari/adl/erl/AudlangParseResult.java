@@ -19,11 +19,16 @@
 
 package de.calamanari.adl.erl;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import de.calamanari.adl.AudlangResult;
 
 /**
  * The {@link AudlangParseResult} covers any positive or negative result (failure) when parsing a textual Audlang expression. It allows either returning a valid
  * expression or an error message with proper explanation why the parse run failed.
+ * <p>
+ * The statistics ({@link #getTokenCount()}, {@link #getParseNanos()}) only describe the local parse run, they are neither part of the serialized form nor of
+ * the JSON representation.
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
@@ -33,6 +38,10 @@ public class AudlangParseResult extends AudlangResult {
 
     private PlExpression<?> resultExpression;
 
+    private transient int tokenCount;
+
+    private transient long parseNanos;
+
     /**
      * @return result expression or null if {@link #isError()}
      */
@@ -48,6 +57,39 @@ public class AudlangParseResult extends AudlangResult {
         this.resultExpression = resultExpression;
     }
 
+    /**
+     * @return number of tokens (including whitespace, comments and EOF) the lexer created from the source, 0 if the source was not tokenized (e.g., fast
+     *         path, see {@link PlExpressionParser})
+     */
+    @JsonIgnore
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @param tokenCount number of tokens the lexer created from the source
+     */
+    @JsonIgnore
+    public void setTokenCount(int tokenCount) {
+        this.tokenCount = tokenCount;
+    }
+
+    /**
+     * @return time spent for parsing the source in nanoseconds, 0 if unknown (e.g., result taken from a cache)
+     */
+    @JsonIgnore
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * @param parseNanos time spent for parsing the source in nanoseconds
+     */
+    @JsonIgnore
+    public void setParseNanos(long parseNanos) {
+        this.parseNanos = parseNanos;
+    }
+
     @Override
     public String toString() {
         return "AudlangParseResult [resultExpression=" + resultExpression + ", source=" + getSource() + ", error=" + isError() + ", errorMessage="
@@ -0,0 +1,303 @@
+//@formatter:off
+/*
+ * CachingPlExpressionParser
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The {@link CachingPlExpressionParser} is a {@link PlExpressionParser} with a size-bounded LRU-cache of parse results keyed by the source text.
+ * <p>
+ * This is useful if the same expressions get parsed over and over again (e.g., repeated submissions, retries or shared snippets).
+ * <p>
+ * Because {@link PlExpression}s are immutable, a cache hit returns the cached expression instance. However, {@link AudlangParseResult} is a mutable bean, so
+ * every call returns a new result object.
+ * <p>
+ * Optionally, the cache keys can be <i>whitespace-insensitive</i>: any sequence of whitespace outside double quotes and comments is treated like a single
+ * space, leading and trailing whitespace is ignored. This way, the same expression with different indentation or line breaks leads to a cache hit. Error
+ * results won't be cached in this mode because the error messages contain positions in the source text.
+ * <p>
+ * Instances are safe to be used concurrently. On concurrent misses for the same key the expression may be parsed more than once.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public class CachingPlExpressionParser extends PlExpressionParser {
+
+    /**
+     * Default maximum number of cached results: {@value}
+     */
+    public static final int DEFAULT_MAX_CACHE_SIZE = 10_000;
+
+    /**
+     * maximum number of cached results
+     */
+    private final int maxCacheSize;
+
+    /**
+     * if true, whitespace differences won't lead to different cache entries
+     */
+    private final boolean whitespaceInsensitive;
+
+    /**
+     * LRU-cache (access-order), guarded by {@link #lock}
+     */
+    private final Map<String, AudlangParseResult> cache;
+
+    /**
+     * We don't use synchronized to avoid pinning virtual threads
+     */
+    private final Lock lock = new ReentrantLock();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Creates a parser with the {@link #DEFAULT_MAX_CACHE_SIZE}, exact (whitespace-sensitive) keys and the default settings of the {@link PlExpressionParser}
+     */
+    public CachingPlExpressionParser() {
+        this(DEFAULT_MAX_CACHE_SIZE, false);
+    }
+
+    /**
+     * Creates a parser with the default settings of the {@link PlExpressionParser}
+     * 
+     * @param maxCacheSize maximum number of cached results, positive
+     * @param whitespaceInsensitive if true, whitespace differences won't lead to different cache entries
+     */
+    public CachingPlExpressionParser(int maxCacheSize, boolean whitespaceInsensitive) {
+        this(DEFAULT_MAX_POOL_SIZE, ParseMode.LL, maxCacheSize, whitespaceInsensitive);
+    }
+
+    /**
+     * Creates a parser with the fast path enabled and without any limits ({@link ParseLimits#NONE})
+     * 
+     * @param maxPoolSize maximum number of idle parser instances to be kept for reuse, 0 disables pooling
+     * @param parseMode prediction strategy, NOT NULL
+     * @param maxCacheSize maximum number of cached results, positive
+     * @param whitespaceInsensitive if true, whitespace differences won't lead to different cache entries
+     */
+    public CachingPlExpressionParser(int maxPoolSize, ParseMode parseMode, int maxCacheSize, boolean whitespaceInsensitive) {
+        this(maxPoolSize, parseMode, true, ParseLimits.NONE, maxCacheSize, whitespaceInsensitive);
+    }
+
+    /**
+     * @param maxPoolSize maximum number of idle parser instances to be kept for reuse, 0 disables pooling
+     * @param parseMode prediction strategy, NOT NULL
+     * @param fastPathEnabled if true, expressions without comments will be parsed without ANTLR if possible
+     * @param limits to be enforced while parsing, NOT NULL
+     * @param maxCacheSize maximum number of cached results, positive
+     * @param whitespaceInsensitive if true, whitespace differences won't lead to different cache entries
+     */
+    public CachingPlExpressionParser(int maxPoolSize, ParseMode parseMode, boolean fastPathEnabled, ParseLimits limits, int maxCacheSize,
+            boolean whitespaceInsensitive) {
+        super(maxPoolSize, parseMode, fastPathEnabled, limits);
+        if (maxCacheSize < 1) {
+            throw new IllegalArgumentException(String.format("maxCacheSize must be positive, given: %s", maxCacheSize));
+        }
+        this.maxCacheSize = maxCacheSize;
+        this.whitespaceInsensitive = whitespaceInsensitive;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -6211387431947045917L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AudlangParseResult> eldest) {
+                if (size() > CachingPlExpressionParser.this.maxCacheSize) {
+                    evictionCount.increment();
+                    return true;
+                }
+                return false;
+            }
+
+        };
+    }
+
+    @Override
+    public AudlangParseResult parse(String source) {
+        if (source == null || source.isBlank()) {
+            return super.parse(source);
+        }
+        String key = whitespaceInsensitive ? normalizeWhitespace(source) : source;
+
+        AudlangParseResult cached = null;
+        lock.lock();
+        try {
+            cached = cache.get(key);
+        }
+        finally {
+            lock.unlock();
+        }
+
+        if (cached != null) {
+            hitCount.increment();
+            return copyResult(cached, source);
+        }
+
+        missCount.increment();
+        AudlangParseResult res = super.parse(source);
+        if (!res.isError() || !whitespaceInsensitive) {
+            AudlangParseResult entry = copyResult(res, source);
+            lock.lock();
+            try {
+                cache.put(key, entry);
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @param result to be copied
+     * @param source to be set
+     * @return new result instance with the same expression and messages
+     */
+    private static AudlangParseResult copyResult(AudlangParseResult result, String source) {
+        AudlangParseResult res = new AudlangParseResult();
+        res.setSource(source);
+        res.setResultExpression(result.getResultExpression());
+        res.setError(result.isError());
+        res.setErrorMessage(result.getErrorMessage());
+        res.setUserMessages(new ArrayList<>(result.getUserMessages()));
+        res.setTokenCount(result.getTokenCount());
+        return res;
+    }
+
+    /**
+     * Replaces any whitespace sequence outside double quotes and comments with a single space and removes leading and trailing whitespace.
+     * <p>
+     * Only the Audlang whitespace characters (space, tab, carriage return and line feed) are considered. Tokens are never joined or split, so the normalized
+     * source parses to the same expression as the original source.
+     * 
+     * @param source NOT NULL
+     * @return normalized source
+     */
+    static String normalizeWhitespace(String source) {
+        StringBuilder sb = new StringBuilder(source.length());
+        int len = source.length();
+        boolean inDoubleQuotes = false;
+        boolean inComment = false;
+        boolean pendingSpace = false;
+        for (int i = 0; i < len; i++) {
+            char ch = source.charAt(i);
+            if (inDoubleQuotes) {
+                sb.append(ch);
+                inDoubleQuotes = (ch != '"');
+            }
+            else if (inComment) {
+                sb.append(ch);
+                if (ch == '*' && i + 1 < len && source.charAt(i + 1) == '/') {
+                    sb.append('/');
+                    i++;
+                    inComment = false;
+                }
+            }
+            else if (ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n') {
+                pendingSpace = !sb.isEmpty();
+            }
+            else {
+                if (pendingSpace) {
+                    sb.append(' ');
+                    pendingSpace = false;
+                }
+                sb.append(ch);
+                if (ch == '"') {
+                    inDoubleQuotes = true;
+                }
+                else if (ch == '/' && i + 1 < len && source.charAt(i + 1) == '*') {
+                    sb.append('*');
+                    i++;
+                    inComment = true;
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return true if whitespace differences won't lead to different cache entries
+     */
+    public boolean isWhitespaceInsensitive() {
+        return whitespaceInsensitive;
+    }
+
+    /**
+     * @return maximum number of cached results
+     */
+    public int getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    /**
+     * @return current number of cached results
+     */
+    public int getCacheSize() {
+        lock.lock();
+        try {
+            return cache.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of parse calls answered from the cache
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * @return number of parse calls that required parsing
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * @return number of entries removed from the cache to stay within the size limit
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Removes all entries from the cache, the counters remain unchanged
+     */
+    public void clearCache() {
+        lock.lock();
+        try {
+            cache.clear();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+}
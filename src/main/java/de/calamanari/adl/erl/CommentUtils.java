@@ -393,6 +393,10 @@ public class CommentUtils {
     public static boolean appendComments(StringBuilder sb, List<PlComment> comments, PlComment.Position position, FormatStyle style, int level,
             boolean forceSingleLine) {
 
+        if (comments.isEmpty()) {
+            return false;
+        }
+
         int lengthBefore = sb.length();
 
         comments.stream().filter(comment -> comment.position() == position).forEach(comment -> {
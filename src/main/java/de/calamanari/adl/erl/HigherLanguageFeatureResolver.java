@@ -0,0 +1,211 @@
+//@formatter:off
+/*
+ * HigherLanguageFeatureResolver
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Stack-safe implementation of {@link PlExpression#resolveHigherLanguageFeatures()} for {@link PlCombinedExpression}s and {@link PlNegationExpression}s.
+ * <p>
+ * The result is the same as with a recursive implementation (members first, negations get applied to the already resolved delegate), but the nesting
+ * is kept in an explicit stack on the heap. This way, the depth of a tree is not limited by the thread's stack size. Any other expression (e.g., a
+ * {@link PlMatchExpression} or a {@link PlCurbExpression}) gets resolved by its own implementation.
+ * <p>
+ * Resolved members are not resolved again (resolution is idempotent), so the effort grows linear with the size of the tree.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class HigherLanguageFeatureResolver {
+
+    /**
+     * @param expression to be resolved
+     * @return resolved expression without any higher language features or the given instance if there was no change
+     */
+    @SuppressWarnings("java:S1452")
+    static PlExpression<?> resolve(PlExpression<?> expression) {
+        Deque<Task> tasks = new ArrayDeque<>();
+        Deque<PlExpression<?>> results = new ArrayDeque<>();
+        tasks.push(new Task(TaskType.RESOLVE, expression));
+        while (!tasks.isEmpty()) {
+            Task task = tasks.pop();
+            switch (task.type) {
+            case RESOLVE:
+                resolve(task.expression, tasks, results);
+                break;
+            case COMBINE:
+                combine((PlCombinedExpression) task.expression, results);
+                break;
+            case RESOLVE_NEGATED_MEMBER:
+                resolveNegatedMember(task.expression, tasks, results);
+                break;
+            case NEGATE:
+                negate((PlNegationExpression) task.expression, tasks, results);
+                break;
+            case FINISH_NEGATION:
+                PlExpression<?> resolvedNegation = results.pop();
+                results.push(resolvedNegation.equals(task.expression) ? task.expression : resolvedNegation);
+                break;
+            }
+        }
+        return results.pop();
+    }
+
+    /**
+     * Resolves a leaf or schedules the resolution of a composite expression
+     * 
+     * @param expression
+     * @param tasks
+     * @param results
+     */
+    private static void resolve(PlExpression<?> expression, Deque<Task> tasks, Deque<PlExpression<?>> results) {
+        switch (expression) {
+        case PlCombinedExpression cmb -> {
+            tasks.push(new Task(TaskType.COMBINE, cmb));
+            // reverse order, so the first member will be resolved first
+            for (int idx = cmb.members().size() - 1; idx > -1; idx--) {
+                tasks.push(new Task(TaskType.RESOLVE, cmb.members().get(idx)));
+            }
+        }
+        case PlNegationExpression neg -> {
+            PlExpression<?> res = neg.resolveSpecialCase();
+            if (res == null) {
+                tasks.push(new Task(TaskType.NEGATE, neg));
+                tasks.push(new Task(TaskType.RESOLVE, neg.delegate()));
+            }
+            else {
+                results.push(res);
+            }
+        }
+        default -> results.push(expression.resolveHigherLanguageFeatures());
+        }
+    }
+
+    /**
+     * Takes the resolved members from the results and puts the resolved combined expression on the results
+     * 
+     * @param cmb
+     * @param results
+     */
+    private static void combine(PlCombinedExpression cmb, Deque<PlExpression<?>> results) {
+        PlExpression<?>[] resolvedMembers = new PlExpression<?>[cmb.members().size()];
+        for (int idx = resolvedMembers.length - 1; idx > -1; idx--) {
+            resolvedMembers[idx] = results.pop();
+        }
+        results.push(cmb.withResolvedMembers(new ArrayList<>(Arrays.asList(resolvedMembers))));
+    }
+
+    /**
+     * Takes the resolved delegate from the results and applies the negation
+     * 
+     * @param neg
+     * @param tasks
+     * @param results
+     */
+    private static void negate(PlNegationExpression neg, Deque<Task> tasks, Deque<PlExpression<?>> results) {
+        PlExpression<?> res = neg.applyToResolvedDelegate(results.pop());
+        if (res instanceof PlCombinedExpression cmb) {
+            // negated members still need to be resolved, the members of the negated delegate are already resolved
+            tasks.push(new Task(TaskType.FINISH_NEGATION, neg));
+            tasks.push(new Task(TaskType.COMBINE, cmb));
+            for (int idx = cmb.members().size() - 1; idx > -1; idx--) {
+                tasks.push(new Task(TaskType.RESOLVE_NEGATED_MEMBER, cmb.members().get(idx)));
+            }
+        }
+        else {
+            results.push(res.equals(neg) ? neg : res);
+        }
+    }
+
+    /**
+     * Resolves a member created by applying a negation to an already resolved member of an AND resp. OR (De Morgan)
+     * <p>
+     * The delegate of such a negation is already resolved, so resolving it again would be redundant (and cost another walk through the whole sub-tree on
+     * every level).
+     * 
+     * @param member usually a negation of an already resolved expression
+     * @param tasks
+     * @param results
+     */
+    private static void resolveNegatedMember(PlExpression<?> member, Deque<Task> tasks, Deque<PlExpression<?>> results) {
+        if (member instanceof PlNegationExpression neg && neg.resolveSpecialCase() == null) {
+            tasks.push(new Task(TaskType.NEGATE, neg));
+            results.push(neg.delegate());
+        }
+        else {
+            // the negation collapsed on construction or is a special case
+            resolve(member, tasks, results);
+        }
+    }
+
+    private HigherLanguageFeatureResolver() {
+        // utility
+    }
+
+    /**
+     * Steps of the resolution
+     */
+    private enum TaskType {
+
+        /**
+         * resolve a leaf or schedule the resolution of the members resp. the delegate
+         */
+        RESOLVE,
+
+        /**
+         * resolve a negation that was created from an already resolved member of a negated AND resp. OR
+         */
+        RESOLVE_NEGATED_MEMBER,
+
+        /**
+         * create the combined expression from the resolved members
+         */
+        COMBINE,
+
+        /**
+         * apply the negation to the resolved delegate
+         */
+        NEGATE,
+
+        /**
+         * replace the resolved negation with the original one if there was no change
+         */
+        FINISH_NEGATION;
+    }
+
+    /**
+     * Step to be performed on an expression
+     */
+    private static final class Task {
+
+        private final TaskType type;
+
+        private final PlExpression<?> expression;
+
+        private Task(TaskType type, PlExpression<?> expression) {
+            this.type = type;
+            this.expression = expression;
+        }
+
+    }
+
+}
@@ -28,16 +28,18 @@ import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import de.calamanari.adl.AudlangField;
 import de.calamanari.adl.AudlangValidationException;
 import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.ExpressionStats;
 import de.calamanari.adl.FormatStyle;
 import de.calamanari.adl.FormatUtils.FormatInfo;
-import de.calamanari.adl.Visit;
 
 import static de.calamanari.adl.FormatUtils.appendCombinedExpressionMultiLine;
 import static de.calamanari.adl.FormatUtils.appendCombinedExpressionSingleLine;
@@ -51,28 +53,50 @@ import static de.calamanari.adl.erl.PlComment.Position.BEFORE_EXPRESSION;
  * <p>
  * See also <a href="https://github.com/KarlEilebrecht/audlang-spec/blob/main/doc/AudienceDefinitionLanguageSpecification.md#41-logical-and">§4.1</a>,
  * <a href="https://github.com/KarlEilebrecht/audlang-spec/blob/main/doc/AudienceDefinitionLanguageSpecification.md#42-logical-or">§4.2</a> Audlang Spec
+ * <p>
+ * <b>Note:</b> The inline format is created <i>lazily</i> on first request. Equality and hash code of expressions without any comments are structural,
+ * see {@link PlStructureUtils}.
  * 
- * @param combiType logical connector
- * @param members the elements inside, list must at least contain two elements
- * @param comments optional comments, may be null
- * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
 @JsonDeserialize(using = JsonDeserializer.None.class)
-public record PlCombinedExpression(CombinedExpressionType combiType, List<PlExpression<?>> members,
-        @JsonInclude(JsonInclude.Include.NON_EMPTY) List<PlComment> comments, String inline) implements PlExpression<PlCombinedExpression> {
+public final class PlCombinedExpression implements PlExpression<PlCombinedExpression> {
+
+    /**
+     * Same as the implicit value of the former record, see {@link #readResolve()}
+     */
+    private static final long serialVersionUID = 0L;
 
     private static final Set<PlComment.Position> VALID_COMMENT_POSITIONS = Collections
             .unmodifiableSet(new LinkedHashSet<>(Arrays.asList(BEFORE_EXPRESSION, AFTER_EXPRESSION)));
 
+    private final CombinedExpressionType combiType;
+
+    private final List<PlExpression<?>> members;
+
+    private final List<PlComment> comments;
+
+    private transient int hashCode;
+
+    private final transient int commentCount;
+
+    private transient String inline;
+
+    private transient List<AudlangField> allFields;
+
+    private transient int depth;
+
+    private transient ExpressionStats stats;
+
     /**
      * @param combiType logical connector
      * @param members the elements inside, list must at least contain two elements
      * @param comments optional comments, may be null
-     * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
+     * @param inline this is an internal value computed on demand, no matter what you specify here, it will be ignored
      */
-    public PlCombinedExpression(CombinedExpressionType combiType, List<PlExpression<?>> members, List<PlComment> comments,
-            @SuppressWarnings("java:S1172") String inline) {
+    @JsonCreator
+    public PlCombinedExpression(@JsonProperty("combi_type") CombinedExpressionType combiType, @JsonProperty("members") List<PlExpression<?>> members,
+            @JsonProperty("comments") List<PlComment> comments, @JsonProperty("inline") @SuppressWarnings("java:S1172") String inline) {
         if (members == null || members.size() < 2) {
             throw new AudlangValidationException(String.format(
                     "AND- resp. OR-expressions must at least have two members, given: members=%s, combiType=%s, comments=%s", members, combiType, comments));
@@ -88,7 +112,18 @@ public record PlCombinedExpression(CombinedExpressionType combiType, List<PlExpr
             throw new AudlangValidationException(String.format("Invalid comment position (expected: %s), given: members=%s, combiType=%s, comments=%s",
                     VALID_COMMENT_POSITIONS, members, combiType, this.comments));
         }
-        this.inline = format(FormatStyle.INLINE);
+        int count = this.comments.size();
+        for (PlExpression<?> member : this.members) {
+            count = count + PlStructureUtils.commentCount(member);
+        }
+        this.commentCount = count;
+        if (count == 0) {
+            int hash = combiType.ordinal();
+            for (PlExpression<?> member : this.members) {
+                hash = 31 * hash + PlStructureUtils.structuralHashCode(member);
+            }
+            this.hashCode = hash;
+        }
     }
 
     /**
@@ -100,6 +135,58 @@ public record PlCombinedExpression(CombinedExpressionType combiType, List<PlExpr
         this(type, members, comments, null);
     }
 
+    /**
+     * @return logical connector
+     */
+    @JsonProperty("combi_type")
+    public CombinedExpressionType combiType() {
+        return combiType;
+    }
+
+    /**
+     * @return the elements inside, at least two
+     */
+    @JsonProperty("members")
+    public List<PlExpression<?>> members() {
+        return members;
+    }
+
+    /**
+     * @return comments on expression level, not null
+     */
+    @JsonProperty("comments")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<PlComment> comments() {
+        return comments;
+    }
+
+    /**
+     * @return inline format of this expression, computed on first request
+     */
+    @JsonProperty("inline")
+    public String inline() {
+        String res = inline;
+        if (res == null) {
+            res = format(FormatStyle.INLINE);
+            inline = res;
+        }
+        return res;
+    }
+
+    /**
+     * @return the inline format if it was computed before, otherwise null
+     */
+    String cachedInline() {
+        return inline;
+    }
+
+    /**
+     * @return number of comments on this expression and its members (recursively)
+     */
+    int commentCount() {
+        return commentCount;
+    }
+
     @Override
     public void appendSingleLine(StringBuilder sb, FormatStyle style, int level) {
         appendCombinedExpressionSingleLine(sb, combiType, members, comments, new FormatInfo(style, level));
@@ -112,9 +199,7 @@ public record PlCombinedExpression(CombinedExpressionType combiType, List<PlExpr
 
     @Override
     public void accept(PlExpressionVisitor visitor) {
-        visitor.visit(this, Visit.ENTER);
-        members.forEach(m -> m.accept(visitor));
-        visitor.visit(this, Visit.EXIT);
+        PlExpressionTraversal.traverse(this, visitor);
     }
 
     @Override
@@ -132,9 +217,39 @@ public record PlCombinedExpression(CombinedExpressionType combiType, List<PlExpr
         return members;
     }
 
+    @Override
+    public List<AudlangField> allFields() {
+        List<AudlangField> res = allFields;
+        if (res == null) {
+            res = PlExpression.super.allFields();
+            allFields = res;
+        }
+        return res;
+    }
+
+    @Override
+    public int depth() {
+        int res = depth;
+        if (res == 0) {
+            res = ExpressionStats.depthOf(this);
+            depth = res;
+        }
+        return res;
+    }
+
+    @Override
+    public ExpressionStats stats() {
+        ExpressionStats res = stats;
+        if (res == null) {
+            res = ExpressionStats.of(this);
+            stats = res;
+        }
+        return res;
+    }
+
     @Override
     public void collectFieldsInternal(Map<String, AudlangField.Builder> fieldMap) {
-        members.forEach(member -> member.collectFieldsInternal(fieldMap));
+        PlExpressionTraversal.collectFields(this, fieldMap);
     }
 
     @Override
@@ -166,31 +281,84 @@ public record PlCombinedExpression(CombinedExpressionType combiType, List<PlExpr
 
     @Override
     public PlExpression<?> resolveHigherLanguageFeatures() {
-        // @formatter:off
-        List<PlExpression<?>> updatedMembers = members.stream()
-                .map(PlExpression::resolveHigherLanguageFeatures)
-                .collect(Collectors.toCollection(ArrayList<PlExpression<?>>::new));
-        // @formatter:on
-        PlExpression<?> res = new PlCombinedExpression(combiType, updatedMembers, null);
+        return HigherLanguageFeatureResolver.resolve(this);
+    }
+
+    /**
+     * @param resolvedMembers the members of this expression after resolving their higher language features
+     * @return new instance with the resolved members and without any comments or this instance if there was no change
+     */
+    PlExpression<?> withResolvedMembers(List<PlExpression<?>> resolvedMembers) {
+        if (comments.isEmpty() && isSameMembers(resolvedMembers)) {
+            // shortcut, avoids comparing the whole tree again on every level
+            return this;
+        }
+        PlExpression<?> res = new PlCombinedExpression(combiType, resolvedMembers, null);
         if (res.equals(this)) {
             res = this;
         }
         return res;
     }
 
+    /**
+     * @param otherMembers
+     * @return true if the given list contains the same member instances as this expression
+     */
+    private boolean isSameMembers(List<PlExpression<?>> otherMembers) {
+        if (otherMembers.size() != members.size()) {
+            return false;
+        }
+        for (int idx = 0; idx < members.size(); idx++) {
+            if (otherMembers.get(idx) != members.get(idx)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public String toString() {
-        return inline;
+        return inline();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof PlCombinedExpression plc && plc.inline.equals(this.inline);
+        if (obj == this) {
+            return true;
+        }
+        return obj instanceof PlCombinedExpression plc && plc.commentCount == this.commentCount
+                && (this.structurallyEquals(plc) || (commentCount > 0 && PlStructureUtils.inlineEquals(this, plc)));
+    }
+
+    /**
+     * @param other
+     * @return true if the other expression has exactly the same structure including all comments
+     */
+    boolean structurallyEquals(PlCombinedExpression other) {
+        return other.commentCount == this.commentCount && (commentCount > 0 || other.hashCode == this.hashCode) && other.combiType == this.combiType
+                && other.comments.equals(this.comments) && PlStructureUtils.structurallyEquals(other.members, this.members);
     }
 
     @Override
     public int hashCode() {
-        return inline.hashCode();
+        int res = hashCode;
+        if (res == 0 && commentCount > 0) {
+            res = PlStructureUtils.inlineHashCode(this);
+            hashCode = res;
+        }
+        return res;
+    }
+
+    /**
+     * Validates the de-serialized instance the same way as a new one
+     * <p>
+     * The serial form is compatible to the former record version of this class, its <code>inline</code> component is ignored on read and no longer
+     * written (the record computed it anyway).
+     * 
+     * @return validated instance
+     */
+    private Object readResolve() {
+        return new PlCombinedExpression(combiType, members, comments, null);
     }
 
 }
@@ -27,16 +27,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import de.calamanari.adl.AudlangField;
 import de.calamanari.adl.AudlangValidationException;
 import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.ExpressionStats;
 import de.calamanari.adl.FormatStyle;
 import de.calamanari.adl.FormatUtils.FormatInfo;
-import de.calamanari.adl.Visit;
 
 import static de.calamanari.adl.FormatUtils.appendCurbExpression;
 import static de.calamanari.adl.erl.CommentUtils.verifyCommentsApplicable;
@@ -48,30 +50,54 @@ import static de.calamanari.adl.erl.PlComment.Position.C1;
  * {@link PlCurbExpression} represents a an Audlang curb-expression (syntactic sugar on the presentation layer) to limit an OR (e.g., <i>two of five</i>).
  * <p>
  * See also <a href="https://github.com/KarlEilebrecht/audlang-spec/blob/main/doc/AudienceDefinitionLanguageSpecification.md#43-curbed-or">§4.3</a> Audlang Spec
+ * <p>
+ * <b>Note:</b> The inline format is created <i>lazily</i> on first request. Equality and hash code of expressions without any comments are structural,
+ * see {@link PlStructureUtils}.
  * 
- * @param curbDelegate {@link PlCombinedExpression} of type {@link CombinedExpressionType#OR} to be curbed
- * @param operator the comparison operator against the bound value
- * @param bound count to compare
- * @param comments optional comments, may be null
- * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
 @JsonDeserialize(using = JsonDeserializer.None.class)
-public record PlCurbExpression(PlCombinedExpression curbDelegate, PlCurbOperator operator, int bound,
-        @JsonInclude(JsonInclude.Include.NON_EMPTY) List<PlComment> comments, String inline) implements PlExpression<PlCurbExpression> {
+public final class PlCurbExpression implements PlExpression<PlCurbExpression> {
+
+    /**
+     * Same as the implicit value of the former record, see {@link #readResolve()}
+     */
+    private static final long serialVersionUID = 0L;
 
     private static final Set<PlComment.Position> VALID_COMMENT_POSITIONS = Collections
             .unmodifiableSet(new LinkedHashSet<>(Arrays.asList(BEFORE_EXPRESSION, C1, AFTER_EXPRESSION)));
 
+    private final PlCombinedExpression curbDelegate;
+
+    private final PlCurbOperator operator;
+
+    private final int bound;
+
+    private final List<PlComment> comments;
+
+    private transient int hashCode;
+
+    private final transient int commentCount;
+
+    private transient String inline;
+
+    private transient List<AudlangField> allFields;
+
+    private transient int depth;
+
+    private transient ExpressionStats stats;
+
     /**
      * @param curbDelegate {@link PlCombinedExpression} of type {@link CombinedExpressionType#OR} to be curbed
      * @param operator the comparison operator against the bound value
      * @param bound count to compare
      * @param comments optional comments, may be null
-     * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
+     * @param inline this is an internal value computed on demand, no matter what you specify here, it will be ignored
      */
-    public PlCurbExpression(PlCombinedExpression curbDelegate, PlCurbOperator operator, int bound, List<PlComment> comments,
-            @SuppressWarnings("java:S1172") String inline) {
+    @JsonCreator
+    public PlCurbExpression(@JsonProperty("curb_delegate") PlCombinedExpression curbDelegate, @JsonProperty("operator") PlCurbOperator operator,
+            @JsonProperty("bound") int bound, @JsonProperty("comments") List<PlComment> comments,
+            @JsonProperty("inline") @SuppressWarnings("java:S1172") String inline) {
 
         if (curbDelegate == null || curbDelegate.combiType() != CombinedExpressionType.OR) {
             throw new AudlangValidationException(
@@ -96,7 +122,10 @@ public record PlCurbExpression(PlCombinedExpression curbDelegate, PlCurbOperator
                     String.format("Invalid comment position (expected: %s), given: delegate=%s, operator=%s, bound=%s, comments=%s", VALID_COMMENT_POSITIONS,
                             curbDelegate, operator, bound, this.comments));
         }
-        this.inline = format(FormatStyle.INLINE);
+        this.commentCount = this.comments.size() + curbDelegate.commentCount();
+        if (commentCount == 0) {
+            this.hashCode = 31 * (31 * curbDelegate.hashCode() + operator.ordinal()) + bound;
+        }
 
     }
 
@@ -110,6 +139,66 @@ public record PlCurbExpression(PlCombinedExpression curbDelegate, PlCurbOperator
         this(delegate, operator, bound, comments, null);
     }
 
+    /**
+     * @return {@link PlCombinedExpression} of type {@link CombinedExpressionType#OR} to be curbed
+     */
+    @JsonProperty("curb_delegate")
+    public PlCombinedExpression curbDelegate() {
+        return curbDelegate;
+    }
+
+    /**
+     * @return the comparison operator against the bound value
+     */
+    @JsonProperty("operator")
+    public PlCurbOperator operator() {
+        return operator;
+    }
+
+    /**
+     * @return count to compare
+     */
+    @JsonProperty("bound")
+    public int bound() {
+        return bound;
+    }
+
+    /**
+     * @return comments on expression level, not null
+     */
+    @JsonProperty("comments")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<PlComment> comments() {
+        return comments;
+    }
+
+    /**
+     * @return inline format of this expression, computed on first request
+     */
+    @JsonProperty("inline")
+    public String inline() {
+        String res = inline;
+        if (res == null) {
+            res = format(FormatStyle.INLINE);
+            inline = res;
+        }
+        return res;
+    }
+
+    /**
+     * @return the inline format if it was computed before, otherwise null
+     */
+    String cachedInline() {
+        return inline;
+    }
+
+    /**
+     * @return number of comments on this expression and its delegate (recursively)
+     */
+    int commentCount() {
+        return commentCount;
+    }
+
     @Override
     public void appendSingleLine(StringBuilder sb, FormatStyle style, int level) {
         operator.formatAndAppend(sb, curbDelegate, bound, comments, style, level, true);
@@ -125,9 +214,39 @@ public record PlCurbExpression(PlCombinedExpression curbDelegate, PlCurbOperator
         return Arrays.asList(curbDelegate);
     }
 
+    @Override
+    public List<AudlangField> allFields() {
+        List<AudlangField> res = allFields;
+        if (res == null) {
+            res = PlExpression.super.allFields();
+            allFields = res;
+        }
+        return res;
+    }
+
+    @Override
+    public int depth() {
+        int res = depth;
+        if (res == 0) {
+            res = ExpressionStats.depthOf(this);
+            depth = res;
+        }
+        return res;
+    }
+
+    @Override
+    public ExpressionStats stats() {
+        ExpressionStats res = stats;
+        if (res == null) {
+            res = ExpressionStats.of(this);
+            stats = res;
+        }
+        return res;
+    }
+
     @Override
     public void collectFieldsInternal(Map<String, AudlangField.Builder> fieldMap) {
-        curbDelegate.collectFieldsInternal(fieldMap);
+        PlExpressionTraversal.collectFields(this, fieldMap);
     }
 
     @Override
@@ -138,10 +257,7 @@ public record PlCurbExpression(PlCombinedExpression curbDelegate, PlCurbOperator
 
     @Override
     public void accept(PlExpressionVisitor visitor) {
-        visitor.visit(this, Visit.ENTER);
-        // skip the OR-level
-        curbDelegate.members().forEach(m -> m.accept(visitor));
-        visitor.visit(this, Visit.EXIT);
+        PlExpressionTraversal.traverse(this, visitor);
     }
 
     @Override
@@ -177,17 +293,47 @@ public record PlCurbExpression(PlCombinedExpression curbDelegate, PlCurbOperator
 
     @Override
     public String toString() {
-        return inline;
+        return inline();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof PlCurbExpression plc && plc.inline.equals(this.inline);
+        if (obj == this) {
+            return true;
+        }
+        return obj instanceof PlCurbExpression plc && plc.commentCount == this.commentCount
+                && (this.structurallyEquals(plc) || (commentCount > 0 && PlStructureUtils.inlineEquals(this, plc)));
+    }
+
+    /**
+     * @param other
+     * @return true if the other expression has exactly the same structure including all comments
+     */
+    boolean structurallyEquals(PlCurbExpression other) {
+        return other.commentCount == this.commentCount && (commentCount > 0 || other.hashCode == this.hashCode) && other.operator == this.operator
+                && other.bound == this.bound && other.comments.equals(this.comments) && other.curbDelegate.structurallyEquals(this.curbDelegate);
     }
 
     @Override
     public int hashCode() {
-        return inline.hashCode();
+        int res = hashCode;
+        if (res == 0 && commentCount > 0) {
+            res = PlStructureUtils.inlineHashCode(this);
+            hashCode = res;
+        }
+        return res;
+    }
+
+    /**
+     * Validates the de-serialized instance the same way as a new one
+     * <p>
+     * The serial form is compatible to the former record version of this class, its <code>inline</code> component is ignored on read and no longer
+     * written (the record computed it anyway).
+     * 
+     * @return validated instance
+     */
+    private Object readResolve() {
+        return new PlCurbExpression(curbDelegate, operator, bound, comments, null);
     }
 
     /**
@@ -0,0 +1,241 @@
+//@formatter:off
+/*
+ * PlExpressionBatchParser
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.AudlangMessage;
+import de.calamanari.adl.CommonErrors;
+
+/**
+ * The {@link PlExpressionBatchParser} parses larger numbers of expression strings (e.g., a whole catalog of audience definitions) in parallel.
+ * <p>
+ * The input items are split into chunks, and each chunk is parsed by a task running on the configured {@link Executor}, by default the
+ * {@link ForkJoinPool#commonPool()}. To use virtual threads, pass an executor like <code>Executors.newVirtualThreadPerTaskExecutor()</code>. The executor is
+ * owned by the caller, this class never shuts it down.
+ * <p>
+ * The number of chunks in progress is limited to twice the parallelism of the executor (for a {@link ForkJoinPool} its parallelism, otherwise the number
+ * of available processors), so that a large input neither floods the executor's queue nor keeps all the chunks in memory at once.
+ * <p>
+ * Every input item produces exactly one {@link AudlangParseResult}, returned in input order. Problems are isolated per item, a malformed expression (or even
+ * an expression that exceeds the stack) leads to an error result for the affected item without influencing the others.
+ * <p>
+ * Instances are thread-safe.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public class PlExpressionBatchParser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PlExpressionBatchParser.class);
+
+    /**
+     * Default number of items per task: {@value}
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+
+    /**
+     * the parser doing the actual work
+     */
+    private final PlExpressionParser parser;
+
+    /**
+     * executor for the parse tasks
+     */
+    private final Executor executor;
+
+    /**
+     * number of items per task
+     */
+    private final int chunkSize;
+
+    /**
+     * maximum number of chunks submitted to the executor but not yet collected
+     */
+    private final int maxPendingChunks;
+
+    /**
+     * Creates a batch parser based on the {@link PlExpressionParser#getDefaultInstance()} running on the {@link ForkJoinPool#commonPool()} with the
+     * {@link #DEFAULT_CHUNK_SIZE}
+     */
+    public PlExpressionBatchParser() {
+        this(PlExpressionParser.getDefaultInstance(), ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a batch parser based on the {@link PlExpressionParser#getDefaultInstance()} with the {@link #DEFAULT_CHUNK_SIZE}
+     * 
+     * @param executor to run the parse tasks, NOT NULL
+     */
+    public PlExpressionBatchParser(Executor executor) {
+        this(PlExpressionParser.getDefaultInstance(), executor, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param parser to parse the individual items, NOT NULL
+     * @param executor to run the parse tasks, NOT NULL
+     * @param chunkSize number of items per task, positive
+     */
+    public PlExpressionBatchParser(PlExpressionParser parser, Executor executor, int chunkSize) {
+        if (parser == null || executor == null || chunkSize < 1) {
+            throw new IllegalArgumentException(
+                    String.format("Arguments must not be null, chunkSize must be positive, given: parser=%s, executor=%s, chunkSize=%s", parser, executor,
+                            chunkSize));
+        }
+        this.parser = parser;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        int parallelism = (executor instanceof ForkJoinPool pool) ? pool.getParallelism() : Runtime.getRuntime().availableProcessors();
+        this.maxPendingChunks = Math.max(1, parallelism) * 2;
+    }
+
+    /**
+     * Parses all the given expressions
+     * 
+     * @param sources expression strings, NOT NULL (items may be null)
+     * @return batch result with one {@link AudlangParseResult} per item in input order
+     */
+    public BatchParseResult parse(List<String> sources) {
+        return parse(sources.iterator());
+    }
+
+    /**
+     * Parses all the given expressions, the stream will be consumed by the calling thread
+     * 
+     * @param sources expression strings, NOT NULL (items may be null)
+     * @return batch result with one {@link AudlangParseResult} per item in input order
+     */
+    public BatchParseResult parse(Stream<String> sources) {
+        return parse(sources.iterator());
+    }
+
+    /**
+     * Parses all the given expressions, the iterator will be consumed by the calling thread while the first chunks are already being parsed
+     * <p>
+     * If the maximum number of pending chunks is reached, the calling thread waits for the oldest chunk before it continues reading.
+     * 
+     * @param sources expression strings, NOT NULL (items may be null)
+     * @return batch result with one {@link AudlangParseResult} per item in input order
+     */
+    public BatchParseResult parse(Iterator<String> sources) {
+        long startTimeNanos = System.nanoTime();
+
+        List<AudlangParseResult> results = new ArrayList<>();
+        Deque<CompletableFuture<List<AudlangParseResult>>> pendingChunks = new ArrayDeque<>();
+        List<String> chunk = new ArrayList<>(chunkSize);
+        while (sources.hasNext()) {
+            chunk.add(sources.next());
+            if (chunk.size() == chunkSize) {
+                if (pendingChunks.size() == maxPendingChunks) {
+                    // wait for the oldest chunk before reading any further
+                    results.addAll(pendingChunks.poll().join());
+                }
+                pendingChunks.add(submit(chunk));
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            pendingChunks.add(submit(chunk));
+        }
+        while (!pendingChunks.isEmpty()) {
+            results.addAll(pendingChunks.poll().join());
+        }
+
+        int numberOfFailures = (int) results.stream().filter(AudlangParseResult::isError).count();
+
+        BatchParseResult res = new BatchParseResult(Collections.unmodifiableList(results), numberOfFailures, System.nanoTime() - startTimeNanos);
+        LOGGER.debug("{}", res);
+        return res;
+    }
+
+    /**
+     * @param chunk items to be parsed
+     * @return future with the results in order of the chunk items
+     */
+    private CompletableFuture<List<AudlangParseResult>> submit(List<String> chunk) {
+        return CompletableFuture.supplyAsync(() -> chunk.stream().map(source -> parseIsolated(parser, source)).toList(), executor);
+    }
+
+    /**
+     * Parses a single item, any problem will be reported as an error result
+     * 
+     * @param parser NOT NULL
+     * @param source
+     * @return parse result
+     */
+    static AudlangParseResult parseIsolated(PlExpressionParser parser, String source) {
+        try {
+            return parser.parse(source);
+        }
+        catch (RuntimeException | StackOverflowError ex) {
+            String msg = String.format("Unexpected error while parsing: %s", ex);
+            LOGGER.debug(msg, ex);
+            AudlangParseResult res = new AudlangParseResult();
+            res.setSource(source);
+            res.setError(true);
+            res.setErrorMessage(msg);
+            res.getUserMessages().add(AudlangMessage.msg(CommonErrors.ERR_1000_PARSE_FAILED));
+            return res;
+        }
+    }
+
+    /**
+     * Result of a batch run
+     * 
+     * @param results one result per input item in input order
+     * @param numberOfFailures number of items that could not be parsed
+     * @param elapsedNanos total time of the batch run
+     */
+    public static record BatchParseResult(List<AudlangParseResult> results, int numberOfFailures, long elapsedNanos) {
+
+        /**
+         * @return number of items in the batch
+         */
+        public int count() {
+            return results.size();
+        }
+
+        /**
+         * @return total time of the batch run in milliseconds
+         */
+        public long elapsedMillis() {
+            return elapsedNanos / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            return this.getClass().getSimpleName() + " [count=" + count() + ", numberOfFailures=" + numberOfFailures + ", elapsedMillis=" + elapsedMillis()
+                    + "]";
+        }
+
+    }
+
+}
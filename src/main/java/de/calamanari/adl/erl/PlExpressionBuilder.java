@@ -27,13 +27,11 @@ import java.util.function.Predicate;
 
 import org.antlr.v4.runtime.ANTLRErrorListener;
 import org.antlr.v4.runtime.BaseErrorListener;
-import org.antlr.v4.runtime.CharStream;
-import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.RecognitionException;
 import org.antlr.v4.runtime.Recognizer;
 import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenStream;
 import org.antlr.v4.runtime.Vocabulary;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.slf4j.Logger;
@@ -43,8 +41,8 @@ import de.calamanari.adl.AudlangMessage;
 import de.calamanari.adl.CombinedExpressionType;
 import de.calamanari.adl.CommonErrors;
 import de.calamanari.adl.SpecialSetType;
+import de.calamanari.adl.SymbolTable;
 import de.calamanari.adl.antlr.AudlangBaseListener;
-import de.calamanari.adl.antlr.AudlangLexer;
 import de.calamanari.adl.antlr.AudlangParser;
 import de.calamanari.adl.antlr.AudlangParser.AllExpressionContext;
 import de.calamanari.adl.antlr.AudlangParser.AndExpressionContext;
@@ -105,6 +103,7 @@ import de.calamanari.adl.antlr.AudlangParser.ValueOrRefListItemContext;
 import de.calamanari.adl.erl.CommentUtils.PhysicalCommentPosition;
 import de.calamanari.adl.erl.PlComment.Position;
 import de.calamanari.adl.erl.PlCurbExpression.PlCurbOperator;
+import de.calamanari.adl.erl.PlExpressionParser.ParseLimits;
 import de.calamanari.adl.util.AdlTextUtils;
 
 import static de.calamanari.adl.erl.PlComment.Position.AFTER_EXPRESSION;
@@ -153,8 +152,21 @@ public class PlExpressionBuilder extends AudlangBaseListener {
     protected String[] ruleNames;
 
     /**
-     * Names of the tokens in order, this is required for detecting comment positions
+     * All tokens of the source in order, this is required for detecting comment positions
      */
+    protected TokenStream tokens;
+
+    /**
+     * Vocabulary of the parser for resolving token names on demand (see {@link #tokenName(int)})
+     */
+    protected Vocabulary vocabulary;
+
+    /**
+     * Names of the tokens in order, only set by {@link #initialize(String, String[], String[])}, otherwise null
+     * 
+     * @deprecated token names are resolved on demand from {@link #tokens} and {@link #vocabulary}
+     */
+    @Deprecated(since = "1.2.1")
     protected String[] tokenNames;
 
     /**
@@ -162,102 +174,82 @@ public class PlExpressionBuilder extends AudlangBaseListener {
      */
     protected String source;
 
+    /**
+     * limits to be enforced while parsing (nesting depth, list items, curb members)
+     */
+    protected final ParseLimits limits;
+
+    /**
+     * current nesting depth (braces, negations, curbs), see {@link ParseLimits}
+     */
+    private int nestingDepth = 0;
+
     /**
      * This central processing method takes a string to parse it. The method wraps the boilerplate code to setup and trigger the ANTLR-parser.
+     * <p>
+     * Parsing is delegated to the {@link PlExpressionParser#getDefaultInstance()}, which reuses pooled lexer/parser instances. This method is thread-safe.
      * 
      * @param source expression string to be parsed
      * @return result either with an expression or an error description
      */
     public static AudlangParseResult stringToExpression(String source) {
+        return PlExpressionParser.getDefaultInstance().parse(source);
+    }
 
-        AudlangParseResult res = new AudlangParseResult();
-        res.setSource(source);
-
-        if (source == null || source.isBlank()) {
-            res.setError(true);
-            res.setErrorMessage("Source must not be null or blank.");
-            res.getUserMessages().add(AudlangMessage.msg(CommonErrors.ERR_1000_PARSE_FAILED));
+    /**
+     * Obtains the human-readable token name corresponding to the grammar
+     * 
+     * @param vocabulary of the parser
+     * @param token to be named
+     * @return token name (grammar name), symbolic name preferred over literal name
+     */
+    static String resolveTokenName(Vocabulary vocabulary, Token token) {
+        String tokenName = vocabulary.getSymbolicName(token.getType());
+        if (tokenName == null) {
+            tokenName = vocabulary.getLiteralName(token.getType());
         }
-        else {
-
-            try {
-                PlExpressionBuilder expressionBuilder = new PlExpressionBuilder();
-
-                AudlangLexer lexer = new AudlangLexer((CharStream) null);
-                lexer.removeErrorListeners();
-                lexer.addErrorListener(expressionBuilder.getErrorListener());
-
-                CharStream inputCharStream = CharStreams.fromString(source);
-
-                lexer.setInputStream(inputCharStream);
-                CommonTokenStream allTokens = new CommonTokenStream(lexer);
-
-                allTokens.fill();
-
-                AudlangParser parser = new AudlangParser(null);
-
-                parser.setBuildParseTree(true);
-                parser.removeErrorListeners();
-                parser.addErrorListener(expressionBuilder.getErrorListener());
-                parser.addParseListener(expressionBuilder);
-
-                expressionBuilder.initialize(source, determineTokenNames(parser, allTokens), parser.getRuleNames());
-
-                // we obtain the reference before parsing to have it in case of errors
-                res = expressionBuilder.getParseResult();
-
-                parser.setTokenStream(allTokens);
-
-                parser.query();
-
-            }
-            catch (OutOfMemoryError err) {
-                throw err;
-            }
-            catch (RuntimeException ex) {
-                String msg = String.format("Unexpected error while parsing: %s", ex);
-                if (!res.isError()) {
-                    // always report the first error, not the follow-up
-                    res.setError(true);
-                    res.setErrorMessage(msg);
-                    res.getUserMessages().add(0, AudlangMessage.msg(CommonErrors.ERR_1000_PARSE_FAILED));
-                }
-                LOGGER.debug(msg, ex);
-            }
-
+        if (tokenName == null) {
+            tokenName = token.toString();
         }
-        return res;
+        return tokenName;
     }
 
     /**
-     * Obtains human-readable token names corresponding to the grammar
+     * Resolves the name of a single token on demand.
+     * <p>
+     * Token names are only required in rare cases (comment positioning, error tracing), so we don't determine the names of all tokens upfront, which would
+     * be pure overhead for large expressions.
      * 
-     * @param parser to transpate tokens
-     * @param allTokens
-     * @return list of token names (grammar names) in index order
+     * @param idx token index
+     * @return token name (grammar name)
      */
-    private static String[] determineTokenNames(AudlangParser parser, CommonTokenStream allTokens) {
-        Vocabulary vocabulary = parser.getVocabulary();
-
-        List<Token> tokens = allTokens.getTokens();
-        String[] tokenNames = new String[tokens.size()];
-        for (int i = 0; i < tokens.size(); i++) {
-            Token token = tokens.get(i);
-            String tokenName = vocabulary.getSymbolicName(token.getType());
-            if (tokenName == null) {
-                tokenName = vocabulary.getLiteralName(token.getType());
-            }
-            if (tokenName == null) {
-                tokenName = token.toString();
-            }
-
-            tokenNames[i] = tokenName;
+    protected String tokenName(int idx) {
+        if (tokenNames != null) {
+            return tokenNames[idx];
         }
-        return tokenNames;
+        return resolveTokenName(vocabulary, tokens.get(idx));
     }
 
+    /**
+     * @return number of tokens of the current source
+     */
+    private int numberOfTokens() {
+        return tokenNames != null ? tokenNames.length : tokens.size();
+    }
+
+    /**
+     * Creates a builder without any limits ({@link ParseLimits#NONE})
+     */
     protected PlExpressionBuilder() {
         // for potential sub-classing
+        this(ParseLimits.NONE);
+    }
+
+    /**
+     * @param limits to be enforced while parsing, NOT NULL
+     */
+    protected PlExpressionBuilder(ParseLimits limits) {
+        this.limits = limits;
     }
 
     @Override
@@ -266,6 +258,7 @@ public class PlExpressionBuilder extends AudlangBaseListener {
 
         if (here().nameIsReference) {
             here().matchOperandList.add(new PlOperand(nameOrRef, true, null));
+            checkListItemLimit(ctx);
         }
         else {
             here().argName = nameOrRef;
@@ -277,6 +270,7 @@ public class PlExpressionBuilder extends AudlangBaseListener {
     public void exitArgValue(ArgValueContext ctx) {
         String value = decodePlainText(ctx.getText());
         here().matchOperandList.add(new PlOperand(value, false, null));
+        checkListItemLimit(ctx);
     }
 
     @Override
@@ -381,6 +375,9 @@ public class PlExpressionBuilder extends AudlangBaseListener {
 
     @Override
     public void enterCmpExpression(CmpExpressionContext ctx) {
+        if (isBraced(ctx)) {
+            enterNestingLevel(ctx);
+        }
         List<PlComment> lookAheadComments = here().lookAheadComments;
         stack.push(new DataCollector(ItemType.MATCH));
         here().comments.addAll(lookAheadComments);
@@ -392,6 +389,19 @@ public class PlExpressionBuilder extends AudlangBaseListener {
         moveBeforeOperandComments();
         DataCollector coll = stack.pop();
         here().childExpressions.add(new PlMatchExpression(coll.argName, coll.matchOperator, coll.matchOperandList, coll.comments));
+        if (isBraced(ctx)) {
+            nestingDepth--;
+        }
+    }
+
+    /**
+     * The grammar covers a brace pair directly around a match as part of the match rule
+     * 
+     * @param ctx match context
+     * @return true if the match starts with an opening brace
+     */
+    private static boolean isBraced(CmpExpressionContext ctx) {
+        return "(".equals(ctx.getStart().getText());
     }
 
     @Override
@@ -474,6 +484,7 @@ public class PlExpressionBuilder extends AudlangBaseListener {
 
     @Override
     public void enterBracedExpression(BracedExpressionContext ctx) {
+        enterNestingLevel(ctx);
         List<PlComment> lookAheadComments = here().lookAheadComments;
         stack.push(new DataCollector(ItemType.EXTRA_BRACES));
         here().comments.addAll(lookAheadComments);
@@ -486,6 +497,7 @@ public class PlExpressionBuilder extends AudlangBaseListener {
         handleLookBackComments();
         DataCollector coll = stack.pop();
         here().childExpressions.add(coll.getLastChildExpression());
+        nestingDepth--;
     }
 
     @Override
@@ -524,12 +536,16 @@ public class PlExpressionBuilder extends AudlangBaseListener {
         moveCommentsToLastChild();
         handleLookBackComments();
         DataCollector coll = stack.pop();
+        if (here().itemType == ItemType.CURB && coll.childExpressions.size() > limits.maxCurbMembers()) {
+            failLimitExceeded(ctx, String.format("The number of CURB members exceeds the limit of %s.", limits.maxCurbMembers()));
+        }
         PlCombinedExpression combinedExpression = new PlCombinedExpression(CombinedExpressionType.OR, coll.childExpressions, here().lookAheadComments);
         here().childExpressions.add(combinedExpression);
     }
 
     @Override
     public void enterNotExpression(NotExpressionContext ctx) {
+        enterNestingLevel(ctx);
         List<PlComment> lookAheadComments = here().lookAheadComments;
         stack.push(new DataCollector(ItemType.NOT));
         here().comments.addAll(lookAheadComments);
@@ -544,6 +560,7 @@ public class PlExpressionBuilder extends AudlangBaseListener {
         delegateComments.addAll(delegate.allDirectComments());
         delegate = delegate.withComments(delegateComments);
         here().childExpressions.add(new PlNegationExpression(delegate, false, coll.comments));
+        nestingDepth--;
     }
 
     @Override
@@ -565,6 +582,7 @@ public class PlExpressionBuilder extends AudlangBaseListener {
 
     @Override
     public void enterCurbExpression(CurbExpressionContext ctx) {
+        enterNestingLevel(ctx);
         List<PlComment> lookAheadComments = here().lookAheadComments;
         stack.push(new DataCollector(ItemType.CURB));
         here().comments.addAll(lookAheadComments);
@@ -577,6 +595,7 @@ public class PlExpressionBuilder extends AudlangBaseListener {
         PlCombinedExpression innerOr = coll.getLastChildExpression();
         PlCurbExpression curb = new PlCurbExpression(innerOr, coll.curbOperator, coll.curbBound, coll.comments);
         here().childExpressions.add(curb);
+        nestingDepth--;
     }
 
     @Override
@@ -813,8 +832,8 @@ public class PlExpressionBuilder extends AudlangBaseListener {
         if (this.ruleNames == null) {
             throw new ParseCancellationException("Expression builder must be initialized with the rule names of the parser!");
         }
-        if (this.tokenNames == null) {
-            throw new ParseCancellationException("Expression builder must be initialized with the token names of the parser!");
+        if ((this.tokens == null || this.vocabulary == null) && this.tokenNames == null) {
+            throw new ParseCancellationException("Expression builder must be initialized with the tokens and the vocabulary of the parser!");
         }
         if (this.source == null) {
             throw new ParseCancellationException("Expression builder must be initialized with a source string!");
@@ -859,19 +878,38 @@ public class PlExpressionBuilder extends AudlangBaseListener {
      * This methods (re-)initializes the builder for the next parsing round
      * 
      * @param source text to be parsed
-     * @param tokenNames obtained from parser
+     * @param tokens all tokens of the source (filled token stream)
+     * @param vocabulary obtained from parser
      * @param ruleNames obtained from lexer/parser
      */
-    protected void initialize(String source, String[] tokenNames, String[] ruleNames) {
+    protected void initialize(String source, TokenStream tokens, Vocabulary vocabulary, String[] ruleNames) {
         this.source = source;
         this.parseResult = new AudlangParseResult();
         this.parseResult.setSource(source);
         this.rootCollector = null;
         this.stack.clear();
-        this.tokenNames = tokenNames;
+        this.nestingDepth = 0;
+        this.tokens = tokens;
+        this.vocabulary = vocabulary;
+        this.tokenNames = null;
         this.ruleNames = ruleNames;
     }
 
+    /**
+     * This methods (re-)initializes the builder for the next parsing round with the names of all tokens determined upfront
+     * 
+     * @param source text to be parsed
+     * @param tokenNames obtained from parser
+     * @param ruleNames obtained from lexer/parser
+     * @deprecated determining the names of all tokens upfront is expensive for large expressions, use
+     *             {@link #initialize(String, TokenStream, Vocabulary, String[])} instead
+     */
+    @Deprecated(since = "1.2.1")
+    protected void initialize(String source, String[] tokenNames, String[] ruleNames) {
+        initialize(source, null, null, ruleNames);
+        this.tokenNames = tokenNames;
+    }
+
     /**
      * When a level is closed there is just one child but the related comments sit on the parent level. <br>
      * This method attaches the comments to the produced child expression.
@@ -1064,9 +1102,9 @@ public class PlExpressionBuilder extends AudlangBaseListener {
     private boolean checkCommentAfterClosingBrace(Token commentToken) {
         boolean res = false;
         int idxStart = commentToken.getTokenIndex();
-        if (idxStart > 0 && idxStart < tokenNames.length) {
+        if (idxStart > 0 && idxStart < numberOfTokens()) {
             for (int i = idxStart - 1; !res && i > -1; i--) {
-                String tokenName = tokenNames[i];
+                String tokenName = tokenName(i);
                 if (tokenName.equals("')'")) {
                     res = true;
                 }
@@ -1078,6 +1116,47 @@ public class PlExpressionBuilder extends AudlangBaseListener {
         return res;
     }
 
+    /**
+     * Increases the nesting depth and aborts if the limit is exceeded
+     * 
+     * @param ctx current rule context
+     */
+    private void enterNestingLevel(ParserRuleContext ctx) {
+        nestingDepth++;
+        if (nestingDepth > limits.maxNestingDepth()) {
+            failLimitExceeded(ctx, String.format("The nesting depth exceeds the limit of %s.", limits.maxNestingDepth()));
+        }
+    }
+
+    /**
+     * Aborts if the operand list of the current match exceeds the limit
+     * 
+     * @param ctx current rule context
+     */
+    private void checkListItemLimit(ParserRuleContext ctx) {
+        if (here().matchOperandList.size() > limits.maxListItems()) {
+            failLimitExceeded(ctx, String.format("The number of list items exceeds the limit of %s.", limits.maxListItems()));
+        }
+    }
+
+    /**
+     * Reports a limit violation and aborts the parse run
+     * 
+     * @param ctx current rule context
+     * @param reason what limit was exceeded
+     * @throws ParseCancellationException always
+     */
+    private void failLimitExceeded(ParserRuleContext ctx, String reason) {
+        String msg = String.format("Input limit exceeded at line: %s, charPositionInLine: %s: %s", ctx.getStart().getLine(),
+                ctx.getStart().getCharPositionInLine(), reason);
+        if (!parseResult.isError()) {
+            parseResult.setError(true);
+            parseResult.setErrorMessage(msg);
+            parseResult.getUserMessages().add(0, AudlangMessage.msg(CommonErrors.ERR_4004_INPUT_LIMIT_EXCEEDED, msg));
+        }
+        throw new ParseCancellationException(msg);
+    }
+
     /**
      * Returns the collector responsible for the current parsing level in the tree
      * 
@@ -1092,7 +1171,7 @@ public class PlExpressionBuilder extends AudlangBaseListener {
      * @return string with optional double quotes and escaping removed
      */
     private String decodePlainText(String argNameOrValue) {
-        return AdlTextUtils.unescapeSpecialCharacters(AdlTextUtils.removeDoubleQuotesIfRequired(argNameOrValue));
+        return SymbolTable.canonicalize(AdlTextUtils.unescapeSpecialCharacters(AdlTextUtils.removeDoubleQuotesIfRequired(argNameOrValue)));
     }
 
     /**
@@ -1120,12 +1199,12 @@ public class PlExpressionBuilder extends AudlangBaseListener {
             String msgFull = String.format("Parse error at line: %s, charPositionInLine: %s, offendingSymbol: %s, msg: %s", line, charPositionInLine,
                     offendingSymbol, msg);
 
-            if (offendingSymbol instanceof Token token) {
+            if (offendingSymbol instanceof Token token && LOGGER.isTraceEnabled()) {
 
                 int idx = token.getTokenIndex();
                 StringBuilder sb = new StringBuilder();
                 for (int i = 0; i <= idx; i++) {
-                    sb.append(tokenNames[i]);
+                    sb.append(tokenName(i));
                     if (i < idx) {
                         sb.append(", ");
                     }
@@ -20,20 +20,33 @@
 package de.calamanari.adl.erl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.SpecialSetType;
+import de.calamanari.adl.erl.PlCurbExpression.PlCurbOperator;
 
 /**
  * This custom JACKSON de-serializer solves the expression sub types when reading JSON back into memory.
+ * <p>
+ * The de-serializer reads the tokens of an expression in a single pass (no intermediate tree model) and collects the fields. Members and delegates get
+ * read recursively on the fly, because they are expressions no matter what the enclosing type is. At the end of the object the discriminating field
+ * (<code>combi_type</code>, <code>curb_delegate</code>, <code>arg_name</code>, <code>delegate</code>, <code>set_type</code>) determines the expression
+ * type, so the order of the fields does not matter. The <code>inline</code> fields are skipped, the constructors compute them anyway.
+ * <p>
+ * Nested values (operands, comments) and enums are read by the mapper, so they are subject to its configuration like before. The <code>operator</code> gets
+ * buffered until the type (match or curb) is known.
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
@@ -43,50 +56,242 @@ public class PlExpressionDeserializer extends JsonDeserializer<PlExpression<?>>
 
     @Override
     public PlExpression<?> deserialize(JsonParser parser, DeserializationContext ctxt) throws IOException {
-        ObjectCodec codec = parser.getCodec();
-        JsonNode node = codec.readTree(parser);
         try {
-            return codec.treeToValue(node, resolveExpressionType(parser, node));
+            return readExpression(parser, ctxt);
         }
         catch (JsonProcessingException ex) {
             LOGGER.error("""
-                    Error during JSON-deserialization of {}
+                    Error during JSON-deserialization at {}
                     The reason might be that you are trying to de-serialize a JSON generated from a CoreExpression.
                     Be aware that these formats are incompatible.
-                    """, node);
+                    """, parser.currentLocation());
             throw ex;
         }
     }
 
     /**
-     * Determines the class to use by inspection of the given node.
+     * Reads the expression starting at the current token (start of the object or first field name)
      * 
      * @param parser
-     * @param node
-     * @return concrete class to be used for deserialization
-     * @throws JsonMappingException
+     * @param ctxt
+     * @return expression or null if the current token is null
+     * @throws IOException
      */
-    @SuppressWarnings("java:S1452")
-    static final Class<? extends PlExpression<?>> resolveExpressionType(JsonParser parser, JsonNode node) throws JsonMappingException {
-        if (node.has("combi_type")) {
-            return PlCombinedExpression.class;
+    @SuppressWarnings("java:S3776")
+    private PlExpression<?> readExpression(JsonParser parser, DeserializationContext ctxt) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        }
+        else if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            return (PlExpression<?>) ctxt.handleUnexpectedToken(PlExpression.class, parser);
+        }
+
+        CombinedExpressionType combiType = null;
+        List<PlExpression<?>> members = null;
+        List<PlComment> comments = null;
+        PlExpression<?> curbDelegate = null;
+        TokenBuffer operatorValue = null;
+        int bound = 0;
+        String argName = null;
+        List<PlOperand> operands = null;
+        PlExpression<?> delegate = null;
+        boolean isStrict = false;
+        SpecialSetType setType = null;
+
+        // the discriminating field determines the type, not its value
+        Class<?> type = null;
+
+        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String fieldName = parser.currentName();
+            parser.nextToken();
+            switch (fieldName) {
+            case "combi_type":
+                combiType = readEnum(parser, ctxt, CombinedExpressionType.class);
+                type = resolveType(type, PlCombinedExpression.class);
+                break;
+            case "members":
+                members = readMembers(parser, ctxt);
+                break;
+            case "comments":
+                comments = readList(parser, ctxt, PlComment.class);
+                break;
+            case "curb_delegate":
+                curbDelegate = readExpression(parser, ctxt);
+                type = resolveType(type, PlCurbExpression.class);
+                break;
+            case "operator":
+                // match or curb operator, depends on the type, so we must postpone reading the value
+                operatorValue = ctxt.bufferAsCopyOfValue(parser);
+                break;
+            case "bound":
+                bound = parser.getValueAsInt();
+                break;
+            case "arg_name":
+                argName = parser.getValueAsString();
+                type = resolveType(type, PlMatchExpression.class);
+                break;
+            case "operands":
+                operands = readList(parser, ctxt, PlOperand.class);
+                break;
+            case "delegate":
+                delegate = readExpression(parser, ctxt);
+                type = resolveType(type, PlNegationExpression.class);
+                break;
+            case "is_strict":
+                isStrict = parser.getValueAsBoolean();
+                break;
+            case "set_type":
+                setType = readEnum(parser, ctxt, SpecialSetType.class);
+                type = resolveType(type, PlSpecialSetExpression.class);
+                break;
+            case "inline":
+                // computed by the constructors
+                parser.skipChildren();
+                break;
+            default:
+                ctxt.handleUnknownProperty(parser, this, PlExpression.class, fieldName);
+            }
+        }
+
+        if (type == null) {
+            return ctxt.reportInputMismatch(PlExpression.class, "Could not determine concrete type of presentation layer expression.");
+        }
+        if (type == PlCurbExpression.class && curbDelegate != null && !(curbDelegate instanceof PlCombinedExpression)) {
+            return ctxt.reportInputMismatch(PlCurbExpression.class, "The delegate of a curb must be a combined expression, given: %s", curbDelegate);
+        }
+
+        PlCurbOperator curbOperator = (type == PlCurbExpression.class) ? readEnum(operatorValue, ctxt, PlCurbOperator.class) : null;
+        PlMatchOperator matchOperator = (type == PlMatchExpression.class) ? readEnum(operatorValue, ctxt, PlMatchOperator.class) : null;
+
+        try {
+            if (type == PlCombinedExpression.class) {
+                return new PlCombinedExpression(combiType, members, comments, null);
+            }
+            else if (type == PlCurbExpression.class) {
+                return new PlCurbExpression((PlCombinedExpression) curbDelegate, curbOperator, bound, comments, null);
+            }
+            else if (type == PlMatchExpression.class) {
+                return new PlMatchExpression(argName, matchOperator, operands, comments, null);
+            }
+            else if (type == PlNegationExpression.class) {
+                return new PlNegationExpression(delegate, isStrict, comments, null);
+            }
+            else {
+                return new PlSpecialSetExpression(setType, comments, null);
+            }
         }
-        else if (node.has("curb_delegate")) {
-            return PlCurbExpression.class;
+        catch (RuntimeException ex) {
+            throw ctxt.instantiationException(type, ex);
         }
-        else if (node.has("arg_name")) {
-            return PlMatchExpression.class;
+    }
+
+    /**
+     * Resolves the type by the precedence of the discriminating fields: <code>combi_type</code>, <code>curb_delegate</code>, <code>arg_name</code>,
+     * <code>delegate</code>, <code>set_type</code>
+     * 
+     * @param currentType type found so far or null
+     * @param candidate type indicated by the current field
+     * @return resolved type
+     */
+    private static Class<?> resolveType(Class<?> currentType, Class<?> candidate) {
+        return (currentType == null || precedence(candidate) < precedence(currentType)) ? candidate : currentType;
+    }
+
+    private static int precedence(Class<?> type) {
+        if (type == PlCombinedExpression.class) {
+            return 0;
         }
-        else if (node.has("delegate")) {
-            return PlNegationExpression.class;
+        else if (type == PlCurbExpression.class) {
+            return 1;
         }
-        else if (node.has("set_type")) {
-            return PlSpecialSetExpression.class;
+        else if (type == PlMatchExpression.class) {
+            return 2;
         }
-        else {
-            throw new JsonMappingException(parser, "Could not determine concrete type of presentation layer expression: " + node.asText());
+        else if (type == PlNegationExpression.class) {
+            return 3;
         }
+        return 4;
+    }
 
+    /**
+     * @param parser positioned at the start of the array
+     * @param ctxt
+     * @return list of members or null if the value was null
+     * @throws IOException
+     */
+    private List<PlExpression<?>> readMembers(JsonParser parser, DeserializationContext ctxt) throws IOException {
+        if (parser.hasToken(JsonToken.VALUE_NULL)) {
+            return null;
+        }
+        if (!parser.isExpectedStartArrayToken()) {
+            ctxt.reportWrongTokenException(PlExpression.class, JsonToken.START_ARRAY, "Expecting list of members.");
+        }
+        List<PlExpression<?>> res = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            res.add(readExpression(parser, ctxt));
+        }
+        return res;
+    }
+
+    /**
+     * Reads a list of values (operands, comments), each element is read by JACKSON
+     * 
+     * @param <T>
+     * @param parser positioned at the start of the array
+     * @param ctxt
+     * @param elementType
+     * @return list or null if the value was null
+     * @throws IOException
+     */
+    private static <T> List<T> readList(JsonParser parser, DeserializationContext ctxt, Class<T> elementType) throws IOException {
+        if (parser.hasToken(JsonToken.VALUE_NULL)) {
+            return null;
+        }
+        if (!parser.isExpectedStartArrayToken()) {
+            ctxt.reportWrongTokenException(elementType, JsonToken.START_ARRAY, "Expecting list.");
+        }
+        List<T> res = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            res.add(parser.hasToken(JsonToken.VALUE_NULL) ? null : ctxt.readValue(parser, elementType));
+        }
+        return res;
+    }
+
+    /**
+     * Reads an enum constant with the enum deserializer of the mapper, so its configuration applies (e.g., case-insensitive enums)
+     * 
+     * @param <E>
+     * @param parser positioned at the value
+     * @param ctxt
+     * @param enumType
+     * @return enum constant or null if the value was null
+     * @throws IOException
+     */
+    private static <E extends Enum<E>> E readEnum(JsonParser parser, DeserializationContext ctxt, Class<E> enumType) throws IOException {
+        return parser.hasToken(JsonToken.VALUE_NULL) ? null : ctxt.readValue(parser, enumType);
+    }
+
+    /**
+     * Reads an enum constant from a buffered value, see {@link #readEnum(JsonParser, DeserializationContext, Class)}
+     * 
+     * @param <E>
+     * @param buffer contains the value, may be null
+     * @param ctxt
+     * @param enumType
+     * @return enum constant or null if the buffer was null or contained null
+     * @throws IOException
+     */
+    private static <E extends Enum<E>> E readEnum(TokenBuffer buffer, DeserializationContext ctxt, Class<E> enumType) throws IOException {
+        if (buffer == null) {
+            return null;
+        }
+        try (JsonParser bufferParser = buffer.asParserOnFirstToken()) {
+            return readEnum(bufferParser, ctxt, enumType);
+        }
     }
 
 }
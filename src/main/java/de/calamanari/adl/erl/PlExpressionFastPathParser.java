@@ -0,0 +1,704 @@
+//@formatter:off
+/*
+ * PlExpressionFastPathParser
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.SpecialSetType;
+import de.calamanari.adl.SymbolTable;
+import de.calamanari.adl.erl.PlCurbExpression.PlCurbOperator;
+import de.calamanari.adl.erl.PlExpressionParser.ParseLimits;
+import de.calamanari.adl.util.AdlTextUtils;
+
+/**
+ * The {@link PlExpressionFastPathParser} is a hand-written recursive descent parser for the common subset of Audlang: expressions <i>without comments</i>.
+ * <p>
+ * Most expressions in practice don't contain any comments. For these the full ANTLR-machinery (lexer, token stream, adaptive prediction, parse tree and
+ * listener callbacks) is overkill. This parser directly creates the {@link PlExpression} from the source string in a single pass.
+ * <p>
+ * The fast path is strictly <b>conservative</b>: it only accepts input that the ANTLR-based {@link PlExpressionBuilder} would accept, and it creates exactly
+ * the same expression. Whenever the input contains anything unusual (comments, syntax errors, unexpected whitespace, extreme nesting, invalid values), the
+ * fast path gives up and returns null, so the caller must use the regular parser. This way, error detection and error reporting remain the job of the
+ * regular parser.
+ * <p>
+ * Instances are not thread-safe, use {@link #tryParse(String, ParseLimits)}.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class PlExpressionFastPathParser {
+
+    /**
+     * Nesting limit of the fast path, deeper expressions are left to the regular parser
+     */
+    static final int MAX_NESTING_DEPTH = 128;
+
+    /**
+     * Thrown to abort the fast path, pre-allocated without stack trace because it is part of the regular control flow
+     */
+    private static final FallbackRequiredException FALLBACK_REQUIRED = new FallbackRequiredException();
+
+    private static final String K_AND = "AND";
+    private static final String K_OR = "OR";
+    private static final String K_STRICT = "STRICT";
+    private static final String K_NOT = "NOT";
+    private static final String K_IS = "IS";
+    private static final String K_ANY = "ANY";
+    private static final String K_OF = "OF";
+    private static final String K_BETWEEN = "BETWEEN";
+    private static final String K_CONTAINS = "CONTAINS";
+    private static final String K_CURB = "CURB";
+    private static final String K_UNKNOWN = "UNKNOWN";
+    private static final String K_ALL = "<ALL>";
+    private static final String K_NONE = "<NONE>";
+
+    private static final String[] KEYWORDS = new String[] { K_AND, K_OR, K_STRICT, K_NOT, K_IS, K_ANY, K_OF, K_BETWEEN, K_CONTAINS, K_CURB, K_UNKNOWN };
+
+    /**
+     * Plain match (e.g., <code>ANY OF</code>)
+     */
+    private static final int PLAIN = 0;
+
+    /**
+     * Negated match (e.g., <code>NOT ANY OF</code>)
+     */
+    private static final int NOT = 1;
+
+    /**
+     * Strictly negated match (e.g., <code>STRICT NOT ANY OF</code>)
+     */
+    private static final int STRICT_NOT = 2;
+
+    private final String source;
+
+    private final int len;
+
+    /**
+     * effective nesting limit (we count terms, which is more conservative than {@link ParseLimits#maxNestingDepth()})
+     */
+    private final int maxNestingDepth;
+
+    private final int maxListItems;
+
+    private final int maxCurbMembers;
+
+    /**
+     * current position in the source
+     */
+    private int pos = 0;
+
+    /**
+     * current nesting depth
+     */
+    private int depth = 0;
+
+    /**
+     * Tries to parse the given source
+     * 
+     * @param source NOT NULL
+     * @param limits NOT NULL, if any limit would be exceeded the regular parser must report the error
+     * @return expression or null if the regular parser must be used
+     */
+    static PlExpression<?> tryParse(String source, ParseLimits limits) {
+        if (source.contains("/*")) {
+            return null;
+        }
+        try {
+            return new PlExpressionFastPathParser(source, limits).parseQuery();
+        }
+        catch (RuntimeException _) {
+            // either the fast path gave up or the expression could not be created,
+            // in both cases the regular parser decides about the result and reports the errors
+            return null;
+        }
+    }
+
+    private PlExpressionFastPathParser(String source, ParseLimits limits) {
+        this.source = source;
+        this.len = source.length();
+        this.maxNestingDepth = Math.min(MAX_NESTING_DEPTH, limits.maxNestingDepth());
+        this.maxListItems = limits.maxListItems();
+        this.maxCurbMembers = limits.maxCurbMembers();
+    }
+
+    /**
+     * @return expression, the whole source must be consumed
+     */
+    private PlExpression<?> parseQuery() {
+        skipWhitespace();
+        PlExpression<?> res = parseExpression();
+        skipWhitespace();
+        if (pos < len) {
+            throw FALLBACK_REQUIRED;
+        }
+        return res;
+    }
+
+    /**
+     * Parses a single term or a sequence of terms combined by either AND or OR (mixing requires braces)
+     * 
+     * @return expression
+     */
+    private PlExpression<?> parseExpression() {
+        PlExpression<?> first = parseTerm();
+        CombinedExpressionType combiType = null;
+        List<PlExpression<?>> members = null;
+        while (true) {
+            int mark = pos;
+            CombinedExpressionType nextCombiType = skipWhitespace() > 0 ? tryConsumeCombiner() : null;
+            if (nextCombiType == null) {
+                pos = mark;
+                break;
+            }
+            if (combiType == null) {
+                combiType = nextCombiType;
+                members = new ArrayList<>();
+                members.add(first);
+            }
+            else if (combiType != nextCombiType) {
+                throw FALLBACK_REQUIRED;
+            }
+            members.add(parseTerm());
+        }
+        return combiType == null ? first : new PlCombinedExpression(combiType, members, null);
+    }
+
+    /**
+     * @return combiner type if the next word is AND or OR followed by whitespace (consumed), otherwise null
+     */
+    private CombinedExpressionType tryConsumeCombiner() {
+        CombinedExpressionType res = null;
+        if (tryConsumeKeyword(K_AND)) {
+            res = CombinedExpressionType.AND;
+        }
+        else if (tryConsumeKeyword(K_OR)) {
+            res = CombinedExpressionType.OR;
+        }
+        if (res != null) {
+            requireWhitespace();
+        }
+        return res;
+    }
+
+    /**
+     * Parses a braced expression, a negation, a curb, a special set or a match
+     * 
+     * @return expression
+     */
+    private PlExpression<?> parseTerm() {
+        if (++depth > maxNestingDepth || pos >= len) {
+            throw FALLBACK_REQUIRED;
+        }
+        PlExpression<?> res = null;
+        char ch = source.charAt(pos);
+        if (ch == '(') {
+            pos++;
+            skipWhitespace();
+            res = parseExpression();
+            skipWhitespace();
+            consume(')');
+        }
+        else if (ch == '<') {
+            res = parseSpecialSet();
+        }
+        else if (tryConsumeKeyword(K_NOT)) {
+            requireWhitespace();
+            res = new PlNegationExpression(parseTerm(), false, null);
+        }
+        else if (tryConsumeKeyword(K_STRICT)) {
+            requireWhitespace();
+            if (tryConsumeKeyword(K_NOT)) {
+                requireWhitespace();
+                res = new PlNegationExpression(parseTerm(), true, null);
+            }
+            else {
+                res = parseStrictNotEquals();
+            }
+        }
+        else if (tryConsumeKeyword(K_CURB)) {
+            res = parseCurb();
+        }
+        else {
+            res = parseMatch();
+        }
+        depth--;
+        return res;
+    }
+
+    /**
+     * @return &lt;ALL&gt; or &lt;NONE&gt;
+     */
+    private PlSpecialSetExpression parseSpecialSet() {
+        if (source.regionMatches(true, pos, K_ALL, 0, K_ALL.length())) {
+            pos = pos + K_ALL.length();
+            return new PlSpecialSetExpression(SpecialSetType.ALL, null);
+        }
+        else if (source.regionMatches(true, pos, K_NONE, 0, K_NONE.length())) {
+            pos = pos + K_NONE.length();
+            return new PlSpecialSetExpression(SpecialSetType.NONE, null);
+        }
+        throw FALLBACK_REQUIRED;
+    }
+
+    /**
+     * Parses the remainder of a curb expression after the keyword CURB
+     * 
+     * @return curb expression
+     */
+    private PlCurbExpression parseCurb() {
+        skipWhitespace();
+        consume('(');
+        skipWhitespace();
+        List<PlExpression<?>> members = new ArrayList<>();
+        members.add(parseTerm());
+        while (true) {
+            int whitespaceCount = skipWhitespace();
+            if (pos < len && source.charAt(pos) == ')') {
+                break;
+            }
+            if (whitespaceCount == 0) {
+                throw FALLBACK_REQUIRED;
+            }
+            consumeKeyword(K_OR);
+            requireWhitespace();
+            members.add(parseTerm());
+        }
+        if (members.size() < 2 || members.size() > maxCurbMembers) {
+            throw FALLBACK_REQUIRED;
+        }
+        pos++;
+        skipWhitespace();
+        PlCurbOperator operator = parseCurbOperator();
+        skipWhitespace();
+        int start = pos;
+        int end = scanPlainText(start);
+        if (end == start || end - start > 9 || !isInteger(start, end)) {
+            // large values are left to the regular parser to report the out-of-range error
+            throw FALLBACK_REQUIRED;
+        }
+        pos = end;
+        int bound = Integer.parseInt(source, start, end, 10);
+        return new PlCurbExpression(new PlCombinedExpression(CombinedExpressionType.OR, members, null), operator, bound, null);
+    }
+
+    /**
+     * @return curb operator
+     */
+    private PlCurbOperator parseCurbOperator() {
+        char ch = (pos < len ? source.charAt(pos) : 0);
+        boolean followedByEquals = (pos + 1 < len && source.charAt(pos + 1) == '=');
+        PlCurbOperator res = null;
+        switch (ch) {
+        case '=':
+            res = PlCurbOperator.EQUALS;
+            break;
+        case '!':
+            res = followedByEquals ? PlCurbOperator.NOT_EQUALS : null;
+            break;
+        case '<':
+            res = followedByEquals ? PlCurbOperator.LESS_THAN_OR_EQUALS : PlCurbOperator.LESS_THAN;
+            break;
+        case '>':
+            res = followedByEquals ? PlCurbOperator.GREATER_THAN_OR_EQUALS : PlCurbOperator.GREATER_THAN;
+            break;
+        default:
+            // no operator
+        }
+        if (res == null) {
+            throw FALLBACK_REQUIRED;
+        }
+        pos = pos + (res == PlCurbOperator.EQUALS || !followedByEquals ? 1 : 2);
+        return res;
+    }
+
+    /**
+     * @return match expression
+     */
+    private PlMatchExpression parseMatch() {
+        String argName = parseArgName();
+        int whitespaceCount = skipWhitespace();
+        char ch = (pos < len ? source.charAt(pos) : 0);
+        boolean followedByEquals = (pos + 1 < len && source.charAt(pos + 1) == '=');
+        PlMatchOperator operator = null;
+        switch (ch) {
+        case '=':
+            operator = PlMatchOperator.EQUALS;
+            break;
+        case '!':
+            operator = followedByEquals ? PlMatchOperator.NOT_EQUALS : null;
+            break;
+        case '<':
+            operator = followedByEquals ? PlMatchOperator.LESS_THAN_OR_EQUALS : PlMatchOperator.LESS_THAN;
+            break;
+        case '>':
+            operator = followedByEquals ? PlMatchOperator.GREATER_THAN_OR_EQUALS : PlMatchOperator.GREATER_THAN;
+            break;
+        default:
+            if (whitespaceCount > 0) {
+                return parseMatchWithKeywordOperator(argName);
+            }
+        }
+        if (operator == null) {
+            throw FALLBACK_REQUIRED;
+        }
+        pos = pos + (operator == PlMatchOperator.EQUALS || !followedByEquals ? 1 : 2);
+        skipWhitespace();
+        return new PlMatchExpression(argName, operator, Collections.singletonList(parseOperand(true)), null);
+    }
+
+    /**
+     * Parses the remainder of a <code>STRICT argName != value</code> match after the keyword STRICT
+     * 
+     * @return match expression
+     */
+    private PlMatchExpression parseStrictNotEquals() {
+        String argName = parseArgName();
+        skipWhitespace();
+        consume('!');
+        consume('=');
+        skipWhitespace();
+        return new PlMatchExpression(argName, PlMatchOperator.STRICT_NOT_EQUALS, Collections.singletonList(parseOperand(true)), null);
+    }
+
+    /**
+     * Parses the remainder of a match after the argument name if the operator is IS (NOT) UNKNOWN or (STRICT) (NOT) ANY OF, BETWEEN, CONTAINS (ANY OF)
+     * 
+     * @param argName
+     * @return match expression
+     */
+    private PlMatchExpression parseMatchWithKeywordOperator(String argName) {
+        if (tryConsumeKeyword(K_IS)) {
+            requireWhitespace();
+            PlMatchOperator operator = PlMatchOperator.IS_UNKNOWN;
+            if (tryConsumeKeyword(K_NOT)) {
+                requireWhitespace();
+                operator = PlMatchOperator.IS_NOT_UNKNOWN;
+            }
+            consumeKeyword(K_UNKNOWN);
+            return new PlMatchExpression(argName, operator, Collections.emptyList(), null);
+        }
+        int negation = PLAIN;
+        if (tryConsumeKeyword(K_NOT)) {
+            requireWhitespace();
+            negation = NOT;
+        }
+        else if (tryConsumeKeyword(K_STRICT)) {
+            requireWhitespace();
+            consumeKeyword(K_NOT);
+            requireWhitespace();
+            negation = STRICT_NOT;
+        }
+        if (tryConsumeKeyword(K_ANY)) {
+            requireWhitespace();
+            consumeKeyword(K_OF);
+            skipWhitespace();
+            return new PlMatchExpression(argName, select(negation, PlMatchOperator.ANY_OF, PlMatchOperator.NOT_ANY_OF, PlMatchOperator.STRICT_NOT_ANY_OF),
+                    parseOperandList(true, Integer.MAX_VALUE), null);
+        }
+        else if (tryConsumeKeyword(K_BETWEEN)) {
+            skipWhitespace();
+            return new PlMatchExpression(argName,
+                    select(negation, PlMatchOperator.BETWEEN, PlMatchOperator.NOT_BETWEEN, PlMatchOperator.STRICT_NOT_BETWEEN), parseOperandList(false, 2),
+                    null);
+        }
+        consumeKeyword(K_CONTAINS);
+        requireWhitespace();
+        if (tryConsumeKeyword(K_ANY)) {
+            requireWhitespace();
+            consumeKeyword(K_OF);
+            skipWhitespace();
+            return new PlMatchExpression(argName, select(negation, PlMatchOperator.CONTAINS_ANY_OF, PlMatchOperator.NOT_CONTAINS_ANY_OF,
+                    PlMatchOperator.STRICT_NOT_CONTAINS_ANY_OF), parseOperandList(false, Integer.MAX_VALUE), null);
+        }
+        return new PlMatchExpression(argName, select(negation, PlMatchOperator.CONTAINS, PlMatchOperator.NOT_CONTAINS, PlMatchOperator.STRICT_NOT_CONTAINS),
+                Collections.singletonList(parseOperand(false)), null);
+    }
+
+    /**
+     * @param negation {@link #PLAIN}, {@link #NOT} or {@link #STRICT_NOT}
+     * @param plain
+     * @param not
+     * @param strictNot
+     * @return operator matching the negation
+     */
+    private static PlMatchOperator select(int negation, PlMatchOperator plain, PlMatchOperator not, PlMatchOperator strictNot) {
+        switch (negation) {
+        case NOT:
+            return not;
+        case STRICT_NOT:
+            return strictNot;
+        default:
+            return plain;
+        }
+    }
+
+    /**
+     * Parses a braced, comma-separated list of operands
+     * 
+     * @param allowReferences
+     * @param requiredSize exact number of list items or {@link Integer#MAX_VALUE} for any number of items (at least one)
+     * @return operands
+     */
+    private List<PlOperand> parseOperandList(boolean allowReferences, int requiredSize) {
+        consume('(');
+        List<PlOperand> res = new ArrayList<>();
+        while (true) {
+            skipWhitespace();
+            res.add(parseOperand(allowReferences));
+            if (res.size() > maxListItems) {
+                throw FALLBACK_REQUIRED;
+            }
+            skipWhitespace();
+            if (pos < len && source.charAt(pos) == ')') {
+                break;
+            }
+            consume(',');
+        }
+        pos++;
+        if (requiredSize != Integer.MAX_VALUE && res.size() != requiredSize) {
+            throw FALLBACK_REQUIRED;
+        }
+        return res;
+    }
+
+    /**
+     * @param allowReferences if true then the operand may be an argument reference
+     * @return operand
+     */
+    private PlOperand parseOperand(boolean allowReferences) {
+        if (allowReferences && pos < len && source.charAt(pos) == '@') {
+            pos++;
+            return new PlOperand(parseArgName(), true, null);
+        }
+        return new PlOperand(parseText(true), false, null);
+    }
+
+    /**
+     * @return decoded argument name
+     */
+    private String parseArgName() {
+        return parseText(false);
+    }
+
+    /**
+     * Parses plain text or text in double quotes
+     * 
+     * @param allowEmpty if true then an empty string (<code>""</code>) is allowed
+     * @return decoded text
+     */
+    private String parseText(boolean allowEmpty) {
+        int start = pos;
+        int end = -1;
+        if (start < len && source.charAt(start) == '"') {
+            end = scanTextInDoubleQuotes(start);
+            if (!allowEmpty && end - start == 2) {
+                throw FALLBACK_REQUIRED;
+            }
+        }
+        else {
+            end = scanPlainText(start);
+            if (end == start || !isValidPlainText(start, end) || isKeyword(start, end)) {
+                throw FALLBACK_REQUIRED;
+            }
+        }
+        pos = end;
+        return SymbolTable.canonicalize(AdlTextUtils.unescapeSpecialCharacters(AdlTextUtils.removeDoubleQuotesIfRequired(source.substring(start, end))));
+    }
+
+    /**
+     * @param start position of the opening double quote
+     * @return end position (exclusive) after the closing double quote
+     */
+    private int scanTextInDoubleQuotes(int start) {
+        int idx = start + 1;
+        while (idx < len) {
+            char ch = source.charAt(idx);
+            if (ch == '"') {
+                if (idx + 1 < len && source.charAt(idx + 1) == '"') {
+                    // escaped double quote
+                    idx = idx + 2;
+                }
+                else {
+                    return idx + 1;
+                }
+            }
+            else if (ch < 32 || ch == 127) {
+                throw FALLBACK_REQUIRED;
+            }
+            else {
+                idx++;
+            }
+        }
+        throw FALLBACK_REQUIRED;
+    }
+
+    /**
+     * @param start
+     * @return end position (exclusive) of the sequence of characters allowed in plain text (may be start)
+     */
+    private int scanPlainText(int start) {
+        int idx = start;
+        while (idx < len && isPlainTextCharacter(source.charAt(idx))) {
+            idx++;
+        }
+        return idx;
+    }
+
+    /**
+     * @param ch
+     * @return true if the character can be part of a plain text (or integer) token
+     */
+    private static boolean isPlainTextCharacter(char ch) {
+        return ch > '"' && ch != '(' && ch != ')' && ch != '*' && ch != ',' && ch != '/' && ch != '<' && ch != '=' && ch != '>' && ch != 127;
+    }
+
+    /**
+     * A sequence of plain text characters is a single token (plain text or integer) if it is either a number without leading zeros or if the first
+     * non-digit character is not an '@'.
+     * 
+     * @param start
+     * @param end exclusive
+     * @return true if the given range of plain text characters would be recognized as a single token
+     */
+    private boolean isValidPlainText(int start, int end) {
+        for (int idx = start; idx < end; idx++) {
+            char ch = source.charAt(idx);
+            if (ch < '0' || ch > '9') {
+                return ch != '@';
+            }
+        }
+        return isInteger(start, end);
+    }
+
+    /**
+     * @param start
+     * @param end exclusive
+     * @return true if the given range is a valid integer token (digits, no leading zeros)
+     */
+    private boolean isInteger(int start, int end) {
+        for (int idx = start; idx < end; idx++) {
+            char ch = source.charAt(idx);
+            if (ch < '0' || ch > '9') {
+                return false;
+            }
+        }
+        return end - start == 1 || source.charAt(start) != '0';
+    }
+
+    /**
+     * @param start
+     * @param end exclusive
+     * @return true if the given range is any of the Audlang keywords (case-insensitive)
+     */
+    private boolean isKeyword(int start, int end) {
+        for (String keyword : KEYWORDS) {
+            if (isKeyword(start, end, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param start
+     * @param end exclusive
+     * @param keyword
+     * @return true if the given range is the given keyword (case-insensitive)
+     */
+    private boolean isKeyword(int start, int end, String keyword) {
+        return end - start == keyword.length() && source.regionMatches(true, start, keyword, 0, keyword.length());
+    }
+
+    /**
+     * @param keyword
+     * @return true if the next token is the given keyword (consumed), otherwise false
+     */
+    private boolean tryConsumeKeyword(String keyword) {
+        int end = scanPlainText(pos);
+        if (isKeyword(pos, end, keyword)) {
+            pos = end;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param keyword required keyword
+     */
+    private void consumeKeyword(String keyword) {
+        if (!tryConsumeKeyword(keyword)) {
+            throw FALLBACK_REQUIRED;
+        }
+    }
+
+    /**
+     * @param ch required character
+     */
+    private void consume(char ch) {
+        if (pos >= len || source.charAt(pos) != ch) {
+            throw FALLBACK_REQUIRED;
+        }
+        pos++;
+    }
+
+    /**
+     * Skips at least one whitespace character
+     */
+    private void requireWhitespace() {
+        if (skipWhitespace() == 0) {
+            throw FALLBACK_REQUIRED;
+        }
+    }
+
+    /**
+     * Skips any Audlang whitespace (space, tab, carriage return and line feed)
+     * 
+     * @return number of skipped characters
+     */
+    private int skipWhitespace() {
+        int start = pos;
+        while (pos < len) {
+            char ch = source.charAt(pos);
+            if (ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n') {
+                pos++;
+            }
+            else {
+                break;
+            }
+        }
+        return pos - start;
+    }
+
+    /**
+     * Signals that the input must be processed by the regular parser
+     */
+    private static final class FallbackRequiredException extends RuntimeException {
+
+        private static final long serialVersionUID = -2915634981357093720L;
+
+        FallbackRequiredException() {
+            super(null, null, false, false);
+        }
+
+    }
+
+}
@@ -0,0 +1,599 @@
+//@formatter:off
+/*
+ * PlExpressionParser
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.AudlangMessage;
+import de.calamanari.adl.CommonErrors;
+import de.calamanari.adl.antlr.AudlangLexer;
+import de.calamanari.adl.antlr.AudlangParser;
+
+/**
+ * The {@link PlExpressionParser} is a thread-safe facade for parsing textual representations of Audlang expressions with the {@link PlExpressionBuilder}.
+ * <p>
+ * Setting up lexer, token stream and parser for every single expression is surprisingly expensive compared to the parse run of a typical (short) expression.
+ * Thus, this parser keeps a bounded pool of idle lexer/parser/builder instances that will be reset and reused for subsequent parse runs.
+ * <p>
+ * Instances are never shared among threads at the same time: each parse run takes an idle instance from the pool (or creates a new one if the pool is empty)
+ * and returns it afterwards. If the pool is full, the instance will be discarded. The pool does not rely on thread-locals, so it works the same way with
+ * platform threads and virtual threads without accumulating instances per thread.
+ * <p>
+ * The result of {@link #parse(String)} is identical to a parse run with fresh instances.
+ * <p>
+ * By default the parser uses ANTLR's full-LL prediction ({@link ParseMode#LL}). With {@link ParseMode#SLL_THEN_LL} the parser first tries the faster SLL
+ * prediction and only falls back to full-LL if the first attempt fails (see {@link ParseMode}).
+ * <p>
+ * Additionally, by default the parser tries a hand-written <i>fast path</i> for expressions without comments (the vast majority in practice), which creates
+ * the expression directly from the source string without any ANTLR-overhead. Anything the fast path does not handle (comments, errors, unusual formatting)
+ * will be processed by ANTLR as before, so the results (including error reports) are identical.
+ * <p>
+ * Every {@link AudlangParseResult} reports the number of tokens and the time spent for parsing. The totals since creation of the parser are available via
+ * {@link #getParseStats()}.
+ * <p>
+ * To protect the system against pathological input (e.g., extreme nesting or gigantic lists), a parser can be configured to enforce {@link ParseLimits}.
+ * Violations abort the parse run early with the error code {@link CommonErrors#ERR_4004_INPUT_LIMIT_EXCEEDED}. Limits are <b>opt-in</b>: unless specified
+ * otherwise (e.g., {@link ParseLimits#DEFAULT}) a parser applies {@link ParseLimits#NONE}, same as the default instance behind
+ * {@link PlExpressionBuilder#stringToExpression(String)}.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public class PlExpressionParser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PlExpressionParser.class);
+
+    /**
+     * Default number of idle parser instances to be kept for reuse, twice the number of available processors (at least 4)
+     */
+    public static final int DEFAULT_MAX_POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Instance used by {@link PlExpressionBuilder#stringToExpression(String)}
+     */
+    private static final PlExpressionParser DEFAULT_INSTANCE = new PlExpressionParser();
+
+    /**
+     * idle instances available for reuse or null if pooling is disabled
+     */
+    private final BlockingQueue<ParserComponents> pool;
+
+    /**
+     * prediction strategy of this parser
+     */
+    private final ParseMode parseMode;
+
+    /**
+     * if true, expressions without comments will be parsed without ANTLR if possible
+     */
+    private final boolean fastPathEnabled;
+
+    /**
+     * limits to be enforced while parsing
+     */
+    private final ParseLimits limits;
+
+    private final LongAdder parseCount = new LongAdder();
+
+    private final LongAdder fastPathCount = new LongAdder();
+
+    private final LongAdder tokenCount = new LongAdder();
+
+    private final LongAdder parseNanos = new LongAdder();
+
+    /**
+     * Creates a new parser with the {@link #DEFAULT_MAX_POOL_SIZE}, {@link ParseMode#LL}, the fast path enabled and no limits
+     */
+    public PlExpressionParser() {
+        this(DEFAULT_MAX_POOL_SIZE);
+    }
+
+    /**
+     * Creates a new parser with {@link ParseMode#LL} and the fast path enabled
+     * 
+     * @param maxPoolSize maximum number of idle parser instances to be kept for reuse, 0 disables pooling
+     */
+    public PlExpressionParser(int maxPoolSize) {
+        this(maxPoolSize, ParseMode.LL);
+    }
+
+    /**
+     * Creates a new parser with the fast path enabled
+     * 
+     * @param maxPoolSize maximum number of idle parser instances to be kept for reuse, 0 disables pooling
+     * @param parseMode prediction strategy, NOT NULL
+     */
+    public PlExpressionParser(int maxPoolSize, ParseMode parseMode) {
+        this(maxPoolSize, parseMode, true);
+    }
+
+    /**
+     * Creates a new parser without any limits ({@link ParseLimits#NONE})
+     * 
+     * @param maxPoolSize maximum number of idle parser instances to be kept for reuse, 0 disables pooling
+     * @param parseMode prediction strategy, NOT NULL
+     * @param fastPathEnabled if true, expressions without comments will be parsed without ANTLR if possible
+     */
+    public PlExpressionParser(int maxPoolSize, ParseMode parseMode, boolean fastPathEnabled) {
+        this(maxPoolSize, parseMode, fastPathEnabled, ParseLimits.NONE);
+    }
+
+    /**
+     * @param maxPoolSize maximum number of idle parser instances to be kept for reuse, 0 disables pooling
+     * @param parseMode prediction strategy, NOT NULL
+     * @param fastPathEnabled if true, expressions without comments will be parsed without ANTLR if possible
+     * @param limits to be enforced while parsing, NOT NULL
+     */
+    public PlExpressionParser(int maxPoolSize, ParseMode parseMode, boolean fastPathEnabled, ParseLimits limits) {
+        if (maxPoolSize < 0) {
+            throw new IllegalArgumentException(String.format("maxPoolSize must not be negative, given: %s", maxPoolSize));
+        }
+        if (parseMode == null) {
+            throw new IllegalArgumentException("parseMode must not be null");
+        }
+        if (limits == null) {
+            throw new IllegalArgumentException("limits must not be null");
+        }
+        this.pool = maxPoolSize > 0 ? new ArrayBlockingQueue<>(maxPoolSize) : null;
+        this.parseMode = parseMode;
+        this.fastPathEnabled = fastPathEnabled;
+        this.limits = limits;
+    }
+
+    /**
+     * @return shared default instance
+     */
+    public static PlExpressionParser getDefaultInstance() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /**
+     * Parses the given source string into an expression.
+     * 
+     * @param source expression string to be parsed
+     * @return result either with an expression or an error description
+     */
+    public AudlangParseResult parse(String source) {
+        long startTimeNanos = System.nanoTime();
+        AudlangParseResult res = parseInternal(source);
+        res.setParseNanos(System.nanoTime() - startTimeNanos);
+        parseCount.increment();
+        tokenCount.add(res.getTokenCount());
+        parseNanos.add(res.getParseNanos());
+        return res;
+    }
+
+    /**
+     * @param source expression string to be parsed
+     * @return result either with an expression or an error description
+     */
+    private AudlangParseResult parseInternal(String source) {
+        AudlangParseResult res = new AudlangParseResult();
+        res.setSource(source);
+
+        if (source == null || source.isBlank()) {
+            res.setError(true);
+            res.setErrorMessage("Source must not be null or blank.");
+            res.getUserMessages().add(AudlangMessage.msg(CommonErrors.ERR_1000_PARSE_FAILED));
+            return res;
+        }
+
+        String limitViolation = checkLimitsBeforeParsing(source);
+        if (limitViolation != null) {
+            res.setError(true);
+            res.setErrorMessage(limitViolation);
+            res.getUserMessages().add(AudlangMessage.msg(CommonErrors.ERR_4004_INPUT_LIMIT_EXCEEDED, limitViolation));
+            return res;
+        }
+
+        PlExpression<?> expression = fastPathEnabled ? PlExpressionFastPathParser.tryParse(source, limits) : null;
+        if (expression != null) {
+            fastPathCount.increment();
+            res.setResultExpression(expression);
+            return res;
+        }
+
+        ParserComponents components = acquire();
+        try {
+            res = components.parse(source, parseMode);
+        }
+        catch (OutOfMemoryError err) {
+            // do not return the instance to the pool, its state is undefined
+            components = null;
+            throw err;
+        }
+        catch (RuntimeException ex) {
+            AudlangParseResult builderResult = components.expressionBuilder.getParseResult();
+            if (builderResult.getSource() != null) {
+                // we obtain the reference before parsing to have it in case of errors
+                res = builderResult;
+            }
+            String msg = String.format("Unexpected error while parsing: %s", ex);
+            if (!res.isError()) {
+                // always report the first error, not the follow-up
+                res.setError(true);
+                res.setErrorMessage(msg);
+                res.getUserMessages().add(0, AudlangMessage.msg(CommonErrors.ERR_1000_PARSE_FAILED));
+            }
+            LOGGER.debug(msg, ex);
+        }
+        finally {
+            if (components != null) {
+                res.setTokenCount(components.allTokens.size());
+            }
+            release(components);
+        }
+        return res;
+    }
+
+    /**
+     * Cheap checks of the raw source to reject pathological input before lexing and parsing.
+     * <p>
+     * Deep nesting is not only a risk for the stack, ANTLR's adaptive prediction may also scan far ahead on every level, which makes parsing extremely slow
+     * long before the {@link PlExpressionBuilder} could detect the problem. Thus, we scan the source once (ignoring double-quoted text and comments) and
+     * determine:
+     * <ul>
+     * <li>the brace depth: only the innermost brace pair may be a value list, so a brace depth beyond the nesting limit + 1 implies that the nesting limit is
+     * exceeded.</li>
+     * <li>the longest run of the words NOT and STRICT: at most two words of a run don't open a nesting level (e.g., <code>a STRICT NOT ANY OF</code>), and
+     * <code>STRICT NOT</code> counts as a single level.</li>
+     * </ul>
+     * The exact check happens later while parsing.
+     * 
+     * @param source NOT NULL
+     * @return error message or null if the source passed the checks
+     */
+    private String checkLimitsBeforeParsing(String source) {
+        int len = source.length();
+        if (len > limits.maxLength()) {
+            return String.format("Input limit exceeded: The source length of %s characters exceeds the limit of %s characters.", len, limits.maxLength());
+        }
+        if (limits.maxNestingDepth() == Integer.MAX_VALUE) {
+            // no nesting limit, no need to scan the source
+            return null;
+        }
+        long maxBraceDepth = limits.maxNestingDepth() + 1L;
+        long maxNegationRun = limits.maxNestingDepth() * 2L + 2L;
+        int braceDepth = 0;
+        int negationRun = 0;
+        for (int i = 0; i < len; i++) {
+            char ch = source.charAt(i);
+            if (ch == '"') {
+                i = skipDoubleQuotedText(source, i);
+                negationRun = 0;
+            }
+            else if (ch == '/' && i + 1 < len && source.charAt(i + 1) == '*') {
+                i = skipComment(source, i);
+            }
+            else if (ch == '(' || ch == ')' || ch == ',') {
+                braceDepth = braceDepth + (ch == '(' ? 1 : 0) - (ch == ')' ? 1 : 0);
+                negationRun = 0;
+            }
+            else if (ch > ' ') {
+                int end = i + 1;
+                while (end < len && isWordChar(source.charAt(end))) {
+                    end++;
+                }
+                boolean negation = isWord(source, i, end, "NOT") || isWord(source, i, end, "STRICT");
+                negationRun = negation ? negationRun + 1 : 0;
+                i = end - 1;
+            }
+            if (braceDepth > maxBraceDepth || negationRun > maxNegationRun) {
+                return String.format("Input limit exceeded at position %s: The nesting depth exceeds the limit of %s.", i, limits.maxNestingDepth());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param source NOT NULL
+     * @param start position of the opening double quote
+     * @return position of the closing double quote (or the last position of the source)
+     */
+    private static int skipDoubleQuotedText(String source, int start) {
+        int end = source.indexOf('"', start + 1);
+        return end < 0 ? source.length() - 1 : end;
+    }
+
+    /**
+     * @param source NOT NULL
+     * @param start position of the comment start <code>/*</code>
+     * @return position of the last character of the comment (or the last position of the source)
+     */
+    private static int skipComment(String source, int start) {
+        int end = source.indexOf("*/", start + 2);
+        return end < 0 ? source.length() - 1 : end + 1;
+    }
+
+    /**
+     * @param ch character
+     * @return true if the character continues a word (keyword, argument name or value)
+     */
+    private static boolean isWordChar(char ch) {
+        return ch > ' ' && ch != '(' && ch != ')' && ch != ',' && ch != '"' && ch != '/';
+    }
+
+    /**
+     * @param source NOT NULL
+     * @param start word start
+     * @param end word end (exclusive)
+     * @param keyword upper case
+     * @return true if the word is the given keyword (case-insensitive)
+     */
+    private static boolean isWord(String source, int start, int end, String keyword) {
+        return end - start == keyword.length() && source.regionMatches(true, start, keyword, 0, keyword.length());
+    }
+
+    /**
+     * @return snapshot of the accumulated statistics of all parse runs of this parser instance
+     */
+    public ParseStats getParseStats() {
+        return new ParseStats(parseCount.sum(), fastPathCount.sum(), tokenCount.sum(), parseNanos.sum());
+    }
+
+    /**
+     * @return prediction strategy of this parser
+     */
+    public ParseMode getParseMode() {
+        return parseMode;
+    }
+
+    /**
+     * @return true if expressions without comments will be parsed without ANTLR if possible
+     */
+    public boolean isFastPathEnabled() {
+        return fastPathEnabled;
+    }
+
+    /**
+     * @return limits to be enforced while parsing
+     */
+    public ParseLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * @return number of idle instances currently available for reuse
+     */
+    public int getNumberOfIdleInstances() {
+        return pool == null ? 0 : pool.size();
+    }
+
+    /**
+     * @return idle instance from the pool or a new one
+     */
+    private ParserComponents acquire() {
+        ParserComponents res = (pool == null ? null : pool.poll());
+        if (res == null) {
+            res = new ParserComponents(limits);
+        }
+        return res;
+    }
+
+    /**
+     * Resets the given instance and puts it back into the pool (if there is space)
+     * 
+     * @param components instance to be released, NOT NULL
+     */
+    private void release(ParserComponents components) {
+        if (components != null && pool != null) {
+            components.reset();
+            pool.offer(components);
+        }
+    }
+
+    /**
+     * Set of lexer, token stream, parser and builder that are wired once and can be reused for subsequent parse runs (one at a time)
+     */
+    private static class ParserComponents {
+
+        private final PlExpressionBuilder expressionBuilder;
+
+        private final AudlangLexer lexer;
+
+        private final CommonTokenStream allTokens;
+
+        private final AudlangParser parser;
+
+        ParserComponents(ParseLimits limits) {
+            this.expressionBuilder = new PlExpressionBuilder(limits);
+
+            this.lexer = new AudlangLexer((CharStream) null);
+            lexer.removeErrorListeners();
+            lexer.addErrorListener(expressionBuilder.getErrorListener());
+
+            this.allTokens = new CommonTokenStream(lexer);
+
+            this.parser = new AudlangParser(null);
+            parser.setBuildParseTree(true);
+            parser.removeErrorListeners();
+            parser.addErrorListener(expressionBuilder.getErrorListener());
+            parser.addParseListener(expressionBuilder);
+        }
+
+        /**
+         * @param source NOT NULL
+         * @param parseMode NOT NULL
+         * @return parse result
+         */
+        AudlangParseResult parse(String source, ParseMode parseMode) {
+
+            // setting the input stream resets the lexer, setting the token source clears the buffered tokens
+            lexer.setInputStream(CharStreams.fromString(source));
+            allTokens.setTokenSource(lexer);
+
+            allTokens.fill();
+
+            if (parseMode == ParseMode.SLL_THEN_LL) {
+                AudlangParseResult res = parseSll(source);
+                if (res != null) {
+                    return res;
+                }
+            }
+
+            expressionBuilder.initialize(source, allTokens, parser.getVocabulary(), parser.getRuleNames());
+
+            // we obtain the reference before parsing to have it in case of errors
+            AudlangParseResult res = expressionBuilder.getParseResult();
+
+            // the default error strategy keeps state from previous runs (expected tokens), so we need a fresh one
+            parser.setErrorHandler(new DefaultErrorStrategy());
+
+            // resets the parser (but not the position of the token stream, which may have been consumed by the SLL-stage)
+            allTokens.seek(0);
+            parser.setTokenStream(allTokens);
+
+            parser.query();
+
+            return res;
+        }
+
+        /**
+         * Tries to parse the already tokenized source with SLL prediction, bailing out on the first problem.
+         * 
+         * @param source NOT NULL
+         * @return parse result or null if the first stage did not succeed and the source must be parsed with full-LL
+         */
+        private AudlangParseResult parseSll(String source) {
+            expressionBuilder.initialize(source, allTokens, parser.getVocabulary(), parser.getRuleNames());
+            parser.removeErrorListeners();
+            parser.setErrorHandler(new BailErrorStrategy());
+            parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+            try {
+                parser.setTokenStream(allTokens);
+                parser.query();
+                AudlangParseResult res = expressionBuilder.getParseResult();
+                // on any problem we re-run with full-LL to report exactly the same error as without the first stage
+                return res.isError() ? null : res;
+            }
+            catch (RuntimeException ex) {
+                LOGGER.trace("SLL-stage failed, falling back to LL: {}", source, ex);
+                return null;
+            }
+            finally {
+                parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+                parser.addErrorListener(expressionBuilder.getErrorListener());
+            }
+        }
+
+        /**
+         * Releases all references related to the last parse run to avoid keeping source, tokens or parse trees alive while this instance is idle
+         */
+        void reset() {
+            parser.setTokenStream(null);
+            allTokens.setTokenSource(lexer);
+            lexer.setInputStream(null);
+            expressionBuilder.initialize(null, null, null, null);
+        }
+
+    }
+
+    /**
+     * Accumulated statistics of the parse runs of a parser
+     * 
+     * @param parseCount number of parse runs
+     * @param fastPathCount number of parse runs completed by the fast path (without ANTLR)
+     * @param tokenCount total number of tokens created by the lexer
+     * @param parseNanos total time spent for parsing in nanoseconds
+     */
+    public static record ParseStats(long parseCount, long fastPathCount, long tokenCount, long parseNanos) {
+
+        /**
+         * @return average time per parse run in nanoseconds, 0 if there were no parse runs
+         */
+        public long averageParseNanos() {
+            return parseCount == 0 ? 0 : parseNanos / parseCount;
+        }
+
+    }
+
+    /**
+     * Limits to be enforced while parsing to fail fast on pathological input
+     * <p>
+     * The <b>nesting depth</b> counts the levels opened by braces, negations (NOT, STRICT NOT) and CURBs. The limit for <b>list items</b> applies to the
+     * operands of a single match (e.g., the values of an ANY OF).
+     * 
+     * @param maxLength maximum number of characters of the source, positive
+     * @param maxNestingDepth maximum nesting depth, positive
+     * @param maxListItems maximum number of operands of a single match, positive
+     * @param maxCurbMembers maximum number of members of the OR inside a CURB, positive
+     */
+    public static record ParseLimits(int maxLength, int maxNestingDepth, int maxListItems, int maxCurbMembers) {
+
+        /**
+         * Recommended limits for untrusted input, generous enough for any realistic expression: 1,000,000 characters, nesting depth 256, 100,000 list
+         * items, 256 CURB members
+         * <p>
+         * These limits must be requested explicitly (see {@link PlExpressionParser#PlExpressionParser(int, ParseMode, boolean, ParseLimits)}).
+         */
+        public static final ParseLimits DEFAULT = new ParseLimits(1_000_000, 256, 100_000, 256);
+
+        /**
+         * No limits (default, not recommended for processing untrusted input)
+         */
+        public static final ParseLimits NONE = new ParseLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+        /**
+         * @param maxLength maximum number of characters of the source, positive
+         * @param maxNestingDepth maximum nesting depth, positive
+         * @param maxListItems maximum number of operands of a single match, positive
+         * @param maxCurbMembers maximum number of members of the OR inside a CURB, positive
+         */
+        public ParseLimits {
+            if (maxLength < 1 || maxNestingDepth < 1 || maxListItems < 1 || maxCurbMembers < 1) {
+                throw new IllegalArgumentException(String.format(
+                        "All limits must be positive, given: maxLength=%s, maxNestingDepth=%s, maxListItems=%s, maxCurbMembers=%s", maxLength,
+                        maxNestingDepth, maxListItems, maxCurbMembers));
+            }
+        }
+
+    }
+
+    /**
+     * Prediction strategy of the parser
+     */
+    public enum ParseMode {
+
+        /**
+         * ANTLR's default full-LL prediction (always correct but slower)
+         */
+        LL,
+
+        /**
+         * Two-stage parsing: the parser first tries the faster SLL prediction with a bail-out error strategy (no error protocol). Only if this fails, the
+         * source will be parsed again with full-LL and the regular error protocol.
+         * <p>
+         * If SLL succeeds, the result is guaranteed to be the same as with full-LL. For invalid input the error report is identical to {@link #LL} because
+         * errors are always reported by the second stage.
+         */
+        SLL_THEN_LL;
+    }
+
+}
@@ -0,0 +1,100 @@
+//@formatter:off
+/*
+ * PlExpressionSerializer
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * This JACKSON custom serializer writes the <i>compact</i> JSON-form of a {@link PlExpression}: same structure and field names as the default form, but
+ * without the <code>inline</code> fields. These are redundant (the constructors compute them when reading the JSON back) and they repeat the text of all
+ * nested expressions on every level.
+ * <p>
+ * The serializer writes the tokens directly (no bean introspection), the discriminating field comes first. Operands and comments are written by JACKSON. The
+ * compact form can be read with the {@link PlExpressionDeserializer}.
+ * <p>
+ * The serializer is not active by default, see {@link de.calamanari.adl.CompactJsonModule}.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public class PlExpressionSerializer extends StdSerializer<PlExpression<?>> {
+
+    private static final long serialVersionUID = -6189213526421452866L;
+
+    @SuppressWarnings("unchecked")
+    public PlExpressionSerializer() {
+        super((Class<PlExpression<?>>) (Class<?>) PlExpression.class);
+    }
+
+    @Override
+    public void serialize(PlExpression<?> value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        switch (value) {
+        case PlCombinedExpression cmb:
+            gen.writeStringField("combi_type", cmb.combiType().name());
+            gen.writeArrayFieldStart("members");
+            for (PlExpression<?> member : cmb.members()) {
+                serialize(member, gen, provider);
+            }
+            gen.writeEndArray();
+            writeListIfNotEmpty("comments", cmb.comments(), gen, provider);
+            break;
+        case PlCurbExpression curb:
+            gen.writeFieldName("curb_delegate");
+            serialize(curb.curbDelegate(), gen, provider);
+            gen.writeStringField("operator", curb.operator().name());
+            gen.writeNumberField("bound", curb.bound());
+            writeListIfNotEmpty("comments", curb.comments(), gen, provider);
+            break;
+        case PlMatchExpression match:
+            gen.writeStringField("arg_name", match.argName());
+            gen.writeStringField("operator", match.operator().name());
+            writeListIfNotEmpty("operands", match.operands(), gen, provider);
+            writeListIfNotEmpty("comments", match.comments(), gen, provider);
+            break;
+        case PlNegationExpression neg:
+            gen.writeFieldName("delegate");
+            serialize(neg.delegate(), gen, provider);
+            if (neg.isStrict()) {
+                gen.writeBooleanField("is_strict", true);
+            }
+            writeListIfNotEmpty("comments", neg.comments(), gen, provider);
+            break;
+        case PlSpecialSetExpression set:
+            gen.writeStringField("set_type", set.setType().name());
+            writeListIfNotEmpty("comments", set.comments(), gen, provider);
+            break;
+        default:
+            provider.reportMappingProblem("Unsupported presentation layer expression type: %s", value.getClass());
+        }
+        gen.writeEndObject();
+    }
+
+    private static void writeListIfNotEmpty(String fieldName, List<?> values, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        if (values != null && !values.isEmpty()) {
+            provider.defaultSerializeField(fieldName, values, gen);
+        }
+    }
+
+}
@@ -0,0 +1,527 @@
+//@formatter:off
+/*
+ * PlExpressionStreamParser
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The {@link PlExpressionStreamParser} parses large files (or other character sources) with one expression per record lazily and with constant memory.
+ * <p>
+ * The records are separated by a configurable delimiter, by default a line break (one expression per line). With a different delimiter (e.g.,
+ * <code>";"</code> or an empty line <code>"\n\n"</code>) records can span multiple lines, e.g., pretty-printed expressions. Delimiters inside double quotes
+ * or comments are ignored. Because Audlang text in double quotes cannot contain line breaks, a line break always ends a quoted section (this way a broken
+ * line cannot swallow the remaining records). An unterminated comment extends the record to the end of the input.
+ * <p>
+ * Blank records are skipped, but they still count for the record index. Thus, with the default delimiter the record index is the (0-based) line number.
+ * <p>
+ * The returned streams are sequential and ordered, and they must be closed to release the underlying file or reader. Reading problems are reported as
+ * {@link UncheckedIOException}. Parse problems are reported per record as error results, they never stop the stream.
+ * <p>
+ * By default the records are parsed by the consuming thread. With more than one worker the records are parsed in chunks on the configured executor
+ * (default: {@link ForkJoinPool#commonPool()}) ahead of the consumer. The number of chunks in progress is bounded, so the memory consumption remains
+ * constant.
+ * <p>
+ * Instances are thread-safe, the returned streams are not.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public class PlExpressionStreamParser {
+
+    /**
+     * Default record delimiter: {@value}
+     */
+    public static final String DEFAULT_DELIMITER = "\n";
+
+    /**
+     * Size of the file regions mapped into memory at a time
+     */
+    private static final long MAX_MAPPED_REGION_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Characters read from the source at a time
+     */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /**
+     * the parser doing the actual work
+     */
+    private final PlExpressionParser parser;
+
+    /**
+     * separates the records
+     */
+    private final String delimiter;
+
+    /**
+     * number of workers for parsing ahead, 1 means the records are parsed by the consumer
+     */
+    private final int numberOfWorkers;
+
+    /**
+     * executor for the parse tasks (only relevant if {@link #numberOfWorkers} is greater than 1)
+     */
+    private final Executor executor;
+
+    /**
+     * Creates a stream parser for files with one expression per line, based on the {@link PlExpressionParser#getDefaultInstance()}
+     */
+    public PlExpressionStreamParser() {
+        this(DEFAULT_DELIMITER);
+    }
+
+    /**
+     * Creates a stream parser based on the {@link PlExpressionParser#getDefaultInstance()}
+     * 
+     * @param delimiter record separator, see {@link #PlExpressionStreamParser(PlExpressionParser, String, int, Executor)}
+     */
+    public PlExpressionStreamParser(String delimiter) {
+        this(delimiter, 1);
+    }
+
+    /**
+     * Creates a stream parser based on the {@link PlExpressionParser#getDefaultInstance()} running on the {@link ForkJoinPool#commonPool()}
+     * 
+     * @param delimiter record separator, see {@link #PlExpressionStreamParser(PlExpressionParser, String, int, Executor)}
+     * @param numberOfWorkers number of concurrent parse tasks, 1 means the records are parsed by the consuming thread
+     */
+    public PlExpressionStreamParser(String delimiter, int numberOfWorkers) {
+        this(PlExpressionParser.getDefaultInstance(), delimiter, numberOfWorkers, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param parser to parse the individual records, NOT NULL
+     * @param delimiter record separator, NOT NULL, not empty and must not contain any of the characters <code>"</code>, <code>/</code> or <code>*</code>
+     * @param numberOfWorkers number of concurrent parse tasks, 1 means the records are parsed by the consuming thread
+     * @param executor to run the parse tasks if there is more than one worker, NOT NULL
+     */
+    public PlExpressionStreamParser(PlExpressionParser parser, String delimiter, int numberOfWorkers, Executor executor) {
+        if (parser == null || executor == null || numberOfWorkers < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Arguments must not be null, numberOfWorkers must be positive, given: parser=%s, delimiter=%s, numberOfWorkers=%s, executor=%s", parser,
+                    delimiter, numberOfWorkers, executor));
+        }
+        if (delimiter == null || delimiter.isEmpty() || delimiter.indexOf('"') > -1 || delimiter.indexOf('/') > -1 || delimiter.indexOf('*') > -1) {
+            throw new IllegalArgumentException(String.format(
+                    "The delimiter must not be null or empty and must not contain any of the characters '\"', '/' or '*', given: delimiter=%s", delimiter));
+        }
+        this.parser = parser;
+        this.delimiter = delimiter;
+        this.numberOfWorkers = numberOfWorkers;
+        this.executor = executor;
+    }
+
+    /**
+     * Parses the records of the given UTF-8 file, see {@link #parse(Path, Charset)}
+     * 
+     * @param path NOT NULL
+     * @return lazy stream of parse results in order of the records, to be closed after use
+     * @throws IOException if the file cannot be opened
+     */
+    public Stream<RecordParseResult> parse(Path path) throws IOException {
+        return parse(path, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses the records of the given file.
+     * <p>
+     * The file will be read through a {@link FileChannel} in memory-mapped regions, so the file content does not consume any heap beyond the current record
+     * and a small read buffer.
+     * 
+     * @param path NOT NULL
+     * @param charset encoding of the file, NOT NULL
+     * @return lazy stream of parse results in order of the records, to be closed after use
+     * @throws IOException if the file cannot be opened
+     */
+    public Stream<RecordParseResult> parse(Path path, Charset charset) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return parse(new MappedFileReader(channel, charset, MAX_MAPPED_REGION_SIZE));
+        }
+        catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Parses the records from the given reader, closing the stream closes the reader.
+     * 
+     * @param reader NOT NULL
+     * @return lazy stream of parse results in order of the records, to be closed after use
+     */
+    public Stream<RecordParseResult> parse(Reader reader) {
+        RecordReader recordReader = new RecordReader(reader, delimiter);
+        Spliterator<RecordParseResult> spliterator = numberOfWorkers == 1 ? new SequentialSpliterator(recordReader)
+                : new ParallelSpliterator(recordReader);
+        return StreamSupport.stream(spliterator, false).onClose(recordReader::close);
+    }
+
+    /**
+     * @return record separator
+     */
+    public String getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * @return number of concurrent parse tasks, 1 means the records are parsed by the consuming thread
+     */
+    public int getNumberOfWorkers() {
+        return numberOfWorkers;
+    }
+
+    /**
+     * Result of a single record
+     * 
+     * @param recordIndex 0-based position of the record in the source (blank records count but don't produce any result)
+     * @param result parse result of the record
+     */
+    public static record RecordParseResult(long recordIndex, AudlangParseResult result) {
+
+    }
+
+    /**
+     * Record content with its position
+     */
+    private static record Record(long recordIndex, String source) {
+
+    }
+
+    /**
+     * Parses the records one by one in the consuming thread
+     */
+    private class SequentialSpliterator extends Spliterators.AbstractSpliterator<RecordParseResult> {
+
+        private final RecordReader recordReader;
+
+        SequentialSpliterator(RecordReader recordReader) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.recordReader = recordReader;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super RecordParseResult> action) {
+            Record rec = recordReader.next();
+            if (rec == null) {
+                return false;
+            }
+            action.accept(new RecordParseResult(rec.recordIndex(), PlExpressionBatchParser.parseIsolated(parser, rec.source())));
+            return true;
+        }
+
+    }
+
+    /**
+     * Parses chunks of records ahead of the consumer on the executor, the number of chunks in progress is limited to twice the number of workers
+     */
+    private class ParallelSpliterator extends Spliterators.AbstractSpliterator<RecordParseResult> {
+
+        private final RecordReader recordReader;
+
+        private final Deque<CompletableFuture<List<RecordParseResult>>> pendingChunks = new ArrayDeque<>();
+
+        private Iterator<RecordParseResult> currentChunk = null;
+
+        private boolean endOfInput = false;
+
+        ParallelSpliterator(RecordReader recordReader) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.recordReader = recordReader;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super RecordParseResult> action) {
+            while (currentChunk == null || !currentChunk.hasNext()) {
+                fillPendingChunks();
+                if (pendingChunks.isEmpty()) {
+                    return false;
+                }
+                currentChunk = pendingChunks.poll().join().iterator();
+            }
+            action.accept(currentChunk.next());
+            return true;
+        }
+
+        /**
+         * Reads and submits chunks of records until the maximum number of pending chunks is reached
+         */
+        private void fillPendingChunks() {
+            while (!endOfInput && pendingChunks.size() < numberOfWorkers * 2) {
+                List<Record> chunk = new ArrayList<>(PlExpressionBatchParser.DEFAULT_CHUNK_SIZE);
+                while (chunk.size() < PlExpressionBatchParser.DEFAULT_CHUNK_SIZE) {
+                    Record rec = recordReader.next();
+                    if (rec == null) {
+                        endOfInput = true;
+                        break;
+                    }
+                    chunk.add(rec);
+                }
+                if (!chunk.isEmpty()) {
+                    pendingChunks.add(CompletableFuture.supplyAsync(() -> chunk.stream()
+                            .map(rec -> new RecordParseResult(rec.recordIndex(), PlExpressionBatchParser.parseIsolated(parser, rec.source()))).toList(),
+                            executor));
+                }
+            }
+        }
+
+    }
+
+    /**
+     * Splits the characters from a reader into records, delimiters inside double quotes and comments are ignored
+     */
+    private static class RecordReader {
+
+        private final Reader reader;
+
+        private final String delimiter;
+
+        private final char lastDelimiterChar;
+
+        private final char[] buffer = new char[READ_BUFFER_SIZE];
+
+        private int bufferPos = 0;
+
+        private int bufferLen = 0;
+
+        private final StringBuilder sb = new StringBuilder();
+
+        private long recordIndex = 0;
+
+        private boolean endOfInput = false;
+
+        RecordReader(Reader reader, String delimiter) {
+            this.reader = reader;
+            this.delimiter = delimiter;
+            this.lastDelimiterChar = delimiter.charAt(delimiter.length() - 1);
+        }
+
+        /**
+         * @return next non-blank record or null at the end of the input
+         */
+        Record next() {
+            Record res = null;
+            while (res == null && !endOfInput) {
+                String source = readRecord();
+                long index = recordIndex;
+                recordIndex++;
+                if (!source.isBlank()) {
+                    res = new Record(index, source);
+                }
+            }
+            return res;
+        }
+
+        /**
+         * @return content of the next record, empty at the end of the input
+         */
+        private String readRecord() {
+            sb.setLength(0);
+            boolean inDoubleQuotes = false;
+            boolean inComment = false;
+            int commentStart = -1;
+            // number of trailing characters appended outside double quotes and comments
+            int plainRunLength = 0;
+            char prev = 0;
+            while (true) {
+                if (bufferPos == bufferLen && !fillBuffer()) {
+                    endOfInput = true;
+                    return sb.toString();
+                }
+                char ch = buffer[bufferPos];
+                bufferPos++;
+                sb.append(ch);
+                if (inDoubleQuotes && (ch == '\r' || ch == '\n')) {
+                    // text in double quotes cannot contain line breaks, the quoted section ends anyway
+                    inDoubleQuotes = false;
+                }
+                else if (inDoubleQuotes) {
+                    inDoubleQuotes = (ch != '"');
+                    prev = ch;
+                    continue;
+                }
+                if (inComment) {
+                    inComment = !(ch == '/' && prev == '*' && sb.length() - commentStart >= 2);
+                    if (!inComment) {
+                        // the closing slash cannot start another comment
+                        prev = 0;
+                        continue;
+                    }
+                }
+                else if (ch == '"') {
+                    inDoubleQuotes = true;
+                    plainRunLength = 0;
+                }
+                else if (ch == '*' && prev == '/') {
+                    inComment = true;
+                    commentStart = sb.length();
+                    plainRunLength = 0;
+                }
+                else {
+                    plainRunLength++;
+                    if (ch == lastDelimiterChar && plainRunLength >= delimiter.length() && endsWithDelimiter()) {
+                        sb.setLength(sb.length() - delimiter.length());
+                        return sb.toString();
+                    }
+                }
+                prev = ch;
+            }
+        }
+
+        /**
+         * @return true if the current record ends with the delimiter
+         */
+        private boolean endsWithDelimiter() {
+            int offset = sb.length() - delimiter.length();
+            for (int i = 0; i < delimiter.length(); i++) {
+                if (sb.charAt(offset + i) != delimiter.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return true if there are more characters in the buffer, false at the end of the input
+         */
+        private boolean fillBuffer() {
+            try {
+                int len = 0;
+                while (len == 0) {
+                    len = reader.read(buffer, 0, buffer.length);
+                }
+                bufferPos = 0;
+                bufferLen = Math.max(len, 0);
+                return len > 0;
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        void close() {
+            try {
+                reader.close();
+            }
+            catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+    }
+
+    /**
+     * Reader that decodes a file from memory-mapped regions of limited size
+     */
+    static class MappedFileReader extends Reader {
+
+        private final FileChannel channel;
+
+        private final CharsetDecoder decoder;
+
+        private final long size;
+
+        private final long maxRegionSize;
+
+        /**
+         * file position of the current region (or the next region to be mapped)
+         */
+        private long regionStart = 0;
+
+        private MappedByteBuffer region = null;
+
+        private boolean endOfInput = false;
+
+        /**
+         * @param channel to read from
+         * @param charset encoding of the file
+         * @param maxRegionSize maximum number of bytes to be mapped at a time, must be large enough to hold a single encoded character
+         * @throws IOException if the size of the file cannot be determined
+         */
+        MappedFileReader(FileChannel channel, Charset charset, long maxRegionSize) throws IOException {
+            this.channel = channel;
+            this.maxRegionSize = maxRegionSize;
+            this.decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
+            this.size = channel.size();
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+            while (!endOfInput && out.position() == off && len > 0) {
+                if (region == null && regionStart >= size) {
+                    decoder.decode(ByteBuffer.allocate(0), out, true);
+                    decoder.flush(out);
+                    endOfInput = true;
+                }
+                else {
+                    if (region == null) {
+                        region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, Math.min(maxRegionSize, size - regionStart));
+                    }
+                    boolean lastRegion = (regionStart + region.limit() == size);
+                    CoderResult coderResult = decoder.decode(region, out, lastRegion);
+                    if (coderResult.isError()) {
+                        coderResult.throwException();
+                    }
+                    if (coderResult.isUnderflow()) {
+                        // the next region starts with the incomplete character at the end of this region (if any)
+                        regionStart = lastRegion ? size : regionStart + region.position();
+                        region = null;
+                    }
+                }
+            }
+            int count = out.position() - off;
+            return (count == 0 && endOfInput && len > 0) ? -1 : count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            region = null;
+            channel.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,160 @@
+//@formatter:off
+/*
+ * PlExpressionTraversal
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import de.calamanari.adl.AudlangField;
+import de.calamanari.adl.Visit;
+
+/**
+ * Stack-safe traversal of a {@link PlExpression} tree for a {@link PlExpressionVisitor}.
+ * <p>
+ * The visitor sees exactly the same events in the same order as with a recursive implementation (ENTER, members, EXIT), but the nesting is kept in an
+ * explicit stack on the heap. This way, the depth of a tree is not limited by the thread's stack size. The <code>accept</code>-methods of
+ * {@link PlCombinedExpression}, {@link PlCurbExpression} and {@link PlNegationExpression} use this traversal, so every visitor and every converter benefits
+ * automatically.
+ * <p>
+ * As before, the traversal of a {@link PlCurbExpression} skips the OR-level and directly visits the members of the curb's delegate.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class PlExpressionTraversal {
+
+    /**
+     * Lets the visitor visit the given expression and recursively all its child expressions
+     * 
+     * @param expression root of the traversal
+     * @param visitor
+     */
+    static void traverse(PlExpression<?> expression, PlExpressionVisitor visitor) {
+        Deque<Frame> stack = new ArrayDeque<>();
+        enter(expression, visitor, stack);
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            if (frame.nextMemberIdx < frame.members.size()) {
+                PlExpression<?> member = frame.members.get(frame.nextMemberIdx);
+                frame.nextMemberIdx++;
+                enter(member, visitor, stack);
+            }
+            else {
+                stack.pop();
+                exit(frame.expression, visitor);
+            }
+        }
+    }
+
+    /**
+     * Visits a leaf completely, a composite expression gets entered and pushed on the stack
+     * 
+     * @param expression
+     * @param visitor
+     * @param stack
+     */
+    private static void enter(PlExpression<?> expression, PlExpressionVisitor visitor, Deque<Frame> stack) {
+        switch (expression) {
+        case PlCombinedExpression cmb -> {
+            visitor.visit(cmb, Visit.ENTER);
+            stack.push(new Frame(cmb, cmb.members()));
+        }
+        case PlCurbExpression curb -> {
+            visitor.visit(curb, Visit.ENTER);
+            // skip the OR-level
+            stack.push(new Frame(curb, curb.curbDelegate().members()));
+        }
+        case PlNegationExpression neg -> {
+            visitor.visit(neg, Visit.ENTER);
+            stack.push(new Frame(neg, Collections.singletonList(neg.delegate())));
+        }
+        default -> expression.accept(visitor);
+        }
+    }
+
+    /**
+     * @param expression composite expression after visiting all its members
+     * @param visitor
+     */
+    private static void exit(PlExpression<?> expression, PlExpressionVisitor visitor) {
+        switch (expression) {
+        case PlCombinedExpression cmb -> visitor.visit(cmb, Visit.EXIT);
+        case PlCurbExpression curb -> visitor.visit(curb, Visit.EXIT);
+        case PlNegationExpression neg -> visitor.visit(neg, Visit.EXIT);
+        default -> throw new IllegalStateException("Unexpected expression on stack: " + expression);
+        }
+    }
+
+    /**
+     * Collects the fields of the given expression and all its child expressions in the same order as a recursive implementation would do.
+     * <p>
+     * The composite expressions of this package get expanded, any other expression contributes its fields via {@link PlExpression#collectFieldsInternal(Map)}.
+     * 
+     * @param expression root of the traversal
+     * @param fieldMap to collect the fields
+     */
+    static void collectFields(PlExpression<?> expression, Map<String, AudlangField.Builder> fieldMap) {
+        Deque<PlExpression<?>> stack = new ArrayDeque<>();
+        stack.push(expression);
+        while (!stack.isEmpty()) {
+            switch (stack.pop()) {
+            case PlCombinedExpression cmb -> pushReversed(cmb.members(), stack);
+            case PlCurbExpression curb -> stack.push(curb.curbDelegate());
+            case PlNegationExpression neg -> stack.push(neg.delegate());
+            case PlExpression<?> other -> other.collectFieldsInternal(fieldMap);
+            }
+        }
+    }
+
+    /**
+     * @param members
+     * @param stack to push the members, so that the first member will be on top
+     */
+    private static void pushReversed(List<PlExpression<?>> members, Deque<PlExpression<?>> stack) {
+        for (int idx = members.size() - 1; idx > -1; idx--) {
+            stack.push(members.get(idx));
+        }
+    }
+
+    private PlExpressionTraversal() {
+        // utility
+    }
+
+    /**
+     * Composite expression being visited and the position of the next member
+     */
+    private static final class Frame {
+
+        private final PlExpression<?> expression;
+
+        private final List<PlExpression<?>> members;
+
+        private int nextMemberIdx = 0;
+
+        private Frame(PlExpression<?> expression, List<PlExpression<?>> members) {
+            this.expression = expression;
+            this.members = members;
+        }
+
+    }
+
+}
@@ -25,13 +25,16 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import de.calamanari.adl.AudlangField;
 import de.calamanari.adl.AudlangValidationException;
 import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.ExpressionStats;
 import de.calamanari.adl.FormatStyle;
 
 /**
@@ -39,27 +42,49 @@ import de.calamanari.adl.FormatStyle;
  * <p>
  * See also <a href="https://github.com/KarlEilebrecht/audlang-spec/blob/main/doc/AudienceDefinitionLanguageSpecification.md#3-basic-expressions">§3</a> Audlang
  * Spec
+ * <p>
+ * <b>Note:</b> The inline format is created <i>lazily</i> on first request. Equality and hash code of expressions without any comments are structural,
+ * see {@link PlStructureUtils}.
  * 
- * @param argName attribute name
- * @param operator for matching the argument against the operand(s)
- * @param operands list can be single-value, multi-value or empty depending on the given operator
- * @param comments optional list with comments on expression level, can be null
- * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
 @JsonDeserialize(using = JsonDeserializer.None.class)
-public record PlMatchExpression(String argName, PlMatchOperator operator, @JsonInclude(JsonInclude.Include.NON_EMPTY) List<PlOperand> operands,
-        @JsonInclude(JsonInclude.Include.NON_EMPTY) List<PlComment> comments, String inline) implements PlExpression<PlMatchExpression> {
+public final class PlMatchExpression implements PlExpression<PlMatchExpression> {
+
+    /**
+     * Same as the implicit value of the former record, see {@link #readResolve()}
+     */
+    private static final long serialVersionUID = 0L;
+
+    private final String argName;
+
+    private final PlMatchOperator operator;
+
+    private final List<PlOperand> operands;
+
+    private final List<PlComment> comments;
+
+    private transient int hashCode;
+
+    private final transient int commentCount;
+
+    private transient String inline;
+
+    private transient List<AudlangField> allFields;
+
+    private transient ExpressionStats stats;
 
     /**
      * @param argName attribute name
      * @param operator for matching the argument against the operand(s)
      * @param operands list can be single-value, multi-value or empty depending on the given operator
      * @param comments optional list with comments on expression level, can be null
-     * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
+     * @param inline this is an internal value computed on demand, no matter what you specify here, it will be ignored
      */
-    public PlMatchExpression(String argName, PlMatchOperator operator, List<PlOperand> operands, List<PlComment> comments,
-            @SuppressWarnings("java:S1172") String inline) {
+    @JsonCreator
+    public PlMatchExpression(@JsonProperty("arg_name") String argName, @JsonProperty("operator") PlMatchOperator operator,
+            @JsonProperty("operands") List<PlOperand> operands, @JsonProperty("comments") List<PlComment> comments,
+            @JsonProperty("inline") @SuppressWarnings("java:S1172") String inline) {
         if (argName == null || argName.isEmpty()) {
             throw new AudlangValidationException(String.format("argName must not be null or empty, given: argName=%s, operator=%s, operand=%s, comments=%s",
                     argName, operator, operands, comments));
@@ -92,7 +117,10 @@ public record PlMatchExpression(String argName, PlMatchOperator operator, @JsonI
         this.operator = operator;
         this.operands = Collections.unmodifiableList(operandsTemp);
         this.comments = Collections.unmodifiableList(commentsTemp);
-        this.inline = format(FormatStyle.INLINE);
+        this.commentCount = this.comments.size() + PlStructureUtils.commentCount(this.operands);
+        if (commentCount == 0) {
+            this.hashCode = PlStructureUtils.structuralHashCode(this.operands, 31 * argName.hashCode() + operator.ordinal());
+        }
     }
 
     /**
@@ -128,6 +156,67 @@ public record PlMatchExpression(String argName, PlMatchOperator operator, @JsonI
         this(argName, operator, Collections.emptyList(), comments, null);
     }
 
+    /**
+     * @return attribute name
+     */
+    @JsonProperty("arg_name")
+    public String argName() {
+        return argName;
+    }
+
+    /**
+     * @return operator for matching the argument against the operand(s)
+     */
+    @JsonProperty("operator")
+    public PlMatchOperator operator() {
+        return operator;
+    }
+
+    /**
+     * @return list can be single-value, multi-value or empty depending on the operator
+     */
+    @JsonProperty("operands")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<PlOperand> operands() {
+        return operands;
+    }
+
+    /**
+     * @return list with comments on expression level, not null
+     */
+    @JsonProperty("comments")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<PlComment> comments() {
+        return comments;
+    }
+
+    /**
+     * @return inline format of this expression, computed on first request
+     */
+    @JsonProperty("inline")
+    public String inline() {
+        String res = inline;
+        if (res == null) {
+            res = format(FormatStyle.INLINE);
+            inline = res;
+        }
+        return res;
+    }
+
+    /**
+     * @return the inline format if it was computed before, otherwise null
+     */
+    String cachedInline() {
+        return inline;
+    }
+
+    /**
+     * @return number of comments on this expression and its operands
+     */
+    int commentCount() {
+        return commentCount;
+    }
+
     @Override
     public void accept(PlExpressionVisitor visitor) {
         visitor.visit(this);
@@ -138,6 +227,26 @@ public record PlMatchExpression(String argName, PlMatchOperator operator, @JsonI
         return comments;
     }
 
+    @Override
+    public List<AudlangField> allFields() {
+        List<AudlangField> res = allFields;
+        if (res == null) {
+            res = PlExpression.super.allFields();
+            allFields = res;
+        }
+        return res;
+    }
+
+    @Override
+    public ExpressionStats stats() {
+        ExpressionStats res = stats;
+        if (res == null) {
+            res = ExpressionStats.of(this);
+            stats = res;
+        }
+        return res;
+    }
+
     @Override
     public void collectFieldsInternal(Map<String, AudlangField.Builder> fieldMap) {
 
@@ -167,17 +276,35 @@ public record PlMatchExpression(String argName, PlMatchOperator operator, @JsonI
 
     @Override
     public String toString() {
-        return inline;
+        return inline();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof PlMatchExpression plm && plm.inline.equals(this.inline);
+        if (obj == this) {
+            return true;
+        }
+        return obj instanceof PlMatchExpression plm && plm.commentCount == this.commentCount
+                && (this.structurallyEquals(plm) || (commentCount > 0 && PlStructureUtils.inlineEquals(this, plm)));
+    }
+
+    /**
+     * @param other
+     * @return true if the other expression has exactly the same structure including all comments
+     */
+    boolean structurallyEquals(PlMatchExpression other) {
+        return other.commentCount == this.commentCount && (commentCount > 0 || other.hashCode == this.hashCode) && other.argName.equals(this.argName)
+                && other.operator == this.operator && other.operands.equals(this.operands) && other.comments.equals(this.comments);
     }
 
     @Override
     public int hashCode() {
-        return inline.hashCode();
+        int res = hashCode;
+        if (res == 0 && commentCount > 0) {
+            res = PlStructureUtils.inlineHashCode(this);
+            hashCode = res;
+        }
+        return res;
     }
 
     @Override
@@ -372,4 +499,16 @@ public record PlMatchExpression(String argName, PlMatchOperator operator, @JsonI
         return res;
     }
 
+    /**
+     * Validates the de-serialized instance the same way as a new one
+     * <p>
+     * The serial form is compatible to the former record version of this class, its <code>inline</code> component is ignored on read and no longer
+     * written (the record computed it anyway).
+     * 
+     * @return validated instance
+     */
+    private Object readResolve() {
+        return new PlMatchExpression(argName, operator, operands, comments, null);
+    }
+
 }
@@ -44,6 +44,7 @@ import static de.calamanari.adl.FormatUtils.appendIndentOrWhitespace;
 import static de.calamanari.adl.FormatUtils.closeBrace;
 import static de.calamanari.adl.FormatUtils.comma;
 import static de.calamanari.adl.FormatUtils.endsWith;
+import static de.calamanari.adl.FormatUtils.flushIfRequired;
 import static de.calamanari.adl.FormatUtils.newLine;
 import static de.calamanari.adl.FormatUtils.openBrace;
 import static de.calamanari.adl.FormatUtils.space;
@@ -203,6 +204,11 @@ public enum PlMatchOperator {
      */
     IS_NOT_UNKNOWN(tokens(EMPTY_PREFIX, T_IS, T_NOT, T_UNKNOWN), PlOperandConstraint.NONE, PlCommentConstraint.THREE_INTERNAL_COMMENTS);
 
+    /**
+     * Comment positions by slot, see {@link #mapSlotToCommentPosition(int)}, avoids copying the array with every call to {@link PlComment.Position#values()}
+     */
+    private static final PlComment.Position[] COMMENT_POSITIONS = PlComment.Position.values();
+
     /**
      * This is for validation to avoid creating invalid expressions
      */
@@ -321,6 +327,7 @@ public enum PlMatchOperator {
                 appendIndent(sb, style, subLevel);
             }
             operands.get(i).appendMultiLine(sb, style, subLevel);
+            flushIfRequired(sb);
         }
         newLine(sb);
         if (operandConstraint.isListOperandRequired()) {
@@ -340,6 +347,7 @@ public enum PlMatchOperator {
                 space(sb);
             }
             operands.get(i).appendSingleLine(sb, style, level);
+            flushIfRequired(sb);
         }
         if (endsWith(sb, "*/")) {
             space(sb);
@@ -429,7 +437,7 @@ public enum PlMatchOperator {
             throw new AudlangValidationException(String.format("%s is not a valid internal token slot", slot));
         }
 
-        return PlComment.Position.values()[slot];
+        return COMMENT_POSITIONS[slot];
     }
 
     /**
@@ -29,17 +29,19 @@ import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import de.calamanari.adl.AudlangField;
 import de.calamanari.adl.AudlangValidationException;
 import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.ExpressionStats;
 import de.calamanari.adl.FormatStyle;
 import de.calamanari.adl.FormatUtils.FormatInfo;
 import de.calamanari.adl.SpecialSetType;
-import de.calamanari.adl.Visit;
 
 import static de.calamanari.adl.FormatUtils.appendNegationExpressionMultiLine;
 import static de.calamanari.adl.FormatUtils.appendNegationExpressionSingleLine;
@@ -51,16 +53,19 @@ import static de.calamanari.adl.erl.PlComment.Position.C1;
  * {@link PlNegationExpression} represents a logical NOT on the Audlang presentation layer.
  * <p>
  * See also <a href="https://github.com/KarlEilebrecht/audlang-spec/blob/main/doc/AudienceDefinitionLanguageSpecification.md#5-negation">§5</a> Audlang Spec
+ * <p>
+ * <b>Note:</b> The inline format is created <i>lazily</i> on first request. Equality and hash code of expressions without any comments are structural,
+ * see {@link PlStructureUtils}.
  * 
- * @param delegate any Audlang expression to be negated
- * @param isStrict true if this NOT shall be strict
- * @param comments optional comments, may be null
- * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
 @JsonDeserialize(using = JsonDeserializer.None.class)
-public record PlNegationExpression(PlExpression<?> delegate, @JsonInclude(JsonInclude.Include.NON_DEFAULT) boolean isStrict,
-        @JsonInclude(JsonInclude.Include.NON_EMPTY) List<PlComment> comments, String inline) implements PlExpression<PlNegationExpression> {
+public final class PlNegationExpression implements PlExpression<PlNegationExpression> {
+
+    /**
+     * Same as the implicit value of the former record, see {@link #readResolve()}
+     */
+    private static final long serialVersionUID = 0L;
 
     private static final Set<PlComment.Position> VALID_COMMENT_POSITIONS = Collections
             .unmodifiableSet(new LinkedHashSet<>(Arrays.asList(BEFORE_EXPRESSION, AFTER_EXPRESSION)));
@@ -68,14 +73,34 @@ public record PlNegationExpression(PlExpression<?> delegate, @JsonInclude(JsonIn
     private static final Set<PlComment.Position> VALID_COMMENT_POSITIONS_STRICT = Collections
             .unmodifiableSet(new LinkedHashSet<>(Arrays.asList(BEFORE_EXPRESSION, C1, AFTER_EXPRESSION)));
 
+    private final PlExpression<?> delegate;
+
+    private final boolean isStrict;
+
+    private final List<PlComment> comments;
+
+    private transient int hashCode;
+
+    private final transient int commentCount;
+
+    private transient String inline;
+
+    private transient List<AudlangField> allFields;
+
+    private transient int depth;
+
+    private transient ExpressionStats stats;
+
     /**
      * @param delegate any Audlang expression to be negated
      * @param isStrict true if this NOT shall be strict
      * @param comments optional comments, may be null
-     * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
+     * @param inline this is an internal value computed on demand, no matter what you specify here, it will be ignored
      */
-    public PlNegationExpression(@JsonDeserialize(using = PlExpressionDeserializer.class) PlExpression<?> delegate, boolean isStrict, List<PlComment> comments,
-            @SuppressWarnings("java:S1172") String inline) {
+    @JsonCreator
+    public PlNegationExpression(@JsonProperty("delegate") @JsonDeserialize(using = PlExpressionDeserializer.class) PlExpression<?> delegate,
+            @JsonProperty("is_strict") boolean isStrict, @JsonProperty("comments") List<PlComment> comments,
+            @JsonProperty("inline") @SuppressWarnings("java:S1172") String inline) {
         if (delegate == null) {
             throw new AudlangValidationException("The delegate of a negation must not be null.");
         }
@@ -89,7 +114,10 @@ public record PlNegationExpression(PlExpression<?> delegate, @JsonInclude(JsonIn
         this.delegate = moveIndistinguishableTrailingCommentsToDelegate(tempComments, delegate);
         this.isStrict = isStrict;
         this.comments = Collections.unmodifiableList(tempComments);
-        this.inline = format(FormatStyle.INLINE);
+        this.commentCount = this.comments.size() + PlStructureUtils.commentCount(this.delegate);
+        if (commentCount == 0) {
+            this.hashCode = 31 * PlStructureUtils.structuralHashCode(this.delegate) + (isStrict ? 2 : 1);
+        }
     }
 
     private static PlExpression<?> moveIndistinguishableTrailingCommentsToDelegate(List<PlComment> comments, PlExpression<?> delegate) {
@@ -122,14 +150,97 @@ public record PlNegationExpression(PlExpression<?> delegate, @JsonInclude(JsonIn
         this(delegate, isStrict, comments, null);
     }
 
+    /**
+     * @return the Audlang expression to be negated
+     */
+    @JsonProperty("delegate")
+    public PlExpression<?> delegate() {
+        return delegate;
+    }
+
+    /**
+     * @return true if this NOT is strict
+     */
+    @JsonProperty("is_strict")
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public boolean isStrict() {
+        return isStrict;
+    }
+
+    /**
+     * @return comments on expression level, not null
+     */
+    @JsonProperty("comments")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<PlComment> comments() {
+        return comments;
+    }
+
+    /**
+     * @return inline format of this expression, computed on first request
+     */
+    @JsonProperty("inline")
+    public String inline() {
+        String res = inline;
+        if (res == null) {
+            res = format(FormatStyle.INLINE);
+            inline = res;
+        }
+        return res;
+    }
+
+    /**
+     * @return the inline format if it was computed before, otherwise null
+     */
+    String cachedInline() {
+        return inline;
+    }
+
+    /**
+     * @return number of comments on this expression and its delegate (recursively)
+     */
+    int commentCount() {
+        return commentCount;
+    }
+
     @Override
     public List<PlExpression<?>> childExpressions() {
         return Collections.unmodifiableList(Arrays.asList(delegate));
     }
 
+    @Override
+    public List<AudlangField> allFields() {
+        List<AudlangField> res = allFields;
+        if (res == null) {
+            res = PlExpression.super.allFields();
+            allFields = res;
+        }
+        return res;
+    }
+
+    @Override
+    public int depth() {
+        int res = depth;
+        if (res == 0) {
+            res = ExpressionStats.depthOf(this);
+            depth = res;
+        }
+        return res;
+    }
+
+    @Override
+    public ExpressionStats stats() {
+        ExpressionStats res = stats;
+        if (res == null) {
+            res = ExpressionStats.of(this);
+            stats = res;
+        }
+        return res;
+    }
+
     @Override
     public void collectFieldsInternal(Map<String, AudlangField.Builder> fieldMap) {
-        delegate.collectFieldsInternal(fieldMap);
+        PlExpressionTraversal.collectFields(this, fieldMap);
     }
 
     @Override
@@ -140,9 +251,7 @@ public record PlNegationExpression(PlExpression<?> delegate, @JsonInclude(JsonIn
 
     @Override
     public void accept(PlExpressionVisitor visitor) {
-        visitor.visit(this, Visit.ENTER);
-        delegate.accept(visitor);
-        visitor.visit(this, Visit.EXIT);
+        PlExpressionTraversal.traverse(this, visitor);
     }
 
     @Override
@@ -188,6 +297,15 @@ public record PlNegationExpression(PlExpression<?> delegate, @JsonInclude(JsonIn
 
     @Override
     public PlExpression<?> resolveHigherLanguageFeatures() {
+        return HigherLanguageFeatureResolver.resolve(this);
+    }
+
+    /**
+     * Covers the cases where the negation must not be applied to the resolved delegate.
+     * 
+     * @return resolved expression or null if this negation must be applied to the resolved delegate, see {@link #applyToResolvedDelegate(PlExpression)}
+     */
+    PlExpression<?> resolveSpecialCase() {
 
         // @formatter:off
         if (isStrict 
@@ -206,28 +324,25 @@ public record PlNegationExpression(PlExpression<?> delegate, @JsonInclude(JsonIn
             // apply the NOT to the bound condition (not to the resolved curb)
             return new PlCurbExpression(curb.curbDelegate(), curb.operator().negate(), curb.bound(), null).resolveHigherLanguageFeatures();
         }
-
-        return resolveHigherLanguageFeaturesInternal();
+        return null;
     }
 
     /**
-     * First resolves the higher language features on the delegate, evaluates the result and processes then type-specific
-     * @return resolved expression without any higher language features
+     * Inner-outer resolution: applies this negation to the already resolved delegate, type-specific
+     * <p>
+     * <b>Important:</b> The negation of an AND resp. OR is an OR resp. AND of the negated members (<i>not yet resolved</i>), the caller must resolve it.
+     * 
+     * @param resolvedDelegate the delegate of this negation after resolving its higher language features
+     * @return resolved expression without any higher language features, or the combined expression to be resolved
      */
-    private PlExpression<?> resolveHigherLanguageFeaturesInternal() {
-        
-        // inner-outer resolution (apply the NOT to the already resolved delegate)
-        PlExpression<?> resolvedDelegate = delegate.resolveHigherLanguageFeatures();
-
-        PlExpression<?> res = null;
+    PlExpression<?> applyToResolvedDelegate(PlExpression<?> resolvedDelegate) {
         switch(resolvedDelegate) {
-        case PlNegationExpression neg : res = resolveHigherLanguageFeatures(neg); break;
-        case PlCombinedExpression cmb : res = resolveHigherLanguageFeatures(cmb); break;
-        case PlMatchExpression match : res = resolveHigherLanguageFeatures(match); break;
-        case PlSpecialSetExpression spc : res = resolveHigherLanguageFeatures(spc); break;
+        case PlNegationExpression neg : return resolveHigherLanguageFeatures(neg);
+        case PlCombinedExpression cmb : return applyToResolvedCombinedExpression(cmb);
+        case PlMatchExpression match : return resolveHigherLanguageFeatures(match);
+        case PlSpecialSetExpression spc : return resolveHigherLanguageFeatures(spc);
         default : throw new IllegalStateException("BUG: Unexpected expression type: " + this.getClass().getName());
         }
-        return res.equals(this) ? this : res;
     }
 
     private PlExpression<?> resolveHigherLanguageFeatures(PlSpecialSetExpression spc) {
@@ -311,12 +426,12 @@ public record PlNegationExpression(PlExpression<?> delegate, @JsonInclude(JsonIn
         }
     }
 
-    private PlExpression<?> resolveHigherLanguageFeatures(PlCombinedExpression cmb) {
+    private PlCombinedExpression applyToResolvedCombinedExpression(PlCombinedExpression cmb) {
         // @formatter:off
         return new PlCombinedExpression(cmb.combiType().switchType(), 
                                         cmb.members().stream().map(m -> new PlNegationExpression(m, isStrict, null))
                                             .collect(Collectors.toCollection(ArrayList<PlExpression<?>>::new)), 
-                                        null).resolveHigherLanguageFeatures();
+                                        null);
         // @formatter:on
     }
 
@@ -332,17 +447,47 @@ public record PlNegationExpression(PlExpression<?> delegate, @JsonInclude(JsonIn
 
     @Override
     public String toString() {
-        return inline;
+        return inline();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof PlNegationExpression pln && pln.inline.equals(this.inline);
+        if (obj == this) {
+            return true;
+        }
+        return obj instanceof PlNegationExpression pln && pln.commentCount == this.commentCount
+                && (this.structurallyEquals(pln) || (commentCount > 0 && PlStructureUtils.inlineEquals(this, pln)));
+    }
+
+    /**
+     * @param other
+     * @return true if the other expression has exactly the same structure including all comments
+     */
+    boolean structurallyEquals(PlNegationExpression other) {
+        return other.commentCount == this.commentCount && (commentCount > 0 || other.hashCode == this.hashCode) && other.isStrict == this.isStrict
+                && other.comments.equals(this.comments) && PlStructureUtils.structurallyEquals(other.delegate, this.delegate);
     }
 
     @Override
     public int hashCode() {
-        return inline.hashCode();
+        int res = hashCode;
+        if (res == 0 && commentCount > 0) {
+            res = PlStructureUtils.inlineHashCode(this);
+            hashCode = res;
+        }
+        return res;
+    }
+
+    /**
+     * Validates the de-serialized instance the same way as a new one
+     * <p>
+     * The serial form is compatible to the former record version of this class, its <code>inline</code> component is ignored on read and no longer
+     * written (the record computed it anyway).
+     * 
+     * @return validated instance
+     */
+    private Object readResolve() {
+        return new PlNegationExpression(delegate, isStrict, comments, null);
     }
 
 }
@@ -106,10 +106,10 @@ public record PlOperand(String value, @JsonInclude(JsonInclude.Include.NON_DEFAU
 
     private boolean operandHasComplexComments() {
         // @formatter:off
-        return comments.size() > 2 
+        return !comments.isEmpty() && (comments.size() > 2
                 || comments.stream().filter(comment -> comment.position() == Position.BEFORE_OPERAND).count() > 1
                 || comments.stream().filter(comment -> comment.position() == Position.AFTER_OPERAND).count() > 1
-                || comments.stream().anyMatch(PlComment::isComplex);
+                || comments.stream().anyMatch(PlComment::isComplex));
         // @formatter:on
     }
 
@@ -0,0 +1,182 @@
+//@formatter:off
+/*
+ * PlStructureUtils
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.util.List;
+
+import de.calamanari.adl.FormatStyle;
+
+/**
+ * Support for the structural equality and hash codes of {@link PlCombinedExpression}s, {@link PlMatchExpression}s, {@link PlNegationExpression}s and
+ * {@link PlCurbExpression}s.
+ * <p>
+ * By contract two {@link PlExpression}s are equal if they have the same inline format. Without any comments the inline format is unique, so structural
+ * equality is the same as equality of the inline format. Comments complicate the picture because the same output can be the result of different structures
+ * (e.g., a comment after a combined expression vs. a comment after its last member). Thus:
+ * <ul>
+ * <li>Expressions without any comments compute a structural <b>hash code</b> at construction time and compare structurally.</li>
+ * <li>Two expressions with a different number of comments cannot have the same inline format.</li>
+ * <li>If the structures including comments are equal, the inline formats are equal.</li>
+ * <li>Otherwise, the inline formats of expressions with comments must be compared. Their hash code is the hash code of the inline format, computed on first
+ * request without keeping the string.</li>
+ * </ul>
+ * This way, common operations like {@link PlExpression#resolveHigherLanguageFeatures()} or {@link PlExpression#stripComments()} (where an expression with
+ * comments gets compared to one without) don't need to format any expression.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class PlStructureUtils {
+
+    /**
+     * @param expression without any comments
+     * @return structural hash code
+     */
+    static int structuralHashCode(PlExpression<?> expression) {
+        return switch (expression) {
+        case PlMatchExpression match -> match.hashCode();
+        case PlCombinedExpression cmb -> cmb.hashCode();
+        case PlNegationExpression neg -> neg.hashCode();
+        case PlCurbExpression curb -> curb.hashCode();
+        case PlSpecialSetExpression spc -> spc.setType().ordinal();
+        default -> expression.toString().hashCode();
+        };
+    }
+
+    /**
+     * @param operands without any comments
+     * @param res hash code of the expression before adding the operands
+     * @return structural hash code
+     */
+    static int structuralHashCode(List<PlOperand> operands, int res) {
+        for (PlOperand operand : operands) {
+            res = 31 * res + (31 * operand.value().hashCode() + (operand.isReference() ? 1 : 0));
+        }
+        return res;
+    }
+
+    /**
+     * @param expression
+     * @return number of comments in the given expression (recursively)
+     */
+    static int commentCount(PlExpression<?> expression) {
+        return switch (expression) {
+        case PlMatchExpression match -> match.commentCount();
+        case PlCombinedExpression cmb -> cmb.commentCount();
+        case PlNegationExpression neg -> neg.commentCount();
+        case PlCurbExpression curb -> curb.commentCount();
+        case PlSpecialSetExpression spc -> spc.comments().size();
+        default -> expression.allComments().size();
+        };
+    }
+
+    /**
+     * @param operands
+     * @return number of comments on the given operands
+     */
+    static int commentCount(List<PlOperand> operands) {
+        int res = 0;
+        for (PlOperand operand : operands) {
+            res = res + operand.comments().size();
+        }
+        return res;
+    }
+
+    /**
+     * Compares the two expressions including all comments and their positions.
+     * 
+     * @param expression
+     * @param other
+     * @return true if both expressions have exactly the same structure, which implies equality of the inline format
+     */
+    static boolean structurallyEquals(PlExpression<?> expression, PlExpression<?> other) {
+        if (expression == other) {
+            return true;
+        }
+        return switch (expression) {
+        case PlMatchExpression match -> other instanceof PlMatchExpression otherMatch && match.structurallyEquals(otherMatch);
+        case PlCombinedExpression cmb -> other instanceof PlCombinedExpression otherCmb && cmb.structurallyEquals(otherCmb);
+        case PlNegationExpression neg -> other instanceof PlNegationExpression otherNeg && neg.structurallyEquals(otherNeg);
+        case PlCurbExpression curb -> other instanceof PlCurbExpression otherCurb && curb.structurallyEquals(otherCurb);
+        case PlSpecialSetExpression spc -> other instanceof PlSpecialSetExpression otherSpc && spc.setType() == otherSpc.setType()
+                && spc.comments().equals(otherSpc.comments());
+        default -> expression.equals(other);
+        };
+    }
+
+    /**
+     * @param expressions
+     * @param others
+     * @return true if both lists have the same size and all elements are {@link #structurallyEquals(PlExpression, PlExpression)}
+     */
+    static boolean structurallyEquals(List<PlExpression<?>> expressions, List<PlExpression<?>> others) {
+        if (expressions.size() != others.size()) {
+            return false;
+        }
+        for (int i = 0; i < expressions.size(); i++) {
+            if (!structurallyEquals(expressions.get(i), others.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the hash code of an expression with comments.
+     * 
+     * @param expression
+     * @return hash code of the inline format (without caching the string if it was not available before)
+     */
+    static int inlineHashCode(PlExpression<?> expression) {
+        return inlineOf(expression).hashCode();
+    }
+
+    /**
+     * Compares the inline formats of the two expressions, this is the last resort if two expressions with comments are structurally different.
+     * <p>
+     * Inline formats which have not been cached before will be created temporarily.
+     * 
+     * @param expression
+     * @param other
+     * @return true if both expressions have the same inline format
+     */
+    static boolean inlineEquals(PlExpression<?> expression, PlExpression<?> other) {
+        return inlineOf(expression).equals(inlineOf(other));
+    }
+
+    /**
+     * @param expression
+     * @return cached inline format or a newly created one
+     */
+    private static String inlineOf(PlExpression<?> expression) {
+        String res = switch (expression) {
+        case PlMatchExpression match -> match.cachedInline();
+        case PlCombinedExpression cmb -> cmb.cachedInline();
+        case PlNegationExpression neg -> neg.cachedInline();
+        case PlCurbExpression curb -> curb.cachedInline();
+        default -> expression.toString();
+        };
+        return res == null ? expression.format(FormatStyle.INLINE) : res;
+    }
+
+    private PlStructureUtils() {
+        // utility
+    }
+
+}
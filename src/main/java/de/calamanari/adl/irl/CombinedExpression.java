@@ -19,21 +19,25 @@
 
 package de.calamanari.adl.irl;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import de.calamanari.adl.AudlangField;
 import de.calamanari.adl.AudlangValidationException;
 import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.ExpressionStats;
 import de.calamanari.adl.FormatStyle;
 import de.calamanari.adl.FormatUtils.FormatInfo;
-import de.calamanari.adl.Visit;
 
 import static de.calamanari.adl.FormatUtils.appendCombinedExpressionMultiLine;
 import static de.calamanari.adl.FormatUtils.appendCombinedExpressionSingleLine;
@@ -56,23 +60,73 @@ import static de.calamanari.adl.FormatUtils.appendCombinedExpressionSingleLine;
  * <p>
  * See also <a href="https://github.com/KarlEilebrecht/audlang-spec/blob/main/doc/AudienceDefinitionLanguageSpecification.md#41-logical-and">§4.1</a>,
  * <a href="https://github.com/KarlEilebrecht/audlang-spec/blob/main/doc/AudienceDefinitionLanguageSpecification.md#42-logical-or">§4.2</a> Audlang Spec
+ * <p>
+ * <b>Note:</b> Equality and hash code are structural (computed once). The inline format is created <i>lazily</i> on first request, so that the nodes of a
+ * large tree don't hold copies of the text of their sub-trees.
  * 
- * @param combiType logical connector
- * @param members the elements inside, list must at least contain two elements
- * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
 @JsonDeserialize(using = JsonDeserializer.None.class)
-public record CombinedExpression(CombinedExpressionType combiType, List<CoreExpression> members, String inline) implements CoreExpression {
+public final class CombinedExpression implements CoreExpression {
+
+    /**
+     * Same as the implicit value of the former record, see {@link #readResolve()}
+     */
+    private static final long serialVersionUID = 0L;
 
     private static final String WARNING = "Please avoid calling the CombinedExpression constructor directly. Instead use one of the static creation methods (e.g., orOf(...)).";
 
+    private final CombinedExpressionType combiType;
+
+    private final List<CoreExpression> members;
+
+    private final transient int hashCode;
+
+    private transient String inline;
+
+    private transient List<AudlangField> allFields;
+
+    private transient int depth;
+
+    private transient ExpressionStats stats;
+
+    /**
+     * Sort key, see {@link #inlinePrefix()}
+     */
+    private transient String inlinePrefix;
+
     /**
      * @param combiType logical connector
      * @param members the elements inside, list must at least contain two elements
-     * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
+     * @param inline this is an internal value computed on demand, no matter what you specify here, it will be ignored
+     */
+    @JsonCreator
+    public CombinedExpression(@JsonProperty("combi_type") CombinedExpressionType combiType, @JsonProperty("members") List<CoreExpression> members,
+            @JsonProperty("inline") @SuppressWarnings("java:S1172") String inline) {
+        this(combiType, members, false);
+    }
+
+    /**
+     * @param combiType logical connector
+     * @param members the elements inside, list must at least contain two elements
+     * @param skipValidation if true, the members must be the result of {@link #prepareMembers(List, CombinedExpressionType)} and this instance takes
+     *            ownership of the list (only internal use)
+     */
+    private CombinedExpression(CombinedExpressionType combiType, List<CoreExpression> members, boolean skipValidation) {
+        if (!skipValidation) {
+            assertValidMembers(members, combiType);
+        }
+        this.members = Collections.unmodifiableList(skipValidation ? members : new ArrayList<>(members));
+        this.combiType = combiType;
+        this.hashCode = 31 * this.members.hashCode() + combiType.ordinal();
+    }
+
+    /**
+     * @param members
+     * @param combiType
+     * @throws AudlangValidationException if the members are not suitable for a combined expression of the given type
      */
-    public CombinedExpression(CombinedExpressionType combiType, List<CoreExpression> members, @SuppressWarnings("java:S1172") String inline) {
+    private static void assertValidMembers(List<CoreExpression> members, CombinedExpressionType combiType) {
         if (combiType == null) {
             throw new AudlangValidationException(String.format("combiType must not be null, given: members=%s, combiType=%s", members, combiType));
         }
@@ -85,9 +139,58 @@ public record CombinedExpression(CombinedExpressionType combiType, List<CoreExpr
             throw new AudlangValidationException(String.format(
                     "AND- resp. OR-expressions must have UNIQUE and ORDERED members, given: members=%s, combiType=%s, %n%s", members, combiType, WARNING));
         }
-        this.members = Collections.unmodifiableList(new ArrayList<>(members));
-        this.combiType = combiType;
-        this.inline = format(FormatStyle.INLINE);
+    }
+
+    /**
+     * @return logical connector
+     */
+    @JsonProperty("combi_type")
+    public CombinedExpressionType combiType() {
+        return combiType;
+    }
+
+    /**
+     * @return the elements inside, at least two
+     */
+    @JsonProperty("members")
+    public List<CoreExpression> members() {
+        return members;
+    }
+
+    /**
+     * @return inline format of this expression, computed on first request
+     */
+    @JsonProperty("inline")
+    public String inline() {
+        String res = inline;
+        if (res == null) {
+            res = format(FormatStyle.INLINE);
+            inline = res;
+        }
+        return res;
+    }
+
+    /**
+     * @return the inline format if it was computed before, otherwise null
+     */
+    String cachedInline() {
+        return inline;
+    }
+
+    /**
+     * Returns the first characters of the inline format, computed on first request (comparison with another combined expression).
+     * <p>
+     * The length is limited, so that the prefixes of all the nested nodes of a large tree only require linear memory.
+     * 
+     * @return start of the inline format, at most {@value InlineFormatUtils#INLINE_PREFIX_LENGTH} characters
+     */
+    String inlinePrefix() {
+        String res = inlinePrefix;
+        if (res == null) {
+            res = InlineFormatUtils.createInlinePrefix(this);
+            inlinePrefix = res;
+        }
+        return res;
     }
 
     /**
@@ -115,7 +218,10 @@ public record CombinedExpression(CombinedExpressionType combiType, List<CoreExpr
             return preparedMembers.get(0);
         }
         else {
-            return new CombinedExpression(combiType, preparedMembers, null);
+            // the prepared members are valid by definition, no need to validate them again
+            // if the given list was already valid, we must not take ownership of the caller's list
+            List<CoreExpression> ownedMembers = (preparedMembers == members ? new ArrayList<>(members) : preparedMembers);
+            return CoreExpressionInterner.intern(new CombinedExpression(combiType, ownedMembers, true));
         }
 
     }
@@ -142,8 +248,7 @@ public record CombinedExpression(CombinedExpressionType combiType, List<CoreExpr
         for (CoreExpression member : members) {
             if (member instanceof SpecialSetExpression || (prevMember != null && prevMember.compareTo(member) >= 0)
                     || (member instanceof CombinedExpression cmb && cmb.combiType == combiType)) {
-                List<CoreExpression> updatedMembers = new ArrayList<>(members);
-                sortFilterExpandMembers(updatedMembers, combiType);
+                List<CoreExpression> updatedMembers = sortFilterExpandMembers(new ArrayList<>(members), combiType);
                 return prepareMembersConsiderEmpty(updatedMembers, combiType);
             }
             prevMember = member;
@@ -180,10 +285,11 @@ public record CombinedExpression(CombinedExpressionType combiType, List<CoreExpr
      * This method ensures that the members in the given list are unique and sorted. It also auto-expands any combined member of the same type to prevent
      * AND-of-AND resp. OR-of-OR to avoid confusion. Here we also get rid of useless {@link SpecialSetExpression} members.
      * 
-     * @param members
+     * @param members (will be sorted in place)
      * @param combiType
+     * @return new list with the final members
      */
-    private static void sortFilterExpandMembers(List<CoreExpression> members, CombinedExpressionType combiType) {
+    private static List<CoreExpression> sortFilterExpandMembers(List<CoreExpression> members, CombinedExpressionType combiType) {
 
         List<CoreExpression> res = new ArrayList<>(members.size());
         Collections.sort(members);
@@ -202,10 +308,9 @@ public record CombinedExpression(CombinedExpressionType combiType, List<CoreExpr
             prevMember = member;
         }
         if (expanded) {
-            sortFilterExpandMembers(res, combiType);
+            return sortFilterExpandMembers(res, combiType);
         }
-        members.clear();
-        members.addAll(res);
+        return res;
     }
 
     /**
@@ -252,7 +357,12 @@ public record CombinedExpression(CombinedExpressionType combiType, List<CoreExpr
 
     @Override
     public void appendSingleLine(StringBuilder sb, FormatStyle style, int level) {
-        appendCombinedExpressionSingleLine(sb, combiType, members, Collections.emptyList(), new FormatInfo(style, level));
+        if (style == FormatStyle.INLINE) {
+            InlineFormatUtils.appendInline(sb, this, level);
+        }
+        else {
+            appendCombinedExpressionSingleLine(sb, combiType, members, Collections.emptyList(), new FormatInfo(style, level));
+        }
     }
 
     @Override
@@ -270,24 +380,89 @@ public record CombinedExpression(CombinedExpressionType combiType, List<CoreExpr
         return members;
     }
 
+    @Override
+    public List<AudlangField> allFields() {
+        List<AudlangField> res = allFields;
+        if (res == null) {
+            res = CoreExpression.super.allFields();
+            allFields = res;
+        }
+        return res;
+    }
+
+    @Override
+    public int depth() {
+        int res = depth;
+        if (res == 0) {
+            res = ExpressionStats.depthOf(this);
+            depth = res;
+        }
+        return res;
+    }
+
+    @Override
+    public ExpressionStats stats() {
+        ExpressionStats res = stats;
+        if (res == null) {
+            res = ExpressionStats.of(this);
+            stats = res;
+        }
+        return res;
+    }
+
     @Override
     public void collectFieldsInternal(Map<String, AudlangField.Builder> fieldMap) {
-        members.forEach(member -> member.collectFieldsInternal(fieldMap));
+        CoreExpressionTraversal.collectFields(this, fieldMap);
     }
 
     @Override
     public String toString() {
-        return inline;
+        return inline();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof CombinedExpression cmb && cmb.inline.equals(this.inline);
+        if (obj == this) {
+            return true;
+        }
+        return obj instanceof CombinedExpression cmb && cmb.hashCode == this.hashCode && structurallyEquals(this, cmb);
+    }
+
+    /**
+     * Compares the two trees iteratively, so that even very deep trees can be compared without a stack overflow
+     * 
+     * @param expression
+     * @param other
+     * @return true if both expressions are structurally equal
+     */
+    private static boolean structurallyEquals(CombinedExpression expression, CombinedExpression other) {
+        Deque<CoreExpression> stack = new ArrayDeque<>();
+        stack.push(expression);
+        stack.push(other);
+        while (!stack.isEmpty()) {
+            CoreExpression right = stack.pop();
+            CoreExpression left = stack.pop();
+            if (left instanceof CombinedExpression leftCmb && right instanceof CombinedExpression rightCmb) {
+                if (leftCmb != rightCmb) {
+                    if (leftCmb.hashCode != rightCmb.hashCode || leftCmb.combiType != rightCmb.combiType || leftCmb.members.size() != rightCmb.members.size()) {
+                        return false;
+                    }
+                    for (int i = 0; i < leftCmb.members.size(); i++) {
+                        stack.push(leftCmb.members.get(i));
+                        stack.push(rightCmb.members.get(i));
+                    }
+                }
+            }
+            else if (!left.equals(right)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return inline.hashCode();
+        return hashCode;
     }
 
     @Override
@@ -296,14 +471,12 @@ public record CombinedExpression(CombinedExpressionType combiType, List<CoreExpr
             // move the combined expressions after the simple ones
             return 1;
         }
-        return CoreExpression.super.compareTo(other);
+        return InlineFormatUtils.compareInline(this, other);
     }
 
     @Override
     public void accept(CoreExpressionVisitor visitor) {
-        visitor.visit(this, Visit.ENTER);
-        members.forEach(m -> m.accept(visitor));
-        visitor.visit(this, Visit.EXIT);
+        CoreExpressionTraversal.traverse(this, visitor);
     }
 
     @Override
@@ -323,4 +496,16 @@ public record CombinedExpression(CombinedExpressionType combiType, List<CoreExpr
         return members.equals(prepareMembers(members, combiType));
     }
 
+    /**
+     * Validates the de-serialized instance the same way as a new one
+     * <p>
+     * The serial form is compatible to the former record version of this class, its <code>inline</code> component is ignored on read and no longer
+     * written (the record computed it anyway).
+     * 
+     * @return validated instance
+     */
+    private Object readResolve() {
+        return new CombinedExpression(combiType, members, null);
+    }
+
 }
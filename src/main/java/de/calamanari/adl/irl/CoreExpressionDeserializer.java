@@ -20,20 +20,30 @@
 package de.calamanari.adl.irl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.JsonNode;
+
+import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.SpecialSetType;
 
 /**
  * This JACKSON custom de-serializer solves the expression sub types when reading JSON back into memory.
+ * <p>
+ * The de-serializer reads the tokens of an expression in a single pass (no intermediate tree model) and collects the fields. Members and delegates get
+ * read recursively on the fly, because they are expressions no matter what the enclosing type is. At the end of the object the discriminating field
+ * (<code>combi_type</code>, <code>arg_name</code>, <code>delegate</code>, <code>set_type</code>) determines the expression type, so the order of the fields
+ * does not matter. The <code>inline</code> fields are skipped, the constructors compute them anyway.
+ * <p>
+ * Nested values (operands) and enums are read by the mapper, so they are subject to its configuration like before.
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
@@ -42,50 +52,174 @@ public class CoreExpressionDeserializer extends JsonDeserializer<CoreExpression>
 
     @Override
     public CoreExpression deserialize(JsonParser parser, DeserializationContext ctxt) throws IOException {
-        ObjectCodec codec = parser.getCodec();
-        JsonNode node = codec.readTree(parser);
         try {
-            return codec.treeToValue(node, resolveExpressionType(parser, node));
+            return readExpression(parser, ctxt);
         }
         catch (JsonProcessingException ex) {
             LOGGER.error("""
-                    Error during JSON-deserialization of {}
+                    Error during JSON-deserialization at {}
                     The reason might be that you are trying to de-serialize a JSON generated from a PlExpression.
                     Be aware that these formats are incompatible.
-                    """, node);
+                    """, parser.currentLocation());
             throw ex;
         }
     }
 
     /**
-     * Determines the class to use by inspection of the given node.
+     * Reads the expression starting at the current token (start of the object or first field name)
      * 
      * @param parser
-     * @param node
-     * @return concrete class to be used for deserialization
-     * @throws JsonMappingException
+     * @param ctxt
+     * @return expression or null if the current token is null
+     * @throws IOException
      */
-    @SuppressWarnings("java:S1452")
-    static final Class<? extends CoreExpression> resolveExpressionType(JsonParser parser, JsonNode node) throws JsonMappingException {
-        if (node.has("combi_type")) {
-            return CombinedExpression.class;
+    private CoreExpression readExpression(JsonParser parser, DeserializationContext ctxt) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
         }
-        else if (node.has("arg_name")) {
-            return MatchExpression.class;
+        else if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+            return (CoreExpression) ctxt.handleUnexpectedToken(CoreExpression.class, parser);
+        }
+
+        CombinedExpressionType combiType = null;
+        List<CoreExpression> members = null;
+        String argName = null;
+        MatchOperator operator = null;
+        Operand operand = null;
+        CoreExpression delegate = null;
+        SpecialSetType setType = null;
+
+        // the discriminating field determines the type, not its value
+        Class<? extends CoreExpression> type = null;
+
+        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String fieldName = parser.currentName();
+            parser.nextToken();
+            switch (fieldName) {
+            case "combi_type":
+                combiType = readEnum(parser, ctxt, CombinedExpressionType.class);
+                type = resolveType(type, CombinedExpression.class);
+                break;
+            case "members":
+                members = readMembers(parser, ctxt);
+                break;
+            case "arg_name":
+                argName = parser.getValueAsString();
+                type = resolveType(type, MatchExpression.class);
+                break;
+            case "operator":
+                operator = readEnum(parser, ctxt, MatchOperator.class);
+                break;
+            case "operand":
+                operand = parser.hasToken(JsonToken.VALUE_NULL) ? null : ctxt.readValue(parser, Operand.class);
+                break;
+            case "delegate":
+                delegate = readExpression(parser, ctxt);
+                type = resolveType(type, NegationExpression.class);
+                break;
+            case "set_type":
+                setType = readEnum(parser, ctxt, SpecialSetType.class);
+                type = resolveType(type, SpecialSetExpression.class);
+                break;
+            case "inline":
+                // computed by the constructors
+                parser.skipChildren();
+                break;
+            default:
+                ctxt.handleUnknownProperty(parser, this, CoreExpression.class, fieldName);
+            }
         }
-        else if (node.has("delegate")) {
-            return NegationExpression.class;
+
+        if (type == null) {
+            return ctxt.reportInputMismatch(CoreExpression.class, """
+                    Could not determine concrete type of core expression
+
+                    Maybe you are trying to deserialize a PlExpression into a CoreExpression?""");
         }
-        else if (node.has("set_type")) {
-            return SpecialSetExpression.class;
+        if (type == NegationExpression.class && delegate != null && !(delegate instanceof MatchExpression)) {
+            return ctxt.reportInputMismatch(NegationExpression.class, "The delegate of a negation must be a match expression, given: %s", delegate);
         }
-        else {
-            throw new JsonMappingException(parser, String.format("""
-                    Could not determine concrete type of presentation layer expression: %s
 
-                    Maybe you are trying to deserialize a PlExpression into a CoreExpression?""", node.asText()));
+        try {
+            if (type == CombinedExpression.class) {
+                return new CombinedExpression(combiType, members, null);
+            }
+            else if (type == MatchExpression.class) {
+                return new MatchExpression(argName, operator, operand, null);
+            }
+            else if (type == NegationExpression.class) {
+                return new NegationExpression((MatchExpression) delegate, null);
+            }
+            else {
+                return new SpecialSetExpression(setType, null);
+            }
+        }
+        catch (RuntimeException ex) {
+            throw ctxt.instantiationException(type, ex);
         }
+    }
+
+    /**
+     * Resolves the type by the precedence of the discriminating fields: <code>combi_type</code>, <code>arg_name</code>, <code>delegate</code>,
+     * <code>set_type</code>
+     * 
+     * @param currentType type found so far or null
+     * @param candidate type indicated by the current field
+     * @return resolved type
+     */
+    private static Class<? extends CoreExpression> resolveType(Class<? extends CoreExpression> currentType, Class<? extends CoreExpression> candidate) {
+        return (currentType == null || precedence(candidate) < precedence(currentType)) ? candidate : currentType;
+    }
 
+    private static int precedence(Class<? extends CoreExpression> type) {
+        if (type == CombinedExpression.class) {
+            return 0;
+        }
+        else if (type == MatchExpression.class) {
+            return 1;
+        }
+        else if (type == NegationExpression.class) {
+            return 2;
+        }
+        return 3;
+    }
+
+    /**
+     * @param parser positioned at the start of the array
+     * @param ctxt
+     * @return list of members or null if the value was null
+     * @throws IOException
+     */
+    private List<CoreExpression> readMembers(JsonParser parser, DeserializationContext ctxt) throws IOException {
+        if (parser.hasToken(JsonToken.VALUE_NULL)) {
+            return null;
+        }
+        if (!parser.isExpectedStartArrayToken()) {
+            ctxt.reportWrongTokenException(CoreExpression.class, JsonToken.START_ARRAY, "Expecting list of members.");
+        }
+        List<CoreExpression> res = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            res.add(readExpression(parser, ctxt));
+        }
+        return res;
+    }
+
+    /**
+     * Reads an enum constant with the enum deserializer of the mapper, so its configuration applies (e.g., case-insensitive enums)
+     * 
+     * @param <E>
+     * @param parser positioned at the value
+     * @param ctxt
+     * @param enumType
+     * @return enum constant or null if the value was null
+     * @throws IOException
+     */
+    private static <E extends Enum<E>> E readEnum(JsonParser parser, DeserializationContext ctxt, Class<E> enumType) throws IOException {
+        return parser.hasToken(JsonToken.VALUE_NULL) ? null : ctxt.readValue(parser, enumType);
     }
 
 }
@@ -0,0 +1,205 @@
+//@formatter:off
+/*
+ * CoreExpressionInterner
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.irl;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.calamanari.adl.irl.biceps.EncodedExpressionTree;
+
+/**
+ * The {@link CoreExpressionInterner} is an <i>opt-in</i> canonical table for {@link CoreExpression}s (hash-consing).
+ * <p>
+ * Applications that keep many optimized expressions in memory (e.g., a catalog) typically hold the same leaves (<code>country = DE</code>) and sub-trees
+ * thousands of times as separate instances. Once enabled, the creation methods {@link MatchExpression#of(String, MatchOperator, Operand)},
+ * {@link CombinedExpression#of(java.util.List, de.calamanari.adl.CombinedExpressionType)}, the negation of matches and thus also
+ * {@link EncodedExpressionTree#toCoreExpression()} return <i>shared</i> instances for structurally equal expressions. Because the members of a combined
+ * expression are canonical instances themselves, the lookup of a combined expression only compares member references, and equality checks between interned
+ * expressions mostly end with the identity check.
+ * <p>
+ * The table only holds <i>weak</i> references, expressions no longer referenced by the application will be garbage-collected as usual.
+ * <p>
+ * Interning is <b>disabled</b> by default, see {@link #setEnabled(boolean)}. Expressions created before enabling (or by other means, e.g., JSON
+ * deserialization) are not canonical, but equality is still structural, so mixing interned and non-interned expressions is safe.
+ * <p>
+ * The table is safe to be used concurrently, it is split into {@value #NUMBER_OF_SEGMENTS} segments, each guarded by its own lock (we don't use synchronized
+ * to avoid pinning virtual threads).
+ *
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public final class CoreExpressionInterner {
+
+    /**
+     * Number of independently locked parts of the table: {@value}
+     */
+    static final int NUMBER_OF_SEGMENTS = 64;
+
+    private static final Segment[] SEGMENTS = new Segment[NUMBER_OF_SEGMENTS];
+    static {
+        for (int i = 0; i < NUMBER_OF_SEGMENTS; i++) {
+            SEGMENTS[i] = new Segment();
+        }
+    }
+
+    private static final LongAdder HIT_COUNT = new LongAdder();
+
+    private static final LongAdder MISS_COUNT = new LongAdder();
+
+    private static volatile boolean enabled = false;
+
+    /**
+     * @return true if the creation methods return canonical instances
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables interning globally.
+     * <p>
+     * Disabling does not clear the table, see {@link #clear()}.
+     *
+     * @param enabled true to let the creation methods return canonical instances
+     */
+    public static void setEnabled(boolean enabled) {
+        CoreExpressionInterner.enabled = enabled;
+    }
+
+    /**
+     * Returns the canonical instance for the given expression if interning is enabled.
+     *
+     * @param <T> concrete expression type
+     * @param expression candidate, may be null
+     * @return canonical instance structurally equal to the given expression or the given expression if it becomes the canonical one (or if interning is
+     *         disabled)
+     */
+    public static <T extends CoreExpression> T intern(T expression) {
+        if (!enabled || expression == null || expression instanceof SpecialSetExpression) {
+            return expression;
+        }
+        int hash = expression.hashCode();
+        return SEGMENTS[(hash ^ (hash >>> 16)) & (NUMBER_OF_SEGMENTS - 1)].intern(expression);
+    }
+
+    /**
+     * @return current hit/miss counts and table size
+     */
+    public static InternerStats getStats() {
+        int size = 0;
+        for (Segment segment : SEGMENTS) {
+            size = size + segment.size();
+        }
+        return new InternerStats(HIT_COUNT.sum(), MISS_COUNT.sum(), size);
+    }
+
+    /**
+     * Removes all entries from the table and resets the counters.
+     * <p>
+     * Expressions interned before remain valid, they are just no longer canonical.
+     */
+    public static void clear() {
+        for (Segment segment : SEGMENTS) {
+            segment.clear();
+        }
+        HIT_COUNT.reset();
+        MISS_COUNT.reset();
+    }
+
+    private CoreExpressionInterner() {
+        // utility
+    }
+
+    /**
+     * Part of the table with its own lock
+     */
+    private static final class Segment {
+
+        /**
+         * The value is the key itself, the weak reference avoids a strong reference from the value to the key
+         */
+        private final Map<CoreExpression, WeakReference<CoreExpression>> table = new WeakHashMap<>();
+
+        private final Lock lock = new ReentrantLock();
+
+        @SuppressWarnings("unchecked")
+        <T extends CoreExpression> T intern(T expression) {
+            lock.lock();
+            try {
+                WeakReference<CoreExpression> ref = table.get(expression);
+                CoreExpression canonical = (ref == null ? null : ref.get());
+                if (canonical != null && canonical.getClass() == expression.getClass()) {
+                    HIT_COUNT.increment();
+                    return (T) canonical;
+                }
+                table.put(expression, new WeakReference<>(expression));
+                MISS_COUNT.increment();
+                return expression;
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return table.size();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                table.clear();
+            }
+            finally {
+                lock.unlock();
+            }
+        }
+
+    }
+
+    /**
+     * Statistics of the {@link CoreExpressionInterner}
+     *
+     * @param hitCount number of lookups that returned an existing canonical instance
+     * @param missCount number of lookups that added a new canonical instance
+     * @param size current number of canonical instances (expressions no longer referenced disappear over time)
+     */
+    public static record InternerStats(long hitCount, long missCount, int size) {
+
+        /**
+         * @return fraction of lookups answered with an existing instance (0.0 .. 1.0), 0 if there were no lookups
+         */
+        public double hitRate() {
+            long total = hitCount + missCount;
+            return total == 0 ? 0.0 : (double) hitCount / total;
+        }
+
+    }
+
+}
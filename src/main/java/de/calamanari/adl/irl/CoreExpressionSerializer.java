@@ -0,0 +1,80 @@
+//@formatter:off
+/*
+ * CoreExpressionSerializer
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.irl;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * This JACKSON custom serializer writes the <i>compact</i> JSON-form of a {@link CoreExpression}: same structure and field names as the default form, but
+ * without the <code>inline</code> fields. These are redundant (the constructors compute them when reading the JSON back) and they repeat the text of all
+ * nested expressions on every level.
+ * <p>
+ * The serializer writes the tokens directly (no bean introspection), the discriminating field comes first. The compact form can be read with the
+ * {@link CoreExpressionDeserializer}.
+ * <p>
+ * The serializer is not active by default, see {@link de.calamanari.adl.CompactJsonModule}.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public class CoreExpressionSerializer extends StdSerializer<CoreExpression> {
+
+    private static final long serialVersionUID = 2877384004870815254L;
+
+    public CoreExpressionSerializer() {
+        super(CoreExpression.class);
+    }
+
+    @Override
+    public void serialize(CoreExpression value, JsonGenerator gen, SerializerProvider provider) throws IOException {
+        gen.writeStartObject();
+        switch (value) {
+        case CombinedExpression cmb:
+            gen.writeStringField("combi_type", cmb.combiType().name());
+            gen.writeArrayFieldStart("members");
+            for (CoreExpression member : cmb.members()) {
+                serialize(member, gen, provider);
+            }
+            gen.writeEndArray();
+            break;
+        case MatchExpression match:
+            gen.writeStringField("arg_name", match.argName());
+            gen.writeStringField("operator", match.operator().name());
+            if (match.operand() != null) {
+                provider.defaultSerializeField("operand", match.operand(), gen);
+            }
+            break;
+        case NegationExpression neg:
+            gen.writeFieldName("delegate");
+            serialize(neg.delegate(), gen, provider);
+            break;
+        case SpecialSetExpression set:
+            gen.writeStringField("set_type", set.setType().name());
+            break;
+        default:
+            provider.reportMappingProblem("Unsupported core expression type: %s", value.getClass());
+        }
+        gen.writeEndObject();
+    }
+
+}
@@ -0,0 +1,131 @@
+//@formatter:off
+/*
+ * CoreExpressionTraversal
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.irl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+import de.calamanari.adl.AudlangField;
+import de.calamanari.adl.Visit;
+
+/**
+ * Stack-safe traversal of a {@link CoreExpression} tree for a {@link CoreExpressionVisitor}.
+ * <p>
+ * The visitor sees exactly the same events in the same order as with a recursive implementation (ENTER, members, EXIT), but the nesting is kept in an
+ * explicit stack on the heap. This way, the depth of a tree is not limited by the thread's stack size. {@link CombinedExpression#accept(CoreExpressionVisitor)}
+ * and {@link NegationExpression#accept(CoreExpressionVisitor)} use this traversal, so every visitor and every converter benefits automatically.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class CoreExpressionTraversal {
+
+    /**
+     * Lets the visitor visit the given expression and recursively all its child expressions
+     * 
+     * @param expression root of the traversal
+     * @param visitor
+     */
+    static void traverse(CoreExpression expression, CoreExpressionVisitor visitor) {
+        Deque<Frame> stack = new ArrayDeque<>();
+        enter(expression, visitor, stack);
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            if (frame.nextMemberIdx < frame.expression.members().size()) {
+                CoreExpression member = frame.expression.members().get(frame.nextMemberIdx);
+                frame.nextMemberIdx++;
+                enter(member, visitor, stack);
+            }
+            else {
+                stack.pop();
+                visitor.visit(frame.expression, Visit.EXIT);
+            }
+        }
+    }
+
+    /**
+     * Visits a leaf or a negation completely, a combined expression gets entered and pushed on the stack
+     * 
+     * @param expression
+     * @param visitor
+     * @param stack
+     */
+    private static void enter(CoreExpression expression, CoreExpressionVisitor visitor, Deque<Frame> stack) {
+        switch (expression) {
+        case CombinedExpression cmb -> {
+            visitor.visit(cmb, Visit.ENTER);
+            stack.push(new Frame(cmb));
+        }
+        case NegationExpression neg -> {
+            // the delegate of a negation is always a match, no need to push
+            visitor.visit(neg, Visit.ENTER);
+            neg.delegate().accept(visitor);
+            visitor.visit(neg, Visit.EXIT);
+        }
+        default -> expression.accept(visitor);
+        }
+    }
+
+    /**
+     * Collects the fields of the given expression and all its child expressions in the same order as a recursive implementation would do.
+     * <p>
+     * Combined expressions get expanded, any other expression contributes its fields via {@link CoreExpression#collectFieldsInternal(Map)}.
+     * 
+     * @param expression root of the traversal
+     * @param fieldMap to collect the fields
+     */
+    static void collectFields(CoreExpression expression, Map<String, AudlangField.Builder> fieldMap) {
+        Deque<CoreExpression> stack = new ArrayDeque<>();
+        stack.push(expression);
+        while (!stack.isEmpty()) {
+            CoreExpression current = stack.pop();
+            if (current instanceof CombinedExpression cmb) {
+                List<CoreExpression> members = cmb.members();
+                for (int idx = members.size() - 1; idx > -1; idx--) {
+                    stack.push(members.get(idx));
+                }
+            }
+            else {
+                current.collectFieldsInternal(fieldMap);
+            }
+        }
+    }
+
+    private CoreExpressionTraversal() {
+        // utility
+    }
+
+    /**
+     * Combined expression being visited and the position of the next member
+     */
+    private static final class Frame {
+
+        private final CombinedExpression expression;
+
+        private int nextMemberIdx = 0;
+
+        private Frame(CombinedExpression expression) {
+            this.expression = expression;
+        }
+
+    }
+
+}
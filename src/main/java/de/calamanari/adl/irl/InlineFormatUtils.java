@@ -0,0 +1,284 @@
+//@formatter:off
+/*
+ * InlineFormatUtils
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.irl;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+import de.calamanari.adl.AudlangExpression;
+import de.calamanari.adl.FormatStyle;
+import de.calamanari.adl.FormatUtils;
+
+import static de.calamanari.adl.CombinedExpressionType.createOperatorString;
+
+/**
+ * Support for the <i>lazy</i> inline format of {@link CombinedExpression}s, {@link MatchExpression}s and {@link NegationExpression}s.
+ * <p>
+ * The ordering of {@link CoreExpression}s is based on their inline format (see {@link AudlangExpression#compareTo(Object)}). If every node cached its inline
+ * string as soon as it took part in a comparison, the strings of all the nested nodes of a tree would be kept in memory, so that memory grows quadratic with
+ * the depth of the tree. Instead, comparisons produce the inline format of both expressions step by step and stop at the first difference (usually after a
+ * few characters).
+ * <p>
+ * To avoid formatting the same nodes again and again while sorting many siblings, each node computes a compact sort key on first comparison: a
+ * {@link MatchExpression} keeps its operand in inline format (usually the operand value itself), a {@link CombinedExpression} keeps the first
+ * {@value #INLINE_PREFIX_LENGTH} characters of its inline format. Only if two prefixes are equal the comparison falls back to producing the inline formats.
+ * <p>
+ * The inline format of a {@link CombinedExpression} is created iteratively (no recursion), so that even very deep trees can be printed.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+final class InlineFormatUtils {
+
+    /**
+     * Maximum length of the sort key of a {@link CombinedExpression}: {@value}
+     */
+    static final int INLINE_PREFIX_LENGTH = 32;
+
+    /**
+     * Compares the two expressions by their inline format without creating and caching the formatted strings.
+     * 
+     * @param expression
+     * @param other
+     * @return comparison result consistent with {@link AudlangExpression#compareTo(Object)}
+     */
+    static int compareInline(CoreExpression expression, CoreExpression other) {
+        if (other == null) {
+            return expression.toString().compareTo(String.valueOf(other));
+        }
+        if (expression.equals(other)) {
+            return 0;
+        }
+        if (expression instanceof CombinedExpression cmb && other instanceof CombinedExpression otherCmb) {
+            // a difference within the prefixes is the difference of the inline formats, because a prefix is either complete or has the full length
+            int res = cmb.inlinePrefix().compareTo(otherCmb.inlinePrefix());
+            if (res != 0) {
+                return res;
+            }
+        }
+        InlineCursor cursor = new InlineCursor(expression);
+        InlineCursor otherCursor = new InlineCursor(other);
+        while (true) {
+            int ch = cursor.next();
+            int otherCh = otherCursor.next();
+            if (ch != otherCh) {
+                return (ch < 0 || otherCh < 0) ? Integer.compare(ch, otherCh) : ch - otherCh;
+            }
+            else if (ch < 0) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Compares the operands of two {@link MatchExpression}s <i>with the same argName and operator</i>. In this case the inline formats of the two
+     * expressions only differ in the operand.
+     * 
+     * @param match
+     * @param otherMatch
+     * @return comparison result consistent with {@link AudlangExpression#compareTo(Object)}
+     */
+    static int compareOperandsInline(MatchExpression match, MatchExpression otherMatch) {
+        if (Objects.equals(match.operand(), otherMatch.operand())) {
+            return 0;
+        }
+        else if (match.operand() == null || otherMatch.operand() == null) {
+            return match.operand() == null ? -1 : 1;
+        }
+        return match.operandInline().compareTo(otherMatch.operandInline());
+    }
+
+    /**
+     * @param expression
+     * @return the first {@value #INLINE_PREFIX_LENGTH} characters of the inline format (or the complete inline format if shorter)
+     */
+    static String createInlinePrefix(CombinedExpression expression) {
+        String cached = expression.cachedInline();
+        if (cached != null) {
+            return cached.length() > INLINE_PREFIX_LENGTH ? cached.substring(0, INLINE_PREFIX_LENGTH) : cached;
+        }
+        StringBuilder sb = new StringBuilder(INLINE_PREFIX_LENGTH + 16);
+        InlineFormatter formatter = new InlineFormatter(expression, 0, sb);
+        while (sb.length() < INLINE_PREFIX_LENGTH && formatter.step()) {
+            // nothing to do
+        }
+        if (sb.length() > INLINE_PREFIX_LENGTH) {
+            sb.setLength(INLINE_PREFIX_LENGTH);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Appends the given combined expression in {@link FormatStyle#INLINE}, equivalent to
+     * {@link FormatUtils#appendCombinedExpressionSingleLine(StringBuilder, de.calamanari.adl.CombinedExpressionType, List, FormatUtils.FormatInfo)}
+     * 
+     * @param sb destination
+     * @param expression to be formatted
+     * @param level nesting level (0 means root, no braces)
+     */
+    static void appendInline(StringBuilder sb, CombinedExpression expression, int level) {
+        InlineFormatter formatter = new InlineFormatter(expression, level, sb);
+        while (formatter.step()) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * @param expression
+     * @return the cached inline string of the given expression or null if not available
+     */
+    private static String cachedInline(CoreExpression expression) {
+        if (expression instanceof CombinedExpression cmb) {
+            return cmb.cachedInline();
+        }
+        else if (expression instanceof MatchExpression match) {
+            return match.cachedInline();
+        }
+        else if (expression instanceof NegationExpression neg) {
+            return neg.cachedInline();
+        }
+        return expression.toString();
+    }
+
+    private InlineFormatUtils() {
+        // utility
+    }
+
+    /**
+     * Nesting level and position of a combined expression currently being formatted
+     */
+    private static final class Frame {
+
+        private final CombinedExpression expression;
+
+        private final int level;
+
+        private int nextMemberIdx = 0;
+
+        private Frame(CombinedExpression expression, int level) {
+            this.expression = expression;
+            this.level = level;
+        }
+
+    }
+
+    /**
+     * Formats a combined expression step by step into a {@link StringBuilder}, each step appends the next operator, leaf or brace.
+     */
+    private static final class InlineFormatter {
+
+        private final Deque<Frame> stack = new ArrayDeque<>();
+
+        private final StringBuilder sb;
+
+        private InlineFormatter(CombinedExpression expression, int level, StringBuilder sb) {
+            this.sb = sb;
+            push(expression, level);
+        }
+
+        private void push(CombinedExpression expression, int level) {
+            if (level > 0) {
+                FormatUtils.openBrace(sb);
+            }
+            stack.push(new Frame(expression, level));
+        }
+
+        /**
+         * @return true if the step appended text, false if the expression is complete
+         */
+        private boolean step() {
+            Frame frame = stack.peek();
+            if (frame == null) {
+                return false;
+            }
+            List<CoreExpression> members = frame.expression.members();
+            if (frame.nextMemberIdx == members.size()) {
+                stack.pop();
+                if (frame.level > 0) {
+                    FormatUtils.closeBrace(sb);
+                }
+                return true;
+            }
+            if (frame.nextMemberIdx > 0) {
+                FormatUtils.space(sb);
+                sb.append(createOperatorString(frame.expression.combiType(), FormatStyle.INLINE, 0));
+                FormatUtils.space(sb);
+            }
+            CoreExpression member = members.get(frame.nextMemberIdx);
+            frame.nextMemberIdx++;
+            if (member instanceof CombinedExpression cmb) {
+                push(cmb, frame.level + 1);
+            }
+            else {
+                member.appendSingleLine(sb, FormatStyle.INLINE, frame.level + 1);
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * Provides the inline format of an expression character by character without creating the full string (unless cached)
+     */
+    private static final class InlineCursor {
+
+        private final StringBuilder buffer = new StringBuilder();
+
+        private final InlineFormatter formatter;
+
+        private int pos = 0;
+
+        private InlineCursor(CoreExpression expression) {
+            String cached = cachedInline(expression);
+            if (cached == null && expression instanceof CombinedExpression cmb) {
+                this.formatter = new InlineFormatter(cmb, 0, buffer);
+            }
+            else {
+                this.formatter = null;
+                buffer.append(cached == null ? expression.format(FormatStyle.INLINE) : cached);
+            }
+        }
+
+        /**
+         * @return next character or -1 if there are no more characters
+         */
+        private int next() {
+            while (pos >= buffer.length()) {
+                if (formatter == null) {
+                    return -1;
+                }
+                if (buffer.length() > 1) {
+                    // discard the consumed characters but the last one (required for correct spacing)
+                    buffer.delete(0, buffer.length() - 1);
+                    pos = 1;
+                }
+                if (!formatter.step()) {
+                    return -1;
+                }
+            }
+            char ch = buffer.charAt(pos);
+            pos++;
+            return ch;
+        }
+
+    }
+
+}
@@ -22,16 +22,20 @@ package de.calamanari.adl.irl;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import de.calamanari.adl.AudlangField;
 import de.calamanari.adl.AudlangValidationException;
+import de.calamanari.adl.ExpressionStats;
 import de.calamanari.adl.FormatStyle;
 
 /**
@@ -47,26 +51,49 @@ import de.calamanari.adl.FormatStyle;
  * <p>
  * See also <a href="https://github.com/KarlEilebrecht/audlang-spec/blob/main/doc/AudienceDefinitionLanguageSpecification.md#3-basic-expressions">§3</a> Audlang
  * Spec
+ * <p>
+ * <b>Note:</b> Equality and hash code are structural (computed once). The inline format is created <i>lazily</i> on first request.
  * 
- * @param argName attribute name
- * @param operator for matching the argument against the operand
- * @param operand single operand or null (IS UNKNOWN case)
- * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
 @JsonDeserialize(using = JsonDeserializer.None.class)
-public record MatchExpression(String argName, MatchOperator operator, @JsonInclude(JsonInclude.Include.NON_EMPTY) Operand operand, String inline)
-        implements SimpleExpression {
+public final class MatchExpression implements SimpleExpression {
+
+    /**
+     * Same as the implicit value of the former record, see {@link #readResolve()}
+     */
+    private static final long serialVersionUID = 0L;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MatchExpression.class);
 
+    private final String argName;
+
+    private final MatchOperator operator;
+
+    private final Operand operand;
+
+    private final transient int hashCode;
+
+    private transient String inline;
+
+    private transient List<AudlangField> allFields;
+
+    private transient ExpressionStats stats;
+
+    /**
+     * Sort key, see {@link #operandInline()}
+     */
+    private transient String operandInline;
+
     /**
      * @param argName attribute name
      * @param operator for matching the argument against the operand
      * @param operand single operand or null (IS UNKNOWN case)
-     * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
+     * @param inline this is an internal value computed on demand, no matter what you specify here, it will be ignored
      */
-    public MatchExpression(String argName, MatchOperator operator, Operand operand, @SuppressWarnings("java:S1172") String inline) {
+    @JsonCreator
+    public MatchExpression(@JsonProperty("arg_name") String argName, @JsonProperty("operator") MatchOperator operator,
+            @JsonProperty("operand") Operand operand, @JsonProperty("inline") @SuppressWarnings("java:S1172") String inline) {
         if (argName == null || argName.isEmpty()) {
             throw new AudlangValidationException(
                     String.format("argName must not be null or empty, given: argName=%s, operator=%s, operand=%s", argName, operator, operand));
@@ -117,7 +144,88 @@ public record MatchExpression(String argName, MatchOperator operator, @JsonInclu
         this.argName = argName;
         this.operator = operator;
         this.operand = operand;
-        this.inline = format(FormatStyle.INLINE);
+        this.hashCode = computeHashCode(argName, operator, operand);
+    }
+
+    /**
+     * @param argName
+     * @param operator
+     * @param operand
+     * @return structural hash code
+     */
+    private static int computeHashCode(String argName, MatchOperator operator, Operand operand) {
+        int res = 31 * argName.hashCode() + operator.ordinal();
+        if (operand != null) {
+            res = 31 * res + operand.hashCode();
+        }
+        return res;
+    }
+
+    /**
+     * @return attribute name
+     */
+    @JsonProperty("arg_name")
+    @Override
+    public String argName() {
+        return argName;
+    }
+
+    /**
+     * @return operator for matching the argument against the operand
+     */
+    @JsonProperty("operator")
+    @Override
+    public MatchOperator operator() {
+        return operator;
+    }
+
+    /**
+     * @return single operand or null (IS UNKNOWN case)
+     */
+    @JsonProperty("operand")
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    @Override
+    public Operand operand() {
+        return operand;
+    }
+
+    /**
+     * @return inline format of this expression, computed on first request
+     */
+    @JsonProperty("inline")
+    public String inline() {
+        String res = inline;
+        if (res == null) {
+            res = format(FormatStyle.INLINE);
+            inline = res;
+        }
+        return res;
+    }
+
+    /**
+     * @return the inline format if it was computed before, otherwise null
+     */
+    String cachedInline() {
+        return inline;
+    }
+
+    /**
+     * Returns the operand in inline format, computed on first request (comparison of matches with the same argName and operator).
+     * <p>
+     * In the common case (no quotes, no escaping, no reference) this is the operand's value itself, so the key does not cost any extra memory.
+     * 
+     * @return operand in inline format or null if there is no operand
+     */
+    String operandInline() {
+        String res = operandInline;
+        if (res == null && operand != null) {
+            res = operand.format(FormatStyle.INLINE);
+            if (res.equals(operand.value())) {
+                res = operand.value();
+            }
+            operandInline = res;
+        }
+        return res;
     }
 
     /**
@@ -147,7 +255,7 @@ public record MatchExpression(String argName, MatchOperator operator, @JsonInclu
             return isNotUnknown(argName);
         }
         else {
-            return new MatchExpression(argName, operator, operand, null);
+            return CoreExpressionInterner.intern(new MatchExpression(argName, operator, operand, null));
         }
     }
 
@@ -158,7 +266,7 @@ public record MatchExpression(String argName, MatchOperator operator, @JsonInclu
      * @return argName IS UNKNOWN
      */
     public static CoreExpression isUnknown(String argName) {
-        return new MatchExpression(argName, MatchOperator.IS_UNKNOWN, null, null);
+        return CoreExpressionInterner.intern(new MatchExpression(argName, MatchOperator.IS_UNKNOWN, null, null));
     }
 
     /**
@@ -171,6 +279,26 @@ public record MatchExpression(String argName, MatchOperator operator, @JsonInclu
         return isUnknown(argName).negate(true);
     }
 
+    @Override
+    public List<AudlangField> allFields() {
+        List<AudlangField> res = allFields;
+        if (res == null) {
+            res = SimpleExpression.super.allFields();
+            allFields = res;
+        }
+        return res;
+    }
+
+    @Override
+    public ExpressionStats stats() {
+        ExpressionStats res = stats;
+        if (res == null) {
+            res = ExpressionStats.of(this);
+            stats = res;
+        }
+        return res;
+    }
+
     @Override
     public void collectFieldsInternal(Map<String, AudlangField.Builder> fieldMap) {
 
@@ -191,17 +319,21 @@ public record MatchExpression(String argName, MatchOperator operator, @JsonInclu
 
     @Override
     public String toString() {
-        return inline;
+        return inline();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof MatchExpression match && match.inline.equals(this.inline);
+        if (obj == this) {
+            return true;
+        }
+        return obj instanceof MatchExpression match && match.hashCode == this.hashCode && match.argName.equals(this.argName)
+                && match.operator == this.operator && Objects.equals(match.operand, this.operand);
     }
 
     @Override
     public int hashCode() {
-        return inline.hashCode();
+        return hashCode;
     }
 
     @Override
@@ -215,7 +347,8 @@ public record MatchExpression(String argName, MatchOperator operator, @JsonInclu
             return -1;
         }
         else if (other instanceof MatchExpression otherMatch) {
-            int res = this.argName.compareTo(otherMatch.argName);
+            // identical argNames are common (siblings of a large ANY OF, canonical names from the SymbolTable)
+            int res = this.argName == otherMatch.argName ? 0 : this.argName.compareTo(otherMatch.argName);
             if (res != 0) {
                 return res;
             }
@@ -223,6 +356,7 @@ public record MatchExpression(String argName, MatchOperator operator, @JsonInclu
             if (res != 0) {
                 return res;
             }
+            return InlineFormatUtils.compareOperandsInline(this, otherMatch);
         }
         else if (other instanceof NegationExpression neg) {
             int res = this.compareTo(neg.delegate());
@@ -232,7 +366,7 @@ public record MatchExpression(String argName, MatchOperator operator, @JsonInclu
             }
             return res;
         }
-        return SimpleExpression.super.compareTo(other);
+        return InlineFormatUtils.compareInline(this, other);
     }
 
     @Override
@@ -259,11 +393,11 @@ public record MatchExpression(String argName, MatchOperator operator, @JsonInclu
     @Override
     public CoreExpression negate(boolean strict) {
         if (strict || operator() == MatchOperator.IS_UNKNOWN) {
-            return new NegationExpression(this, null);
+            return CoreExpressionInterner.intern(new NegationExpression(this, null));
         }
         else {
             List<CoreExpression> orMembers = new ArrayList<>();
-            orMembers.add(new NegationExpression(this, null));
+            orMembers.add(CoreExpressionInterner.intern(new NegationExpression(this, null)));
             orMembers.add(MatchExpression.of(argName, MatchOperator.IS_UNKNOWN, null));
             if (operand.isReference()) {
                 orMembers.add(MatchExpression.of(operand.value(), MatchOperator.IS_UNKNOWN, null));
@@ -272,4 +406,16 @@ public record MatchExpression(String argName, MatchOperator operator, @JsonInclu
         }
     }
 
+    /**
+     * Validates the de-serialized instance the same way as a new one
+     * <p>
+     * The serial form is compatible to the former record version of this class, its <code>inline</code> component is ignored on read and no longer
+     * written (the record computed it anyway).
+     * 
+     * @return validated instance
+     */
+    private Object readResolve() {
+        return new MatchExpression(argName, operator, operand, null);
+    }
+
 }
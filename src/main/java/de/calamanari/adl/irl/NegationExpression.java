@@ -25,15 +25,17 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import de.calamanari.adl.AudlangField;
 import de.calamanari.adl.AudlangValidationException;
 import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.ExpressionStats;
 import de.calamanari.adl.FormatStyle;
 import de.calamanari.adl.FormatUtils.FormatInfo;
-import de.calamanari.adl.Visit;
 
 import static de.calamanari.adl.FormatUtils.appendNegationExpressionMultiLine;
 import static de.calamanari.adl.FormatUtils.appendNegationExpressionSingleLine;
@@ -47,24 +49,68 @@ import static de.calamanari.adl.FormatUtils.appendNegationExpressionSingleLine;
  * negations <i>trickle down</i> to the leafs ({@link MatchExpression}s).
  * <p>
  * See also <a href="https://github.com/KarlEilebrecht/audlang-spec/blob/main/doc/AudienceDefinitionLanguageSpecification.md#5-negation">§5</a> Audlang Spec
+ * <p>
+ * <b>Note:</b> Equality and hash code are structural (computed once). The inline format is created <i>lazily</i> on first request.
  * 
- * @param delegate {@link MatchExpression} to be negated
- * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
 @JsonDeserialize(using = JsonDeserializer.None.class)
-public record NegationExpression(MatchExpression delegate, String inline) implements SimpleExpression {
+public final class NegationExpression implements SimpleExpression {
+
+    /**
+     * Same as the implicit value of the former record, see {@link #readResolve()}
+     */
+    private static final long serialVersionUID = 0L;
+
+    private final MatchExpression delegate;
+
+    private final transient int hashCode;
+
+    private transient String inline;
+
+    private transient List<AudlangField> allFields;
+
+    private transient ExpressionStats stats;
 
     /**
      * @param delegate {@link MatchExpression} to be negated
-     * @param inline this is an internal value computed by the constructor, no matter what you specify here, it will be ignored
+     * @param inline this is an internal value computed on demand, no matter what you specify here, it will be ignored
      */
-    public NegationExpression(MatchExpression delegate, @SuppressWarnings("java:S1172") String inline) {
+    @JsonCreator
+    public NegationExpression(@JsonProperty("delegate") MatchExpression delegate, @JsonProperty("inline") @SuppressWarnings("java:S1172") String inline) {
         if (delegate == null) {
             throw new AudlangValidationException("The delegate of a negation must not be null.");
         }
         this.delegate = delegate;
-        this.inline = format(FormatStyle.INLINE);
+        this.hashCode = 31 * delegate.hashCode() + 1;
+    }
+
+    /**
+     * @return {@link MatchExpression} to be negated
+     */
+    @JsonProperty("delegate")
+    public MatchExpression delegate() {
+        return delegate;
+    }
+
+    /**
+     * @return inline format of this expression, computed on first request
+     */
+    @JsonProperty("inline")
+    public String inline() {
+        String res = inline;
+        if (res == null) {
+            res = format(FormatStyle.INLINE);
+            inline = res;
+        }
+        return res;
+    }
+
+    /**
+     * @return the inline format if it was computed before, otherwise null
+     */
+    String cachedInline() {
+        return inline;
     }
 
     /**
@@ -87,6 +133,26 @@ public record NegationExpression(MatchExpression delegate, String inline) implem
         return Collections.unmodifiableList(Arrays.asList(delegate));
     }
 
+    @Override
+    public List<AudlangField> allFields() {
+        List<AudlangField> res = allFields;
+        if (res == null) {
+            res = SimpleExpression.super.allFields();
+            allFields = res;
+        }
+        return res;
+    }
+
+    @Override
+    public ExpressionStats stats() {
+        ExpressionStats res = stats;
+        if (res == null) {
+            res = ExpressionStats.of(this);
+            stats = res;
+        }
+        return res;
+    }
+
     @Override
     public void collectFieldsInternal(Map<String, AudlangField.Builder> fieldMap) {
         delegate.collectFieldsInternal(fieldMap);
@@ -104,17 +170,17 @@ public record NegationExpression(MatchExpression delegate, String inline) implem
 
     @Override
     public String toString() {
-        return inline;
+        return inline();
     }
 
     @Override
     public boolean equals(Object obj) {
-        return obj instanceof NegationExpression neg && neg.inline.equals(this.inline);
+        return obj == this || (obj instanceof NegationExpression neg && neg.hashCode == this.hashCode && neg.delegate.equals(this.delegate));
     }
 
     @Override
     public int hashCode() {
-        return inline.hashCode();
+        return hashCode;
     }
 
     @Override
@@ -135,14 +201,15 @@ public record NegationExpression(MatchExpression delegate, String inline) implem
             }
             return res;
         }
-        return SimpleExpression.super.compareTo(other);
+        else if (other instanceof NegationExpression neg && delegate.argName().equals(neg.argName()) && delegate.operator() == neg.operator()) {
+            return InlineFormatUtils.compareOperandsInline(delegate, neg.delegate());
+        }
+        return InlineFormatUtils.compareInline(this, other);
     }
 
     @Override
     public void accept(CoreExpressionVisitor visitor) {
-        visitor.visit(this, Visit.ENTER);
-        delegate.accept(visitor);
-        visitor.visit(this, Visit.EXIT);
+        CoreExpressionTraversal.traverse(this, visitor);
     }
 
     @Override
@@ -157,10 +224,10 @@ public record NegationExpression(MatchExpression delegate, String inline) implem
             // special case Audlang Spec §5, regarding NOT STRICT NOT arg = value or ref, must include the unknowns
             List<CoreExpression> orMembers = new ArrayList<>();
             orMembers.add(delegate);
-            orMembers.add(new MatchExpression(delegate.argName(), MatchOperator.IS_UNKNOWN, null, null));
+            orMembers.add(MatchExpression.isUnknown(delegate.argName()));
             Operand operand = delegate.operand();
             if (operand.isReference()) {
-                orMembers.add(new MatchExpression(operand.value(), MatchOperator.IS_UNKNOWN, null, null));
+                orMembers.add(MatchExpression.isUnknown(operand.value()));
             }
             return CombinedExpression.of(orMembers, CombinedExpressionType.OR);
         }
@@ -181,4 +248,16 @@ public record NegationExpression(MatchExpression delegate, String inline) implem
         return delegate.argName();
     }
 
+    /**
+     * Validates the de-serialized instance the same way as a new one
+     * <p>
+     * The serial form is compatible to the former record version of this class, its <code>inline</code> component is ignored on read and no longer
+     * written (the record computed it anyway).
+     * 
+     * @return validated instance
+     */
+    private Object readResolve() {
+        return new NegationExpression(delegate, null);
+    }
+
 }
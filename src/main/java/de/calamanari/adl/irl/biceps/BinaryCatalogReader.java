@@ -0,0 +1,273 @@
+//@formatter:off
+/*
+ * BinaryCatalogReader
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.irl.biceps;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.calamanari.adl.AudlangValidationException;
+import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.irl.CombinedExpression;
+import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.CoreExpressionInterner;
+import de.calamanari.adl.irl.biceps.CoreExpressionCodec.Dictionary;
+
+import static de.calamanari.adl.irl.biceps.CoreExpressionCodec.decodeCombinedExpressionId;
+import static de.calamanari.adl.irl.biceps.CoreExpressionCodec.getNodeType;
+import static de.calamanari.adl.irl.biceps.CoreExpressionCodec.isCombinedExpressionId;
+
+/**
+ * The {@link BinaryCatalogReader} reads a catalog written by the {@link BinaryCatalogWriter} in a single pass. See {@link BinaryCatalogWriter} for the
+ * format.
+ * <p>
+ * Member arrays are always written before any array or root referencing them, so every combined expression gets created exactly once per segment, no matter
+ * how often it is referenced.
+ * <p>
+ * Instances are stateless and can be used concurrently.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public class BinaryCatalogReader {
+
+    /**
+     * Reads the catalog from the given file channel (memory-mapped, starting at the channel's current position).
+     * 
+     * @param channel source
+     * @return list of the expressions in the catalog, <b>mutable</b>
+     * @throws IOException if reading failed
+     * @throws ExpressionCodecException if the content is not a valid binary catalog
+     */
+    public List<CoreExpression> read(FileChannel channel) throws IOException {
+        long position = channel.position();
+        return read(channel.map(FileChannel.MapMode.READ_ONLY, position, channel.size() - position));
+    }
+
+    /**
+     * Reads the catalog from the given buffer (starting at the buffer's current position).
+     * 
+     * @param buffer source
+     * @return list of the expressions in the catalog, <b>mutable</b>
+     * @throws ExpressionCodecException if the content is not a valid binary catalog
+     */
+    public List<CoreExpression> read(ByteBuffer buffer) {
+        try {
+            int magic = buffer.getInt();
+            if (magic != BinaryCatalogWriter.MAGIC) {
+                throw new ExpressionCodecException(
+                        String.format("Not a binary catalog, expected magic 0x%08X, given: 0x%08X", BinaryCatalogWriter.MAGIC, magic));
+            }
+            byte version = buffer.get();
+            if (version != BinaryCatalogWriter.VERSION) {
+                throw new ExpressionCodecException(
+                        String.format("Unsupported binary catalog version, expected: %s, given: %s", BinaryCatalogWriter.VERSION, version));
+            }
+            int numberOfExpressions = readCount(buffer);
+            List<CoreExpression> res = new ArrayList<>(numberOfExpressions);
+            while (res.size() < numberOfExpressions) {
+                readSegment(buffer, res);
+            }
+            return res;
+        }
+        catch (BufferUnderflowException ex) {
+            throw new ExpressionCodecException("Unexpected end of binary catalog", ex);
+        }
+    }
+
+    private static void readSegment(ByteBuffer buffer, List<CoreExpression> result) {
+        int numberOfExpressions = readCount(buffer);
+
+        List<String> argNames = readStrings(buffer);
+        List<String> values = readStrings(buffer);
+        Dictionary dictionary = new Dictionary(argNames, values);
+        if (!isSameOrder(dictionary, argNames, values)) {
+            throw new ExpressionCodecException("Invalid dictionary section in binary catalog, names and values must be sorted and unique");
+        }
+        SegmentDecoder decoder = new SegmentDecoder(new CoreExpressionCodec(dictionary), readCount(buffer));
+        for (int id = 0; id < decoder.memberLists.length; id++) {
+            int[] members = readDeltas(buffer, readCount(buffer));
+            if (members.length < 2) {
+                throw new ExpressionCodecException(String.format("Invalid member array in binary catalog, expected at least 2 members, given: %s (id=%s)",
+                        Arrays.toString(members), id));
+            }
+            List<CoreExpression> memberList = new ArrayList<>(members.length);
+            for (int member : members) {
+                memberList.add(decoder.decode(member, id));
+            }
+            decoder.memberLists[id] = memberList;
+        }
+
+        int[] roots = readDeltas(buffer, numberOfExpressions);
+        for (int root : roots) {
+            result.add(decoder.decode(root, decoder.memberLists.length));
+        }
+    }
+
+    /**
+     * @param dictionary
+     * @param argNames as read
+     * @param values as read
+     * @return true if the dictionary assigned the indexes in the order of the given lists (the writer's order)
+     */
+    private static boolean isSameOrder(Dictionary dictionary, List<String> argNames, List<String> values) {
+        if (dictionary.getNumberOfArgumentNames() != argNames.size() || dictionary.getNumberOfValues() != values.size()) {
+            return false;
+        }
+        for (int idx = 0; idx < argNames.size(); idx++) {
+            if (!dictionary.getArgumentName(idx).equals(argNames.get(idx))) {
+                return false;
+            }
+        }
+        for (int idx = 0; idx < values.size(); idx++) {
+            if (!dictionary.getValue(idx).equals(values.get(idx))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<String> readStrings(ByteBuffer buffer) {
+        int numberOfStrings = readCount(buffer);
+        List<String> res = new ArrayList<>(numberOfStrings);
+        for (int idx = 0; idx < numberOfStrings; idx++) {
+            byte[] bytes = new byte[readCount(buffer)];
+            buffer.get(bytes);
+            res.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return res;
+    }
+
+    private static int[] readDeltas(ByteBuffer buffer, int numberOfNodes) {
+        int[] res = new int[numberOfNodes];
+        int prev = 0;
+        for (int idx = 0; idx < numberOfNodes; idx++) {
+            int zigzag = readVarInt(buffer);
+            prev = prev + ((zigzag >>> 1) ^ -(zigzag & 1));
+            res[idx] = prev;
+        }
+        return res;
+    }
+
+    /**
+     * @param buffer
+     * @return non-negative varint (count or length), each counted element takes at least one byte
+     * @throws ExpressionCodecException if the value is negative or too large for the remaining data
+     */
+    private static int readCount(ByteBuffer buffer) {
+        int res = readVarInt(buffer);
+        if (res < 0 || res > buffer.remaining()) {
+            throw new ExpressionCodecException(String.format("Invalid count or length in binary catalog: %s (remaining bytes: %s)", res, buffer.remaining()));
+        }
+        return res;
+    }
+
+    /**
+     * Reads an unsigned varint (1-5 bytes)
+     * 
+     * @param buffer
+     * @return value
+     */
+    private static int readVarInt(ByteBuffer buffer) {
+        int res = 0;
+        for (int shift = 0; shift < 35; shift = shift + 7) {
+            byte b = buffer.get();
+            res = res | ((b & 0x7F) << shift);
+            if (b >= 0) {
+                return res;
+            }
+        }
+        throw new ExpressionCodecException("Malformed varint in binary catalog");
+    }
+
+    /**
+     * Decodes the nodes of a single segment, every combined expression gets created only once per type (AND/OR)
+     */
+    private static class SegmentDecoder {
+
+        final CoreExpressionCodec codec;
+
+        /**
+         * decoded members by member array id
+         */
+        final List<CoreExpression>[] memberLists;
+
+        final CoreExpression[] decodedAnds;
+
+        final CoreExpression[] decodedOrs;
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        SegmentDecoder(CoreExpressionCodec codec, int numberOfMemberArrays) {
+            this.codec = codec;
+            this.memberLists = new List[numberOfMemberArrays];
+            this.decodedAnds = new CoreExpression[numberOfMemberArrays];
+            this.decodedOrs = new CoreExpression[numberOfMemberArrays];
+        }
+
+        /**
+         * @param node
+         * @param maxId exclusive upper bound for referenced member arrays (only arrays read before)
+         * @return decoded expression
+         */
+        CoreExpression decode(int node, int maxId) {
+            if (!isCombinedExpressionId(node)) {
+                return codec.decode(node);
+            }
+            int id = decodeCombinedExpressionId(node);
+            if (id >= maxId) {
+                throw new ExpressionCodecException(String.format("Invalid reference to member array %s in binary catalog, expected id < %s", id, maxId));
+            }
+            CoreExpression[] decoded = getNodeType(node) == NodeType.AND ? decodedAnds : decodedOrs;
+            CoreExpression res = decoded[id];
+            if (res == null) {
+                res = createCombinedExpression(memberLists[id], getNodeType(node) == NodeType.AND ? CombinedExpressionType.AND : CombinedExpressionType.OR,
+                        id);
+                decoded[id] = res;
+            }
+            return res;
+        }
+
+        /**
+         * Every combined expression is normalized by construction (the constructor rejects any members
+         * {@link CombinedExpression#of(List, CombinedExpressionType)} would change), so we can re-create the written expression <i>as is</i>. Invalid members
+         * (corrupted catalog) get reported instead of silently normalized.
+         * 
+         * @param members
+         * @param combiType
+         * @param id of the member array
+         * @return combined expression equal to the one written
+         * @throws ExpressionCodecException if the members are not valid for a combined expression
+         */
+        private static CoreExpression createCombinedExpression(List<CoreExpression> members, CombinedExpressionType combiType, int id) {
+            try {
+                return CoreExpressionInterner.intern(new CombinedExpression(combiType, members, null));
+            }
+            catch (AudlangValidationException ex) {
+                throw new ExpressionCodecException(String.format("Invalid member array in binary catalog (id=%s)", id), ex);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,318 @@
+//@formatter:off
+/*
+ * BinaryCatalogWriter
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.irl.biceps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.calamanari.adl.AudlangField;
+import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.irl.CombinedExpression;
+import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.biceps.CoreExpressionCodec.Dictionary;
+
+/**
+ * The {@link BinaryCatalogWriter} writes a list of {@link CoreExpression}s (catalog) in a compact binary format based on the encoding of the
+ * {@link CoreExpressionCodec} to be read by the {@link BinaryCatalogReader}.
+ * <p>
+ * <b>Format:</b>
+ * <ul>
+ * <li>Header: the bytes {@link #MAGIC}, the format {@link #VERSION} (1 byte) and the number of expressions in the catalog.</li>
+ * <li>One or more segments, each consisting of
+ * <ul>
+ * <li>the number of expressions in this segment,</li>
+ * <li>the dictionary section: number of argument names followed by the names, number of values followed by the values (UTF-8 with length prefix),</li>
+ * <li>the member array section: number of member arrays, each array is the number of members followed by the encoded members (see
+ * {@link MemberArrayRegistry}),</li>
+ * <li>the root section: one encoded root node per expression.</li>
+ * </ul>
+ * </li>
+ * </ul>
+ * All counts and lengths are unsigned varints (7 bits per byte, least significant group first). Members and roots are delta-encoded (difference to the
+ * previous member resp. root) as zigzag-varints, so that similar neighbors (e.g., matches on the same argument) take 1-3 bytes instead of 4.
+ * <p>
+ * Each segment has its own dictionary, so the catalog is not limited by the {@link CoreExpressionCodec#MAX_NUMBER_OF_VALUES}. A new segment starts whenever
+ * the names or values of the next expression would exceed the limit. Identical sub-expressions within a segment are only stored once (member arrays are
+ * registered with a {@link MemberArrayRegistry}).
+ * <p>
+ * In contrast to {@link EncodedExpressionTree#createNode(CoreExpression)} the writer does not consolidate any members, so that the expressions read back are
+ * equal to the ones written.
+ * <p>
+ * Instances are not safe to be used concurrently.
+ * 
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+public class BinaryCatalogWriter {
+
+    /**
+     * Leading bytes of a binary catalog: "ADLC"
+     */
+    public static final int MAGIC = 0x41444C43;
+
+    /**
+     * Current version of the binary catalog format
+     */
+    public static final byte VERSION = 1;
+
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    /**
+     * Writes the given expressions to the channel (e.g., a {@link java.nio.channels.FileChannel}).
+     * 
+     * @param expressions catalog
+     * @param channel destination
+     * @throws IOException if writing failed
+     * @throws ExpressionCodecException if any of the expressions could not be encoded
+     */
+    public void write(List<CoreExpression> expressions, WritableByteChannel channel) throws IOException {
+        buffer.clear();
+        writeHeader(expressions.size());
+        flush(channel);
+        Set<String> argNames = new HashSet<>();
+        Set<String> values = new HashSet<>();
+        int start = 0;
+        while (start < expressions.size()) {
+            int end = findSegmentEnd(expressions, start, argNames, values);
+            writeSegment(expressions.subList(start, end), argNames, values);
+            flush(channel);
+            start = end;
+        }
+    }
+
+    /**
+     * Writes the given expressions to a new buffer.
+     * 
+     * @param expressions catalog
+     * @return buffer with the binary catalog, ready to be read
+     * @throws ExpressionCodecException if any of the expressions could not be encoded
+     */
+    public ByteBuffer writeToBuffer(List<CoreExpression> expressions) {
+        buffer.clear();
+        writeHeader(expressions.size());
+        Set<String> argNames = new HashSet<>();
+        Set<String> values = new HashSet<>();
+        int start = 0;
+        while (start < expressions.size()) {
+            int end = findSegmentEnd(expressions, start, argNames, values);
+            writeSegment(expressions.subList(start, end), argNames, values);
+            start = end;
+        }
+        ByteBuffer res = buffer.flip();
+        buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+        return res;
+    }
+
+    /**
+     * @param expressions
+     * @param start index of the first expression of the segment
+     * @param argNames (cleared) to be filled with the argument names of the segment
+     * @param values (cleared) to be filled with the values of the segment
+     * @return index after the last expression of the segment
+     */
+    private static int findSegmentEnd(List<CoreExpression> expressions, int start, Set<String> argNames, Set<String> values) {
+        argNames.clear();
+        values.clear();
+        for (int idx = start; idx < expressions.size(); idx++) {
+            List<AudlangField> fields = expressions.get(idx).allFields();
+            // sets (no lists), the fields of a large expression can reference many distinct values
+            Set<String> newArgNames = new HashSet<>();
+            Set<String> newValues = new HashSet<>();
+            for (AudlangField field : fields) {
+                addIfNew(argNames, newArgNames, field.argName());
+                field.refArgNames().forEach(refArgName -> addIfNew(argNames, newArgNames, refArgName));
+                field.values().forEach(value -> addIfNew(values, newValues, value));
+            }
+            if (idx > start && (argNames.size() + newArgNames.size() > CoreExpressionCodec.MAX_NUMBER_OF_VALUES
+                    || values.size() + newValues.size() > CoreExpressionCodec.MAX_NUMBER_OF_VALUES)) {
+                return idx;
+            }
+            argNames.addAll(newArgNames);
+            values.addAll(newValues);
+        }
+        return expressions.size();
+    }
+
+    private static void addIfNew(Set<String> existing, Set<String> newEntries, String entry) {
+        if (!existing.contains(entry)) {
+            newEntries.add(entry);
+        }
+    }
+
+    private void writeHeader(int numberOfExpressions) {
+        ensureCapacity(10);
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        writeVarInt(numberOfExpressions);
+    }
+
+    private void writeSegment(List<CoreExpression> expressions, Set<String> argNames, Set<String> values) {
+        Dictionary dictionary = new Dictionary(new ArrayList<>(argNames), new ArrayList<>(values));
+        CoreExpressionCodec codec = new CoreExpressionCodec(dictionary);
+        MemberArrayRegistry registry = new MemberArrayRegistry();
+
+        int[] roots = new int[expressions.size()];
+        for (int idx = 0; idx < roots.length; idx++) {
+            roots[idx] = encode(expressions.get(idx), codec, registry);
+        }
+
+        writeVarInt(expressions.size());
+
+        writeVarInt(dictionary.getNumberOfArgumentNames());
+        for (int idx = 0; idx < dictionary.getNumberOfArgumentNames(); idx++) {
+            writeString(dictionary.getArgumentName(idx));
+        }
+        writeVarInt(dictionary.getNumberOfValues());
+        for (int idx = 0; idx < dictionary.getNumberOfValues(); idx++) {
+            writeString(dictionary.getValue(idx));
+        }
+
+        int numberOfMemberArrays = registry.getNumberOfValidIds();
+        writeVarInt(numberOfMemberArrays);
+        for (int id = 0; id < numberOfMemberArrays; id++) {
+            int[] members = registry.lookupMemberArray(id);
+            writeVarInt(members.length);
+            writeDeltas(members);
+        }
+
+        writeDeltas(roots);
+    }
+
+    /**
+     * Encodes the expression <i>as is</i> (no consolidation of members), members are registered before their parents, so a reader can resolve the member
+     * arrays in order.
+     * <p>
+     * The nesting is kept in an explicit stack (post-order, same order as a recursive implementation), so the depth of an expression is not limited by the
+     * thread's stack size.
+     * 
+     * @param expression
+     * @param codec
+     * @param registry
+     * @return encoded node
+     */
+    private static int encode(CoreExpression expression, CoreExpressionCodec codec, MemberArrayRegistry registry) {
+        if (!(expression instanceof CombinedExpression root)) {
+            return codec.encode(expression);
+        }
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(root));
+        int res = 0;
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            if (frame.nextMemberIdx < frame.members.length) {
+                CoreExpression member = frame.expression.members().get(frame.nextMemberIdx);
+                if (member instanceof CombinedExpression cmb) {
+                    stack.push(new Frame(cmb));
+                }
+                else {
+                    frame.members[frame.nextMemberIdx] = codec.encode(member);
+                    frame.nextMemberIdx++;
+                }
+            }
+            else {
+                stack.pop();
+                int id = registry.registerMemberArray(frame.members);
+                res = CoreExpressionCodec.encodeCombinedExpressionId(id,
+                        frame.expression.combiType() == CombinedExpressionType.AND ? NodeType.AND : NodeType.OR);
+                Frame parent = stack.peek();
+                if (parent != null) {
+                    parent.members[parent.nextMemberIdx] = res;
+                    parent.nextMemberIdx++;
+                }
+            }
+        }
+        return res;
+    }
+
+    private void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void writeDeltas(int[] nodes) {
+        int prev = 0;
+        for (int node : nodes) {
+            int delta = node - prev;
+            writeVarInt((delta << 1) ^ (delta >> 31));
+            prev = node;
+        }
+    }
+
+    /**
+     * Writes the given value as an unsigned varint (1-5 bytes)
+     * 
+     * @param value
+     */
+    private void writeVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void ensureCapacity(int numberOfBytes) {
+        if (buffer.remaining() < numberOfBytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + numberOfBytes));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+
+    private void flush(WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Combined expression being encoded, its encoded members so far and the position of the next member
+     */
+    private static final class Frame {
+
+        private final CombinedExpression expression;
+
+        private final int[] members;
+
+        private int nextMemberIdx = 0;
+
+        private Frame(CombinedExpression expression) {
+            this.expression = expression;
+            this.members = new int[expression.members().size()];
+        }
+
+    }
+
+}
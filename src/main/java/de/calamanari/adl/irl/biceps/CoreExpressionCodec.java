@@ -27,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 
 import de.calamanari.adl.AudlangField;
+import de.calamanari.adl.SymbolTable;
 import de.calamanari.adl.irl.CoreExpression;
 import de.calamanari.adl.irl.MatchExpression;
 import de.calamanari.adl.irl.MatchOperator;
@@ -258,6 +259,21 @@ public class CoreExpressionCodec implements Serializable {
         this.dictionary = dictionary;
     }
 
+    /**
+     * Returns a copy of this codec that shares the immutable {@link Dictionary} but has its own caches (pre-filled with the entries of this instance).
+     * <p>
+     * The caches make a codec instance unsafe to be used concurrently, the copy allows using the same encoding in another thread.
+     * 
+     * @return copy of this codec
+     */
+    public CoreExpressionCodec copy() {
+        CoreExpressionCodec res = new CoreExpressionCodec(dictionary);
+        res.encodedExpressionCache.putAll(encodedExpressionCache);
+        res.decodedExpressionCache.putAll(decodedExpressionCache);
+        res.decodedOperandCache.putAll(decodedOperandCache);
+        return res;
+    }
+
     /**
      * @param encodedExpression
      * @return true if the given encoded expression is a negation
@@ -916,12 +932,12 @@ public class CoreExpressionCodec implements Serializable {
          */
         private Dictionary(List<String> argNames, List<String> values, boolean skipValidation) {
             if (skipValidation) {
-                this.argNames = Collections.unmodifiableList(argNames);
-                this.values = Collections.unmodifiableList(values);
+                this.argNames = Collections.unmodifiableList(canonicalize(argNames));
+                this.values = Collections.unmodifiableList(canonicalize(values));
             }
             else {
-                this.argNames = Collections.unmodifiableList(dedup(argNames));
-                this.values = Collections.unmodifiableList(dedup(values));
+                this.argNames = Collections.unmodifiableList(canonicalize(dedup(argNames)));
+                this.values = Collections.unmodifiableList(canonicalize(dedup(values)));
             }
             this.argNameToIndexMap = createIndexMap(this.argNames);
             this.valueToIndexMap = createIndexMap(this.values);
@@ -1004,6 +1020,19 @@ public class CoreExpressionCodec implements Serializable {
             return valuesSorted;
         }
 
+        /**
+         * Replaces the names resp. values with the canonical instances from the global {@link SymbolTable} if enabled
+         * 
+         * @param uniqueValues modifiable list
+         * @return the given list
+         */
+        private static List<String> canonicalize(List<String> uniqueValues) {
+            if (SymbolTable.isGlobalEnabled()) {
+                uniqueValues.replaceAll(SymbolTable::canonicalize);
+            }
+            return uniqueValues;
+        }
+
         /**
          * Creates the forward-index (value-to-number) (backward is implicit because the values corresponds to the list position)
          * 
@@ -1068,6 +1097,20 @@ public class CoreExpressionCodec implements Serializable {
             return values.get(idx);
         }
 
+        /**
+         * @return number of argument names in this dictionary, valid indexes are <code>0 .. n-1</code>
+         */
+        public int getNumberOfArgumentNames() {
+            return argNames.size();
+        }
+
+        /**
+         * @return number of values in this dictionary, valid indexes are <code>0 .. n-1</code>
+         */
+        public int getNumberOfValues() {
+            return values.size();
+        }
+
         /**
          * This method creates a <i>new Dictionary</i> instance with the merged argument names and values.
          * <p>
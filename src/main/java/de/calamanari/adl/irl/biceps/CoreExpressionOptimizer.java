@@ -70,7 +70,7 @@ public class CoreExpressionOptimizer implements ExpressionTreeProcessor {
             LOGGER.trace("process BEFORE: {}", debugStringBefore);
         }
 
-        tree.getMemberArrayRegistry().triggerHousekeeping(rootNode);
+        tree.compact();
 
         ImplicationResolver implicationResolver = new ImplicationResolver(timeout);
         OrOfAndNormalizer orOfAndNormalizer = new OrOfAndNormalizer(implicationResolver, timeout);
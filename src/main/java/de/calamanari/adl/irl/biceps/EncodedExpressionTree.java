@@ -128,7 +128,19 @@ public class EncodedExpressionTree implements Serializable {
     public EncodedExpressionTree copy() {
         EncodedExpressionTree res = new EncodedExpressionTree(memberArrayRegistry.copy());
         res.codec = codec;
-        res.rootLevel = rootLevel.copy();
+        res.rootLevel = rootLevel == null ? null : rootLevel.copy();
+        return res;
+    }
+
+    /**
+     * Returns a copy of this tree like {@link #copy()} but with a copy of the codec (see {@link CoreExpressionCodec#copy()}), so that the copy can be used
+     * independently (e.g., by another thread).
+     * 
+     * @return deep copy of the current tree, unrelated to this instance
+     */
+    public EncodedExpressionTree deepCopy() {
+        EncodedExpressionTree res = copy();
+        res.codec = codec == null ? null : codec.copy();
         return res;
     }
 
@@ -243,11 +255,16 @@ public class EncodedExpressionTree implements Serializable {
             throw new IllegalStateException("Cannot create node for expression without codec (instance not initialized), given: " + expression);
         }
         if (expression instanceof CombinedExpression cmb) {
-            GrowingIntArray members = new GrowingIntArray(cmb.members().size());
-            for (CoreExpression memberExpression : cmb.members()) {
-                members.add(createNode(memberExpression));
+            GrowingIntArray members = GrowingIntArray.borrow(cmb.members().size());
+            try {
+                for (CoreExpression memberExpression : cmb.members()) {
+                    members.add(createNode(memberExpression));
+                }
+                return createNode(cmb.combiType() == CombinedExpressionType.AND ? NodeType.AND : NodeType.OR, members);
+            }
+            finally {
+                members.release();
             }
-            return createNode(cmb.combiType() == CombinedExpressionType.AND ? NodeType.AND : NodeType.OR, members);
         }
         else {
             return codec.encode(expression);
@@ -504,6 +521,19 @@ public class EncodedExpressionTree implements Serializable {
         }
     }
 
+    /**
+     * Runs the mark-and-compact housekeeping of the {@link MemberArrayRegistry} with the tree's root node, see {@link MemberArrayRegistry#compact(int)}, and
+     * updates the root node.
+     * <p>
+     * <b>Important:</b> Afterwards, only the root node of this tree and its members are valid, any other node obtained earlier (e.g., from another level) must
+     * no longer be used. Thus, this method should only be called at the end of a processing step.
+     * 
+     * @throws IllegalStateException if the tree currently has no root or multiple roots
+     */
+    public void compact() {
+        setRootNode(memberArrayRegistry.compact(getRootNode()));
+    }
+
     /**
      * @return the registry that holds the member arrays of the combined nodes of this tree
      */
@@ -543,10 +573,15 @@ public class EncodedExpressionTree implements Serializable {
         if (getNodeType(node) == NodeType.LEAF) {
             return new int[] { node };
         }
-        GrowingIntArray result = new GrowingIntArray();
-        collectLeaves(node, result);
-        MemberUtils.sortDistinctMembers(result);
-        return result.toArray();
+        GrowingIntArray result = GrowingIntArray.borrow(GrowingIntArray.DEFAULT_START_SIZE);
+        try {
+            collectLeaves(node, result);
+            MemberUtils.sortDistinctMembers(result);
+            return result.toArray();
+        }
+        finally {
+            result.release();
+        }
     }
 
     /**
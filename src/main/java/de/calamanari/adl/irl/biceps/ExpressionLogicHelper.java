@@ -803,11 +803,16 @@ public class ExpressionLogicHelper implements Serializable {
     public int[] expandCombinedNodesOfSameType(NodeType parentNodeType, int[] members) {
 
         if (MemberUtils.containsAnyCombinedMember(members)) {
-            GrowingIntArray temp = new GrowingIntArray(members.length);
-            for (int memberIdx = 0; memberIdx < members.length; memberIdx++) {
-                expandCombinedNodesOfSameType(parentNodeType, members[memberIdx], temp, memberIdx, false);
+            GrowingIntArray temp = GrowingIntArray.borrow(members.length);
+            try {
+                for (int memberIdx = 0; memberIdx < members.length; memberIdx++) {
+                    expandCombinedNodesOfSameType(parentNodeType, members[memberIdx], temp, memberIdx, false);
+                }
+                return temp.toArray();
+            }
+            finally {
+                temp.release();
             }
-            return temp.toArray();
         }
         else {
             return members;
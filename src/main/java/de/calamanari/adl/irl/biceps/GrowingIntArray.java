@@ -20,12 +20,23 @@
 package de.calamanari.adl.irl.biceps;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 
 /**
  * Lean helper structure to store int-arrays before knowing the exact number.
  * <p>
- * The array underneath grows infinitely. To avoid dealing with wrapper objects this class does not implement the List interface.
+ * The array underneath grows infinitely (geometrically, so appending n elements takes amortized linear time). To avoid dealing with wrapper objects this class
+ * does not implement the List interface.
+ * <p>
+ * For temporary arrays in hot paths there is an <i>opt-in</i> per-thread pool: {@link #borrow(int)} returns an instance backed by a previously released
+ * internal array, {@link #release()} returns the internal array to the pool of the current thread. This way, repeated runs (e.g., the steps of an
+ * optimization) reuse the same internal arrays instead of allocating new ones.
+ * <p>
+ * Pooling is <b>disabled</b> by default, see {@link #setPoolingEnabled(boolean)}. Without pooling {@link #borrow(int)} simply creates a new instance and
+ * {@link #release()} only clears the instance. The pool of a thread is limited to {@value #MAX_POOLED_INTS_PER_THREAD} ints in total (1 MB), virtual
+ * threads never pool (they are usually too short-lived to benefit).
  * 
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
@@ -34,7 +45,7 @@ public class GrowingIntArray implements Serializable {
     private static final long serialVersionUID = -3920646968344815220L;
 
     /**
-     * Fixed increment in case the existing array is too small
+     * Minimum increment in case the existing array is too small, beyond that the array grows by half of its current capacity
      */
     public static final int SIZE_INCREMENT = 100;
 
@@ -43,8 +54,29 @@ public class GrowingIntArray implements Serializable {
      */
     public static final int DEFAULT_START_SIZE = 10;
 
+    /**
+     * Maximum number of ints (sum of the lengths of all internal arrays) kept in the pool of a single thread: {@value}
+     */
+    public static final int MAX_POOLED_INTS_PER_THREAD = 262_144;
+
+    /**
+     * Largest array size we can safely request from the JVM
+     */
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private static final int[] EMPTY_DATA = new int[0];
+
+    private static final ThreadLocal<Pool> POOL = ThreadLocal.withInitial(Pool::new);
+
+    private static volatile boolean poolingEnabled = false;
+
     private int[] data;
 
+    /**
+     * true if the internal array was given from outside or is shared, so it must not be pooled
+     */
+    private boolean sharedData;
+
     /**
      * Current position and effective length
      */
@@ -76,10 +108,85 @@ public class GrowingIntArray implements Serializable {
         }
         else {
             this.data = source;
+            this.sharedData = true;
         }
         idx = this.data.length;
     }
 
+    /**
+     * @return true if {@link #release()} returns internal arrays to the pool for reuse by {@link #borrow(int)}
+     */
+    public static boolean isPoolingEnabled() {
+        return poolingEnabled;
+    }
+
+    /**
+     * Enables or disables pooling globally.
+     * <p>
+     * Disabling does not clear the pools of other threads, but they won't be used anymore. See also {@link #clearPool()}.
+     * 
+     * @param enabled true to reuse released internal arrays
+     */
+    public static void setPoolingEnabled(boolean enabled) {
+        poolingEnabled = enabled;
+    }
+
+    /**
+     * Removes all pooled internal arrays of the current thread
+     */
+    public static void clearPool() {
+        POOL.remove();
+    }
+
+    /**
+     * @return sum of the lengths of the internal arrays currently pooled by the current thread
+     */
+    static int getNumberOfPooledInts() {
+        return POOL.get().pooledInts;
+    }
+
+    /**
+     * @return true if pooling is enabled and the current thread is a platform thread
+     */
+    private static boolean isPoolingApplicable() {
+        return poolingEnabled && !Thread.currentThread().isVirtual();
+    }
+
+    /**
+     * Returns an empty instance backed by an internal array from the current thread's pool (if pooling is enabled and there is any), see
+     * {@link #release()}
+     * 
+     * @param initialCapacity
+     * @return empty array with at least the given capacity
+     */
+    public static GrowingIntArray borrow(int initialCapacity) {
+        int[] pooledData = isPoolingApplicable() ? POOL.get().poll() : null;
+        if (pooledData == null) {
+            return new GrowingIntArray(initialCapacity);
+        }
+        GrowingIntArray res = new GrowingIntArray(pooledData, false);
+        res.sharedData = false;
+        res.idx = 0;
+        res.ensureCapacity(initialCapacity);
+        return res;
+    }
+
+    /**
+     * Returns the internal array to the current thread's pool (if pooling is enabled and the array fits into the pool) for reuse by {@link #borrow(int)}
+     * and clears this instance.
+     * <p>
+     * Releasing is optional, it only makes sense for temporary arrays. You can continue using this instance (starting empty), but you must not access any
+     * previously obtained content. Internal arrays given to the constructor {@link #GrowingIntArray(int[], boolean)} without copy won't be pooled.
+     */
+    public void release() {
+        if (!sharedData && data.length > 0 && isPoolingApplicable()) {
+            POOL.get().offer(data);
+        }
+        data = EMPTY_DATA;
+        sharedData = true;
+        idx = 0;
+    }
+
     /**
      * This method allows to reduce the length (virtually discard trailing members)
      * 
@@ -101,12 +208,20 @@ public class GrowingIntArray implements Serializable {
 
     /**
      * Ensures that the internal array has enough space to add the expected number of <i>additional</i> elements starting at the current position.
+     * <p>
+     * If the array must grow, it grows by at least half of its current capacity.
      * 
      * @param expectedNumberOfElements
      */
     public void ensureCapacity(int expectedNumberOfElements) {
-        if (idx + expectedNumberOfElements > data.length) {
-            data = Arrays.copyOf(data, idx + expectedNumberOfElements);
+        long minCapacity = (long) idx + expectedNumberOfElements;
+        if (minCapacity > data.length) {
+            if (minCapacity > MAX_CAPACITY) {
+                throw new IllegalStateException(String.format("Unable to grow beyond %d elements, requested: %d", MAX_CAPACITY, minCapacity));
+            }
+            long newCapacity = Math.min(MAX_CAPACITY, Math.max(minCapacity, (long) data.length + Math.max(data.length >> 1, SIZE_INCREMENT)));
+            data = Arrays.copyOf(data, (int) newCapacity);
+            sharedData = false;
         }
     }
 
@@ -117,7 +232,7 @@ public class GrowingIntArray implements Serializable {
      */
     public void add(int value) {
         if (idx == data.length) {
-            ensureCapacity(SIZE_INCREMENT);
+            ensureCapacity(1);
         }
         data[idx] = value;
         idx++;
@@ -296,4 +411,39 @@ public class GrowingIntArray implements Serializable {
         return sb.toString();
     }
 
+    /**
+     * Released internal arrays of a single thread, limited by the {@link GrowingIntArray#MAX_POOLED_INTS_PER_THREAD}
+     */
+    private static final class Pool {
+
+        private final Deque<int[]> arrays = new ArrayDeque<>();
+
+        /**
+         * sum of the lengths of the pooled arrays
+         */
+        private int pooledInts = 0;
+
+        /**
+         * @return most recently released array or null if the pool is empty
+         */
+        int[] poll() {
+            int[] res = arrays.pollFirst();
+            if (res != null) {
+                pooledInts = pooledInts - res.length;
+            }
+            return res;
+        }
+
+        /**
+         * @param data array to be pooled if it fits into the remaining budget
+         */
+        void offer(int[] data) {
+            if (data.length <= MAX_POOLED_INTS_PER_THREAD - pooledInts) {
+                arrays.offerFirst(data);
+                pooledInts = pooledInts + data.length;
+            }
+        }
+
+    }
+
 }
@@ -95,7 +95,7 @@ public class ImplicationResolver implements ExpressionTreeProcessor {
 
         tree.setRootNode(rootNode);
 
-        tree.getMemberArrayRegistry().triggerHousekeeping(rootNode);
+        tree.compact();
 
     }
 
@@ -20,12 +20,8 @@
 package de.calamanari.adl.irl.biceps;
 
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Objects;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,19 +36,21 @@ import org.slf4j.LoggerFactory;
  * <p>
  * Temporarily created int-arrays are slowly piling up in the registry. Thus, {@link #triggerHousekeeping(int)} allows in safe situations to run the
  * housekeeping which sets any id currently not used in the given rootNode or its child nodes to <b>null</b>.<br>
- * In other words: the underlying list is never shrinking but the payloads (int-arrays) become subject to garbage collection.
+ * In other words: the underlying array of member arrays is never shrinking but the payloads (int-arrays) become subject to garbage collection.<br>
+ * Where it is safe to renumber the nodes (between the steps of an optimization), {@link #compact(int)} additionally moves the arrays still in use to the
+ * front and shrinks the internal structures.
  * <p>
- * We assume that the list never grows too far before the processing ends and the registry gets garbage-collected.<br>
- * The benefit of this lean approach is that the access (id = position in list) is extremely fast (compared to any map), and we don't need to deal with
+ * The benefit of this lean approach is that the access (id = position in array) is extremely fast (compared to any map), and we don't need to deal with
  * difficult garbage collection questions in other parts of the code.
  * <p>
- * This registry uses the arrays themselves as keys for caching <i>on insert</i>. So, while inserts are expensive, lookups are extremely cheap. As there are way
- * more lookups (find member array related to id) than inserts (new member array resp. find id for existing one), the registry has a positive impact on the
- * overall performance. <br>
+ * To find the id of an array already registered <i>on insert</i>, the registry keeps the content hash of every array and a primitive open-addressing hash
+ * table (linear probing) of ids. So, an insert costs a hash computation and usually a single array comparison without creating any key, entry or boxed
+ * integer objects. As there are way more lookups (find member array related to id) than inserts (new member array resp. find id for existing one), the
+ * registry has a positive impact on the overall performance. <br>
  * Having a guarantee to get the same ID for an equal combined node anywhere else within an expression tree also speeds up a couple of other operations.
  * <p>
- * The downside of the above approach is the increased responsibility of the users of this class to <b>never ever modify any of the arrays</b> after passing
- * them to the registry!
+ * The registry does not copy the arrays, neither on insert nor on lookup. The downside of this approach is the increased responsibility of the users of this
+ * class to <b>never ever modify any of the arrays</b> after passing them to the registry!
  * <p>
  * Instances are <b>not</b> safe to be accessed concurrently by multiple threads.
  * 
@@ -60,7 +58,7 @@ import org.slf4j.LoggerFactory;
  */
 public class MemberArrayRegistry implements Serializable {
 
-    private static final long serialVersionUID = -2189220857484883834L;
+    private static final long serialVersionUID = 3842175532090418571L;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(MemberArrayRegistry.class);
 
@@ -69,39 +67,64 @@ public class MemberArrayRegistry implements Serializable {
      */
     private static final int HOUSEKEEPING_THRESHOLD = 1000;
 
+    /**
+     * Initial number of member arrays we can register before growing
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Marker for an empty slot in the hash table (slots contain <code>id + 1</code>)
+     */
+    private static final int EMPTY_SLOT = 0;
+
     /**
      * This is the number of cleaned (unused) slots.
      */
     private int cleanedIdCount;
 
     /**
-     * This list stores the registered int-arrays, the id is the list position. The list never shrinks.
+     * Number of ids issued so far
      */
-    private List<int[]> memberArrays;
+    private int numberOfIds;
 
     /**
-     * Cache to avoid duplicate ids for the same member arrays within the same expression tree
+     * This array stores the registered int-arrays, the id is the position. It never shrinks.
      */
-    private final Map<CacheEntry, Integer> cache;
+    private int[][] memberArrays;
+
+    /**
+     * Content hash of the member array with the same id, see {@link Arrays#hashCode(int[])}
+     */
+    private int[] hashCodes;
+
+    /**
+     * Open-addressing hash table (length is a power of two, at most half full) to avoid duplicate ids for the same member arrays within the same expression
+     * tree. Each slot contains <code>id + 1</code> or {@link #EMPTY_SLOT}.
+     */
+    private int[] slots;
 
     /**
      * For internal use: creates the registry from previously validated data
      * 
-     * @param combinedNodes
+     * @param memberArrays
+     * @param hashCodes
+     * @param slots
+     * @param numberOfIds
      * @param cleanedIdCount
-     * @param cache
      */
-    private MemberArrayRegistry(List<int[]> combinedNodes, int cleanedIdCount, Map<CacheEntry, Integer> cache) {
-        this.memberArrays = combinedNodes;
+    private MemberArrayRegistry(int[][] memberArrays, int[] hashCodes, int[] slots, int numberOfIds, int cleanedIdCount) {
+        this.memberArrays = memberArrays;
+        this.hashCodes = hashCodes;
+        this.slots = slots;
+        this.numberOfIds = numberOfIds;
         this.cleanedIdCount = cleanedIdCount;
-        this.cache = cache;
     }
 
     /**
      * Creates an empty registry
      */
     public MemberArrayRegistry() {
-        this(new ArrayList<>(), 0, new HashMap<>());
+        this(new int[INITIAL_CAPACITY][], new int[INITIAL_CAPACITY], new int[INITIAL_CAPACITY * 2], 0, 0);
     }
 
     /**
@@ -117,22 +140,78 @@ public class MemberArrayRegistry implements Serializable {
      *         {@link CoreExpressionCodec#encodeCombinedExpressionId(int, de.calamanari.adl.irl.NodeType)}
      */
     public int registerMemberArray(int[] memberArray) {
-        CacheEntry cacheKey = new CacheEntry(memberArray);
-        return cache.computeIfAbsent(cacheKey, _ -> registerNewMemberArray(memberArray));
+        int hashCode = Arrays.hashCode(memberArray);
+        int mask = slots.length - 1;
+        int slotIdx = spread(hashCode) & mask;
+        int slot = slots[slotIdx];
+        while (slot != EMPTY_SLOT) {
+            int id = slot - 1;
+            if (hashCodes[id] == hashCode && Arrays.equals(memberArrays[id], memberArray)) {
+                return id;
+            }
+            slotIdx = (slotIdx + 1) & mask;
+            slot = slots[slotIdx];
+        }
+        int id = registerNewMemberArray(memberArray, hashCode);
+        if (getNumberOfValidIds() * 2 > slots.length) {
+            rebuildSlots(slots.length * 2);
+        }
+        else {
+            slots[slotIdx] = id + 1;
+        }
+        return id;
     }
 
     /**
      * Issues a new id for the given array assuming it was not registered before.
      * 
      * @param memberArray
+     * @param hashCode content hash of the array
      * @return id for the given member array
      */
-    private int registerNewMemberArray(int[] memberArray) {
-        int id = memberArrays.size();
-        memberArrays.add(memberArray);
+    private int registerNewMemberArray(int[] memberArray, int hashCode) {
+        if (numberOfIds == memberArrays.length) {
+            memberArrays = Arrays.copyOf(memberArrays, numberOfIds * 2);
+            hashCodes = Arrays.copyOf(hashCodes, numberOfIds * 2);
+        }
+        int id = numberOfIds;
+        memberArrays[id] = memberArray;
+        hashCodes[id] = hashCode;
+        numberOfIds++;
         return id;
     }
 
+    /**
+     * Replaces the hash table with a new one of the given size containing all valid ids
+     * 
+     * @param numberOfSlots power of two
+     */
+    private void rebuildSlots(int numberOfSlots) {
+        int[] newSlots = new int[numberOfSlots];
+        int mask = numberOfSlots - 1;
+        for (int id = 0; id < numberOfIds; id++) {
+            if (memberArrays[id] != null) {
+                int slotIdx = spread(hashCodes[id]) & mask;
+                while (newSlots[slotIdx] != EMPTY_SLOT) {
+                    slotIdx = (slotIdx + 1) & mask;
+                }
+                newSlots[slotIdx] = id + 1;
+            }
+        }
+        slots = newSlots;
+    }
+
+    /**
+     * {@link Arrays#hashCode(int[])} of small member arrays varies mainly in the lower bits, so we mix the upper bits in to reduce clustering
+     * 
+     * @param hashCode
+     * @return hash code to be masked for the slot index
+     */
+    private static int spread(int hashCode) {
+        int res = hashCode * 0x9E3779B9;
+        return res ^ (res >>> 16);
+    }
+
     /**
      * Returns the member-array associated with the given id (the ID, not to be confused with the expression node that holds it!)
      * 
@@ -142,10 +221,10 @@ public class MemberArrayRegistry implements Serializable {
      * @throws IndexOutOfBoundsException if the given id is negative or if it was never issued by {@link #registerMemberArray(int[])}
      */
     public int[] lookupMemberArray(int id) {
-        if (id < 0 || id >= memberArrays.size()) {
+        if (id < 0 || id >= numberOfIds) {
             throw new IndexOutOfBoundsException("Lookup of member array failed: Invalid id=" + id);
         }
-        int[] res = memberArrays.get(id);
+        int[] res = memberArrays[id];
         if (res == null) {
             throw new IllegalStateException("Lookup of member array failed: Illegal attempt to access node that no longer exists: id=" + id);
         }
@@ -154,155 +233,224 @@ public class MemberArrayRegistry implements Serializable {
 
     /**
      * This method takes the given rootNode as entry point into a tree which contains all combined nodes still in use.<br>
-     * Then it releases every id in the internal cache which is <i>not</i> in this list.
+     * Then it releases every id in the internal cache which is <i>not</i> reachable from this node. The ids still in use remain unchanged.
      * <p>
      * Note: The given node must be truly the root. If this method is called on any lower level, all parents (and thus the expression) will be destroyed.<br>
      * For the same reason you must call this method if your expression tree has currently more than one root!
      * 
      * @param rootNode entry point of an expression tree
+     * @return number of released ids
+     * @see #compact(int)
      */
     public int triggerHousekeeping(int rootNode) {
 
-        if ((memberArrays.size() - cleanedIdCount) < HOUSEKEEPING_THRESHOLD) {
+        if (getNumberOfValidIds() < HOUSEKEEPING_THRESHOLD) {
             return 0;
         }
 
-        List<Integer> validIds = new ArrayList<>(memberArrays.size());
-        collectValidIds(rootNode, validIds);
-        Collections.sort(validIds);
-        int[] uniqueSortedIds = new int[validIds.size()];
-        int numberOfUniqueIds = 0;
-        int prevId = -1;
-        for (int i = 0; i < validIds.size(); i++) {
-            int id = validIds.get(i);
-            if (i == 0 || id != prevId) {
-                uniqueSortedIds[numberOfUniqueIds] = id;
-                numberOfUniqueIds++;
-            }
-            prevId = id;
-        }
+        long[] liveIds = markLiveIds(rootNode);
 
         int res = 0;
-        for (int id = 0; id < memberArrays.size(); id++) {
-            if (memberArrays.get(id) != null && Arrays.binarySearch(uniqueSortedIds, 0, numberOfUniqueIds, id) < 0) {
-                memberArrays.set(id, null);
+        for (int id = 0; id < numberOfIds; id++) {
+            if (memberArrays[id] != null && !isMarked(liveIds, id)) {
+                memberArrays[id] = null;
                 cleanedIdCount++;
                 res++;
             }
-
         }
 
         if (res > 0) {
             // cleanup cache as well
-            List<Map.Entry<CacheEntry, Integer>> cachedIds = new ArrayList<>(cache.entrySet());
-            for (Map.Entry<CacheEntry, Integer> entry : cachedIds) {
-                if (!isValidId(entry.getValue())) {
-                    cache.remove(entry.getKey());
+            rebuildSlots(slots.length);
+        }
+
+        LOGGER.debug("Number of ids issued: {}, currently in use: {}", numberOfIds, getNumberOfValidIds());
+        return res;
+    }
+
+    /**
+     * Mark-and-compact housekeeping: This method takes the given rootNode as entry point into a tree which contains all combined nodes still in use, releases
+     * all ids <i>not</i> reachable from this node and renumbers the remaining ones densely (keeping their order), so the next id issued will be the number of
+     * ids in use. The member arrays referencing renumbered combined nodes get replaced (and re-sorted, because the id of a combined node is part of its
+     * encoding and thus of its position among the other members), and the internal structures shrink if they are largely unused.
+     * <p>
+     * In contrast to {@link #triggerHousekeeping(int)} this avoids that ids creep towards {@link CoreExpressionCodec#MAX_EXTERNAL_EXPRESSION_ID} and that
+     * the registry's memory grows with the total number of arrays ever registered during a long optimization run.
+     * <p>
+     * <b>Important:</b> Any combined node (and any member array) obtained before this call except for the returned root is invalid afterwards. So, this is
+     * only safe between steps that keep nothing but the root (e.g., see {@link EncodedExpressionTree#compact()}).
+     * 
+     * @param rootNode entry point of an expression tree
+     * @return root node with the new id or the given node if it is a leaf or if there was nothing to compact
+     */
+    public int compact(int rootNode) {
+
+        if (getNumberOfValidIds() < HOUSEKEEPING_THRESHOLD) {
+            return rootNode;
+        }
+
+        long[] liveIds = markLiveIds(rootNode);
+
+        // first pass: assign the new ids
+        int[] newIds = new int[numberOfIds];
+        int numberOfLiveIds = 0;
+        for (int id = 0; id < numberOfIds; id++) {
+            if (isMarked(liveIds, id)) {
+                newIds[id] = numberOfLiveIds;
+                numberOfLiveIds++;
+            }
+        }
+
+        int numberOfIdsBefore = numberOfIds;
+        if (numberOfLiveIds == numberOfIdsBefore) {
+            return rootNode;
+        }
+
+        // second pass: move the arrays down and update the members
+        for (int id = 0; id < numberOfIdsBefore; id++) {
+            if (isMarked(liveIds, id)) {
+                int[] members = memberArrays[id];
+                int[] updatedMembers = remapMembers(members, newIds);
+                int newId = newIds[id];
+                memberArrays[newId] = updatedMembers;
+                hashCodes[newId] = (updatedMembers == members) ? hashCodes[id] : Arrays.hashCode(updatedMembers);
+            }
+        }
+
+        numberOfIds = numberOfLiveIds;
+        cleanedIdCount = 0;
+
+        int capacity = Math.max(INITIAL_CAPACITY, numberOfLiveIds * 2);
+        if (memberArrays.length > capacity * 2) {
+            memberArrays = Arrays.copyOf(memberArrays, capacity);
+            hashCodes = Arrays.copyOf(hashCodes, capacity);
+        }
+        else {
+            Arrays.fill(memberArrays, numberOfLiveIds, numberOfIdsBefore, null);
+        }
+        int numberOfSlots = INITIAL_CAPACITY * 2;
+        while (numberOfSlots < numberOfLiveIds * 4) {
+            numberOfSlots = numberOfSlots * 2;
+        }
+        rebuildSlots(Math.min(numberOfSlots, slots.length));
+
+        LOGGER.debug("Number of ids issued: {}, compacted to: {}", numberOfIdsBefore, numberOfLiveIds);
+        return remapNode(rootNode, newIds);
+    }
+
+    /**
+     * @param members
+     * @param newIds mapping old id to new id
+     * @return the given array if no member was affected, otherwise a new sorted array with the updated members
+     */
+    private static int[] remapMembers(int[] members, int[] newIds) {
+        int[] res = members;
+        for (int idx = 0; idx < members.length; idx++) {
+            int member = members[idx];
+            int updatedMember = remapNode(member, newIds);
+            if (updatedMember != member) {
+                if (res == members) {
+                    res = members.clone();
                 }
+                res[idx] = updatedMember;
             }
+        }
+        if (res != members) {
+            // the upper bits of a combined node's id overlap with the argument bits of a leaf's encoding
+            Arrays.sort(res);
+        }
+        return res;
+    }
 
+    /**
+     * @param node
+     * @param newIds mapping old id to new id
+     * @return node with the new id or the given node if it is a leaf
+     */
+    private static int remapNode(int node, int[] newIds) {
+        if (CoreExpressionCodec.isCombinedExpressionId(node)) {
+            int id = CoreExpressionCodec.decodeCombinedExpressionId(node);
+            int newId = newIds[id];
+            return newId == id ? node : CoreExpressionCodec.encodeCombinedExpressionId(newId, CoreExpressionCodec.getNodeType(node));
         }
+        return node;
+    }
 
-        LOGGER.debug("Number of ids issued: {}, currently in use: {}", memberArrays.size(), numberOfUniqueIds);
+    /**
+     * Mark phase of the housekeeping
+     * 
+     * @param rootNode
+     * @return bitset with the ids reachable from the given node
+     */
+    private long[] markLiveIds(int rootNode) {
+        long[] res = new long[(numberOfIds + 63) >>> 6];
+        markLiveIds(rootNode, res);
         return res;
     }
 
     /**
-     * Recursively collects all ids still in use based on the given node and its siblings
+     * Recursively marks all ids still in use based on the given node and its members, shared sub-trees are only visited once
      * 
      * @param node current node
-     * @param validIdCollection result collection, initially empty
+     * @param liveIds bitset to be updated
      */
-    private void collectValidIds(int node, List<Integer> validIdCollection) {
+    private void markLiveIds(int node, long[] liveIds) {
         if (CoreExpressionCodec.isCombinedExpressionId(node)) {
-            validIdCollection.add(CoreExpressionCodec.decodeCombinedExpressionId(node));
-            for (int member : lookupMemberArray(CoreExpressionCodec.decodeCombinedExpressionId(node))) {
-                collectValidIds(member, validIdCollection);
+            int id = CoreExpressionCodec.decodeCombinedExpressionId(node);
+            int[] members = lookupMemberArray(id);
+            if (!isMarked(liveIds, id)) {
+                liveIds[id >>> 6] |= 1L << id;
+                for (int member : members) {
+                    markLiveIds(member, liveIds);
+                }
             }
         }
     }
 
+    private static boolean isMarked(long[] liveIds, int id) {
+        return (liveIds[id >>> 6] & (1L << id)) != 0;
+    }
+
     /**
      * This method returns the number of ids currently in the registry (not yet been removed by housekeeping)
      * 
      * @return number of valid node ids
      */
     public int getNumberOfValidIds() {
-        return memberArrays.size() - cleanedIdCount;
+        return numberOfIds - cleanedIdCount;
     }
 
     /**
      * @param id see {@link CoreExpressionCodec#decodeCombinedExpressionId(int)}
      * @return true if the given id is still valid, false if it was subject to housekeeping and is now invalid
+     * @throws IndexOutOfBoundsException if the given id is negative or if it was never issued by {@link #registerMemberArray(int[])}
      */
     public boolean isValidId(int id) {
-        return memberArrays.get(id) != null;
+        return memberArrays[Objects.checkIndex(id, numberOfIds)] != null;
     }
 
     /**
      * This method clears this instance which invalidates all the previously issued ids. New ids will start from <code>0</code>
      */
     public void clear() {
-        // we replace the list to ensure the initial size
-        memberArrays = new ArrayList<>();
+        // we replace the arrays to ensure the initial size
+        memberArrays = new int[INITIAL_CAPACITY][];
+        hashCodes = new int[INITIAL_CAPACITY];
+        slots = new int[INITIAL_CAPACITY * 2];
+        numberOfIds = 0;
         cleanedIdCount = 0;
-        cache.clear();
     }
 
     /**
      * This method returns a copy of this registry, so that both can evolve independently.
      * <p>
      * As mentioned earlier: The implementation of {@link MemberArrayRegistry} heavily <i>relies</i> on the fact that member-int-arrays are never subject to
-     * modification and thus safe to be used as cache-keys. For the same reason this method does not clone these arrays but only copies the management
-     * structures.
+     * modification and thus safe to be shared. For the same reason this method does not clone these arrays but only copies the management structures.
      * 
      * @return copy
      */
     public MemberArrayRegistry copy() {
-        return new MemberArrayRegistry(new ArrayList<>(memberArrays), cleanedIdCount, new HashMap<>(cache));
-    }
-
-    /**
-     * A cache entry gives a cached integer array an identity (equals + hashcode) based on its members and their order.
-     * 
-     */
-    private static final class CacheEntry implements Serializable {
-
-        private static final long serialVersionUID = -594363567854023827L;
-
-        final int[] members;
-
-        private final int hashCode;
-
-        private CacheEntry(int[] members, int hashCode) {
-            this.members = members;
-            this.hashCode = hashCode;
-        }
-
-        CacheEntry(int[] members) {
-            this(members, Arrays.hashCode(members));
-        }
-
-        @Override
-        public int hashCode() {
-            return hashCode;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj == null) {
-                return false;
-            }
-            if (getClass() != obj.getClass()) {
-                return false;
-            }
-            CacheEntry other = (CacheEntry) obj;
-            return this.hashCode == other.hashCode && Arrays.equals(members, other.members);
-        }
-
+        return new MemberArrayRegistry(memberArrays.clone(), hashCodes.clone(), slots.clone(), numberOfIds, cleanedIdCount);
     }
 
 }
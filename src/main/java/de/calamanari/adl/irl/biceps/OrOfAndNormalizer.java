@@ -79,7 +79,7 @@ public class OrOfAndNormalizer implements ExpressionTreeProcessor {
         rootNode = normalize(tree, rootNode);
 
         tree.setRootNode(rootNode);
-        tree.getMemberArrayRegistry().triggerHousekeeping(rootNode);
+        tree.compact();
 
     }
 
@@ -142,9 +142,14 @@ public class OrOfAndNormalizer implements ExpressionTreeProcessor {
      * @return updated members, so that the parent is either a leaf or an OR
      */
     private int[] processMultiplication(EncodedExpressionTree tree, int[] members) {
-        GrowingIntArray updatedMembers = new GrowingIntArray(members.length * 2);
-        multiplyMembers(tree, members, updatedMembers);
-        return updatedMembers.toArray();
+        GrowingIntArray updatedMembers = GrowingIntArray.borrow(members.length * 2);
+        try {
+            multiplyMembers(tree, members, updatedMembers);
+            return updatedMembers.toArray();
+        }
+        finally {
+            updatedMembers.release();
+        }
     }
 
     /**
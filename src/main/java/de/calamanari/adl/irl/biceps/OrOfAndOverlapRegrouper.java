@@ -101,7 +101,7 @@ public class OrOfAndOverlapRegrouper implements ExpressionTreeProcessor {
 
         rootNode = regroup(tree, rootNode);
         tree.setRootNode(rootNode);
-        tree.getMemberArrayRegistry().triggerHousekeeping(rootNode);
+        tree.compact();
 
     }
 
@@ -227,8 +227,9 @@ public class OrOfAndOverlapRegrouper implements ExpressionTreeProcessor {
         }
         int[] members = tree.membersOf(node);
         GrowingIntArray candidates = filterMembersOfTypeAnd(members);
-        if (candidates.size() > 1) {
-            int[] groupingMembers = candidates.toArray();
+        int[] groupingMembers = candidates.size() > 1 ? candidates.toArray() : null;
+        candidates.release();
+        if (groupingMembers != null) {
             int[] remainingMembers = filterRemainder(members, groupingMembers);
             if (regroupOrOfAnds(tree, groupingMembers)) {
                 int destIdx = 0;
@@ -531,10 +532,10 @@ public class OrOfAndOverlapRegrouper implements ExpressionTreeProcessor {
      * Utility to filter the members of type AND in an OR
      * 
      * @param members
-     * @return members of type AND, may be empty
+     * @return members of type AND, may be empty, to be released after use (see {@link GrowingIntArray#release()})
      */
     private GrowingIntArray filterMembersOfTypeAnd(int[] members) {
-        GrowingIntArray res = new GrowingIntArray();
+        GrowingIntArray res = GrowingIntArray.borrow(members.length);
         for (int member : members) {
             if (getNodeType(member) == NodeType.AND) {
                 res.add(member);
@@ -20,19 +20,44 @@
 package de.calamanari.adl;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
-
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.cnv.StandardConversions;
+import de.calamanari.adl.erl.PlExpression;
+import de.calamanari.adl.erl.PlExpressionBuilder;
+import de.calamanari.adl.irl.CombinedExpression;
+import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.MatchExpression;
+import de.calamanari.adl.irl.MatchOperator;
+import de.calamanari.adl.irl.Operand;
+import de.calamanari.adl.irl.SpecialSetExpression;
+import de.calamanari.adl.irl.biceps.CoreExpressionCodec;
+import de.calamanari.adl.irl.biceps.EncodedExpressionTree;
+import de.calamanari.adl.irl.biceps.GrowingIntArray;
+import de.calamanari.adl.irl.biceps.MemberArrayRegistry;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
  */
 class DeepCopyUtilsTest {
 
+    static final Logger LOGGER = LoggerFactory.getLogger(DeepCopyUtilsTest.class);
+
     @Test
     void testBasics() {
 
@@ -64,7 +89,104 @@ class DeepCopyUtilsTest {
         Something someThingThatCannotBeSerialized = new Something();
         assertEquals(notSerializable, someThingThatCannotBeSerialized.innerValue);
         assertThrows(DeepCopyException.class, () -> DeepCopyUtils.deepCopy(someThingThatCannotBeSerialized));
+        assertThrows(DeepCopyException.class, () -> DeepCopyUtils.serialCopy(someThingThatCannotBeSerialized));
+
+        assertNotSame(msg1, DeepCopyUtils.deepCopy(msg1));
+        assertNull(DeepCopyUtils.serialCopy(null));
+
+    }
+
+    @Test
+    void testImmutableExpressions() {
+
+        CoreExpression expr = StandardConversions.parseCoreExpression("a = 1 AND (b = 2 OR NOT c = 3 OR d IS UNKNOWN)");
+        assertSame(expr, DeepCopyUtils.deepCopy(expr));
+        assertSame(SpecialSetExpression.all(), DeepCopyUtils.deepCopy(SpecialSetExpression.all()));
+
+        PlExpression<?> plExpr = PlExpressionBuilder.stringToExpression("a = 1 AND (b = 2 OR NOT c = 3) AND CURB (d = 1 OR e = 2) > 1").getResultExpression();
+        assertSame(plExpr, DeepCopyUtils.deepCopy(plExpr));
+        assertEquals(plExpr, DeepCopyUtils.serialCopy(plExpr));
+        assertNotSame(plExpr, DeepCopyUtils.serialCopy(plExpr));
+
+    }
+
+    @Test
+    void testEncodedStructures() {
+
+        CoreExpression expr = StandardConversions.parseCoreExpression("a = 1 AND (b = 4 OR (c = 8 AND (d = 9 OR e = foo)))");
+        EncodedExpressionTree tree = EncodedExpressionTree.fromCoreExpression(expr);
+
+        EncodedExpressionTree treeCopy = DeepCopyUtils.deepCopy(tree);
+        assertNotSame(tree, treeCopy);
+        assertNotSame(tree.getCodec(), treeCopy.getCodec());
+        assertNotSame(tree.getMemberArrayRegistry(), treeCopy.getMemberArrayRegistry());
+        assertNotSame(tree.getRootLevel().members(), treeCopy.getRootLevel().members());
+        assertEquals(tree.getRootNode(), treeCopy.getRootNode());
+        assertEquals(expr, treeCopy.toCoreExpression());
+
+        treeCopy.getRootLevel().members().clear();
+        assertEquals(expr, tree.toCoreExpression());
+
+        EncodedExpressionTree emptyTree = new EncodedExpressionTree();
+        assertNull(DeepCopyUtils.deepCopy(emptyTree).getRootLevel());
+
+        CoreExpressionCodec codec = tree.getCodec();
+        CoreExpressionCodec codecCopy = DeepCopyUtils.deepCopy(codec);
+        assertNotSame(codec, codecCopy);
+        CoreExpression match = match("e", "foo");
+        assertEquals(codec.encode(match), codecCopy.encode(match));
+        assertEquals(match, codecCopy.decode(codec.encode(match)));
+
+        MemberArrayRegistry registry = new MemberArrayRegistry();
+        int id = registry.registerMemberArray(new int[] { 1, 2, 3 });
+        MemberArrayRegistry registryCopy = DeepCopyUtils.deepCopy(registry);
+        assertNotSame(registry, registryCopy);
+        assertArrayEquals(new int[] { 1, 2, 3 }, registryCopy.lookupMemberArray(id));
+        registryCopy.clear();
+        assertTrue(registry.isValidId(id));
+
+        GrowingIntArray array = new GrowingIntArray(new int[] { 7, 8, 9 }, true);
+        GrowingIntArray arrayCopy = DeepCopyUtils.deepCopy(array);
+        assertNotSame(array, arrayCopy);
+        assertArrayEquals(array.toArray(), arrayCopy.toArray());
+        arrayCopy.set(0, 4711);
+        assertNotEquals(4711, array.get(0));
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkCopyEncodedTree() {
+
+        List<CoreExpression> members = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            members.add(CombinedExpression.orOf(match("arg" + (i % 1000), "" + i), match("arg" + ((i + 1) % 1000), "" + (i + 1))));
+        }
+        EncodedExpressionTree tree = EncodedExpressionTree.fromCoreExpression(CombinedExpression.andOf(members));
+        // fill the codec caches
+        tree.toCoreExpression();
+
+        for (int round = 0; round < 10; round++) {
+            long startTimeNanos = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                DeepCopyUtils.serialCopy(tree);
+            }
+            long serialMicros = (System.nanoTime() - startTimeNanos) / 10_000;
+
+            startTimeNanos = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                DeepCopyUtils.deepCopy(tree);
+            }
+            long copyMicros = (System.nanoTime() - startTimeNanos) / 10_000;
+
+            LOGGER.info("Round {}: copy of a tree with {} combined nodes, serialization: {} us, deepCopy: {} us", round,
+                    tree.getMemberArrayRegistry().getNumberOfValidIds(), serialMicros, copyMicros);
+        }
+
+    }
 
+    private static CoreExpression match(String argName, String value) {
+        return MatchExpression.of(argName, MatchOperator.EQUALS, Operand.of(value, false));
     }
 
 }
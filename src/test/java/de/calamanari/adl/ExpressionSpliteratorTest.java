@@ -0,0 +1,217 @@
+//@formatter:off
+/*
+ * ExpressionSpliteratorTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.cnv.StandardConversions;
+import de.calamanari.adl.erl.PlExpression;
+import de.calamanari.adl.erl.PlExpressionBuilder;
+import de.calamanari.adl.irl.CombinedExpression;
+import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.MatchExpression;
+import de.calamanari.adl.irl.MatchOperator;
+import de.calamanari.adl.irl.Operand;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class ExpressionSpliteratorTest {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(ExpressionSpliteratorTest.class);
+
+    @Test
+    void testOrder() {
+
+        PlExpression<?> plExpression = parsePl("a = 1 AND (b = 2 OR NOT c = 3 OR a = 1) AND CURB (d = 1 OR e = 2) > 1 AND (b = 2 OR NOT c = 3 OR a = 1)");
+        List<PlExpression<?>> expected = new ArrayList<>();
+        plExpression.collectExpressions(_ -> true, expected);
+        assertEquals(expected, plExpression.streamExpressions().toList());
+
+        CoreExpression coreExpression = parse("a = 1 AND (b = 2 OR NOT c = 3) AND (d = 1 OR (e = 2 AND f = 3))");
+        List<CoreExpression> expectedCore = new ArrayList<>();
+        coreExpression.collectExpressions(_ -> true, expectedCore);
+        assertEquals(expectedCore, coreExpression.streamExpressions().toList());
+
+        CoreExpression leaf = parse("a = 1");
+        assertEquals(List.of(leaf), leaf.streamExpressions().toList());
+
+    }
+
+    @Test
+    void testShortCircuit() {
+
+        CoreExpression expression = createWide(10_000);
+
+        AtomicInteger visited = new AtomicInteger();
+        assertTrue(expression.streamExpressions().peek(_ -> visited.incrementAndGet())
+                .anyMatch(e -> e instanceof MatchExpression match && match.argName().equals("arg0")));
+
+        // root, first member (OR), first member of the OR
+        assertEquals(3, visited.get());
+
+        assertFalse(expression.streamExpressions().anyMatch(e -> e instanceof MatchExpression match && match.argName().equals("unknown")));
+
+    }
+
+    @Test
+    void testSplit() {
+
+        CoreExpression expression = createWide(1_000);
+        List<CoreExpression> expected = expression.streamExpressions().toList();
+
+        ExpressionSpliterator<CoreExpression> spliterator = new ExpressionSpliterator<>(expression, false);
+        Spliterator<CoreExpression> prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        Spliterator<CoreExpression> prefixOfPrefix = prefix.trySplit();
+        assertNotNull(prefixOfPrefix);
+
+        List<CoreExpression> actual = new ArrayList<>();
+        prefixOfPrefix.forEachRemaining(actual::add);
+        prefix.forEachRemaining(actual::add);
+        spliterator.forEachRemaining(actual::add);
+        assertEquals(expected, actual);
+
+        assertTrue(spliterator.hasCharacteristics(Spliterator.ORDERED));
+        assertNull(new ExpressionSpliterator<>(parse("a = 1"), false).trySplit());
+
+        assertEquals(expected, expression.streamExpressions().parallel().toList());
+
+        // parallel processing of a deep tree
+        CoreExpression deep = createDeep(2_000);
+        assertEquals(deep.streamExpressions().toList(), deep.streamExpressions().parallel().toList());
+
+    }
+
+    @Test
+    void testUnique() {
+
+        PlExpression<?> plExpression = parsePl("a = 1 AND (b = 2 OR NOT c = 3 OR a = 1) AND CURB (d = 1 OR e = 2) > 1 AND (b = 2 OR NOT c = 3 OR a = 1)");
+        assertEquals(plExpression.streamExpressions().distinct().toList(), plExpression.streamExpressionsUnique().toList());
+        assertEquals(new HashSet<>(plExpression.streamExpressions().toList()), new HashSet<>(plExpression.streamExpressionsUnique().parallel().toList()));
+        assertEquals(plExpression.collectExpressions(_ -> true).stream().distinct().toList(), plExpression.collectExpressionsUnique(_ -> true));
+
+        CoreExpression expression = createWide(1_000);
+        List<CoreExpression> unique = expression.streamExpressionsUnique().parallel().toList();
+        assertEquals(unique.size(), new HashSet<>(unique).size());
+        assertEquals(new HashSet<>(expression.streamExpressions().toList()), new HashSet<>(unique));
+        assertEquals(expression.collectExpressions(_ -> true).stream().distinct().toList(), expression.collectExpressionsUnique(_ -> true));
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkAnyMatch() {
+
+        Random rand = new Random(4711);
+        List<CoreExpression> catalog = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            catalog.add(createRandom(rand, 50));
+        }
+
+        for (int round = 0; round < 10; round++) {
+            long startTimeNanos = System.nanoTime();
+            int countCollect = 0;
+            for (CoreExpression expression : catalog) {
+                if (!expression.collectExpressions(e -> e instanceof MatchExpression match && match.argName().equals("arg7")).isEmpty()) {
+                    countCollect++;
+                }
+            }
+            long collectMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+
+            startTimeNanos = System.nanoTime();
+            int countStream = 0;
+            for (CoreExpression expression : catalog) {
+                if (expression.streamExpressions().anyMatch(e -> e instanceof MatchExpression match && match.argName().equals("arg7"))) {
+                    countStream++;
+                }
+            }
+            long streamMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+
+            assertEquals(countCollect, countStream);
+            LOGGER.info("Round {}: {} expressions, {} referencing arg7, collectExpressions: {} ms, streamExpressions().anyMatch: {} ms", round, catalog.size(),
+                    countStream, collectMillis, streamMillis);
+        }
+
+    }
+
+    /**
+     * @param numberOfMembers
+     * @return AND of ORs, each OR has two members
+     */
+    private static CoreExpression createWide(int numberOfMembers) {
+        List<CoreExpression> members = new ArrayList<>();
+        for (int i = 0; i < numberOfMembers; i++) {
+            members.add(CombinedExpression.orOf(match("arg" + i, "1"), match("arg" + i, "2")));
+        }
+        return CombinedExpression.andOf(members);
+    }
+
+    /**
+     * @param numberOfLevels
+     * @return nested AND/OR alternating
+     */
+    private static CoreExpression createDeep(int numberOfLevels) {
+        CoreExpression res = match("arg0", "1");
+        for (int i = 1; i < numberOfLevels; i++) {
+            CoreExpression other = match("arg" + i, "1");
+            res = (i % 2 == 0) ? CombinedExpression.andOf(res, other) : CombinedExpression.orOf(res, other);
+        }
+        return res;
+    }
+
+    private static CoreExpression createRandom(Random rand, int numberOfMembers) {
+        List<CoreExpression> members = new ArrayList<>();
+        for (int i = 0; i < numberOfMembers; i++) {
+            String argName = "arg" + rand.nextInt(200);
+            members.add(CombinedExpression.orOf(match(argName, "" + rand.nextInt(10)), match(argName, "" + (10 + rand.nextInt(10)))));
+        }
+        return CombinedExpression.andOf(members);
+    }
+
+    private static CoreExpression match(String argName, String value) {
+        return MatchExpression.of(argName, MatchOperator.EQUALS, Operand.of(value, false));
+    }
+
+    private static CoreExpression parse(String source) {
+        return StandardConversions.parseCoreExpression(source);
+    }
+
+    private static PlExpression<?> parsePl(String source) {
+        return PlExpressionBuilder.stringToExpression(source).getResultExpression();
+    }
+
+}
@@ -0,0 +1,102 @@
+//@formatter:off
+/*
+ * ExpressionStatsTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl;
+
+import org.junit.jupiter.api.Test;
+
+import de.calamanari.adl.cnv.StandardConversions;
+import de.calamanari.adl.erl.PlExpression;
+import de.calamanari.adl.erl.PlExpressionBuilder;
+import de.calamanari.adl.irl.CombinedExpression;
+import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.MatchExpression;
+import de.calamanari.adl.irl.MatchOperator;
+import de.calamanari.adl.irl.Operand;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class ExpressionStatsTest {
+
+    @Test
+    void testPlExpression() {
+
+        assertEquals(new ExpressionStats(1, 1, 1, 1), parsePl("a = 1").stats());
+        assertEquals(new ExpressionStats(1, 1, 1, 2), parsePl("a = @b").stats());
+        assertEquals(new ExpressionStats(1, 1, 1, 0), parsePl("<ALL>").stats());
+        assertEquals(new ExpressionStats(2, 2, 1, 1), parsePl("NOT a = 1").stats());
+
+        PlExpression<?> expr = parsePl("a = 1 AND (b = 2 OR NOT c = 3 OR a = 4) AND CURB (d = 1 OR e = 2) > 1");
+        ExpressionStats stats = expr.stats();
+        assertEquals(new ExpressionStats(4, 11, 6, 5), stats);
+        assertEquals(4, expr.depth());
+
+        assertSame(stats, expr.stats());
+        assertSame(expr.allFields(), expr.allFields());
+        assertEquals(stats, ExpressionStats.of(expr));
+
+    }
+
+    @Test
+    void testCoreExpression() {
+
+        assertEquals(new ExpressionStats(1, 1, 1, 1), parse("a = 1").stats());
+        assertEquals(new ExpressionStats(1, 1, 1, 0), parse("<NONE>").stats());
+
+        // a = 1 AND (b = 2 OR NOT c = 3 OR c IS UNKNOWN), the negation is a node with the match as its child
+        CoreExpression expr = parse("a = 1 AND (b = 2 OR NOT c = 3)");
+        ExpressionStats stats = expr.stats();
+        assertEquals(new ExpressionStats(4, 7, 4, 3), stats);
+        assertEquals(4, expr.depth());
+
+        assertSame(stats, expr.stats());
+        assertSame(expr.allFields(), expr.allFields());
+        assertEquals(expr.allFields(), parse("a = 1 AND (b = 2 OR NOT c = 3)").allFields());
+
+    }
+
+    @Test
+    void testDeepTree() {
+
+        CoreExpression res = MatchExpression.of("a", MatchOperator.EQUALS, Operand.of("1", false));
+        for (int i = 0; i < 5_000; i++) {
+            res = CombinedExpression.andOf(MatchExpression.of("b" + i, MatchOperator.EQUALS, Operand.of("1", false)),
+                    CombinedExpression.orOf(MatchExpression.of("c" + i, MatchOperator.EQUALS, Operand.of("1", false)), res));
+        }
+
+        assertEquals(10_001, ExpressionStats.depthOf(res));
+        assertEquals(10_001, res.depth());
+        assertEquals(new ExpressionStats(10_001, 20_001, 10_001, 10_001), res.stats());
+        assertEquals(1, ExpressionStats.depthOf(MatchExpression.of("a", MatchOperator.EQUALS, Operand.of("1", false))));
+
+    }
+
+    private static PlExpression<?> parsePl(String source) {
+        return PlExpressionBuilder.stringToExpression(source).getResultExpression();
+    }
+
+    private static CoreExpression parse(String source) {
+        return StandardConversions.parseCoreExpression(source);
+    }
+
+}
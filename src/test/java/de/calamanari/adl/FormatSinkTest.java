@@ -0,0 +1,228 @@
+//@formatter:off
+/*
+ * FormatSinkTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.cnv.StandardConversions;
+import de.calamanari.adl.erl.AudlangParseResult;
+import de.calamanari.adl.erl.PlExpression;
+import de.calamanari.adl.erl.PlExpressionBuilder;
+import de.calamanari.adl.util.sgen.SampleExpression;
+import de.calamanari.adl.util.sgen.SampleExpressionGroup;
+import de.calamanari.adl.util.sgen.SampleExpressionUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class FormatSinkTest {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(FormatSinkTest.class);
+
+    private static final int[] FLUSH_THRESHOLDS = { 1, 20, 200, FormatSink.DEFAULT_FLUSH_THRESHOLD };
+
+    @Test
+    void testIdenticalOutput() throws IOException {
+
+        List<SampleExpressionGroup> allGroups = SampleExpressionUtils
+                .generateSamples(SampleExpressionUtils.readSampleGroupsFromJsonResource("/samples/sample-expressions-template.json"));
+
+        int count = 0;
+        for (SampleExpressionGroup sampleGroup : allGroups) {
+            for (SampleExpression sample : sampleGroup.samples()) {
+                AudlangParseResult res = PlExpressionBuilder.stringToExpression(sample.expression());
+                if (!sample.invalid() && !res.isError()) {
+                    assertIdenticalOutput(res.getResultExpression());
+                    count++;
+                }
+            }
+        }
+        assertTrue(count > 1000);
+
+        assertIdenticalOutput(parse("""
+                /* c1 */ a = 1 AND (b = @x OR NOT c ANY OF (3, /* c2 */ 4) OR STRICT NOT d > 5)
+                AND CURB (e = 1 OR f CONTAINS ANY OF (x, y) /* c3 */) > 1 AND <ALL> /* c4 */
+                AND /* a very long comment that is complex for sure, because it is definitely longer than the threshold */ g = 1"""));
+
+        assertIdenticalOutput(StandardConversions.parseCoreExpression("a = 1 AND (b = @x OR STRICT NOT c = 3 OR d IS UNKNOWN) AND NOT e > 5"));
+
+        assertIdenticalOutput(createCatalogExpression(new Random(4711), 50));
+
+    }
+
+    @Test
+    void testChunks() throws IOException {
+
+        PlExpression<?> expression = createCatalogExpression(new Random(4711), 200);
+        String expected = expression.format(FormatStyle.PRETTY_PRINT);
+
+        List<Integer> chunkSizes = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        Appendable appendable = new Appendable() {
+
+            @Override
+            public Appendable append(CharSequence csq, int start, int end) {
+                chunkSizes.add(end - start);
+                sb.append(csq, start, end);
+                return this;
+            }
+
+            @Override
+            public Appendable append(CharSequence csq) {
+                return append(csq, 0, csq.length());
+            }
+
+            @Override
+            public Appendable append(char c) {
+                chunkSizes.add(1);
+                sb.append(c);
+                return this;
+            }
+        };
+
+        expression.format(appendable, FormatStyle.PRETTY_PRINT);
+
+        assertEquals(expected, sb.toString());
+        assertTrue(chunkSizes.size() > expected.length() / (FormatSink.DEFAULT_FLUSH_THRESHOLD * 2));
+        assertTrue(chunkSizes.stream().allMatch(size -> size < FormatSink.DEFAULT_FLUSH_THRESHOLD * 2));
+
+    }
+
+    @Test
+    void testWriteError() throws IOException {
+
+        PlExpression<?> expression = createCatalogExpression(new Random(4711), 200);
+
+        Writer writer = new Writer() {
+
+            @Override
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("Disk full");
+            }
+
+            @Override
+            public void flush() {
+                // no-op
+            }
+
+            @Override
+            public void close() {
+                // no-op
+            }
+        };
+
+        IOException ex = assertThrows(IOException.class, () -> expression.format(writer, FormatStyle.PRETTY_PRINT));
+        assertEquals("Disk full", ex.getMessage());
+
+        // no leftovers after the error
+        StringWriter stringWriter = new StringWriter();
+        expression.format(stringWriter, FormatStyle.PRETTY_PRINT);
+        assertEquals(expression.format(FormatStyle.PRETTY_PRINT), stringWriter.toString());
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkExport() throws IOException {
+
+        Random rand = new Random(4711);
+        List<PlExpression<?>> catalog = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            catalog.add(createCatalogExpression(rand, 500));
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        for (int round = 0; round < 10; round++) {
+            Writer writer = Writer.nullWriter();
+
+            long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            long startTimeNanos = System.nanoTime();
+            for (PlExpression<?> expression : catalog) {
+                writer.write(expression.format(FormatStyle.PRETTY_PRINT));
+            }
+            long stringMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            long stringKBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / 1024;
+
+            startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            startTimeNanos = System.nanoTime();
+            for (PlExpression<?> expression : catalog) {
+                expression.format(writer, FormatStyle.PRETTY_PRINT);
+            }
+            long streamMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            long streamKBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / 1024;
+
+            LOGGER.info("Round {}: {} expressions, format(style): {} ms, {} KB allocated, format(writer, style): {} ms, {} KB allocated", round,
+                    catalog.size(), stringMillis, stringKBytes, streamMillis, streamKBytes);
+        }
+
+    }
+
+    private static void assertIdenticalOutput(AudlangFormattable formattable) throws IOException {
+        for (FormatStyle style : FormatStyle.values()) {
+            String expected = formattable.format(style);
+            for (int flushThreshold : FLUSH_THRESHOLDS) {
+                StringWriter writer = new StringWriter();
+                FormatSink.format(formattable, style, writer, flushThreshold);
+                assertEquals(expected, writer.toString());
+            }
+        }
+    }
+
+    /**
+     * @param rand
+     * @param numberOfMembers
+     * @return large AND with curbs, negations, comments and operand lists
+     */
+    private static PlExpression<?> createCatalogExpression(Random rand, int numberOfMembers) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numberOfMembers; i++) {
+            if (i > 0) {
+                sb.append(" AND ");
+            }
+            sb.append(String.format("""
+                    (country ANY OF (%s, %s, c1, c2, c3, c4) OR NOT segment = s%s) AND age > %s /* comment */
+                    AND CURB (c1 = %s OR c2 = %s OR c3 STRICT NOT CONTAINS x%s) > 1""", rand.nextInt(20), rand.nextInt(20), rand.nextInt(20),
+                    rand.nextInt(50), rand.nextInt(10), rand.nextInt(10), rand.nextInt(10)));
+        }
+        return parse(sb.toString());
+    }
+
+    private static PlExpression<?> parse(String source) {
+        return PlExpressionBuilder.stringToExpression(source).getResultExpression();
+    }
+
+}
@@ -0,0 +1,250 @@
+//@formatter:off
+/*
+ * SymbolTableTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.SymbolTable.SymbolTableStats;
+import de.calamanari.adl.cnv.QualifiedArgValue;
+import de.calamanari.adl.cnv.tps.ArgMetaInfo;
+import de.calamanari.adl.cnv.tps.DefaultAdlType;
+import de.calamanari.adl.erl.PlExpression;
+import de.calamanari.adl.erl.PlExpressionBuilder;
+import de.calamanari.adl.erl.PlMatchExpression;
+import de.calamanari.adl.irl.biceps.CoreExpressionCodec.Dictionary;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class SymbolTableTest {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(SymbolTableTest.class);
+
+    @AfterEach
+    void tearDown() {
+        SymbolTable.setGlobalEnabled(false);
+    }
+
+    @Test
+    void testBasics() {
+
+        SymbolTable table = new SymbolTable();
+
+        String color = new String("color");
+
+        assertEquals(SymbolTable.NO_ID, table.findId("color"));
+
+        int id = table.idOf(color);
+        assertEquals(0, id);
+        assertEquals(0, table.idOf(new String("color")));
+        assertEquals(0, table.findId("color"));
+        assertEquals(1, table.idOf("shape"));
+        assertEquals(2, table.size());
+
+        assertSame(color, table.symbolOf(id));
+        assertSame(color, table.canonical(new String("color")));
+
+        assertThrows(IllegalArgumentException.class, () -> table.symbolOf(2));
+        assertThrows(IllegalArgumentException.class, () -> table.symbolOf(-1));
+        assertThrows(IllegalArgumentException.class, () -> table.idOf(null));
+        assertThrows(IllegalArgumentException.class, () -> new SymbolTable(0));
+
+        SymbolTableStats stats = table.getStats();
+        assertEquals(2, stats.hitCount());
+        assertEquals(2, stats.missCount());
+        assertEquals(0, stats.rejectedCount());
+        assertEquals(0.5, stats.hitRate(), 0.0001);
+
+        // many chunks
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i + 2, table.idOf("v" + i));
+        }
+        assertEquals("v9999", table.symbolOf(10_001));
+
+    }
+
+    @Test
+    void testBounded() {
+
+        SymbolTable table = new SymbolTable(2);
+
+        assertEquals(0, table.idOf("a"));
+        assertEquals(1, table.idOf("b"));
+        assertEquals(SymbolTable.NO_ID, table.idOf("c"));
+        assertEquals(1, table.idOf("b"));
+
+        String c = new String("c");
+        assertSame(c, table.canonical(c));
+
+        assertEquals(2, table.size());
+        assertEquals(2, table.maxSize());
+        assertEquals(2, table.getStats().rejectedCount());
+
+    }
+
+    @Test
+    void testConcurrentAccess() throws Exception {
+
+        SymbolTable table = new SymbolTable();
+
+        int numberOfThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+
+        try {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (int i = 0; i < numberOfThreads; i++) {
+                futures.add(executor.submit(() -> {
+                    int[] ids = new int[20_000];
+                    for (int j = 0; j < ids.length; j++) {
+                        ids[j] = table.idOf("s" + j);
+                    }
+                    return ids;
+                }));
+            }
+            int[] expected = futures.get(0).get();
+            for (int i = 1; i < numberOfThreads; i++) {
+                assertTrue(Arrays.equals(expected, futures.get(i).get()));
+            }
+            for (int j = 0; j < expected.length; j++) {
+                assertEquals("s" + j, table.symbolOf(expected[j]));
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertEquals(20_000, table.size());
+        assertEquals(20_000, table.getStats().missCount());
+
+    }
+
+    @Test
+    void testGlobal() {
+
+        assertFalse(SymbolTable.isGlobalEnabled());
+
+        String name = new String("global-test-arg");
+        assertSame(name, SymbolTable.canonicalize(name));
+
+        PlMatchExpression match1 = (PlMatchExpression) parse("global-test-arg ANY OF (v1, v2)");
+        PlMatchExpression match2 = (PlMatchExpression) parse("global-test-arg ANY OF (v1, v2)");
+        assertNotSame(match1.argName(), match2.argName());
+
+        SymbolTable.setGlobalEnabled(true);
+
+        name = SymbolTable.canonicalize(name);
+        assertSame(name, SymbolTable.canonicalize(new String("global-test-arg")));
+        assertTrue(SymbolTable.global().findId(name) >= 0);
+
+        match1 = (PlMatchExpression) parse("global-test-arg ANY OF (v1, v2)");
+        match2 = (PlMatchExpression) parse("global-test-arg ANY OF (v2, v1)");
+        assertSame(name, match1.argName());
+        assertSame(name, match2.argName());
+        assertSame(match1.operands().get(0).value(), match2.operands().get(1).value());
+
+        // also the fast path parser
+        PlMatchExpression match3 = (PlMatchExpression) parse("global-test-arg = v1");
+        assertSame(name, match3.argName());
+        assertSame(match1.operands().get(0).value(), match3.operands().get(0).value());
+
+        assertSame(name, new QualifiedArgValue(new String("global-test-arg"), "x").argName());
+        assertSame(SymbolTable.canonicalize("v1"), new QualifiedArgValue("a", new String("v1")).argValue());
+        assertSame(name, new ArgMetaInfo(new String("global-test-arg"), DefaultAdlType.STRING, false, false).argName());
+
+        Dictionary dictionary = new Dictionary(Arrays.asList(new String("global-test-arg")), Arrays.asList(new String("v1")));
+        assertSame(name, dictionary.getArgumentName(0));
+        assertSame(SymbolTable.canonicalize("v1"), dictionary.getValue(0));
+
+        SymbolTable.setGlobalEnabled(false);
+
+        assertNotSame(name, ((PlMatchExpression) parse("global-test-arg = v1")).argName());
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkLargeValueListMemory() {
+
+        StringBuilder sb = new StringBuilder("color ANY OF (");
+        for (int i = 0; i < 10_000; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("value").append(i);
+        }
+        sb.append(")");
+        String source = sb.toString();
+
+        // warm-up
+        parse(source);
+
+        for (int i = 0; i < 3; i++) {
+            runParseMemoryBenchmark(i, source, false);
+            runParseMemoryBenchmark(i, source, true);
+        }
+
+    }
+
+    private static void runParseMemoryBenchmark(int round, String source, boolean useSymbolTable) {
+        SymbolTable.setGlobalEnabled(useSymbolTable);
+        long usedBefore = usedHeapAfterGc();
+        long startTimeNanos = System.nanoTime();
+        List<PlExpression<?>> expressions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            expressions.add(parse(source));
+        }
+        long elapsedMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+        long retainedBytes = usedHeapAfterGc() - usedBefore;
+        LOGGER.info("Round {}: {} x 10k-value ANY OF, symbol table={}: {} ms, ~{} KB retained", round, expressions.size(), useSymbolTable, elapsedMillis,
+                retainedBytes / 1024);
+        SymbolTable.setGlobalEnabled(false);
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static PlExpression<?> parse(String source) {
+        return PlExpressionBuilder.stringToExpression(source).getResultExpression();
+    }
+
+}
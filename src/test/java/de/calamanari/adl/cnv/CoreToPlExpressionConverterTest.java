@@ -19,6 +19,12 @@
 
 package de.calamanari.adl.cnv;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,7 +33,11 @@ import de.calamanari.adl.FormatStyle;
 import de.calamanari.adl.erl.AudlangParseResult;
 import de.calamanari.adl.erl.PlExpression;
 import de.calamanari.adl.erl.PlExpressionBuilder;
+import de.calamanari.adl.irl.CombinedExpression;
 import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.MatchExpression;
+import de.calamanari.adl.irl.MatchOperator;
+import de.calamanari.adl.irl.Operand;
 import de.calamanari.adl.irl.biceps.CoreExpressionOptimizer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -448,6 +458,90 @@ class CoreToPlExpressionConverterTest {
 
     }
 
+    @Test
+    void testDeepTree() {
+
+        assertEquals("STRICT c0 != 1 AND (b0 != 1 OR d0 >= 5 OR e0 ANY OF (1, 2) OR (STRICT c1 != 1 AND (a = 1 OR b1 != 1 OR d1 >= 5 OR e1 ANY OF (1, 2) ) ) )",
+                convertCoreToPl(createDeepTree(2)).toString());
+
+        int depth = 3_000;
+        PlExpression<?> level = convertCoreToPl(createDeepTree(depth));
+        for (int i = 0; i < depth; i++) {
+            List<PlExpression<?>> andMembers = level.childExpressions();
+            assertEquals(2, andMembers.size());
+            assertEquals("STRICT c" + i + " != 1", andMembers.get(0).toString());
+            List<PlExpression<?>> orMembers = andMembers.get(1).childExpressions();
+            assertEquals(4, orMembers.size());
+            int offset = 0;
+            if (i == depth - 1) {
+                assertEquals("a = 1", orMembers.get(0).toString());
+                offset = 1;
+            }
+            else {
+                level = orMembers.get(3);
+            }
+            assertEquals("b" + i + " != 1", orMembers.get(offset).toString());
+            assertEquals("d" + i + " >= 5", orMembers.get(offset + 1).toString());
+            assertEquals("e" + i + " ANY OF (1, 2)", orMembers.get(offset + 2).toString());
+        }
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkMemberPrettyOrder() {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 8_000; i++) {
+            if (i > 0) {
+                sb.append(" OR ");
+            }
+            String argName = "arg" + (i % 10);
+            switch (i % 5) {
+            case 0 -> sb.append(argName).append(" != n").append(i);
+            case 1 -> sb.append("NOT ").append(argName).append(" = w").append(i);
+            case 2 -> sb.append("STRICT ").append(argName).append(" != s").append(i);
+            case 3 -> sb.append("(color = c").append(i).append(" AND shape = s").append(i % 50).append(")");
+            default -> sb.append(argName).append(" = v").append(i);
+            }
+        }
+        List<PlExpression<?>> members = new ArrayList<>(parsePl(sb.toString()).getResultExpression().childExpressions());
+        Collections.shuffle(members, new Random(4711));
+
+        // warm-up
+        for (int i = 0; i < 10; i++) {
+            new ArrayList<>(members).sort(CoreToPlExpressionConverter.MEMBER_PRETTY_ORDER_COMPARATOR);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            long startTimeNanos = System.nanoTime();
+            for (int j = 0; j < 20; j++) {
+                new ArrayList<>(members).sort(CoreToPlExpressionConverter.MEMBER_PRETTY_ORDER_COMPARATOR);
+            }
+            LOGGER.info("Round {}: 20 x sorting {} members: {} ms", i, members.size(), (System.nanoTime() - startTimeNanos) / 1_000_000);
+        }
+
+    }
+
+    /**
+     * @param depth number of AND/OR-pairs
+     * @return chain of alternating AND/OR, each level with a couple of members to be combined by the conversion plus the next level as member
+     */
+    private static CoreExpression createDeepTree(int depth) {
+        CoreExpression res = match("a", MatchOperator.EQUALS, "1");
+        for (int i = depth - 1; i >= 0; i--) {
+            res = CombinedExpression.orOf(match("b" + i, MatchOperator.IS_UNKNOWN, null), match("b" + i, MatchOperator.EQUALS, "1").negate(true),
+                    match("d" + i, MatchOperator.GREATER_THAN, "5"), match("d" + i, MatchOperator.EQUALS, "5"), match("e" + i, MatchOperator.EQUALS, "1"),
+                    match("e" + i, MatchOperator.EQUALS, "2"), res);
+            res = CombinedExpression.andOf(match("c" + i, MatchOperator.EQUALS, "1").negate(true), res);
+        }
+        return res;
+    }
+
+    private static CoreExpression match(String argName, MatchOperator operator, String value) {
+        return MatchExpression.of(argName, operator, value == null ? null : Operand.of(value, false));
+    }
+
     private static void assertNoChangeAfterConversion(String expressionString) {
         CoreExpression expr = parseAndOptimize(expressionString);
         assertEquals(expr, convertPlToCore(convertCoreToPl(expr)));
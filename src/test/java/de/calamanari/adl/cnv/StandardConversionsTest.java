@@ -27,6 +27,7 @@ import org.junit.jupiter.api.Test;
 import de.calamanari.adl.AudlangResult;
 import de.calamanari.adl.ConversionException;
 import de.calamanari.adl.erl.AudlangParseResult;
+import de.calamanari.adl.erl.CachingPlExpressionParser;
 import de.calamanari.adl.erl.PlExpression;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -71,6 +72,13 @@ class StandardConversionsTest {
         assertThrows(ConversionException.class, () -> StandardConversions.parsePlExpression(null));
         assertThrows(ConversionException.class, () -> StandardConversions.parseCoreExpression(null));
 
+        CachingPlExpressionParser parser = new CachingPlExpressionParser();
+
+        assertEquals(expr, StandardConversions.parsePlExpression("color = blue", parser));
+        assertEquals(expr, o1.map(StandardConversions.parse(parser)).map(StandardConversions.toPlExpression()).orElseThrow(NullPointerException::new));
+        assertEquals(1, parser.getHitCount());
+        assertEquals(1, parser.getMissCount());
+
     }
 
     @Test
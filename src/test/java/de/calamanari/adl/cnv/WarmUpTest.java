@@ -0,0 +1,68 @@
+//@formatter:off
+/*
+ * WarmUpTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.cnv;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.cnv.WarmUp.WarmUpResult;
+import de.calamanari.adl.erl.PlExpressionParser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class WarmUpTest {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(WarmUpTest.class);
+
+    @Test
+    void testWarmUp() {
+
+        WarmUpResult result = WarmUp.warmUp();
+        LOGGER.info("{}", result);
+
+        assertEquals(WarmUp.DEFAULT_ROUNDS, result.rounds());
+        assertTrue(result.numberOfExpressions() > 30);
+
+        // only the intentionally broken samples at the end of the corpus must fail
+        assertEquals(5, result.numberOfFailures());
+        assertFalse(result.hasUnexpectedFailures());
+        assertTrue(new WarmUpResult(result.numberOfExpressions(), 1, 6, 1).hasUnexpectedFailures());
+        assertTrue(result.elapsedNanos() > 0);
+        assertEquals(result.elapsedNanos() / 1_000_000, result.elapsedMillis());
+
+        PlExpressionParser parser = new PlExpressionParser(4);
+        result = WarmUp.warmUp(parser, 1);
+        assertEquals(1, result.rounds());
+        assertEquals(1, parser.getNumberOfIdleInstances());
+        assertEquals(result.numberOfExpressions() * 2 - result.numberOfFailures(), parser.getParseStats().parseCount());
+
+        assertThrows(IllegalArgumentException.class, () -> WarmUp.warmUp(null, 1));
+        assertThrows(IllegalArgumentException.class, () -> WarmUp.warmUp(parser, 0));
+
+    }
+
+}
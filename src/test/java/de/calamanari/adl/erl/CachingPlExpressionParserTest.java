@@ -0,0 +1,217 @@
+//@formatter:off
+/*
+ * CachingPlExpressionParserTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import de.calamanari.adl.CommonErrors;
+import de.calamanari.adl.FormatStyle;
+import de.calamanari.adl.erl.PlExpressionParser.ParseLimits;
+import de.calamanari.adl.erl.PlExpressionParser.ParseMode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class CachingPlExpressionParserTest {
+
+    @Test
+    void testHitMiss() {
+
+        CachingPlExpressionParser parser = new CachingPlExpressionParser();
+
+        AudlangParseResult res1 = parser.parse("a = 1 and b = 2");
+        AudlangParseResult res2 = parser.parse("a = 1 and b = 2");
+
+        assertEquals(1, parser.getMissCount());
+        assertEquals(1, parser.getHitCount());
+        assertEquals(1, parser.getCacheSize());
+
+        assertNotSame(res1, res2);
+        assertSame(res1.getResultExpression(), res2.getResultExpression());
+        assertEquals(res1.toString(), res2.toString());
+
+        // modifying a result must not affect the cache
+        res2.setError(true);
+        res2.getUserMessages().clear();
+
+        AudlangParseResult res3 = parser.parse("a = 1 and b = 2");
+        assertFalse(res3.isError());
+        assertSame(res1.getResultExpression(), res3.getResultExpression());
+
+        // different whitespace
+        parser.parse("a = 1  and b = 2");
+        assertEquals(2, parser.getMissCount());
+
+        // errors are cached as well
+        AudlangParseResult err1 = parser.parse("a = 1 and");
+        AudlangParseResult err2 = parser.parse("a = 1 and");
+        assertTrue(err2.isError());
+        assertEquals(err1.toString(), err2.toString());
+        assertEquals(3, parser.getMissCount());
+        assertEquals(3, parser.getHitCount());
+
+        // null and blank bypass the cache
+        assertTrue(parser.parse(null).isError());
+        assertTrue(parser.parse("  ").isError());
+        assertEquals(3, parser.getMissCount());
+        assertEquals(3, parser.getCacheSize());
+
+        parser.clearCache();
+        assertEquals(0, parser.getCacheSize());
+        assertEquals(0, parser.getEvictionCount());
+
+        assertThrows(IllegalArgumentException.class, () -> new CachingPlExpressionParser(0, false));
+
+    }
+
+    @Test
+    void testEviction() {
+
+        CachingPlExpressionParser parser = new CachingPlExpressionParser(3, false);
+
+        assertEquals(3, parser.getMaxCacheSize());
+
+        parser.parse("a = 1");
+        parser.parse("a = 2");
+        parser.parse("a = 3");
+        // access a = 1 so that a = 2 becomes the eldest entry
+        parser.parse("a = 1");
+        parser.parse("a = 4");
+
+        assertEquals(3, parser.getCacheSize());
+        assertEquals(1, parser.getEvictionCount());
+
+        parser.parse("a = 1");
+        assertEquals(2, parser.getHitCount());
+
+        parser.parse("a = 2");
+        assertEquals(5, parser.getMissCount());
+        assertEquals(2, parser.getEvictionCount());
+
+    }
+
+    @Test
+    void testWhitespaceInsensitive() {
+
+        CachingPlExpressionParser parser = new CachingPlExpressionParser(100, true);
+
+        assertTrue(parser.isWhitespaceInsensitive());
+
+        String source = "(color = blue /* a  comment */ or engine = \"Diesel  Turbo\") and brand = Toyota";
+
+        AudlangParseResult res1 = parser.parse(source);
+        String prettySource = res1.getResultExpression().format(FormatStyle.PRETTY_PRINT);
+        AudlangParseResult res2 = parser.parse(prettySource);
+        AudlangParseResult res3 = parser.parse("  (color  =\tblue /* a  comment */\n or engine = \"Diesel  Turbo\")\r\nand brand = Toyota ");
+
+        assertEquals(1, parser.getHitCount());
+        assertEquals(2, parser.getMissCount());
+
+        assertEquals(prettySource, res2.getSource());
+        assertEquals(res1.getResultExpression(), res2.getResultExpression());
+        assertSame(res1.getResultExpression(), res3.getResultExpression());
+
+        // whitespace in quotes and comments is relevant
+        parser.parse("(color = blue /* a comment */ or engine = \"Diesel  Turbo\") and brand = Toyota");
+        parser.parse("(color = blue /* a  comment */ or engine = \"Diesel Turbo\") and brand = Toyota");
+        assertEquals(4, parser.getMissCount());
+
+        // errors are not cached
+        parser.parse("a = 1 and");
+        parser.parse("a = 1  and");
+        assertEquals(6, parser.getMissCount());
+
+        assertEquals("a = 1 and b = \"x\"\"  y\" /*  c */", CachingPlExpressionParser.normalizeWhitespace(" a =   1\nand  b = \"x\"\"  y\"\t/*  c */ "));
+        assertEquals("/* open", CachingPlExpressionParser.normalizeWhitespace("/* open"));
+        assertEquals("\"open ", CachingPlExpressionParser.normalizeWhitespace("\"open "));
+
+    }
+
+    @Test
+    void testParserSettings() {
+
+        CachingPlExpressionParser parser = new CachingPlExpressionParser();
+        assertEquals(ParseMode.LL, parser.getParseMode());
+        assertTrue(parser.isFastPathEnabled());
+        assertEquals(ParseLimits.NONE, parser.getLimits());
+
+        ParseLimits limits = new ParseLimits(100, 2, 3, 2);
+        parser = new CachingPlExpressionParser(2, ParseMode.SLL_THEN_LL, false, limits, 10, true);
+        assertEquals(ParseMode.SLL_THEN_LL, parser.getParseMode());
+        assertFalse(parser.isFastPathEnabled());
+        assertEquals(limits, parser.getLimits());
+        assertTrue(parser.isWhitespaceInsensitive());
+
+        assertFalse(parser.parse("a = 1 AND (b = 2 OR c = 3)").isError());
+        assertEquals(0, parser.getParseStats().fastPathCount());
+
+        AudlangParseResult res = parser.parse("a ANY OF (1, 2, 3, 4)");
+        assertTrue(res.isError());
+        assertEquals(CommonErrors.ERR_4004_INPUT_LIMIT_EXCEEDED.code(), res.getUserMessages().get(0).code());
+
+        assertThrows(IllegalArgumentException.class, () -> new CachingPlExpressionParser(2, ParseMode.LL, true, null, 10, false));
+
+    }
+
+    @Test
+    void testConcurrentAccess() throws InterruptedException, ExecutionException {
+
+        CachingPlExpressionParser parser = new CachingPlExpressionParser(20, false);
+
+        List<Future<Boolean>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 20; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < 200; j++) {
+                        String source = "a = " + (j % 30);
+                        if (!parser.parse(source).getResultExpression().toString().equals(source)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+        }
+
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get());
+        }
+
+        assertEquals(4000, parser.getHitCount() + parser.getMissCount());
+        assertTrue(parser.getCacheSize() <= 20);
+        assertTrue(parser.getEvictionCount() > 0);
+
+    }
+
+}
@@ -19,19 +19,25 @@
 
 package de.calamanari.adl.erl;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Function;
 
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.calamanari.adl.AudlangField;
 import de.calamanari.adl.AudlangValidationException;
+import de.calamanari.adl.DeepCopyUtils;
 import de.calamanari.adl.cnv.StandardConversions;
 import de.calamanari.adl.erl.PlComment.Position;
+import de.calamanari.adl.erl.PlExpressionParser.ParseMode;
 import de.calamanari.adl.util.JsonUtils;
 
 import static de.calamanari.adl.CombinedExpressionType.AND;
@@ -74,6 +80,7 @@ import static de.calamanari.adl.erl.SamplePlExpressions.vop;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -809,6 +816,125 @@ class PlCombinedExpressionTest {
 
     }
 
+    @Test
+    void testEqualsHashCodeWithComments() {
+
+        PlMatchExpression matchB = match("b", EQUALS, "2");
+
+        // same output, different placement of the comment
+        PlCombinedExpression expr = and(match("a", EQUALS, "1"), matchB).withComments(SHORT_COMMENT_AFTER_EXPR);
+        PlCombinedExpression expr2 = and(match("a", EQUALS, "1"), matchB.withComments(SHORT_COMMENT_AFTER_EXPR));
+
+        assertNull(expr.cachedInline());
+        assertNull(expr2.cachedInline());
+
+        assertEquals("a = 1 AND b = 2 /* comment AE */", expr2.format(INLINE));
+        assertEquals(expr.format(INLINE), expr2.format(INLINE));
+        assertEquals(expr, expr2);
+        assertEquals(expr2, expr);
+        assertEquals(expr.hashCode(), expr2.hashCode());
+
+        // neither equals nor hashCode should cache the formatted string
+        assertNull(expr.cachedInline());
+        assertNull(expr2.cachedInline());
+
+        PlCombinedExpression expr3 = and(match("a", EQUALS, "1"), matchB.withComments(SHORT_COMMENT_BEFORE_EXPR));
+        assertNotEquals(expr, expr3);
+        assertNotEquals(expr.stripComments(), expr);
+        assertEquals(expr.stripComments(), expr3.stripComments());
+        assertEquals(expr.stripComments().hashCode(), expr3.stripComments().hashCode());
+
+        PlExpression<?> resolved = expr.resolveHigherLanguageFeatures();
+        assertEquals("a = 1 AND b = 2", resolved.toString());
+        assertNull(expr.cachedInline());
+
+        assertEquals(expr.toString(), expr.cachedInline());
+        assertEquals(expr, expr2);
+        assertEquals(expr, DeepCopyUtils.serialCopy(expr));
+        assertEquals(expr2, JsonUtils.readFromJsonString(JsonUtils.writeAsJsonString(expr2, false), PlExpression.class));
+
+    }
+
+    @Test
+    void testReadFormerRecordSerialForm() throws IOException, ClassNotFoundException {
+
+        // written by the former record versions of PlCombinedExpression, PlCurbExpression, PlNegationExpression and PlMatchExpression
+        PlExpression<?> expected = StandardConversions.parsePlExpression("""
+                a = 1 /* comment */ AND (b ANY OF (1, @c) OR STRICT NOT d CONTAINS "x") AND CURB (e = 1 OR NOT f = 2 OR g BETWEEN (1, 5)) >= 2
+                AND NOT (h IS UNKNOWN OR i > @j)""");
+
+        PlExpression<?> expr = null;
+        try (ObjectInputStream ois = new ObjectInputStream(PlCombinedExpressionTest.class.getResourceAsStream("/serialization/pl-expression-v1.ser"))) {
+            expr = (PlExpression<?>) ois.readObject();
+        }
+
+        assertEquals(expected, expr);
+        assertEquals(expected.hashCode(), expr.hashCode());
+        assertEquals(expected.format(PRETTY_PRINT), expr.format(PRETTY_PRINT));
+        assertEquals(expected.allFields(), expr.allFields());
+        assertEquals(expr, DeepCopyUtils.serialCopy(expr));
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkCommentedNestedExpressionToCore() {
+
+        String source = createCommentedNestedExpression(60);
+
+        PlExpressionParser parser = new PlExpressionParser(1, ParseMode.LL, false);
+
+        LOGGER.info("Benchmark expression: {} characters, {} comments", source.length(),
+                parser.parse(source).getResultExpression().allComments().size());
+
+        Function<PlExpression<?>, Object> noConversion = expression -> expression;
+        Function<PlExpression<?>, Object> resolution = PlExpression::resolveHigherLanguageFeatures;
+        Function<PlExpression<?>, Object> coreConversion = StandardConversions.plToCoreExpression()::apply;
+
+        // warm-up
+        runParseAndConvertBenchmark(parser, source, noConversion, 500);
+        runParseAndConvertBenchmark(parser, source, resolution, 500);
+        runParseAndConvertBenchmark(parser, source, coreConversion, 100);
+
+        for (int i = 0; i < 3; i++) {
+            long nanosParse = runParseAndConvertBenchmark(parser, source, noConversion, 500);
+            long nanosResolve = runParseAndConvertBenchmark(parser, source, resolution, 500);
+            long nanosCore = runParseAndConvertBenchmark(parser, source, coreConversion, 100);
+            LOGGER.info("Round {}: parse: {} ms, parse and resolve higher language features: {} ms (500 times each), parse-to-core: {} ms (100 times)", i,
+                    nanosParse / 1_000_000, nanosResolve / 1_000_000, nanosCore / 1_000_000);
+        }
+
+    }
+
+    private static long runParseAndConvertBenchmark(PlExpressionParser parser, String source, Function<PlExpression<?>, Object> conversion,
+            int repetitions) {
+        long startTimeNanos = System.nanoTime();
+        int dummy = 0;
+        for (int i = 0; i < repetitions; i++) {
+            PlExpression<?> expression = parser.parse(source).getResultExpression();
+            dummy = dummy + conversion.apply(expression).hashCode();
+        }
+        long elapsedNanos = System.nanoTime() - startTimeNanos;
+        LOGGER.debug("{}", dummy);
+        return elapsedNanos;
+    }
+
+    /**
+     * @param depth
+     * @return expression with comments on every level
+     */
+    private static String createCommentedNestedExpression(int depth) {
+        StringBuilder sb = new StringBuilder("color = red /* innermost */");
+        for (int i = 0; i < depth; i++) {
+            String inner = sb.toString();
+            sb.setLength(0);
+            sb.append("/* level ").append(i).append(" */ (a").append(i).append(" = ").append(i).append(" /* after a").append(i).append(" */ AND (");
+            sb.append(i % 2 == 0 ? "b" : "STRICT NOT /* strict */ b").append(i).append(" /* b */ = 1 AND ").append(inner).append(") ) /* end of level ");
+            sb.append(i).append(" */");
+        }
+        return sb.toString();
+    }
+
     @Test
     void testCommentHandling() {
         PlCombinedExpression expr = new PlCombinedExpression(AND, Arrays.asList(match("c", EQUALS, "3"), match("d", EQUALS, "4")), null);
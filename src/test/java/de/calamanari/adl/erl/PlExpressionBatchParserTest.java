@@ -0,0 +1,212 @@
+//@formatter:off
+/*
+ * PlExpressionBatchParserTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import de.calamanari.adl.erl.PlExpressionBatchParser.BatchParseResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class PlExpressionBatchParserTest {
+
+    @Test
+    void testBatchParse() {
+
+        List<String> sources = createSources(1000);
+
+        BatchParseResult res = new PlExpressionBatchParser().parse(sources);
+
+        assertResultsInOrder(sources, res);
+
+        res = new PlExpressionBatchParser().parse(sources.stream());
+
+        assertResultsInOrder(sources, res);
+
+        res = new PlExpressionBatchParser(PlExpressionParser.getDefaultInstance(), Runnable::run, 7).parse(sources.iterator());
+
+        assertResultsInOrder(sources, res);
+
+    }
+
+    @Test
+    void testBatchParseVirtualThreads() {
+
+        List<String> sources = createSources(500);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            BatchParseResult res = new PlExpressionBatchParser(new PlExpressionParser(4), executor, 3).parse(sources);
+            assertResultsInOrder(sources, res);
+        }
+
+    }
+
+    @Test
+    void testPendingChunksLimited() throws Exception {
+
+        List<String> sources = createSources(20);
+
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger numberOfSubmittedChunks = new AtomicInteger();
+        AtomicInteger numberOfItemsRead = new AtomicInteger();
+
+        // parallelism 1 allows for 2 pending chunks, all tasks are blocked until the latch opens
+        ForkJoinPool pool = new ForkJoinPool(1) {
+
+            @Override
+            public void execute(Runnable task) {
+                numberOfSubmittedChunks.incrementAndGet();
+                super.execute(() -> {
+                    try {
+                        latch.await();
+                    }
+                    catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    task.run();
+                });
+            }
+
+        };
+
+        Iterator<String> sourceIterator = sources.iterator();
+        Iterator<String> countingIterator = new Iterator<>() {
+
+            @Override
+            public boolean hasNext() {
+                return sourceIterator.hasNext();
+            }
+
+            @Override
+            public String next() {
+                numberOfItemsRead.incrementAndGet();
+                return sourceIterator.next();
+            }
+        };
+
+        try {
+            PlExpressionBatchParser batchParser = new PlExpressionBatchParser(PlExpressionParser.getDefaultInstance(), pool, 1);
+            CompletableFuture<BatchParseResult> future = CompletableFuture.supplyAsync(() -> batchParser.parse(countingIterator));
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (numberOfItemsRead.get() < 3 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200);
+
+            // the third chunk is complete, but the parser waits for the first one before submitting it
+            assertEquals(3, numberOfItemsRead.get());
+            assertEquals(2, numberOfSubmittedChunks.get());
+
+            latch.countDown();
+            assertResultsInOrder(sources, future.get(10, TimeUnit.SECONDS));
+            assertEquals(20, numberOfSubmittedChunks.get());
+        }
+        finally {
+            latch.countDown();
+            pool.shutdown();
+        }
+
+    }
+
+    @Test
+    void testSpecialCases() {
+
+        BatchParseResult res = new PlExpressionBatchParser().parse(Collections.emptyList());
+
+        assertEquals(0, res.count());
+        assertEquals(0, res.numberOfFailures());
+        assertTrue(res.elapsedNanos() >= 0);
+
+        List<String> sources = new ArrayList<>();
+        sources.add(null);
+        sources.add("a = 1");
+        sources.add("  ");
+        sources.add("boom");
+        sources.add("b = 2");
+
+        PlExpressionParser failingParser = new PlExpressionParser() {
+
+            @Override
+            public AudlangParseResult parse(String source) {
+                if ("boom".equals(source)) {
+                    throw new StackOverflowError();
+                }
+                return super.parse(source);
+            }
+
+        };
+
+        res = new PlExpressionBatchParser(failingParser, Runnable::run, 2).parse(sources);
+
+        assertEquals(5, res.count());
+        assertEquals(3, res.numberOfFailures());
+        assertFalse(res.results().get(1).isError());
+        assertTrue(res.results().get(3).isError());
+        assertFalse(res.results().get(4).isError());
+        assertTrue(res.toString().startsWith("BatchParseResult [count=5, numberOfFailures=3"));
+
+        assertThrows(IllegalArgumentException.class, () -> new PlExpressionBatchParser(null));
+        assertThrows(IllegalArgumentException.class, () -> new PlExpressionBatchParser(PlExpressionParser.getDefaultInstance(), Runnable::run, 0));
+
+    }
+
+    private static void assertResultsInOrder(List<String> sources, BatchParseResult res) {
+        assertEquals(sources.size(), res.count());
+        int expectedFailures = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            AudlangParseResult result = res.results().get(i);
+            assertEquals(sources.get(i), result.getSource());
+            if (i % 10 == 9) {
+                assertTrue(result.isError());
+                expectedFailures++;
+            }
+            else {
+                assertEquals(PlExpressionBuilder.stringToExpression(sources.get(i)).getResultExpression(), result.getResultExpression());
+            }
+        }
+        assertEquals(expectedFailures, res.numberOfFailures());
+    }
+
+    private static List<String> createSources(int count) {
+        return IntStream.range(0, count).mapToObj(i -> (i % 10 == 9) ? "a = " + i + " or" : "a = " + i + " or (b any of (" + i + ", x) and c != " + i + ")")
+                .toList();
+    }
+
+}
@@ -22,11 +22,15 @@ package de.calamanari.adl.erl;
 import java.util.Arrays;
 import java.util.List;
 
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.calamanari.adl.FormatStyle;
+import de.calamanari.adl.antlr.AudlangLexer;
+import de.calamanari.adl.antlr.AudlangParser;
 import de.calamanari.adl.erl.PlCurbExpression.PlCurbOperator;
 
 import static de.calamanari.adl.FormatStyle.INLINE;
@@ -91,7 +95,9 @@ import static de.calamanari.adl.erl.SamplePlExpressions.not;
 import static de.calamanari.adl.erl.SamplePlExpressions.or;
 import static de.calamanari.adl.erl.SamplePlExpressions.strictNot;
 import static de.calamanari.adl.erl.SamplePlExpressions.vop;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 /**
  * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
@@ -1890,6 +1896,39 @@ class PlExpressionBuilderTest {
 
     }
 
+    @Test
+    @SuppressWarnings("deprecation")
+    void testInitializeWithTokenNames() {
+        String expression = "q=1 AND ( /* da */ (u=c OR ( ( a=b OR c=d ) /* c1 */ AND (o=p AND (q=r OR s=t ) /* comment */ ) )))";
+
+        PlExpressionBuilder builder = new PlExpressionBuilder() {
+            // sub-class relying on the former initialization method
+        };
+
+        AudlangLexer lexer = new AudlangLexer(CharStreams.fromString(expression));
+        lexer.removeErrorListeners();
+        lexer.addErrorListener(builder.getErrorListener());
+        CommonTokenStream allTokens = new CommonTokenStream(lexer);
+        allTokens.fill();
+
+        AudlangParser parser = new AudlangParser(allTokens);
+        parser.setBuildParseTree(true);
+        parser.removeErrorListeners();
+        parser.addErrorListener(builder.getErrorListener());
+        parser.addParseListener(builder);
+
+        String[] tokenNames = allTokens.getTokens().stream().map(token -> PlExpressionBuilder.resolveTokenName(parser.getVocabulary(), token))
+                .toArray(String[]::new);
+        builder.initialize(expression, tokenNames, parser.getRuleNames());
+        AudlangParseResult res = builder.getParseResult();
+        parser.query();
+
+        assertFalse(res.isError());
+        assertArrayEquals(tokenNames, builder.tokenNames);
+        assertEquals(parse(expression), res.getResultExpression());
+
+    }
+
     private static PlExpression<?> parse(String source) {
         return PlExpressionBuilder.stringToExpression(source).getResultExpression();
     }
@@ -0,0 +1,353 @@
+//@formatter:off
+/*
+ * PlExpressionFastPathParserTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.FormatStyle;
+import de.calamanari.adl.erl.PlExpressionParser.ParseLimits;
+import de.calamanari.adl.erl.PlExpressionParser.ParseMode;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class PlExpressionFastPathParserTest {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(PlExpressionFastPathParserTest.class);
+
+    private static final List<String> SOURCES = List.of(
+    // @formatter:off
+            "a = 1",
+            "a=1",
+            " \ta  =  1 \r\n",
+            "1 = 2",
+            "0 = 1",
+            "\"x y\" = 1",
+            "\"a\"=\"b\"",
+            "a = \"\"",
+            "a = \"a\"\"b\"",
+            "a = \"\"\"\"",
+            "a = 1a",
+            "a = 00x",
+            "a = x@y",
+            "a = x@",
+            "a = -1",
+            "a = +1",
+            "a = 1.5",
+            "a = x~y|z{}[]^_`\\",
+            "a = x%$#';:?",
+            "a = éß",
+            "a = and1",
+            "a = ANDY",
+            "a = @b",
+            "a = @0",
+            "a = @\"x y\"",
+            "a = @b@c",
+            "a=@b or c=1",
+            "a != 1",
+            "a!=1",
+            "a != \"\"",
+            "a < 1",
+            "a<=@b",
+            "a > @b",
+            "a >=1",
+            "a < \"\"",
+            "a is unknown",
+            "a  IS  Not  Unknown",
+            "a any of (1)",
+            "a any of(1,2 , 3 )",
+            "a any of (\"\", @b, \"x y\")",
+            "a not any of (@b)",
+            "a strict not any of (1)",
+            "a between (1,2)",
+            "a between(2, 1)",
+            "a not between ( \"\" , 1 )",
+            "a strict not between (1, 2)",
+            "a contains foo",
+            "a contains \"\"",
+            "a contains 12",
+            "a not contains \"x\"",
+            "a strict not contains x",
+            "a contains any of (foo, bar)",
+            "a contains any of(\"\")",
+            "a not contains any of (x)",
+            "a strict not contains any of (foo)",
+            "a = 1 and b = 2",
+            "a = 1 AND b = 2 And c = 3",
+            "a = 1\tand\nb = 2",
+            "a = 1 or b = 2 or c = 3",
+            "(a = 1 and b = 2) and c = 3",
+            "a = 1 and (b = 2 and c = 3)",
+            "(a=1) and (b=2)",
+            "a = 1 or (b = 2 and c = 3)",
+            "((a = 1))",
+            " ( a = 1 ) ",
+            "not a = 1",
+            "NOT  a = 1",
+            "not not a = 1",
+            "not a = 1 and b = 2",
+            "not (a = 1 or b = 2)",
+            "strict not a = 1",
+            "STRICT NOT (a = 1)",
+            "strict not not a = 1",
+            "not strict not a = 1",
+            "strict not a != @b",
+            "strict a != 1",
+            "STRICT \"a\"\t!=\n@b",
+            "not strict a != 1 and b = 1",
+            "strict a = 1",
+            "not a not any of (1)",
+            "<ALL>",
+            "<all> or <None>",
+            "not <none>",
+            "a = 1 and <ALL>",
+            "curb (a = 1 or b = 2) > 1",
+            "CURB(a=1 or b=2)>=1",
+            "curb ( a = 1 or b = 2 ) != 0",
+            "curb (a = 1 or b = 2) <1",
+            "curb (a = 1 or b = 2) <= 2",
+            "curb (a = 1 or b = 2) = 5",
+            "curb (a = 1 or (b = 2 and c = 3) or not d = 1) > 1",
+            "curb (a = 1 or curb (b = 1 or c = 1) > 0) = 1",
+            "curb (a = 1 or b = 2) > 1 and c = 1",
+            "not curb (a = 1 or b = 2) > 1",
+            "a = 1 or b = 2 and c = 3",
+            "a = 1 and not b = 2 or c = 3",
+            "(a=1)and(b=2)",
+            "a=1 and(b=2)",
+            "a=1and b=2",
+            "NOT(a=1)",
+            "strict not(a=1)",
+            "a not = 1",
+            "a ! = 1",
+            "a strict != 1",
+            "a < = 1",
+            "a = @ b",
+            "a = @@b",
+            "a = @\"\"",
+            "a = @01",
+            "@a = 1",
+            "\"\" = 1",
+            "00 = 1",
+            "a = 01",
+            "a = and",
+            "and = 1",
+            "a = x!y",
+            "a = x\"y",
+            "a = \"x\ty\"",
+            "a = \"x",
+            "a = 1 b = 2",
+            "a = x\ny",
+            "a any of ()",
+            "a any of (1,)",
+            "a between (1,2,3)",
+            "a between (@b, 1)",
+            "a contains @b",
+            "a contains any of (@b)",
+            "a isunknown",
+            "\"a\"is unknown",
+            "a = \"x\"or b = 2",
+            "<ALL>and b = 1",
+            "< ALL>",
+            "a <ALL>",
+            "curb (a = 1) = 0",
+            "curb ((a = 1 or b = 2)) > 1",
+            "curb (a = 1 or b = 2 and c = 1) < 2",
+            "curb (a = 1 or b = 2)",
+            "curb (a = 1 or b = 2) > -1",
+            "curb (a = 1 or b = 2) > 01",
+            "curb (a = 1 or b = 2) = 99999999999",
+            "a = 1 /* comment */",
+            "a = \"/* no comment */\"",
+            "a = 1)",
+            "(a = 1"
+    // @formatter:on
+    );
+
+    @Test
+    void testIdenticalToRegularParser() {
+
+        List<String> sources = new ArrayList<>(SOURCES);
+        sources.addAll(PlExpressionParserTest.createBenchmarkCorpus());
+
+        int fastPathCount = assertIdenticalOrFallback(sources);
+
+        LOGGER.debug("{} of {} expressions parsed on the fast path", fastPathCount, sources.size());
+
+        // all valid expressions without comments should be covered
+        PlExpressionParser parserNoFastPath = new PlExpressionParser(0, ParseMode.LL, false);
+        long validWithoutComments = sources.stream().filter(source -> !source.contains("/*")).filter(source -> !parserNoFastPath.parse(source).isError())
+                .count();
+        assertEquals(validWithoutComments, fastPathCount);
+
+    }
+
+    @Test
+    void testMutationsIdenticalToRegularParser() {
+
+        // random modifications of valid expressions to ensure the fast path never accepts anything the regular parser would reject
+        List<String> corpus = new ArrayList<>(SOURCES);
+        corpus.addAll(PlExpressionParserTest.createBenchmarkCorpus());
+
+        String specialCharacters = " \t\n()<>=!@\",*/aAnNdDoOrR01";
+
+        Random rand = new Random(8172635);
+        List<String> sources = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            String source = corpus.get(rand.nextInt(corpus.size()));
+            if (source.isEmpty()) {
+                continue;
+            }
+            StringBuilder sb = new StringBuilder(source);
+            int numberOfMutations = 1 + rand.nextInt(3);
+            for (int j = 0; j < numberOfMutations && !sb.isEmpty(); j++) {
+                int idx = rand.nextInt(sb.length());
+                switch (rand.nextInt(4)) {
+                case 0:
+                    sb.deleteCharAt(idx);
+                    break;
+                case 1:
+                    sb.insert(idx, specialCharacters.charAt(rand.nextInt(specialCharacters.length())));
+                    break;
+                case 2:
+                    sb.setCharAt(idx, specialCharacters.charAt(rand.nextInt(specialCharacters.length())));
+                    break;
+                default:
+                    sb.insert(idx, sb.charAt(idx));
+                }
+            }
+            sources.add(sb.toString());
+        }
+
+        int fastPathCount = assertIdenticalOrFallback(sources);
+
+        LOGGER.debug("{} of {} mutated expressions parsed on the fast path", fastPathCount, sources.size());
+
+        assertTrue(fastPathCount > 0);
+
+    }
+
+    @Test
+    void testFallback() {
+
+        assertNotNull(PlExpressionFastPathParser.tryParse("a = 1", ParseLimits.DEFAULT));
+        assertNull(PlExpressionFastPathParser.tryParse("a = 1 /* comment */", ParseLimits.DEFAULT));
+        assertNull(PlExpressionFastPathParser.tryParse("a = 1 or", ParseLimits.DEFAULT));
+        assertNull(PlExpressionFastPathParser.tryParse("", ParseLimits.DEFAULT));
+
+        // each brace level plus the match itself
+        String nested = "(".repeat(PlExpressionFastPathParser.MAX_NESTING_DEPTH - 1) + "a = 1" + ")".repeat(PlExpressionFastPathParser.MAX_NESTING_DEPTH - 1);
+        assertNotNull(PlExpressionFastPathParser.tryParse(nested, ParseLimits.DEFAULT));
+
+        String tooDeep = "(" + nested + ")";
+        assertNull(PlExpressionFastPathParser.tryParse(tooDeep, ParseLimits.DEFAULT));
+        assertFalse(PlExpressionParser.getDefaultInstance().parse(tooDeep).isError());
+
+        // errors are reported by the regular parser
+        PlExpressionParser parser = new PlExpressionParser();
+        PlExpressionParser parserNoFastPath = new PlExpressionParser(0, ParseMode.LL, false);
+        assertFalse(parserNoFastPath.isFastPathEnabled());
+        for (String source : SOURCES) {
+            assertEquals(parserNoFastPath.parse(source).toString(), parser.parse(source).toString());
+        }
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkFastPath() {
+
+        List<String> sources = PlExpressionParserTest.createBenchmarkCorpus();
+
+        PlExpressionParser parserRegular = new PlExpressionParser(PlExpressionParser.DEFAULT_MAX_POOL_SIZE, ParseMode.LL, false);
+        PlExpressionParser parserFastPath = new PlExpressionParser(PlExpressionParser.DEFAULT_MAX_POOL_SIZE, ParseMode.LL, true);
+
+        // valid expressions without comments (the fast path candidates)
+        List<String> sourcesValidWithoutComments = sources.stream().filter(source -> !source.contains("/*"))
+                .filter(source -> !parserRegular.parse(source).isError()).toList();
+
+        LOGGER.info("Benchmark corpus: {} expressions, {} valid without comments", sources.size(), sourcesValidWithoutComments.size());
+
+        // warm-up
+        runParseBenchmark(parserRegular, sources, 5);
+        runParseBenchmark(parserFastPath, sources, 5);
+
+        for (int i = 0; i < 3; i++) {
+            long nanosRegular = runParseBenchmark(parserRegular, sources, 10);
+            long nanosFastPath = runParseBenchmark(parserFastPath, sources, 10);
+            long nanosRegularNoComments = runParseBenchmark(parserRegular, sourcesValidWithoutComments, 10);
+            long nanosFastPathNoComments = runParseBenchmark(parserFastPath, sourcesValidWithoutComments, 10);
+            LOGGER.info("Round {}: all: regular: {} ms, fast path: {} ms; valid without comments: regular: {} ms, fast path: {} ms", i,
+                    nanosRegular / 1_000_000, nanosFastPath / 1_000_000, nanosRegularNoComments / 1_000_000, nanosFastPathNoComments / 1_000_000);
+        }
+
+    }
+
+    private static long runParseBenchmark(PlExpressionParser parser, List<String> sources, int repetitions) {
+        long startTimeNanos = System.nanoTime();
+        int errorCount = 0;
+        for (int i = 0; i < repetitions; i++) {
+            for (String source : sources) {
+                if (parser.parse(source).isError()) {
+                    errorCount++;
+                }
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startTimeNanos;
+        LOGGER.debug("{} errors", errorCount);
+        return elapsedNanos;
+    }
+
+    /**
+     * Verifies for each source that the fast path either gives up or returns exactly the result of the regular parser
+     * 
+     * @param sources
+     * @return number of sources parsed on the fast path
+     */
+    private static int assertIdenticalOrFallback(List<String> sources) {
+        PlExpressionParser parserNoFastPath = new PlExpressionParser(PlExpressionParser.DEFAULT_MAX_POOL_SIZE, ParseMode.LL, false);
+        int fastPathCount = 0;
+        for (String source : sources) {
+            PlExpression<?> expression = PlExpressionFastPathParser.tryParse(source, ParseLimits.DEFAULT);
+            if (expression != null) {
+                AudlangParseResult expected = parserNoFastPath.parse(source);
+                assertFalse(expected.isError(), () -> "Fast path accepted invalid source: " + source);
+                assertEquals(expected.getResultExpression(), expression, source);
+                assertEquals(expected.getResultExpression().format(FormatStyle.PRETTY_PRINT), expression.format(FormatStyle.PRETTY_PRINT));
+                fastPathCount++;
+            }
+        }
+        return fastPathCount;
+    }
+
+}
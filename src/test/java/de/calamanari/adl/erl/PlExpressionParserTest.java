@@ -0,0 +1,435 @@
+//@formatter:off
+/*
+ * PlExpressionParserTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.calamanari.adl.CommonErrors;
+import de.calamanari.adl.DeepCopyUtils;
+import de.calamanari.adl.FormatStyle;
+import de.calamanari.adl.cnv.StandardConversions;
+import de.calamanari.adl.erl.PlExpressionParser.ParseLimits;
+import de.calamanari.adl.erl.PlExpressionParser.ParseMode;
+import de.calamanari.adl.erl.PlExpressionParser.ParseStats;
+import de.calamanari.adl.util.sgen.SampleExpression;
+import de.calamanari.adl.util.sgen.SampleExpressionGroup;
+import de.calamanari.adl.util.sgen.SampleExpressionUtils;
+
+import static de.calamanari.adl.erl.PlComment.Position.AFTER_EXPRESSION;
+import static de.calamanari.adl.erl.SamplePlExpressions.REF_LIST_LONG;
+import static de.calamanari.adl.erl.SamplePlExpressions.TWO_COMMENTS_BEFORE_AND_AFTER_EXPR;
+import static de.calamanari.adl.erl.SamplePlExpressions.TWO_COMMENTS_BEFORE_AND_AFTER_OPERAND;
+import static de.calamanari.adl.erl.SamplePlExpressions.VALUE_LIST_LONG;
+import static de.calamanari.adl.erl.SamplePlExpressions.and;
+import static de.calamanari.adl.erl.SamplePlExpressions.curb;
+import static de.calamanari.adl.erl.SamplePlExpressions.match;
+import static de.calamanari.adl.erl.SamplePlExpressions.not;
+import static de.calamanari.adl.erl.SamplePlExpressions.or;
+import static de.calamanari.adl.erl.SamplePlExpressions.strictNot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class PlExpressionParserTest {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(PlExpressionParserTest.class);
+
+    private static final List<String> SOURCES = List.of(
+    // @formatter:off
+            "a = 1",
+            "a = 1 and b = 2",
+            "/* comment */ a = 1 or (b any of (2, /* c2 */ 3) and c is not unknown) /* trailing */",
+            "CURB (a = 1 or b = 2 or c = 3) > 1",
+            "NOT a contains any of (foo, bar)",
+            "a STRICT NOT = @b",
+            "a = 1 and",
+            "a =",
+            "(a = 1",
+            "/* comment only */",
+            "a between (1, 5) and not (b = 2 or c < 7)",
+            "a = 1 or b = 2) or c = 3",
+            "<ALL> or <NONE>"
+    // @formatter:on
+    );
+
+    @Test
+    void testPooledParseIdentical() {
+
+        // fast path disabled, so that every run uses the pool
+        PlExpressionParser unpooled = new PlExpressionParser(0, ParseMode.LL, false);
+        PlExpressionParser pooled = new PlExpressionParser(1, ParseMode.LL, false);
+
+        // twice to ensure reuse after successful and failed runs
+        for (int i = 0; i < 2; i++) {
+            for (String source : SOURCES) {
+                AudlangParseResult expected = unpooled.parse(source);
+                AudlangParseResult actual = pooled.parse(source);
+                assertEquals(expected.toString(), actual.toString());
+                assertEquals(expected.getResultExpression(), actual.getResultExpression());
+                assertEquals(1, pooled.getNumberOfIdleInstances());
+            }
+        }
+        assertEquals(0, unpooled.getNumberOfIdleInstances());
+
+    }
+
+    @Test
+    void testTwoStageParseIdentical() {
+
+        PlExpressionParser parserLL = new PlExpressionParser(0, ParseMode.LL, false);
+        PlExpressionParser parserSLL = new PlExpressionParser(1, ParseMode.SLL_THEN_LL, false);
+
+        assertEquals(ParseMode.SLL_THEN_LL, parserSLL.getParseMode());
+
+        List<String> sources = new ArrayList<>(SOURCES);
+        sources.addAll(createBenchmarkCorpus());
+
+        for (int i = 0; i < 2; i++) {
+            for (String source : sources) {
+                AudlangParseResult expected = parserLL.parse(source);
+                AudlangParseResult actual = parserSLL.parse(source);
+                assertEquals(expected.toString(), actual.toString());
+                assertEquals(expected.getResultExpression(), actual.getResultExpression());
+            }
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> new PlExpressionParser(1, null));
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkParseModes() {
+
+        List<String> sources = createBenchmarkCorpus();
+
+        LOGGER.info("Benchmark corpus: {} expressions", sources.size());
+
+        PlExpressionParser parserLL = new PlExpressionParser(PlExpressionParser.DEFAULT_MAX_POOL_SIZE, ParseMode.LL, false);
+        PlExpressionParser parserSLL = new PlExpressionParser(PlExpressionParser.DEFAULT_MAX_POOL_SIZE, ParseMode.SLL_THEN_LL, false);
+
+        // warm-up
+        runParseBenchmark(parserLL, sources, 5);
+        runParseBenchmark(parserSLL, sources, 5);
+
+        for (int i = 0; i < 3; i++) {
+            long nanosLL = runParseBenchmark(parserLL, sources, 10);
+            long nanosSLL = runParseBenchmark(parserSLL, sources, 10);
+            LOGGER.info("Round {}: LL: {} ms, SLL_THEN_LL: {} ms", i, nanosLL / 1_000_000, nanosSLL / 1_000_000);
+        }
+
+    }
+
+    private static long runParseBenchmark(PlExpressionParser parser, List<String> sources, int repetitions) {
+        long startTimeNanos = System.nanoTime();
+        int errorCount = 0;
+        for (int i = 0; i < repetitions; i++) {
+            for (String source : sources) {
+                if (parser.parse(source).isError()) {
+                    errorCount++;
+                }
+            }
+        }
+        long elapsedNanos = System.nanoTime() - startTimeNanos;
+        LOGGER.debug("{} errors", errorCount);
+        return elapsedNanos;
+    }
+
+    /**
+     * @return expressions composed from {@link SamplePlExpressions} (inline and pretty printed) plus the generated standard samples (valid and invalid)
+     */
+    static List<String> createBenchmarkCorpus() {
+
+        List<PlExpression<?>> expressions = new ArrayList<>();
+        expressions.add(match("a", PlMatchOperator.ANY_OF, VALUE_LIST_LONG));
+        expressions.add(and(match("a", PlMatchOperator.EQUALS, "1"), match("b", PlMatchOperator.NOT_ANY_OF, REF_LIST_LONG)));
+        expressions.add(or(and(match("a", PlMatchOperator.EQUALS, "1"), not(match("b", PlMatchOperator.EQUALS, "2"))),
+                strictNot(match("c", PlMatchOperator.CONTAINS_ANY_OF, VALUE_LIST_LONG))));
+        expressions.add(curb(PlCurbExpression.PlCurbOperator.GREATER_THAN, 1, match("a", PlMatchOperator.EQUALS, "1"),
+                match("b", PlMatchOperator.EQUALS, "2"), match("c", PlMatchOperator.GREATER_THAN, "3")));
+        expressions.add(new PlMatchExpression("x", PlMatchOperator.ANY_OF, List.of(new PlOperand("1", false, TWO_COMMENTS_BEFORE_AND_AFTER_OPERAND),
+                new PlOperand("2", false, null)), TWO_COMMENTS_BEFORE_AND_AFTER_EXPR));
+
+        List<String> res = new ArrayList<>();
+        for (PlExpression<?> expression : expressions) {
+            res.add(expression.format(FormatStyle.INLINE));
+            res.add(expression.format(FormatStyle.PRETTY_PRINT));
+        }
+
+        try {
+            List<SampleExpressionGroup> groups = SampleExpressionUtils
+                    .generateSamples(SampleExpressionUtils.readSampleGroupsFromJsonResource("/samples/sample-expressions-template.json"));
+            groups.stream().filter(group -> !group.skip()).flatMap(group -> group.samples().stream()).filter(sample -> !sample.skip())
+                    .map(SampleExpression::expression).forEach(res::add);
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return res;
+    }
+
+    @Test
+    void testBasics() {
+
+        PlExpressionParser parser = new PlExpressionParser();
+
+        assertTrue(parser.parse(null).isError());
+        assertTrue(parser.parse(" ").isError());
+        assertEquals(0, parser.getNumberOfIdleInstances());
+
+        assertFalse(parser.parse("a = 1").isError());
+        assertTrue(parser.parse("a = 1 or").isError());
+        assertFalse(parser.parse("a = 1").isError());
+        assertEquals(1, parser.getNumberOfIdleInstances());
+
+        assertThrows(IllegalArgumentException.class, () -> new PlExpressionParser(-1));
+
+        assertTrue(parser.isFastPathEnabled());
+
+        assertEquals(PlExpressionBuilder.stringToExpression("a = 1 or b = 2").toString(),
+                PlExpressionParser.getDefaultInstance().parse("a = 1 or b = 2").toString());
+
+    }
+
+    @Test
+    void testParseStats() throws JsonProcessingException {
+
+        PlExpressionParser parser = new PlExpressionParser();
+
+        AudlangParseResult res = parser.parse("a = 1");
+        assertFalse(res.isError());
+        assertEquals(0, res.getTokenCount());
+        assertTrue(res.getParseNanos() > 0);
+
+        res = parser.parse("a = 1 /* comment */");
+        assertFalse(res.isError());
+        // a, ws, =, ws, 1, ws, comment, EOF
+        assertEquals(8, res.getTokenCount());
+
+        res = parser.parse("(a = 1 OR b = 2) /* comment */ AND c = 3");
+        assertFalse(res.isError());
+        // comment after closing brace belongs to the braced expression, not to its last member
+        PlExpression<?> braced = ((PlCombinedExpression) res.getResultExpression()).members().get(0);
+        assertEquals(AFTER_EXPRESSION, braced.allDirectComments().get(0).position());
+
+        res = parser.parse("a = 1 or");
+        assertTrue(res.isError());
+        assertTrue(res.getTokenCount() > 0);
+
+        // local statistics, not part of the wire form
+        AudlangParseResult copy = DeepCopyUtils.serialCopy(res);
+        assertEquals(res.getErrorMessage(), copy.getErrorMessage());
+        assertEquals(0, copy.getTokenCount());
+        assertEquals(0, copy.getParseNanos());
+        String json = new ObjectMapper().writeValueAsString(res);
+        assertFalse(json.contains("tokenCount"));
+        assertFalse(json.contains("parseNanos"));
+
+        ParseStats stats = parser.getParseStats();
+        assertEquals(4, stats.parseCount());
+        assertEquals(1, stats.fastPathCount());
+        assertTrue(stats.tokenCount() > 8);
+        assertTrue(stats.parseNanos() > 0);
+        assertEquals(stats.parseNanos() / 4, stats.averageParseNanos());
+
+        assertEquals(0, new PlExpressionParser().getParseStats().averageParseNanos());
+
+    }
+
+    @Test
+    void testParseLimits() {
+
+        ParseLimits limits = new ParseLimits(60, 3, 3, 2);
+
+        PlExpressionParser parser = new PlExpressionParser(4, ParseMode.LL, true, limits);
+        PlExpressionParser parserNoFastPath = new PlExpressionParser(4, ParseMode.SLL_THEN_LL, false, limits);
+        assertEquals(limits, parser.getLimits());
+
+        // @formatter:off
+        List<String> validSources = List.of(
+                "a = 1 OR b = 2",
+                "((a = 1 AND (b = 2 OR c = 3)))",
+                "NOT (NOT a = 1 OR STRICT NOT b = 2)",
+                "CURB (a = 1 OR NOT b = 2) > 1",
+                "a ANY OF (1, @b, 3) AND c BETWEEN (1, 2)",
+                "a CONTAINS ANY OF (1, 2, 3) /* comment */"
+            );
+
+        List<String> invalidSources = List.of(
+                "a = 1 OR b = 2 OR c = 3 OR d = 4 OR e = 5 OR f = 6 OR g = 7 OR h = 8",
+                "((((a = 1))))",
+                "NOT NOT NOT NOT a = 1",
+                "(NOT (STRICT NOT a = 1 OR b = 2))",
+                "CURB (a = 1 OR (NOT (b = 2))) > 1",
+                "CURB (a = 1 OR b = 2 OR c = 3) > 1",
+                "a ANY OF (1, 2, 3, 4)",
+                "a NOT ANY OF (@b, @c, @d, @e)",
+                "a CONTAINS ANY OF (1, 2, 3, 4) /* comment */"
+            );
+        // @formatter:on
+
+        for (String source : validSources) {
+            AudlangParseResult res = parser.parse(source);
+            assertFalse(res.isError(), source);
+            assertEquals(res.toString(), parserNoFastPath.parse(source).toString());
+        }
+
+        for (String source : invalidSources) {
+            AudlangParseResult res = parser.parse(source);
+            assertTrue(res.isError(), source);
+            assertEquals(CommonErrors.ERR_4004_INPUT_LIMIT_EXCEEDED.code(), res.getUserMessages().get(0).code(), source);
+            assertEquals(res.toString(), parserNoFastPath.parse(source).toString());
+        }
+
+        // syntax errors before reaching a limit are reported as such
+        assertEquals(CommonErrors.ERR_1000_PARSE_FAILED.code(), parser.parse("a ANY OF (1, 2,, 3, 4)").getUserMessages().get(0).code());
+
+        // pathological input is rejected early with the recommended default limits
+        PlExpressionParser defaultParser = new PlExpressionParser(4, ParseMode.LL, true, ParseLimits.DEFAULT);
+        assertEquals(ParseLimits.DEFAULT, defaultParser.getLimits());
+
+        String deeplyNested = "(".repeat(100_000) + "a = 1" + ")".repeat(100_000);
+        assertEquals(CommonErrors.ERR_4004_INPUT_LIMIT_EXCEEDED.code(), defaultParser.parse(deeplyNested).getUserMessages().get(0).code());
+
+        String longNegationChain = "NOT ".repeat(100_000) + "a = 1";
+        assertEquals(CommonErrors.ERR_4004_INPUT_LIMIT_EXCEEDED.code(), defaultParser.parse(longNegationChain).getUserMessages().get(0).code());
+
+        // braces in quotes and comments don't count
+        String bracesInText = "a = \"" + "(".repeat(1_000) + "\" /*" + "(".repeat(1_000) + "*/";
+        assertFalse(defaultParser.parse(bracesInText).isError());
+
+        String hugeList = "a ANY OF (" + "1, ".repeat(ParseLimits.DEFAULT.maxListItems()) + "2)";
+        assertEquals(CommonErrors.ERR_4004_INPUT_LIMIT_EXCEEDED.code(), defaultParser.parse(hugeList).getUserMessages().get(0).code());
+
+        String hugeSource = "a = " + "1".repeat(ParseLimits.DEFAULT.maxLength());
+        assertEquals(CommonErrors.ERR_4004_INPUT_LIMIT_EXCEEDED.code(), defaultParser.parse(hugeSource).getUserMessages().get(0).code());
+
+        assertFalse(new PlExpressionParser(0, ParseMode.LL, true, ParseLimits.NONE).parse(hugeList).isError());
+
+        assertThrows(IllegalArgumentException.class, () -> new ParseLimits(0, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ParseLimits(1, 1, 1, -1));
+        assertThrows(IllegalArgumentException.class, () -> new PlExpressionParser(0, ParseMode.LL, true, null));
+
+    }
+
+    @Test
+    void testNoLimitsByDefault() {
+
+        assertEquals(ParseLimits.NONE, new PlExpressionParser().getLimits());
+        assertEquals(ParseLimits.NONE, new PlExpressionParser(4, ParseMode.SLL_THEN_LL, false).getLimits());
+        assertEquals(ParseLimits.NONE, PlExpressionParser.getDefaultInstance().getLimits());
+
+        // expressions beyond the recommended limits must still be accepted by the static entry points
+        String deeplyNested = "(".repeat(300) + "a = 1" + ")".repeat(300);
+        String longNegationChain = "NOT (".repeat(300) + "a = 1" + ")".repeat(300);
+        StringBuilder sb = new StringBuilder("CURB (a = 0");
+        for (int i = 1; i < 300; i++) {
+            sb.append(" OR a = ").append(i);
+        }
+        String largeCurb = sb.append(") > 1").toString();
+
+        assertTrue(ParseLimits.DEFAULT.maxNestingDepth() < 300 && ParseLimits.DEFAULT.maxCurbMembers() < 300);
+        for (String source : List.of(deeplyNested, longNegationChain, largeCurb)) {
+            assertFalse(PlExpressionBuilder.stringToExpression(source).isError());
+            assertFalse(StandardConversions.parse().apply(source).isError());
+            assertTrue(new PlExpressionParser(0, ParseMode.LL, true, ParseLimits.DEFAULT).parse(source).isError());
+        }
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkLargeAnyOf() {
+
+        StringBuilder sb = new StringBuilder("/* comment */ a ANY OF (");
+        for (int i = 0; i < 20_000; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("value").append(i);
+        }
+        sb.append(")");
+        List<String> sources = List.of(sb.toString());
+
+        PlExpressionParser parser = new PlExpressionParser(PlExpressionParser.DEFAULT_MAX_POOL_SIZE, ParseMode.LL, false);
+
+        // warm-up
+        runParseBenchmark(parser, sources, 20);
+
+        for (int i = 0; i < 3; i++) {
+            long nanos = runParseBenchmark(parser, sources, 50);
+            LOGGER.info("Round {}: {} ms", i, nanos / 1_000_000);
+        }
+        LOGGER.info("{}", parser.getParseStats());
+
+    }
+
+    @Test
+    void testConcurrentParse() throws InterruptedException, ExecutionException {
+
+        PlExpressionParser unpooled = new PlExpressionParser(0);
+        List<String> expected = SOURCES.stream().map(unpooled::parse).map(AudlangParseResult::toString).toList();
+
+        PlExpressionParser pooled = new PlExpressionParser(3);
+
+        List<Future<List<String>>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 50; i++) {
+                futures.add(executor.submit(() -> {
+                    List<String> res = new ArrayList<>();
+                    for (int j = 0; j < 20; j++) {
+                        SOURCES.stream().map(pooled::parse).map(AudlangParseResult::toString).forEach(res::add);
+                    }
+                    return res;
+                }));
+            }
+        }
+
+        for (Future<List<String>> future : futures) {
+            List<String> results = future.get();
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(expected.get(i % expected.size()), results.get(i));
+            }
+        }
+
+        assertTrue(pooled.getNumberOfIdleInstances() <= 3);
+
+    }
+
+}
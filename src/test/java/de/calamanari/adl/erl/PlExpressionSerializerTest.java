@@ -0,0 +1,192 @@
+//@formatter:off
+/*
+ * PlExpressionSerializerTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import de.calamanari.adl.CompactJsonModule;
+import de.calamanari.adl.FormatStyle;
+import de.calamanari.adl.erl.PlCurbExpression.PlCurbOperator;
+import de.calamanari.adl.util.JsonUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class PlExpressionSerializerTest {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(PlExpressionSerializerTest.class);
+
+    private static final TypeReference<List<PlExpression<?>>> CATALOG_TYPE = new TypeReference<>() {
+        // type info
+    };
+
+    private final ObjectMapper defaultMapper = JsonUtils.createObjectMapper(false);
+
+    private final ObjectMapper compactMapper = JsonUtils.createObjectMapper(false).registerModule(new CompactJsonModule());
+
+    @Test
+    void testCompact() throws Exception {
+
+        PlExpression<?> expr = parse("""
+                /* c1 */ a = 1 AND (b = @x OR NOT c ANY OF (3, /* c2 */ 4) OR STRICT NOT d > 5)
+                AND CURB (e = 1 OR f CONTAINS ANY OF (x, y)) > 1 AND <ALL> /* c3 */""");
+
+        String json = compactMapper.writeValueAsString(expr);
+
+        assertFalse(json.contains("inline"));
+        assertEquals("""
+                {"combi_type":"AND","members":[{"arg_name":"a","operator":"EQUALS","operands":[{"value":"1"}]},\
+                {"combi_type":"OR","members":[{"arg_name":"b","operator":"EQUALS","operands":[{"value":"x","is_reference":true}]},\
+                {"delegate":{"arg_name":"c","operator":"ANY_OF","operands":[{"value":"3"},\
+                {"value":"4","comments":[{"comment":"/* c2 */","position":"BEFORE_OPERAND","complex":false}]}]}},\
+                {"delegate":{"arg_name":"d","operator":"GREATER_THAN","operands":[{"value":"5"}]},"is_strict":true}]},\
+                {"curb_delegate":{"combi_type":"OR","members":[{"arg_name":"e","operator":"EQUALS","operands":[{"value":"1"}]},\
+                {"arg_name":"f","operator":"CONTAINS_ANY_OF","operands":[{"value":"x"},{"value":"y"}]}]},"operator":"GREATER_THAN","bound":1},\
+                {"set_type":"ALL","comments":[{"comment":"/* c3 */","position":"AFTER_EXPRESSION","complex":false}]}],\
+                "comments":[{"comment":"/* c1 */","position":"BEFORE_EXPRESSION","complex":false}]}""", json);
+
+        PlExpression<?> res = compactMapper.readValue(json, PlExpression.class);
+        assertEquals(expr, res);
+        assertEquals(expr.format(FormatStyle.PRETTY_PRINT), res.format(FormatStyle.PRETTY_PRINT));
+        assertEquals(expr, defaultMapper.readValue(json, PlExpression.class));
+        assertEquals(expr, defaultMapper.readValue(defaultMapper.writeValueAsString(expr), PlExpression.class));
+
+        List<PlExpression<?>> list = List.of(expr, parse("a = 1"), parse("<NONE>"));
+        assertEquals(list, defaultMapper.readValue(compactMapper.writeValueAsString(list), CATALOG_TYPE));
+
+    }
+
+    @Test
+    void testFieldOrder() throws Exception {
+
+        String json = """
+                {
+                    "inline" : "ignored",
+                    "members" : [
+                        { "operands" : [ { "value" : "1" } ], "operator" : "EQUALS", "arg_name" : "a" },
+                        { "is_strict" : true, "delegate" : { "operator" : "IS_UNKNOWN", "arg_name" : "b" } },
+                        { "bound" : 0, "operator" : "EQUALS", "curb_delegate" : { "members" : [
+                            { "operands" : [ { "value" : "1" } ], "operator" : "EQUALS", "arg_name" : "c" },
+                            { "operands" : [ { "value" : "2" } ], "operator" : "EQUALS", "arg_name" : "d" } ], "combi_type" : "OR" } }
+                    ],
+                    "unknown" : { "ignored" : [ 1, 2 ] },
+                    "combi_type" : "OR"
+                }""";
+
+        assertEquals(parse("a = 1 OR STRICT NOT b IS UNKNOWN OR CURB (c = 1 OR d = 2) = 0"), defaultMapper.readValue(json, PlExpression.class));
+
+    }
+
+    @Test
+    void testEnumConfiguration() throws Exception {
+
+        PlExpression<?> expr = parse("a = 1 AND (b = @x OR NOT c ANY OF (3, 4)) AND CURB (e = 1 OR f CONTAINS ANY OF (x, y)) > 1 AND <ALL>");
+
+        // the operator of a match and the operator of a curb share the same field
+        String json = compactMapper.writeValueAsString(expr).replace("\"AND\"", "\"and\"").replace("\"EQUALS\"", "\"Equals\"")
+                .replace("\"GREATER_THAN\"", "\"greater_than\"").replace("\"ALL\"", "\"all\"");
+
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue(json, PlExpression.class));
+
+        ObjectMapper caseInsensitiveMapper = JsonMapper.builder().propertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
+                .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS).build();
+        assertEquals(expr, caseInsensitiveMapper.readValue(json, PlExpression.class));
+
+        // enum ordinals are accepted by default
+        String jsonOrdinals = json.replace("\"greater_than\"", String.valueOf(PlCurbOperator.GREATER_THAN.ordinal())).replace("\"Equals\"",
+                String.valueOf(PlMatchOperator.EQUALS.ordinal()));
+        assertEquals(expr, caseInsensitiveMapper.readValue(jsonOrdinals, PlExpression.class));
+
+    }
+
+    @Test
+    void testErrors() throws Exception {
+
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue("{\"foo\":\"bar\"}", PlExpression.class));
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue("[]", PlExpression.class));
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue("{\"arg_name\":\"a\",\"operator\":\"LIKE\"}", PlExpression.class));
+
+        // validation errors from the constructors
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue("{\"combi_type\":\"AND\",\"members\":[]}", PlExpression.class));
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue("{\"arg_name\":\"a\",\"operator\":\"EQUALS\"}", PlExpression.class));
+
+        // curb with a delegate that is not an OR
+        String json = "{\"curb_delegate\":" + compactMapper.writeValueAsString(parse("a = 1")) + ",\"operator\":\"EQUALS\",\"bound\":0}";
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue(json, PlExpression.class));
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkCatalog() throws Exception {
+
+        Random rand = new Random(4711);
+        List<PlExpression<?>> catalog = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            catalog.add(parse(String.format("""
+                    (country ANY OF (%s, %s) OR NOT segment = s%s) AND age > %s /* comment */
+                    AND CURB (c1 = %s OR c2 = %s OR c3 STRICT NOT CONTAINS x%s) > 1""", rand.nextInt(20), rand.nextInt(20), rand.nextInt(20),
+                    rand.nextInt(50), rand.nextInt(10), rand.nextInt(10), rand.nextInt(10))));
+        }
+
+        for (int round = 0; round < 10; round++) {
+            runCatalogBenchmark(round, "default", defaultMapper, catalog);
+            runCatalogBenchmark(round, "compact", compactMapper, catalog);
+        }
+
+    }
+
+    private static void runCatalogBenchmark(int round, String label, ObjectMapper mapper, List<PlExpression<?>> catalog) throws Exception {
+        long startTimeNanos = System.nanoTime();
+        byte[] json = mapper.writeValueAsBytes(catalog);
+        long writeMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+
+        startTimeNanos = System.nanoTime();
+        List<PlExpression<?>> res = mapper.readValue(json, CATALOG_TYPE);
+        long readMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+
+        assertEquals(catalog.size(), res.size());
+        LOGGER.info("Round {}: {} expressions, {}: {} KB, write {} ms, read {} ms", round, catalog.size(), label, json.length / 1024, writeMillis,
+                readMillis);
+    }
+
+    private static PlExpression<?> parse(String source) {
+        return PlExpressionBuilder.stringToExpression(source).getResultExpression();
+    }
+
+}
@@ -0,0 +1,244 @@
+//@formatter:off
+/*
+ * PlExpressionStreamParserTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.FormatStyle;
+import de.calamanari.adl.erl.PlExpressionStreamParser.MappedFileReader;
+import de.calamanari.adl.erl.PlExpressionStreamParser.RecordParseResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class PlExpressionStreamParserTest {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(PlExpressionStreamParserTest.class);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testOneExpressionPerLine() throws IOException {
+
+        List<String> lines = List.of("a = 1", "", "b = \"x;y\" or c = é", "   ", "a = 1 and", "curb (a = 1 or b = 2) > 1", "a = 1 /* comment */");
+
+        Path file = tempDir.resolve("lines.txt");
+        Files.writeString(file, String.join("\n", lines) + "\n", StandardCharsets.UTF_8);
+
+        List<RecordParseResult> results = null;
+        try (Stream<RecordParseResult> stream = new PlExpressionStreamParser().parse(file)) {
+            results = stream.toList();
+        }
+
+        assertEquals(5, results.size());
+        assertEquals(List.of(0L, 2L, 4L, 5L, 6L), results.stream().map(RecordParseResult::recordIndex).toList());
+        for (RecordParseResult result : results) {
+            String line = lines.get((int) result.recordIndex());
+            assertEquals(line, result.result().getSource());
+            assertEquals(PlExpressionBuilder.stringToExpression(line).toString(), result.result().toString());
+        }
+        assertTrue(results.get(2).result().isError());
+
+        // windows line endings
+        try (Stream<RecordParseResult> stream = new PlExpressionStreamParser().parse(new StringReader("a = 1\r\nb = 2\r\n"))) {
+            assertEquals(List.of("a = 1", "b = 2"),
+                    stream.map(RecordParseResult::result).map(AudlangParseResult::getResultExpression).map(e -> e.format(FormatStyle.INLINE)).toList());
+        }
+
+    }
+
+    @Test
+    void testMultiLineRecords() {
+
+        // @formatter:off
+        String source = """
+                a = 1;
+                b ANY OF (
+                    "x;y",
+                    /* comment; with "quote */ z
+                );;
+                curb (
+                    a = 1 or b = 2
+                ) > 1
+                ;
+                a = "broken
+                ; c = 3
+                """;
+        // @formatter:on
+
+        List<RecordParseResult> results = null;
+        try (Stream<RecordParseResult> stream = new PlExpressionStreamParser(";").parse(new StringReader(source))) {
+            results = stream.toList();
+        }
+
+        assertEquals(List.of(0L, 1L, 3L, 4L, 5L), results.stream().map(RecordParseResult::recordIndex).toList());
+        assertEquals("a = 1", results.get(0).result().getResultExpression().format(FormatStyle.INLINE));
+        assertEquals("b ANY OF (x;y, /* comment; with \"quote */ z)", results.get(1).result().getResultExpression().format(FormatStyle.INLINE));
+        assertEquals("CURB (a = 1 OR b = 2) > 1", results.get(2).result().getResultExpression().format(FormatStyle.INLINE));
+        // the line break ends the broken quoted text, so the next record is not affected
+        assertTrue(results.get(3).result().isError());
+        assertEquals("c = 3", results.get(4).result().getResultExpression().format(FormatStyle.INLINE));
+
+        // delimiter with multiple characters
+        try (Stream<RecordParseResult> stream = new PlExpressionStreamParser("\n\n").parse(new StringReader("a = 1\nor b = 2\n\n\nc = 3"))) {
+            assertEquals(List.of("a = 1 OR b = 2", "c = 3"),
+                    stream.map(RecordParseResult::result).map(AudlangParseResult::getResultExpression).map(e -> e.format(FormatStyle.INLINE)).toList());
+        }
+
+    }
+
+    @Test
+    void testParallelWorkers() throws IOException {
+
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            lines.add(i % 100 == 7 ? "a = " + i + " or" : "a = " + i + " or b ANY OF (" + i + ", x" + i + ")");
+        }
+        Path file = tempDir.resolve("many.txt");
+        Files.write(file, lines, StandardCharsets.UTF_8);
+
+        List<String> expected = null;
+        try (Stream<RecordParseResult> stream = new PlExpressionStreamParser().parse(file)) {
+            expected = stream.map(RecordParseResult::result).map(AudlangParseResult::toString).toList();
+        }
+        assertEquals(lines.size(), expected.size());
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            PlExpressionStreamParser parser = new PlExpressionStreamParser(PlExpressionParser.getDefaultInstance(), "\n", 4, executor);
+            assertEquals(4, parser.getNumberOfWorkers());
+            List<RecordParseResult> results = null;
+            try (Stream<RecordParseResult> stream = parser.parse(file)) {
+                results = stream.toList();
+            }
+            assertEquals(expected, results.stream().map(RecordParseResult::result).map(AudlangParseResult::toString).toList());
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i, results.get(i).recordIndex());
+            }
+        }
+
+        // laziness: only a few chunks must be parsed to get the first results
+        try (Stream<RecordParseResult> stream = new PlExpressionStreamParser("\n", 2).parse(file)) {
+            assertEquals(expected.subList(0, 3), stream.limit(3).map(RecordParseResult::result).map(AudlangParseResult::toString).toList());
+        }
+
+    }
+
+    @Test
+    void testMappedFileReader() throws IOException {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("a").append(i).append(" = \"äöü€😀\" or ");
+        }
+        String content = sb.toString();
+
+        Path file = tempDir.resolve("mapped.txt");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+
+        // tiny regions to enforce multi-byte characters spanning region boundaries
+        for (long regionSize : new long[] { 4, 7, 13, 1024, Long.MAX_VALUE }) {
+            try (Reader reader = new MappedFileReader(FileChannel.open(file, StandardOpenOption.READ), StandardCharsets.UTF_8, regionSize)) {
+                StringBuilder read = new StringBuilder();
+                char[] buffer = new char[17];
+                int len = 0;
+                while ((len = reader.read(buffer, 0, buffer.length)) > -1) {
+                    read.append(buffer, 0, len);
+                }
+                assertEquals(content, read.toString());
+            }
+        }
+
+        Path emptyFile = tempDir.resolve("empty.txt");
+        Files.writeString(emptyFile, "", StandardCharsets.UTF_8);
+        try (Stream<RecordParseResult> stream = new PlExpressionStreamParser().parse(emptyFile)) {
+            assertEquals(0, stream.count());
+        }
+
+        Path invalidFile = tempDir.resolve("invalid.txt");
+        Files.write(invalidFile, new byte[] { 'a', ' ', '=', ' ', (byte) 0xC3 });
+        try (Stream<RecordParseResult> stream = new PlExpressionStreamParser().parse(invalidFile)) {
+            assertThrows(UncheckedIOException.class, stream::toList);
+        }
+
+    }
+
+    @Test
+    void testSpecialCases() {
+
+        assertEquals(PlExpressionStreamParser.DEFAULT_DELIMITER, new PlExpressionStreamParser().getDelimiter());
+
+        PlExpressionParser parser = PlExpressionParser.getDefaultInstance();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertThrows(IllegalArgumentException.class, () -> new PlExpressionStreamParser(null, "\n", 1, executor));
+            assertThrows(IllegalArgumentException.class, () -> new PlExpressionStreamParser(parser, "\n", 0, executor));
+            assertThrows(IllegalArgumentException.class, () -> new PlExpressionStreamParser(parser, "\n", 1, null));
+            assertThrows(IllegalArgumentException.class, () -> new PlExpressionStreamParser(parser, null, 1, executor));
+            assertThrows(IllegalArgumentException.class, () -> new PlExpressionStreamParser(parser, "", 1, executor));
+            assertThrows(IllegalArgumentException.class, () -> new PlExpressionStreamParser(parser, "*/", 1, executor));
+            assertThrows(IllegalArgumentException.class, () -> new PlExpressionStreamParser(parser, "\"", 1, executor));
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        assertThrows(IOException.class, () -> new PlExpressionStreamParser().parse(tempDir.resolve("missing.txt")));
+
+        try (Stream<RecordParseResult> stream = new PlExpressionStreamParser().parse(new StringReader("a = 1 /* unterminated\nb = 2"))) {
+            List<RecordParseResult> results = stream.toList();
+            assertEquals(1, results.size());
+            assertTrue(results.get(0).result().isError());
+        }
+
+        try (Stream<RecordParseResult> stream = new PlExpressionStreamParser().parse(new StringReader("/* a */*b = 1\nc = 2"))) {
+            assertEquals(2, stream.count());
+        }
+
+        try (Stream<RecordParseResult> stream = new PlExpressionStreamParser().parse(new StringReader(""))) {
+            assertFalse(stream.iterator().hasNext());
+        }
+
+    }
+
+}
@@ -0,0 +1,169 @@
+//@formatter:off
+/*
+ * PlExpressionTraversalTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.erl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.Visit;
+import de.calamanari.adl.cnv.DummyArgNameValueMapper;
+import de.calamanari.adl.cnv.MappingPlExpressionConverter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class PlExpressionTraversalTest {
+
+    @Test
+    void testVisitOrder() {
+
+        assertVisitOrder("a = 1");
+        assertVisitOrder("<NONE>");
+        assertVisitOrder("NOT a = 1");
+        assertVisitOrder("NOT (a = 1 OR STRICT NOT (b = 2 AND c ANY OF (1, 2)))");
+        assertVisitOrder("a = 1 AND (b = 2 OR NOT c = 3) AND CURB (d > 4 OR (e CONTAINS x AND f = @g) OR h IS NOT UNKNOWN) >= 2");
+        assertVisitOrder("NOT CURB (a = 1 OR b = 2 OR NOT (c = 3 AND d = 4)) = 1 /* comment */");
+
+    }
+
+    @Test
+    void testDeepTree() {
+
+        PlExpression<?> expression = createDeepTree(20_000);
+
+        List<String> events = new ArrayList<>();
+        expression.accept(new RecordingVisitor(events));
+        assertEquals(8 * 20_000 + 1, events.size());
+        assertEquals("ENTER AND", events.get(0));
+        assertEquals("ENTER NOT", events.get(1));
+        assertEquals("c0 = 1", events.get(2));
+        assertEquals("EXIT AND", events.get(events.size() - 1));
+
+        assertEquals(2 * 20_000 + 1, expression.collectExpressions(PlMatchExpression.class::isInstance).size());
+        assertEquals(2 * 20_000 + 1, expression.allFields().size());
+
+        PlExpression<?> mapped = new MappingPlExpressionConverter(DummyArgNameValueMapper.getInstance()).convert(expression);
+        assertEquals(expression.stats(), mapped.stats());
+
+        assertSame(expression, expression.resolveHigherLanguageFeatures());
+
+        PlExpression<?> resolved = new PlNegationExpression(expression, false, null).resolveHigherLanguageFeatures();
+        assertEquals(2 * 20_000 + 1, resolved.allFields().size());
+        assertEquals(CombinedExpressionType.OR, ((PlCombinedExpression) resolved).combiType());
+        assertEquals("c0 = 1 OR c0 IS UNKNOWN", resolved.childExpressions().get(0).toString());
+
+    }
+
+    private static void assertVisitOrder(String source) {
+        PlExpression<?> expression = PlExpressionBuilder.stringToExpression(source).getResultExpression();
+        List<String> expected = new ArrayList<>();
+        visitRecursively(expression, expected);
+        List<String> events = new ArrayList<>();
+        expression.accept(new RecordingVisitor(events));
+        assertEquals(expected, events);
+    }
+
+    /**
+     * Reference implementation
+     * 
+     * @param expression
+     * @param events
+     */
+    private static void visitRecursively(PlExpression<?> expression, List<String> events) {
+        switch (expression) {
+        case PlCombinedExpression cmb -> {
+            events.add("ENTER " + cmb.combiType());
+            cmb.members().forEach(member -> visitRecursively(member, events));
+            events.add("EXIT " + cmb.combiType());
+        }
+        case PlCurbExpression curb -> {
+            events.add("ENTER CURB");
+            curb.curbDelegate().members().forEach(member -> visitRecursively(member, events));
+            events.add("EXIT CURB");
+        }
+        case PlNegationExpression neg -> {
+            events.add("ENTER NOT");
+            visitRecursively(neg.delegate(), events);
+            events.add("EXIT NOT");
+        }
+        default -> events.add(expression.toString());
+        }
+    }
+
+    /**
+     * @param depth number of AND/OR-pairs
+     * @return chain of alternating AND/OR, each level has its own leaf plus the next level as members
+     */
+    private static PlExpression<?> createDeepTree(int depth) {
+        PlExpression<?> res = match("a");
+        for (int i = depth - 1; i >= 0; i--) {
+            res = new PlCombinedExpression(CombinedExpressionType.OR, Arrays.asList(match("b" + i), res), null);
+            res = new PlCombinedExpression(CombinedExpressionType.AND, Arrays.asList(new PlNegationExpression(match("c" + i), true, null), res), null);
+        }
+        return res;
+    }
+
+    private static PlMatchExpression match(String argName) {
+        return new PlMatchExpression(argName, PlMatchOperator.EQUALS, new PlOperand("1", false, null), null);
+    }
+
+    private static class RecordingVisitor implements PlExpressionVisitor {
+
+        private final List<String> events;
+
+        RecordingVisitor(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void visit(PlMatchExpression expression) {
+            events.add(expression.toString());
+        }
+
+        @Override
+        public void visit(PlSpecialSetExpression expression) {
+            events.add(expression.toString());
+        }
+
+        @Override
+        public void visit(PlCombinedExpression expression, Visit visit) {
+            events.add(visit + " " + expression.combiType());
+        }
+
+        @Override
+        public void visit(PlCurbExpression expression, Visit visit) {
+            events.add(visit + " CURB");
+        }
+
+        @Override
+        public void visit(PlNegationExpression expression, Visit visit) {
+            events.add(visit + " NOT");
+        }
+
+    }
+
+}
@@ -19,17 +19,22 @@
 
 package de.calamanari.adl.irl;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.calamanari.adl.AudlangField;
 import de.calamanari.adl.AudlangValidationException;
+import de.calamanari.adl.DeepCopyUtils;
 import de.calamanari.adl.cnv.StandardConversions;
 import de.calamanari.adl.erl.AudlangParseResult;
 import de.calamanari.adl.erl.PlExpression;
@@ -43,6 +48,7 @@ import static de.calamanari.adl.CombinedExpressionType.OR;
 import static de.calamanari.adl.FormatStyle.INLINE;
 import static de.calamanari.adl.FormatStyle.PRETTY_PRINT;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertSame;
@@ -416,6 +422,18 @@ class CombinedExpressionTest {
 
         assertEquals(SpecialSetExpression.all(), CombinedExpression.of(Arrays.asList(SpecialSetExpression.all(), SpecialSetExpression.all()), AND));
 
+        // the created expression must not depend on the caller's list, no matter whether the members were already prepared or not
+        List<CoreExpression> preparedMembers = new ArrayList<>(Arrays.asList(parse("a = 1"), parse("b = 1")));
+        CombinedExpression cmbPrepared = (CombinedExpression) CombinedExpression.of(preparedMembers, OR);
+        List<CoreExpression> unsortedMembers = new ArrayList<>(Arrays.asList(parse("b = 1"), parse("a = 1")));
+        CombinedExpression cmbUnsorted = (CombinedExpression) CombinedExpression.of(unsortedMembers, OR);
+        preparedMembers.clear();
+        unsortedMembers.clear();
+        assertEquals("a = 1 OR b = 1", cmbPrepared.toString());
+        assertEquals(cmbPrepared, cmbUnsorted);
+        final List<CoreExpression> members = cmbPrepared.members();
+        assertThrows(UnsupportedOperationException.class, () -> members.add(parse("c = 1")));
+
     }
 
     @Test
@@ -907,6 +925,178 @@ class CombinedExpressionTest {
 
     }
 
+    @Test
+    void testStructuralEqualityAndLazyInline() {
+
+        CoreExpression expr = createDeepTree(3);
+        CoreExpression expr2 = createDeepTree(3);
+
+        assertNotSame(expr, expr2);
+        assertEquals(expr, expr2);
+        assertEquals(expr.hashCode(), expr2.hashCode());
+        assertEquals(0, expr.compareTo(expr2));
+        assertEquals(expr.format(INLINE), expr2.toString());
+        assertEquals("a0 = 1 AND (b0 = 1 OR (a1 = 1 AND (b1 = 1 OR (a2 = 1 AND (a3 = 1 OR b2 = 1) ) ) ) )", expr.toString());
+        assertSame(expr.toString(), expr.toString());
+
+        CoreExpression expr3 = parse("a0 = 1 AND (b0 = 1 OR (a1 = 1 AND (b1 = 1 OR (a2 = 1 AND (b2 = 1 OR a3 = 2)))))");
+        assertNotEquals(expr, expr3);
+        assertTrue(expr.compareTo(expr3) < 0);
+        assertTrue(expr3.compareTo(expr) > 0);
+        assertEquals(Integer.signum(expr.toString().compareTo(expr3.toString())), Integer.signum(expr.compareTo(expr3)));
+
+        CoreExpression copy = DeepCopyUtils.serialCopy(expr3);
+        assertEquals(expr3, copy);
+        assertEquals(expr3.hashCode(), copy.hashCode());
+        assertEquals(expr3.toString(), copy.toString());
+
+        CoreExpression fromJson = JsonUtils.readFromJsonString(JsonUtils.writeAsJsonString(expr3, false), CoreExpression.class);
+        assertEquals(expr3, fromJson);
+
+        // deep trees can be printed without recursion
+        CoreExpression deep = createDeepTree(5_000);
+        assertEquals(deep, createDeepTree(5_000));
+        assertTrue(deep.toString().endsWith("(a5000 = 1 OR b4999 = 1)" + " )".repeat(9_998)));
+
+    }
+
+    @Test
+    void testReadFormerRecordSerialForm() throws IOException, ClassNotFoundException {
+
+        // written by the former record versions of CombinedExpression, NegationExpression and MatchExpression
+        CoreExpression expected = parse("a = 1 AND (b = @c OR NOT d ANY OF (1, 2)) AND STRICT NOT e > 5 AND f IS UNKNOWN AND NOT g CONTAINS x");
+
+        CoreExpression expr = null;
+        try (ObjectInputStream ois = new ObjectInputStream(CombinedExpressionTest.class.getResourceAsStream("/serialization/core-expression-v1.ser"))) {
+            expr = (CoreExpression) ois.readObject();
+        }
+
+        assertEquals(expected, expr);
+        assertEquals(expected.hashCode(), expr.hashCode());
+        assertEquals(expected.toString(), expr.toString());
+        assertEquals(expected.allFields(), expr.allFields());
+        assertEquals(expr, DeepCopyUtils.serialCopy(expr));
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkLargeTreeMemory() {
+
+        // warm-up
+        createDeepTree(500);
+        createWideTree(4, 4, new int[1]);
+
+        for (int i = 0; i < 3; i++) {
+            long usedBefore = usedHeapAfterGc();
+            long startTimeNanos = System.nanoTime();
+            CoreExpression deep = createDeepTree(2_000);
+            long deepNanos = System.nanoTime() - startTimeNanos;
+            long deepBytes = usedHeapAfterGc() - usedBefore;
+
+            usedBefore = usedHeapAfterGc();
+            startTimeNanos = System.nanoTime();
+            CoreExpression wide = createWideTree(8, 4, new int[1]);
+            long wideNanos = System.nanoTime() - startTimeNanos;
+            long wideBytes = usedHeapAfterGc() - usedBefore;
+
+            LOGGER.info("Round {}: deep tree (depth 4000): {} ms, ~{} KB retained, wide tree (depth 8, 4^8 leaves): {} ms, ~{} KB retained", i,
+                    deepNanos / 1_000_000, deepBytes / 1024, wideNanos / 1_000_000, wideBytes / 1024);
+
+            startTimeNanos = System.nanoTime();
+            int length = deep.toString().length() + wide.toString().length();
+            LOGGER.info("Round {}: inline formatting ({} characters): {} ms", i, length, (System.nanoTime() - startTimeNanos) / 1_000_000);
+        }
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkManySiblings() {
+
+        List<CoreExpression> members = createSiblings(6_000, 2_000);
+        Collections.shuffle(members, new Random(4711));
+
+        // warm-up
+        for (int i = 0; i < 10; i++) {
+            CombinedExpression.of(new ArrayList<>(members), OR);
+        }
+
+        for (int i = 0; i < 5; i++) {
+            long startTimeNanos = System.nanoTime();
+            CoreExpression res = null;
+            for (int j = 0; j < 20; j++) {
+                res = CombinedExpression.of(new ArrayList<>(members), OR);
+            }
+            LOGGER.info("Round {}: 20 x OR of {} members: {} ms", i, res.childExpressions().size(), (System.nanoTime() - startTimeNanos) / 1_000_000);
+        }
+
+    }
+
+    /**
+     * @param depth number of AND/OR-pairs
+     * @return chain of alternating AND/OR, each level has its own match plus the next level as members
+     */
+    private static CoreExpression createDeepTree(int depth) {
+        CoreExpression res = MatchExpression.of("a" + depth, MatchOperator.EQUALS, Operand.of("1", false));
+        for (int i = depth - 1; i >= 0; i--) {
+            res = CombinedExpression.orOf(MatchExpression.of("b" + i, MatchOperator.EQUALS, Operand.of("1", false)), res);
+            res = CombinedExpression.andOf(MatchExpression.of("a" + i, MatchOperator.EQUALS, Operand.of("1", false)), res);
+        }
+        return res;
+    }
+
+    /**
+     * @param depth number of levels
+     * @param fanOut number of members per level
+     * @param counter for creating unique leafs
+     * @return balanced tree of alternating AND/OR
+     */
+    private static CoreExpression createWideTree(int depth, int fanOut, int[] counter) {
+        if (depth == 0) {
+            counter[0]++;
+            CoreExpression match = MatchExpression.of("arg" + counter[0], MatchOperator.EQUALS, Operand.of("" + counter[0], false));
+            return counter[0] % 3 == 0 ? match.negate(true) : match;
+        }
+        List<CoreExpression> members = new ArrayList<>();
+        for (int i = 0; i < fanOut; i++) {
+            members.add(createWideTree(depth - 1, fanOut, counter));
+        }
+        return CombinedExpression.of(members, depth % 2 == 0 ? AND : OR);
+    }
+
+    /**
+     * @param numberOfLeaves leaves on a few arguments, some of them negated or with values that need quotes
+     * @param numberOfAnds combined members with the same first argument
+     * @return list of members that can be combined with OR without any simplification
+     */
+    private static List<CoreExpression> createSiblings(int numberOfLeaves, int numberOfAnds) {
+        List<CoreExpression> res = new ArrayList<>();
+        for (int i = 0; i < numberOfLeaves; i++) {
+            String argName = "arg" + (i % 10);
+            if (i % 4 == 0) {
+                res.add(MatchExpression.of(argName, MatchOperator.EQUALS, Operand.of("n" + i, false)).negate(i % 8 == 0));
+            }
+            else {
+                res.add(MatchExpression.of(argName, MatchOperator.EQUALS, Operand.of(i % 3 == 0 ? "value " + i : "v" + i, false)));
+            }
+        }
+        for (int i = 0; i < numberOfAnds; i++) {
+            res.add(CombinedExpression.andOf(MatchExpression.of("color", MatchOperator.EQUALS, Operand.of("c" + i, false)),
+                    MatchExpression.of("shape", MatchOperator.EQUALS, Operand.of("s" + (i % 50), false)),
+                    MatchExpression.of("size", MatchOperator.GREATER_THAN, Operand.of("" + (i % 7), false))));
+        }
+        return res;
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
     private static CoreExpression parse(String source) {
         return StandardConversions.parseCoreExpression(source);
     }
@@ -0,0 +1,241 @@
+//@formatter:off
+/*
+ * CoreExpressionInternerTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.irl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.CombinedExpressionType;
+import de.calamanari.adl.cnv.StandardConversions;
+import de.calamanari.adl.irl.CoreExpressionInterner.InternerStats;
+import de.calamanari.adl.irl.biceps.EncodedExpressionTree;
+
+import static de.calamanari.adl.CombinedExpressionType.AND;
+import static de.calamanari.adl.CombinedExpressionType.OR;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class CoreExpressionInternerTest {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(CoreExpressionInternerTest.class);
+
+    @AfterEach
+    void tearDown() {
+        CoreExpressionInterner.setEnabled(false);
+        CoreExpressionInterner.clear();
+    }
+
+    @Test
+    void testDisabled() {
+
+        assertFalse(CoreExpressionInterner.isEnabled());
+
+        CoreExpression match1 = match("a", "1");
+        CoreExpression match2 = match("a", "1");
+
+        assertEquals(match1, match2);
+        assertNotSame(match1, match2);
+
+        assertSame(match1, CoreExpressionInterner.intern(match1));
+        assertEquals(0, CoreExpressionInterner.getStats().size());
+        assertEquals(0.0, CoreExpressionInterner.getStats().hitRate());
+
+    }
+
+    @Test
+    void testSharedInstances() {
+
+        CoreExpressionInterner.setEnabled(true);
+
+        assertSame(match("a", "1"), match("a", "1"));
+        assertNotSame(match("a", "1"), match("a", "2"));
+        assertSame(MatchExpression.isUnknown("a"), MatchExpression.isUnknown("a"));
+        assertSame(match("a", "1").negate(true), match("a", "1").negate(true));
+
+        CoreExpression and1 = CombinedExpression.andOf(match("a", "1"), match("b", "1"));
+        CoreExpression and2 = CombinedExpression.andOf(match("b", "1"), match("a", "1"));
+        assertSame(and1, and2);
+
+        CoreExpression or = CombinedExpression.orOf(match("a", "1"), match("b", "1"));
+        assertNotSame(and1, or);
+        assertEquals(OR, ((CombinedExpression) or).combiType());
+
+        // members are canonical instances as well
+        assertSame(match("a", "1"), ((CombinedExpression) and1).members().get(0));
+        assertSame(MatchExpression.isUnknown("a"), ((CombinedExpression) match("a", "1").negate(false)).members().get(1));
+
+        assertSame(SpecialSetExpression.all(), CoreExpressionInterner.intern(SpecialSetExpression.all()));
+
+        CoreExpression expr = parse("(color = red OR color = blue) AND NOT shape = circle");
+        assertSame(expr, parse("(color = red OR color = blue) AND NOT shape = circle"));
+        assertSame(expr, parse("(color = blue OR color = red) AND NOT shape = circle"));
+
+        // non-canonical instances (e.g., de-serialized) remain equal
+        CombinedExpression copy = new CombinedExpression(AND, ((CombinedExpression) expr).members(), null);
+        assertEquals(expr, copy);
+        assertNotSame(expr, copy);
+        assertSame(expr, CoreExpressionInterner.intern(copy));
+
+        InternerStats stats = CoreExpressionInterner.getStats();
+        assertTrue(stats.hitCount() > 0);
+        assertTrue(stats.missCount() > 0);
+        assertTrue(stats.size() > 0);
+        assertTrue(stats.hitRate() > 0.0 && stats.hitRate() < 1.0);
+
+        CoreExpressionInterner.clear();
+        assertEquals(new InternerStats(0, 0, 0), CoreExpressionInterner.getStats());
+
+        CoreExpressionInterner.setEnabled(false);
+        assertNotSame(match("a", "1"), match("a", "1"));
+
+    }
+
+    @Test
+    void testDecode() {
+
+        CoreExpression expr = parse("(color = red OR color = blue OR shape = circle) AND (NOT size > 5 OR size IS UNKNOWN) AND STRICT NOT color = @shape");
+
+        CoreExpressionInterner.setEnabled(true);
+
+        CoreExpression decoded1 = EncodedExpressionTree.fromCoreExpression(expr).toCoreExpression();
+        CoreExpression decoded2 = EncodedExpressionTree.fromCoreExpression(expr).toCoreExpression();
+
+        assertEquals(expr, decoded1);
+        assertSame(decoded1, decoded2);
+
+        assertSame(decoded1, parse(expr.toString()));
+
+    }
+
+    @Test
+    void testConcurrentInterning() throws Exception {
+
+        CoreExpressionInterner.setEnabled(true);
+
+        int numberOfThreads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(numberOfThreads);
+
+        try {
+            List<Future<List<CoreExpression>>> futures = new ArrayList<>();
+            for (int i = 0; i < numberOfThreads; i++) {
+                futures.add(executor.submit(() -> createSampleExpressions(new Random(4711), 2_000)));
+            }
+            List<CoreExpression> expected = futures.get(0).get();
+            for (int i = 1; i < numberOfThreads; i++) {
+                List<CoreExpression> actual = futures.get(i).get();
+                assertEquals(expected.size(), actual.size());
+                for (int j = 0; j < expected.size(); j++) {
+                    assertSame(expected.get(j), actual.get(j));
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        InternerStats stats = CoreExpressionInterner.getStats();
+        assertTrue(stats.hitRate() > 0.8);
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkCatalogMemory() {
+
+        // warm-up
+        createSampleExpressions(new Random(4711), 10_000);
+
+        for (int i = 0; i < 3; i++) {
+            runCatalogBenchmark(i, false);
+            runCatalogBenchmark(i, true);
+        }
+
+    }
+
+    private static void runCatalogBenchmark(int round, boolean interning) {
+        CoreExpressionInterner.clear();
+        CoreExpressionInterner.setEnabled(interning);
+        long usedBefore = usedHeapAfterGc();
+        long startTimeNanos = System.nanoTime();
+        List<CoreExpression> catalog = createSampleExpressions(new Random(4711), 200_000);
+        long elapsedMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+        long retainedBytes = usedHeapAfterGc() - usedBefore;
+        InternerStats stats = CoreExpressionInterner.getStats();
+        LOGGER.info("Round {}: {} expressions, interning={}: {} ms, ~{} MB retained, hit rate {}%, table size {}", round, catalog.size(), interning,
+                elapsedMillis, retainedBytes / (1024 * 1024), Math.round(stats.hitRate() * 100), stats.size());
+        CoreExpressionInterner.setEnabled(false);
+    }
+
+    /**
+     * Creates expressions composed from a limited set of leaves, as typically found in a catalog
+     *
+     * @param rand
+     * @param count
+     * @return list of expressions
+     */
+    private static List<CoreExpression> createSampleExpressions(Random rand, int count) {
+        String[] countries = { "DE", "FR", "IT", "ES", "UK", "US" };
+        List<CoreExpression> res = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            List<CoreExpression> orMembers = new ArrayList<>();
+            orMembers.add(match("country", countries[rand.nextInt(countries.length)]));
+            orMembers.add(match("country", countries[rand.nextInt(countries.length)]));
+            List<CoreExpression> andMembers = new ArrayList<>();
+            andMembers.add(CombinedExpression.of(orMembers, OR));
+            andMembers.add(MatchExpression.of("age", MatchOperator.GREATER_THAN, Operand.of("" + (18 + rand.nextInt(5)), false)));
+            andMembers.add(match("segment", "s" + rand.nextInt(20)).negate(rand.nextBoolean()));
+            res.add(CombinedExpression.of(andMembers, CombinedExpressionType.AND));
+        }
+        return res;
+    }
+
+    private static CoreExpression match(String argName, String value) {
+        return MatchExpression.of(argName, MatchOperator.EQUALS, Operand.of(value, false));
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static CoreExpression parse(String source) {
+        return StandardConversions.parseCoreExpression(source);
+    }
+
+}
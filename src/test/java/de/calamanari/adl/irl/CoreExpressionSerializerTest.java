@@ -0,0 +1,194 @@
+//@formatter:off
+/*
+ * CoreExpressionSerializerTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.irl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import de.calamanari.adl.CompactJsonModule;
+import de.calamanari.adl.cnv.StandardConversions;
+import de.calamanari.adl.util.JsonUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class CoreExpressionSerializerTest {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(CoreExpressionSerializerTest.class);
+
+    private static final TypeReference<List<CoreExpression>> CATALOG_TYPE = new TypeReference<>() {
+        // type info
+    };
+
+    private final ObjectMapper defaultMapper = JsonUtils.createObjectMapper(false);
+
+    private final ObjectMapper compactMapper = JsonUtils.createObjectMapper(false).registerModule(new CompactJsonModule());
+
+    @Test
+    void testCompact() throws Exception {
+
+        CoreExpression expr = parse("a = 1 AND (b = @x OR STRICT NOT c = 3 OR d IS UNKNOWN) AND NOT e > 5");
+
+        String json = compactMapper.writeValueAsString(expr);
+
+        assertFalse(json.contains("inline"));
+        assertEquals("""
+                {"combi_type":"AND","members":[{"arg_name":"a","operator":"EQUALS","operand":{"value":"1"}},\
+                {"combi_type":"OR","members":[{"delegate":{"arg_name":"e","operator":"GREATER_THAN","operand":{"value":"5"}}},\
+                {"arg_name":"e","operator":"IS_UNKNOWN"}]},\
+                {"combi_type":"OR","members":[{"arg_name":"b","operator":"EQUALS","operand":{"value":"x","is_reference":true}},\
+                {"delegate":{"arg_name":"c","operator":"EQUALS","operand":{"value":"3"}}},\
+                {"arg_name":"d","operator":"IS_UNKNOWN"}]}]}""", json);
+
+        assertEquals(expr, compactMapper.readValue(json, CoreExpression.class));
+        assertEquals(expr, defaultMapper.readValue(json, CoreExpression.class));
+        assertEquals(expr, defaultMapper.readValue(defaultMapper.writeValueAsString(expr), CoreExpression.class));
+
+        assertEquals("{\"set_type\":\"NONE\"}", compactMapper.writeValueAsString(SpecialSetExpression.none()));
+        assertEquals(SpecialSetExpression.none(), defaultMapper.readValue("{\"set_type\":\"NONE\"}", CoreExpression.class));
+
+        // lists of expressions
+        List<CoreExpression> list = List.of(expr, parse("a = 1"), SpecialSetExpression.all());
+        assertEquals(list, defaultMapper.readValue(compactMapper.writeValueAsString(list), CATALOG_TYPE));
+
+    }
+
+    @Test
+    void testFieldOrder() throws Exception {
+
+        String json = """
+                {
+                    "inline" : "ignored",
+                    "members" : [
+                        { "operand" : { "value" : "1" }, "operator" : "EQUALS", "arg_name" : "a" },
+                        { "inline" : "ignored", "delegate" : { "operator" : "IS_UNKNOWN", "arg_name" : "b" } }
+                    ],
+                    "unknown" : { "ignored" : [ 1, 2 ] },
+                    "combi_type" : "OR"
+                }""";
+
+        assertEquals(parse("a = 1 OR STRICT NOT b IS UNKNOWN"), defaultMapper.readValue(json, CoreExpression.class));
+
+    }
+
+    @Test
+    void testEnumConfiguration() throws Exception {
+
+        CoreExpression expr = parse("a = 1 AND (b = @x OR STRICT NOT c = 3 OR d IS UNKNOWN) AND NOT e > 5");
+
+        String json = compactMapper.writeValueAsString(expr).replace("\"AND\"", "\"and\"").replace("\"EQUALS\"", "\"Equals\"").replace("\"IS_UNKNOWN\"",
+                "\"is_unknown\"");
+
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue(json, CoreExpression.class));
+
+        ObjectMapper caseInsensitiveMapper = JsonMapper.builder().propertyNamingStrategy(PropertyNamingStrategies.SNAKE_CASE)
+                .enable(MapperFeature.ACCEPT_CASE_INSENSITIVE_ENUMS).build();
+        assertEquals(expr, caseInsensitiveMapper.readValue(json, CoreExpression.class));
+        assertEquals(SpecialSetExpression.none(), caseInsensitiveMapper.readValue("{\"set_type\":\"none\"}", CoreExpression.class));
+
+    }
+
+    @Test
+    void testErrors() throws Exception {
+
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue("{\"foo\":\"bar\"}", CoreExpression.class));
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue("[]", CoreExpression.class));
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue("{\"combi_type\":\"XOR\",\"members\":[]}", CoreExpression.class));
+
+        // validation errors from the constructors
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue("{\"combi_type\":\"AND\",\"members\":[]}", CoreExpression.class));
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue("{\"arg_name\":\"a\"}", CoreExpression.class));
+
+        // negation of a combined expression
+        String json = "{\"delegate\":" + compactMapper.writeValueAsString(parse("a = 1 OR b = 2")) + "}";
+        assertThrows(JsonMappingException.class, () -> defaultMapper.readValue(json, CoreExpression.class));
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkCatalog() throws Exception {
+
+        Random rand = new Random(4711);
+        List<CoreExpression> catalog = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            catalog.add(createRandom(rand));
+        }
+
+        for (int round = 0; round < 10; round++) {
+            runCatalogBenchmark(round, "default", defaultMapper, catalog);
+            runCatalogBenchmark(round, "compact", compactMapper, catalog);
+        }
+
+    }
+
+    private static void runCatalogBenchmark(int round, String label, ObjectMapper mapper, List<CoreExpression> catalog) throws Exception {
+        long startTimeNanos = System.nanoTime();
+        byte[] json = mapper.writeValueAsBytes(catalog);
+        long writeMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+
+        startTimeNanos = System.nanoTime();
+        List<CoreExpression> res = mapper.readValue(json, CATALOG_TYPE);
+        long readMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+
+        assertEquals(catalog.size(), res.size());
+        LOGGER.info("Round {}: {} expressions, {}: {} KB, write {} ms, read {} ms", round, catalog.size(), label, json.length / 1024, writeMillis,
+                readMillis);
+    }
+
+    /**
+     * @param rand
+     * @return AND of simple and negated matches plus ORs
+     */
+    private static CoreExpression createRandom(Random rand) {
+        List<CoreExpression> andMembers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            List<CoreExpression> orMembers = new ArrayList<>();
+            String argName = "arg" + rand.nextInt(100);
+            orMembers.add(MatchExpression.of(argName, MatchOperator.EQUALS, Operand.of("" + rand.nextInt(10), false)));
+            orMembers.add(MatchExpression.of(argName, MatchOperator.GREATER_THAN, Operand.of("" + (10 + rand.nextInt(10)), false)));
+            orMembers.add(MatchExpression.of("other" + rand.nextInt(100), MatchOperator.EQUALS, Operand.of("v" + rand.nextInt(10), false)).negate(true));
+            andMembers.add(CombinedExpression.orOf(orMembers));
+        }
+        return CombinedExpression.andOf(andMembers);
+    }
+
+    private static CoreExpression parse(String source) {
+        return StandardConversions.parseCoreExpression(source);
+    }
+
+}
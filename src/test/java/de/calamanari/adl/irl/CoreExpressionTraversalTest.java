@@ -0,0 +1,144 @@
+//@formatter:off
+/*
+ * CoreExpressionTraversalTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.irl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.calamanari.adl.Visit;
+import de.calamanari.adl.cnv.DummyArgNameValueMapper;
+import de.calamanari.adl.cnv.MappingCoreExpressionConverter;
+import de.calamanari.adl.cnv.StandardConversions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class CoreExpressionTraversalTest {
+
+    @Test
+    void testVisitOrder() {
+
+        assertVisitOrder("a = 1");
+        assertVisitOrder("<ALL>");
+        assertVisitOrder("STRICT NOT a = 1");
+        assertVisitOrder("a = 1 AND b = 2");
+        assertVisitOrder("a = 1 AND (b = 2 OR NOT c = 3) AND (d > 4 OR (e CONTAINS x AND f = @g) OR STRICT NOT h IS UNKNOWN)");
+
+    }
+
+    @Test
+    void testDeepTree() {
+
+        CoreExpression expression = createDeepTree(20_000);
+
+        List<String> events = new ArrayList<>();
+        expression.accept(new RecordingVisitor(events));
+        assertEquals(8 * 20_000 + 1, events.size());
+        assertEquals("ENTER AND", events.get(0));
+        assertEquals("ENTER STRICT NOT c0 = 1", events.get(1));
+        assertEquals("c0 = 1", events.get(2));
+        assertEquals("EXIT AND", events.get(events.size() - 1));
+
+        assertEquals(2 * 20_000 + 1, expression.collectExpressions(MatchExpression.class::isInstance).size());
+        assertEquals(2 * 20_000 + 1, expression.allFields().size());
+
+        assertEquals(expression, new MappingCoreExpressionConverter(DummyArgNameValueMapper.getInstance()).convert(expression));
+
+    }
+
+    private static void assertVisitOrder(String source) {
+        CoreExpression expression = StandardConversions.parseCoreExpression(source);
+        List<String> expected = new ArrayList<>();
+        visitRecursively(expression, expected);
+        List<String> events = new ArrayList<>();
+        expression.accept(new RecordingVisitor(events));
+        assertEquals(expected, events);
+    }
+
+    /**
+     * Reference implementation
+     * 
+     * @param expression
+     * @param events
+     */
+    private static void visitRecursively(CoreExpression expression, List<String> events) {
+        switch (expression) {
+        case CombinedExpression cmb -> {
+            events.add("ENTER " + cmb.combiType());
+            cmb.members().forEach(member -> visitRecursively(member, events));
+            events.add("EXIT " + cmb.combiType());
+        }
+        case NegationExpression neg -> {
+            events.add("ENTER " + neg);
+            visitRecursively(neg.delegate(), events);
+            events.add("EXIT " + neg);
+        }
+        default -> events.add(expression.toString());
+        }
+    }
+
+    /**
+     * @param depth number of AND/OR-pairs
+     * @return chain of alternating AND/OR, each level has its own leaf plus the next level as members
+     */
+    private static CoreExpression createDeepTree(int depth) {
+        CoreExpression res = MatchExpression.of("a", MatchOperator.EQUALS, Operand.of("1", false));
+        for (int i = depth - 1; i >= 0; i--) {
+            res = CombinedExpression.orOf(MatchExpression.of("b" + i, MatchOperator.EQUALS, Operand.of("1", false)), res);
+            res = CombinedExpression.andOf(MatchExpression.of("c" + i, MatchOperator.EQUALS, Operand.of("1", false)).negate(true), res);
+        }
+        return res;
+    }
+
+    private static class RecordingVisitor implements CoreExpressionVisitor {
+
+        private final List<String> events;
+
+        RecordingVisitor(List<String> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void visit(MatchExpression expression) {
+            events.add(expression.toString());
+        }
+
+        @Override
+        public void visit(SpecialSetExpression expression) {
+            events.add(expression.toString());
+        }
+
+        @Override
+        public void visit(CombinedExpression expression, Visit visit) {
+            events.add(visit + " " + expression.combiType());
+        }
+
+        @Override
+        public void visit(NegationExpression expression, Visit visit) {
+            events.add(visit + " " + expression);
+        }
+
+    }
+
+}
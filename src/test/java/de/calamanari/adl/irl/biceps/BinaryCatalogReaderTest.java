@@ -0,0 +1,144 @@
+//@formatter:off
+/*
+ * BinaryCatalogReaderTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.irl.biceps;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import de.calamanari.adl.cnv.StandardConversions;
+import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.biceps.CoreExpressionCodec.Dictionary;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class BinaryCatalogReaderTest {
+
+    @Test
+    void testInvalidInput() {
+
+        BinaryCatalogReader reader = new BinaryCatalogReader();
+
+        List<CoreExpression> catalog = List.of(StandardConversions.parseCoreExpression("a = 1 AND (b = @x OR STRICT NOT c = 3 OR d IS UNKNOWN)"));
+        byte[] bytes = toBytes(new BinaryCatalogWriter().writeToBuffer(catalog));
+
+        assertEquals(catalog, reader.read(ByteBuffer.wrap(bytes)));
+
+        // empty, truncated
+        assertThrows(ExpressionCodecException.class, () -> reader.read(ByteBuffer.allocate(0)));
+        for (int length = 1; length < bytes.length; length++) {
+            ByteBuffer truncated = ByteBuffer.wrap(Arrays.copyOf(bytes, length));
+            assertThrows(ExpressionCodecException.class, () -> reader.read(truncated));
+        }
+
+        // wrong magic
+        byte[] wrongMagic = Arrays.copyOf(bytes, bytes.length);
+        wrongMagic[0] = 'X';
+        assertThrows(ExpressionCodecException.class, () -> reader.read(ByteBuffer.wrap(wrongMagic)));
+
+        // unsupported version
+        byte[] wrongVersion = Arrays.copyOf(bytes, bytes.length);
+        wrongVersion[4] = (byte) (BinaryCatalogWriter.VERSION + 1);
+        assertThrows(ExpressionCodecException.class, () -> reader.read(ByteBuffer.wrap(wrongVersion)));
+
+    }
+
+    @Test
+    void testInvalidMemberArray() {
+
+        List<CoreExpression> catalog = List.of(StandardConversions.parseCoreExpression("a = 1 OR b = 2"));
+        byte[] bytes = toBytes(new BinaryCatalogWriter().writeToBuffer(catalog));
+
+        assertEquals(catalog, new BinaryCatalogReader().read(ByteBuffer.wrap(bytes)));
+
+        // the member array of the OR is written as deltas, replace the second member with the first one
+        CoreExpressionCodec codec = new CoreExpressionCodec(new Dictionary(Arrays.asList("a", "b"), Arrays.asList("1", "2")));
+        int first = codec.encode(StandardConversions.parseCoreExpression("a = 1"));
+        int second = codec.encode(StandardConversions.parseCoreExpression("b = 2"));
+        byte[] members = concat(varInt(2), varInt(zigzag(first)), varInt(zigzag(second - first)));
+        int start = indexOf(bytes, members);
+        assertTrue(start > 0);
+        byte[] duplicateMembers = concat(Arrays.copyOf(bytes, start), varInt(2), varInt(zigzag(first)), varInt(zigzag(0)),
+                Arrays.copyOfRange(bytes, start + members.length, bytes.length));
+
+        // the members are not silently normalized (a = 1 OR a = 1 would be a = 1)
+        assertThrows(ExpressionCodecException.class, () -> new BinaryCatalogReader().read(ByteBuffer.wrap(duplicateMembers)));
+
+    }
+
+    @Test
+    void testReadFromPosition() {
+
+        List<CoreExpression> catalog = List.of(StandardConversions.parseCoreExpression("a = 1 OR b = 2"));
+        byte[] bytes = toBytes(new BinaryCatalogWriter().writeToBuffer(catalog));
+
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 10);
+        buffer.position(7);
+        buffer.put(bytes);
+        buffer.position(7);
+
+        assertEquals(catalog, new BinaryCatalogReader().read(buffer));
+        assertEquals(7 + bytes.length, buffer.position());
+
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static byte[] varInt(int value) {
+        ByteBuffer buffer = ByteBuffer.allocate(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+        return toBytes(buffer.flip());
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteBuffer buffer = ByteBuffer.allocate(Arrays.stream(parts).mapToInt(part -> part.length).sum());
+        Arrays.stream(parts).forEach(buffer::put);
+        return buffer.array();
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        for (int idx = 0; idx + pattern.length <= bytes.length; idx++) {
+            if (Arrays.equals(bytes, idx, idx + pattern.length, pattern, 0, pattern.length)) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] toBytes(ByteBuffer buffer) {
+        byte[] res = new byte[buffer.remaining()];
+        buffer.get(res);
+        return res;
+    }
+
+}
@@ -0,0 +1,246 @@
+//@formatter:off
+/*
+ * BinaryCatalogWriterTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.irl.biceps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.calamanari.adl.CompactJsonModule;
+import de.calamanari.adl.cnv.PlToCoreExpressionConverter;
+import de.calamanari.adl.cnv.StandardConversions;
+import de.calamanari.adl.irl.CombinedExpression;
+import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.MatchExpression;
+import de.calamanari.adl.irl.MatchOperator;
+import de.calamanari.adl.irl.Operand;
+import de.calamanari.adl.irl.SpecialSetExpression;
+import de.calamanari.adl.util.JsonUtils;
+import de.calamanari.adl.util.sgen.SampleExpression;
+import de.calamanari.adl.util.sgen.SampleExpressionGroup;
+import de.calamanari.adl.util.sgen.SampleExpressionUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class BinaryCatalogWriterTest {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(BinaryCatalogWriterTest.class);
+
+    private static final TypeReference<List<CoreExpression>> CATALOG_TYPE = new TypeReference<>() {
+        // type info
+    };
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRoundTrip() throws IOException {
+
+        List<CoreExpression> catalog = new ArrayList<>();
+        catalog.add(parse("a = 1 AND (b = @x OR STRICT NOT c = 3 OR d IS UNKNOWN) AND NOT e > 5"));
+        catalog.add(parse("a = 1"));
+        catalog.add(SpecialSetExpression.all());
+        catalog.add(SpecialSetExpression.none());
+        catalog.add(parse("(a = 1 OR b = 2) AND (c = 3 OR a = 1 OR b = 2) AND (a = 1 OR b = 2 OR d CONTAINS \"ö x\")"));
+        catalog.add(parse("a = 1 AND (b = @x OR STRICT NOT c = 3 OR d IS UNKNOWN) AND NOT e > 5"));
+        catalog.add(parse("a < 1 OR a > 17 OR NOT b IS UNKNOWN OR (c = @d AND e = \"\")"));
+
+        assertEquals(catalog, writeAndRead(catalog));
+        assertEquals(List.of(), writeAndRead(List.of()));
+
+        List<SampleExpressionGroup> allGroups = SampleExpressionUtils
+                .generateSamples(SampleExpressionUtils.readSampleGroupsFromJsonResource("/samples/sample-expressions-template.json"));
+
+        List<CoreExpression> samples = new ArrayList<>();
+        for (SampleExpressionGroup sampleGroup : allGroups) {
+            for (SampleExpression sample : sampleGroup.samples()) {
+                if (!sample.invalid()) {
+                    // conversion without optimization for a bigger variety of structures
+                    samples.add(new PlToCoreExpressionConverter().convert(StandardConversions.parsePlExpression(sample.expression())));
+                }
+            }
+        }
+        assertTrue(samples.size() > 1000);
+        assertEquals(samples, writeAndRead(samples));
+
+    }
+
+    @Test
+    void testSharedSubExpressions() {
+
+        CoreExpression expression = parse("(a = 1 OR b = 2) AND (c = 3 OR d = 4)");
+
+        List<CoreExpression> catalog = List.of(expression, CombinedExpression.orOf(expression, parse("e = 5")), expression);
+
+        ByteBuffer buffer = new BinaryCatalogWriter().writeToBuffer(catalog);
+        List<CoreExpression> res = new BinaryCatalogReader().read(buffer);
+        assertEquals(catalog, res);
+        assertSame(res.get(0), res.get(2));
+        List<CoreExpression> members = ((CombinedExpression) res.get(1)).members();
+        assertSame(res.get(0), members.get(members.indexOf(expression)));
+
+        // 3 member arrays (2 ORs, 1 AND) plus the outer OR, expressions written only once
+        int sizeOfOne = new BinaryCatalogWriter().writeToBuffer(List.of(expression)).remaining();
+        assertTrue(buffer.limit() < sizeOfOne + 20);
+
+    }
+
+    @Test
+    void testSegments() {
+
+        // more distinct values than a single dictionary can hold
+        List<CoreExpression> catalog = new ArrayList<>();
+        for (int i = 0; i < 3 * CoreExpressionCodec.MAX_NUMBER_OF_VALUES; i = i + 2) {
+            catalog.add(CombinedExpression.orOf(match("arg" + (i % 100), "v" + i), match("arg" + (i % 100), "v" + (i + 1))));
+        }
+
+        ByteBuffer buffer = new BinaryCatalogWriter().writeToBuffer(catalog);
+        assertEquals(catalog, new BinaryCatalogReader().read(buffer));
+
+    }
+
+    @Test
+    void testDeepExpression() {
+
+        // nesting far beyond what a recursive implementation could handle with the default thread stack
+        CoreExpression expression = match("a", "x");
+        for (int i = 0; i < 20_000; i++) {
+            expression = CombinedExpression.orOf(match("b" + (i % 50), "1"), expression);
+            expression = CombinedExpression.andOf(match("c" + (i % 50), "1"), expression);
+        }
+
+        List<CoreExpression> catalog = List.of(expression, match("d", "1"));
+        ByteBuffer buffer = new BinaryCatalogWriter().writeToBuffer(catalog);
+        assertEquals(catalog, new BinaryCatalogReader().read(buffer));
+
+    }
+
+    @Test
+    void testFileChannel() throws IOException {
+
+        List<CoreExpression> catalog = createCatalog(new Random(4711), 1_000);
+
+        Path path = tempDir.resolve("catalog.bin");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            new BinaryCatalogWriter().write(catalog, channel);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            assertEquals(catalog, new BinaryCatalogReader().read(channel));
+        }
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkCatalog() throws IOException {
+
+        List<CoreExpression> catalog = createCatalog(new Random(4711), 20_000);
+
+        ObjectMapper defaultMapper = JsonUtils.createObjectMapper(false);
+        ObjectMapper compactMapper = JsonUtils.createObjectMapper(false).registerModule(new CompactJsonModule());
+        BinaryCatalogWriter writer = new BinaryCatalogWriter();
+        BinaryCatalogReader reader = new BinaryCatalogReader();
+
+        for (int round = 0; round < 10; round++) {
+            long startTimeNanos = System.nanoTime();
+            byte[] json = defaultMapper.writeValueAsBytes(catalog);
+            long jsonWriteMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            startTimeNanos = System.nanoTime();
+            List<CoreExpression> res = defaultMapper.readValue(json, CATALOG_TYPE);
+            long jsonReadMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            assertEquals(catalog.size(), res.size());
+
+            startTimeNanos = System.nanoTime();
+            byte[] compactJson = compactMapper.writeValueAsBytes(catalog);
+            long compactWriteMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            startTimeNanos = System.nanoTime();
+            res = compactMapper.readValue(compactJson, CATALOG_TYPE);
+            long compactReadMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            assertEquals(catalog.size(), res.size());
+
+            startTimeNanos = System.nanoTime();
+            ByteBuffer buffer = writer.writeToBuffer(catalog);
+            long binaryWriteMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            int binarySize = buffer.remaining();
+            startTimeNanos = System.nanoTime();
+            res = reader.read(buffer);
+            long binaryReadMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            assertEquals(catalog.size(), res.size());
+
+            LOGGER.info("Round {}: {} expressions, json: {} KB, write {} ms, read {} ms, compact json: {} KB, write {} ms, read {} ms, "
+                    + "binary: {} KB, write {} ms, read {} ms", round, catalog.size(), json.length / 1024, jsonWriteMillis, jsonReadMillis,
+                    compactJson.length / 1024, compactWriteMillis, compactReadMillis, binarySize / 1024, binaryWriteMillis, binaryReadMillis);
+        }
+
+    }
+
+    private List<CoreExpression> writeAndRead(List<CoreExpression> catalog) {
+        return new BinaryCatalogReader().read(new BinaryCatalogWriter().writeToBuffer(catalog));
+    }
+
+    /**
+     * @param rand
+     * @param numberOfExpressions
+     * @return ANDs of ORs with simple and negated matches
+     */
+    private static List<CoreExpression> createCatalog(Random rand, int numberOfExpressions) {
+        List<CoreExpression> res = new ArrayList<>(numberOfExpressions);
+        for (int i = 0; i < numberOfExpressions; i++) {
+            List<CoreExpression> andMembers = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                String argName = "arg" + rand.nextInt(100);
+                andMembers.add(CombinedExpression.orOf(match(argName, "" + rand.nextInt(10)),
+                        MatchExpression.of(argName, MatchOperator.GREATER_THAN, Operand.of("" + (10 + rand.nextInt(10)), false)),
+                        match("other" + rand.nextInt(100), "v" + rand.nextInt(10)).negate(true)));
+            }
+            res.add(CombinedExpression.andOf(andMembers));
+        }
+        return res;
+    }
+
+    private static CoreExpression match(String argName, String value) {
+        return MatchExpression.of(argName, MatchOperator.EQUALS, Operand.of(value, false));
+    }
+
+    private static CoreExpression parse(String source) {
+        return StandardConversions.parseCoreExpression(source);
+    }
+
+}
@@ -288,7 +288,7 @@ class CoreExpressionCodecTest {
 
         CoreExpressionCodec codec = new CoreExpressionCodec(new Dictionary(Arrays.asList("arg", "a", "b", "c"), Arrays.asList("val", "1", "2")));
 
-        CoreExpressionCodec codec2 = DeepCopyUtils.deepCopy(codec);
+        CoreExpressionCodec codec2 = DeepCopyUtils.serialCopy(codec);
 
         // due to the caching codec does not implement equals
         assertNotEquals(codec, codec2);
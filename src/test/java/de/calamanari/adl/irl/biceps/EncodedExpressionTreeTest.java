@@ -19,13 +19,23 @@
 
 package de.calamanari.adl.irl.biceps;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import de.calamanari.adl.CombinedExpressionType;
 import de.calamanari.adl.DeepCopyUtils;
 import de.calamanari.adl.cnv.StandardConversions;
+import de.calamanari.adl.irl.CombinedExpression;
 import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.MatchExpression;
+import de.calamanari.adl.irl.MatchOperator;
+import de.calamanari.adl.irl.Operand;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -92,7 +102,7 @@ class EncodedExpressionTreeTest {
 
         EncodedExpressionTree tree = EncodedExpressionTree.fromCoreExpression(expr);
 
-        EncodedExpressionTree tree2 = DeepCopyUtils.deepCopy(tree);
+        EncodedExpressionTree tree2 = DeepCopyUtils.serialCopy(tree);
 
         // due to caching tree does not implement equals
         assertNotEquals(tree, tree2);
@@ -351,6 +361,51 @@ class EncodedExpressionTreeTest {
 
     }
 
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkDecodeWideOrOfAnd() {
+
+        CoreExpression expr = createWideOrOfAnd(new Random(4711), 4_000, 6);
+        EncodedExpressionTree tree = EncodedExpressionTree.fromCoreExpression(expr);
+
+        assertEquals(expr, tree.toCoreExpression());
+
+        // warm-up
+        runDecodeBenchmark(tree, 50);
+
+        for (int i = 0; i < 5; i++) {
+            long elapsedMillis = runDecodeBenchmark(tree, 100);
+            LOGGER.info("Round {}: decoding OR of {} ANDs 100 times: {} ms", i, ((CombinedExpression) expr).members().size(), elapsedMillis);
+        }
+
+    }
+
+    private static long runDecodeBenchmark(EncodedExpressionTree tree, int repetitions) {
+        long startTimeNanos = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) {
+            assertTrue(tree.toCoreExpression() instanceof CombinedExpression);
+        }
+        return (System.nanoTime() - startTimeNanos) / 1_000_000;
+    }
+
+    /**
+     * @param rand
+     * @param numberOfAnds number of members of the OR
+     * @param numberOfMatches number of matches of each AND
+     * @return OR of ANDs with random matches from a limited set of arguments and values
+     */
+    private static CoreExpression createWideOrOfAnd(Random rand, int numberOfAnds, int numberOfMatches) {
+        List<CoreExpression> orMembers = new ArrayList<>(numberOfAnds);
+        for (int i = 0; i < numberOfAnds; i++) {
+            List<CoreExpression> andMembers = new ArrayList<>(numberOfMatches);
+            for (int j = 0; j < numberOfMatches; j++) {
+                andMembers.add(MatchExpression.of("arg" + rand.nextInt(40), MatchOperator.EQUALS, Operand.of("value" + rand.nextInt(200), false)));
+            }
+            orMembers.add(CombinedExpression.of(andMembers, CombinedExpressionType.AND));
+        }
+        return CombinedExpression.of(orMembers, CombinedExpressionType.OR);
+    }
+
     private static int toNode(EncodedExpressionTree tree, String expressionString) {
         return tree.createNode(StandardConversions.parseCoreExpression(expressionString));
     }
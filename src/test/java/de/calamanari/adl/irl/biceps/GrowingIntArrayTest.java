@@ -19,10 +19,26 @@
 
 package de.calamanari.adl.irl.biceps;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.irl.CombinedExpression;
+import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.MatchExpression;
+import de.calamanari.adl.irl.MatchOperator;
+import de.calamanari.adl.irl.Operand;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -32,6 +48,8 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
  */
 class GrowingIntArrayTest {
 
+    static final Logger LOGGER = LoggerFactory.getLogger(GrowingIntArrayTest.class);
+
     @Test
     void testBasics() {
 
@@ -209,4 +227,206 @@ class GrowingIntArrayTest {
 
     }
 
+    @Test
+    void testGrowth() {
+
+        GrowingIntArray gra = new GrowingIntArray(0);
+        for (int i = 0; i < 100_000; i++) {
+            gra.add(i);
+        }
+        assertEquals(100_000, gra.size());
+        assertEquals(99_999, gra.get(99_999));
+
+        gra.ensureCapacity(0);
+        gra.addAll(new int[] { 1, 2, 3 });
+        assertEquals(100_003, gra.size());
+        assertEquals(3, gra.get(100_002));
+
+        GrowingIntArray huge = new GrowingIntArray(1);
+        huge.add(1);
+        assertThrows(IllegalStateException.class, () -> huge.ensureCapacity(Integer.MAX_VALUE));
+
+    }
+
+    @Test
+    void testBorrowRelease() {
+
+        GrowingIntArray.setPoolingEnabled(true);
+        try {
+            assertBorrowRelease();
+        }
+        finally {
+            GrowingIntArray.setPoolingEnabled(false);
+            GrowingIntArray.clearPool();
+        }
+        assertEquals(0, GrowingIntArray.getNumberOfPooledInts());
+
+    }
+
+    @Test
+    void testPoolingDisabled() throws InterruptedException {
+
+        assertFalse(GrowingIntArray.isPoolingEnabled());
+
+        GrowingIntArray gra = GrowingIntArray.borrow(5);
+        gra.add(1);
+        gra.release();
+        assertTrue(gra.isEmpty());
+        assertEquals(0, GrowingIntArray.getNumberOfPooledInts());
+
+        GrowingIntArray.setPoolingEnabled(true);
+        try {
+            // virtual threads never pool
+            int[] pooledInts = new int[] { -1 };
+            Thread thread = Thread.ofVirtual().start(() -> {
+                GrowingIntArray temp = GrowingIntArray.borrow(5);
+                temp.add(1);
+                temp.release();
+                pooledInts[0] = GrowingIntArray.getNumberOfPooledInts();
+            });
+            thread.join();
+            assertEquals(0, pooledInts[0]);
+        }
+        finally {
+            GrowingIntArray.setPoolingEnabled(false);
+        }
+
+    }
+
+    private static void assertBorrowRelease() {
+
+        GrowingIntArray gra = GrowingIntArray.borrow(5);
+        assertTrue(gra.isEmpty());
+        for (int i = 0; i < 1_000; i++) {
+            gra.add(i);
+        }
+        gra.release();
+        assertTrue(gra.isEmpty());
+        assertEquals("[]", gra.toString());
+
+        // the released instance can still be used
+        gra.add(7);
+        assertArrayEquals(new int[] { 7 }, gra.toArray());
+
+        GrowingIntArray gra2 = GrowingIntArray.borrow(5);
+        assertTrue(gra2.isEmpty());
+        gra2.add(1);
+        gra2.add(2);
+        assertArrayEquals(new int[] { 1, 2 }, gra2.toArray());
+
+        // nested borrowing must not share the internal array
+        GrowingIntArray gra3 = GrowingIntArray.borrow(5);
+        gra3.add(3);
+        assertArrayEquals(new int[] { 1, 2 }, gra2.toArray());
+        gra3.release();
+        gra2.release();
+
+        // wrapped arrays must not end up in the pool
+        int[] source = new int[] { 4, 5, 6 };
+        GrowingIntArray wrapper = new GrowingIntArray(source, false);
+        wrapper.release();
+        for (int i = 0; i < 20; i++) {
+            GrowingIntArray temp = GrowingIntArray.borrow(3);
+            temp.add(i);
+            temp.add(i);
+            temp.add(i);
+        }
+        assertArrayEquals(new int[] { 4, 5, 6 }, source);
+
+        // the pool of a thread is limited
+        GrowingIntArray.clearPool();
+        GrowingIntArray small = GrowingIntArray.borrow(10);
+        GrowingIntArray large = GrowingIntArray.borrow(GrowingIntArray.MAX_POOLED_INTS_PER_THREAD);
+        small.release();
+        assertEquals(10, GrowingIntArray.getNumberOfPooledInts());
+        large.release();
+        assertEquals(10, GrowingIntArray.getNumberOfPooledInts());
+        List<GrowingIntArray> borrowed = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            borrowed.add(GrowingIntArray.borrow(10_000));
+        }
+        borrowed.forEach(GrowingIntArray::release);
+        assertTrue(GrowingIntArray.getNumberOfPooledInts() <= GrowingIntArray.MAX_POOLED_INTS_PER_THREAD);
+        assertTrue(GrowingIntArray.getNumberOfPooledInts() > GrowingIntArray.MAX_POOLED_INTS_PER_THREAD - 10_010);
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkGrowth() {
+
+        Random rand = new Random(4711);
+
+        // AND of 7 ORs with 3 members each, normalization multiplies it out into an OR of 2187 ANDs
+        List<CoreExpression> andMembers = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            List<CoreExpression> orMembers = new ArrayList<>();
+            for (int j = 0; j < 3; j++) {
+                orMembers.add(MatchExpression.of("arg" + i + "_" + j, MatchOperator.EQUALS, Operand.of("" + rand.nextInt(10), false)));
+            }
+            andMembers.add(CombinedExpression.orOf(orMembers));
+        }
+        CoreExpression andOfOrs = CombinedExpression.andOf(andMembers);
+
+        // OR of 2,000 ORs with 10 members each to be expanded into the parent
+        List<CoreExpression> matches = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            matches.add(MatchExpression.of("arg" + (i / 10), MatchOperator.EQUALS, Operand.of("" + (i % 10), false)));
+        }
+        EncodedExpressionTree orTree = EncodedExpressionTree.fromCoreExpression(CombinedExpression.orOf(matches));
+        int[] leaves = orTree.membersOf(orTree.getRootNode());
+        int[] orOfOrMembers = new int[2_000];
+        for (int i = 0; i < orOfOrMembers.length; i++) {
+            int id = orTree.getMemberArrayRegistry().registerMemberArray(Arrays.copyOfRange(leaves, i * 10, i * 10 + 10));
+            orOfOrMembers[i] = CoreExpressionCodec.encodeCombinedExpressionId(id, NodeType.OR);
+        }
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        for (int round = 0; round < 10; round++) {
+            long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            long startTimeNanos = System.nanoTime();
+            GrowingIntArray gra = new GrowingIntArray();
+            for (int value = 0; value < 200_000; value++) {
+                gra.add(value);
+            }
+            assertEquals(200_000, gra.size());
+            long appendMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            long appendKBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / 1024;
+
+            startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            startTimeNanos = System.nanoTime();
+            for (int i = 0; i < 1_000; i++) {
+                assertEquals(20_000, orTree.getLogicHelper().expandCombinedNodesOfSameType(NodeType.OR, orOfOrMembers).length);
+            }
+            long expandMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            long expandKBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / 1024;
+
+            GrowingIntArray.setPoolingEnabled(true);
+            startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            startTimeNanos = System.nanoTime();
+            for (int i = 0; i < 1_000; i++) {
+                assertEquals(20_000, orTree.getLogicHelper().expandCombinedNodesOfSameType(NodeType.OR, orOfOrMembers).length);
+            }
+            long expandPooledMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            long expandPooledKBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / 1024;
+            GrowingIntArray.setPoolingEnabled(false);
+            GrowingIntArray.clearPool();
+
+            startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            startTimeNanos = System.nanoTime();
+            EncodedExpressionTree tree = EncodedExpressionTree.fromCoreExpression(andOfOrs);
+            new OrOfAndNormalizer(new ImplicationResolver(null), null).process(tree);
+            assertEquals(2187, tree.membersOf(tree.getRootNode()).length);
+            long normalizeMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            long normalizeKBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / 1024;
+
+            LOGGER.info("Round {}: appending 200000 values: {} ms, {} KB allocated, expanding OR of 2000 ORs 1000 times: {} ms, {} KB allocated, "
+                    + "with pooling: {} ms, {} KB allocated, normalizing AND of ORs: {} ms, {} KB allocated", round, appendMillis, appendKBytes,
+                    expandMillis, expandKBytes, expandPooledMillis, expandPooledKBytes, normalizeMillis, normalizeKBytes);
+        }
+
+    }
+
 }
@@ -0,0 +1,426 @@
+//@formatter:off
+/*
+ * MemberArrayRegistryTest
+ * Copyright 2024 Karl Eilebrecht
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"):
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+//@formatter:on
+
+package de.calamanari.adl.irl.biceps;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.calamanari.adl.DeepCopyUtils;
+import de.calamanari.adl.irl.CombinedExpression;
+import de.calamanari.adl.irl.CoreExpression;
+import de.calamanari.adl.irl.MatchExpression;
+import de.calamanari.adl.irl.MatchOperator;
+import de.calamanari.adl.irl.Operand;
+
+import static de.calamanari.adl.irl.biceps.CoreExpressionCodec.encodeCombinedExpressionId;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author <a href="mailto:Karl.Eilebrecht(a/t)calamanari.de">Karl Eilebrecht</a>
+ */
+class MemberArrayRegistryTest {
+
+    static final Logger LOGGER = LoggerFactory.getLogger(MemberArrayRegistryTest.class);
+
+    @Test
+    void testRegisterAndLookup() {
+
+        MemberArrayRegistry registry = new MemberArrayRegistry();
+
+        assertEquals(0, registry.registerMemberArray(new int[] { 1, 2 }));
+        assertEquals(1, registry.registerMemberArray(new int[] { 2, 1 }));
+        assertEquals(0, registry.registerMemberArray(new int[] { 1, 2 }));
+        assertEquals(2, registry.registerMemberArray(new int[] { 1, 2, 3 }));
+        assertEquals(3, registry.registerMemberArray(new int[0]));
+        assertEquals(3, registry.registerMemberArray(new int[0]));
+
+        assertArrayEquals(new int[] { 2, 1 }, registry.lookupMemberArray(1));
+        assertArrayEquals(new int[] { 1, 2, 3 }, registry.lookupMemberArray(2));
+        assertArrayEquals(new int[0], registry.lookupMemberArray(3));
+        assertEquals(4, registry.getNumberOfValidIds());
+        assertTrue(registry.isValidId(3));
+
+        assertThrows(IndexOutOfBoundsException.class, () -> registry.lookupMemberArray(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> registry.lookupMemberArray(4));
+
+        registry.clear();
+        assertEquals(0, registry.getNumberOfValidIds());
+        assertThrows(IndexOutOfBoundsException.class, () -> registry.lookupMemberArray(0));
+        assertEquals(0, registry.registerMemberArray(new int[] { 2, 1 }));
+
+    }
+
+    @Test
+    void testManyArrays() {
+
+        MemberArrayRegistry registry = new MemberArrayRegistry();
+
+        Random rand = new Random(4711);
+        List<int[]> arrays = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            int[] members = new int[2 + rand.nextInt(4)];
+            for (int j = 0; j < members.length; j++) {
+                members[j] = rand.nextInt(20);
+            }
+            arrays.add(members);
+        }
+
+        List<Integer> ids = new ArrayList<>();
+        for (int[] members : arrays) {
+            ids.add(registry.registerMemberArray(members));
+        }
+        assertTrue(registry.getNumberOfValidIds() < arrays.size());
+
+        for (int i = 0; i < arrays.size(); i++) {
+            int[] members = arrays.get(i);
+            int id = ids.get(i);
+            assertArrayEquals(members, registry.lookupMemberArray(id));
+            assertEquals(id, registry.registerMemberArray(members.clone()));
+        }
+
+    }
+
+    @Test
+    void testHousekeeping() {
+
+        MemberArrayRegistry registry = new MemberArrayRegistry();
+
+        List<Integer> orNodes = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            orNodes.add(encodeCombinedExpressionId(registry.registerMemberArray(new int[] { i + 1, i + 2 }), NodeType.OR));
+        }
+
+        // too few ids
+        MemberArrayRegistry smallRegistry = new MemberArrayRegistry();
+        smallRegistry.registerMemberArray(new int[] { 1, 2 });
+        assertEquals(0, smallRegistry.triggerHousekeeping(CoreExpressionCodec.ALL));
+
+        int[] rootMembers = new int[] { orNodes.get(7), orNodes.get(1_500), 4711 };
+        int rootNode = encodeCombinedExpressionId(registry.registerMemberArray(rootMembers), NodeType.AND);
+
+        assertEquals(1_998, registry.triggerHousekeeping(rootNode));
+        assertEquals(3, registry.getNumberOfValidIds());
+
+        assertTrue(registry.isValidId(7));
+        assertTrue(registry.isValidId(1_500));
+        assertTrue(registry.isValidId(2_000));
+        assertFalse(registry.isValidId(8));
+        assertThrows(IllegalStateException.class, () -> registry.lookupMemberArray(8));
+        assertArrayEquals(new int[] { 8, 9 }, registry.lookupMemberArray(7));
+        assertArrayEquals(rootMembers, registry.lookupMemberArray(2_000));
+
+        // valid arrays keep their ids, released arrays get fresh ids
+        assertEquals(7, registry.registerMemberArray(new int[] { 8, 9 }));
+        assertEquals(2_001, registry.registerMemberArray(new int[] { 9, 10 }));
+        assertEquals(4, registry.getNumberOfValidIds());
+
+    }
+
+    @Test
+    void testCompact() {
+
+        MemberArrayRegistry registry = new MemberArrayRegistry();
+
+        // garbage
+        for (int i = 0; i < 1_500; i++) {
+            registry.registerMemberArray(new int[] { i + 1, i + 2 });
+        }
+
+        int andNode1 = encodeCombinedExpressionId(registry.registerMemberArray(new int[] { 1, 2 }), NodeType.AND);
+        int andNode2 = encodeCombinedExpressionId(registry.registerMemberArray(new int[] { 3, 4, 5 }), NodeType.AND);
+        int orNode = encodeCombinedExpressionId(registry.registerMemberArray(sorted(andNode1, andNode2, 6)), NodeType.OR);
+        for (int i = 0; i < 500; i++) {
+            registry.registerMemberArray(new int[] { i + 7, i + 8, i + 9 });
+        }
+        int rootNode = encodeCombinedExpressionId(registry.registerMemberArray(sorted(orNode, andNode2, 7)), NodeType.AND);
+
+        int compactedRootNode = registry.compact(rootNode);
+
+        // andNode1 is (1, 2), the same as the first garbage array, so it kept its id 0
+        assertEquals(4, registry.getNumberOfValidIds());
+        assertEquals(encodeCombinedExpressionId(3, NodeType.AND), compactedRootNode);
+
+        int[] rootMembers = registry.lookupMemberArray(3);
+        assertArrayEquals(sorted(encodeCombinedExpressionId(2, NodeType.OR), encodeCombinedExpressionId(1, NodeType.AND), 7), rootMembers);
+        assertArrayEquals(sorted(andNode1, encodeCombinedExpressionId(1, NodeType.AND), 6), registry.lookupMemberArray(2));
+        assertArrayEquals(new int[] { 3, 4, 5 }, registry.lookupMemberArray(1));
+        assertArrayEquals(new int[] { 1, 2 }, registry.lookupMemberArray(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> registry.lookupMemberArray(4));
+
+        assertEquals(1, registry.registerMemberArray(new int[] { 3, 4, 5 }));
+        assertEquals(3, registry.registerMemberArray(rootMembers.clone()));
+        assertEquals(4, registry.registerMemberArray(new int[] { 2, 3 }));
+
+        // nothing to compact
+        assertEquals(compactedRootNode, registry.compact(compactedRootNode));
+
+    }
+
+    @Test
+    void testCompactTree() {
+
+        CoreExpression expression = createAndOfOrs(new Random(4711), 7);
+
+        EncodedExpressionTree tree = EncodedExpressionTree.fromCoreExpression(expression);
+        CoreExpression expected = tree.toCoreExpression();
+        MemberArrayRegistry registry = tree.getMemberArrayRegistry();
+        int numberOfIdsInUse = registry.getNumberOfValidIds();
+
+        for (int i = 0; i < 5_000; i++) {
+            registry.registerMemberArray(new int[] { i + 1, i + 2 });
+        }
+
+        tree.compact();
+
+        assertEquals(numberOfIdsInUse, registry.getNumberOfValidIds());
+        assertEquals(expected, tree.toCoreExpression());
+
+        new OrOfAndNormalizer(new ImplicationResolver(null), null).process(tree);
+        int numberOfIdsAfterNormalization = registry.getNumberOfValidIds();
+        assertEquals(numberOfIdsAfterNormalization - 1, CoreExpressionCodec.decodeCombinedExpressionId(tree.getRootNode()));
+        assertEquals(2187, tree.membersOf(tree.getRootNode()).length);
+        assertEquals(numberOfIdsAfterNormalization, registry.registerMemberArray(new int[] { 4711, 4712 }));
+
+    }
+
+    @Test
+    void testCompactKeepsMembersSorted() {
+
+        CoreExpression expression = createAndOfOrs(new Random(4711), 7);
+        List<CoreExpression> orMembers = ((CombinedExpression) expression).members();
+
+        // ORs not contained in the original expression mixed with leaves
+        List<CoreExpression> variantMembers = new ArrayList<>();
+        for (CoreExpression member : orMembers) {
+            List<CoreExpression> leaves = ((CombinedExpression) member).members();
+            variantMembers.add(CombinedExpression.orOf(leaves.get(0), leaves.get(1)));
+            variantMembers.add(leaves.get(2));
+        }
+        CoreExpression variant = CombinedExpression.andOf(variantMembers);
+        CoreExpression expected = new CoreExpressionOptimizer().process(variant);
+
+        EncodedExpressionTree tree = EncodedExpressionTree.fromCoreExpression(expression);
+        MemberArrayRegistry registry = tree.getMemberArrayRegistry();
+
+        // garbage, so the new nodes get ids beyond 16384, the upper bits of these ids overlap with the argument bits of the leaves
+        for (int i = 0; i < 100_000; i++) {
+            registry.registerMemberArray(new int[] { i + 1, i + 2 });
+        }
+
+        tree.setRootNode(tree.createNode(variant));
+        assertTrue(CoreExpressionCodec.decodeCombinedExpressionId(tree.getRootNode()) > 100_000);
+
+        tree.compact();
+
+        assertTrue(CoreExpressionCodec.decodeCombinedExpressionId(tree.getRootNode()) < 16_384);
+        for (int id = 0; id < registry.getNumberOfValidIds(); id++) {
+            int[] members = registry.lookupMemberArray(id);
+            for (int idx = 1; idx < members.length; idx++) {
+                assertTrue(members[idx - 1] < members[idx]);
+            }
+        }
+        assertEquals(variant, tree.toCoreExpression());
+
+        new CoreExpressionOptimizer().process(tree);
+        assertEquals(expected, tree.toCoreExpression());
+
+    }
+
+    @Test
+    void testCopy() {
+
+        MemberArrayRegistry registry = new MemberArrayRegistry();
+        registry.registerMemberArray(new int[] { 1, 2 });
+        registry.registerMemberArray(new int[] { 3, 4 });
+
+        MemberArrayRegistry copy = registry.copy();
+        assertEquals(2, copy.registerMemberArray(new int[] { 5, 6 }));
+        assertEquals(2, registry.registerMemberArray(new int[] { 7, 8 }));
+        assertEquals(1, copy.registerMemberArray(new int[] { 3, 4 }));
+        assertEquals(3, copy.registerMemberArray(new int[] { 7, 8 }));
+
+        assertArrayEquals(new int[] { 5, 6 }, copy.lookupMemberArray(2));
+        assertArrayEquals(new int[] { 7, 8 }, registry.lookupMemberArray(2));
+
+        MemberArrayRegistry serialCopy = DeepCopyUtils.serialCopy(registry);
+        assertEquals(3, serialCopy.getNumberOfValidIds());
+        assertEquals(1, serialCopy.registerMemberArray(new int[] { 3, 4 }));
+        assertEquals(3, serialCopy.registerMemberArray(new int[] { 5, 6 }));
+        assertArrayEquals(new int[] { 7, 8 }, serialCopy.lookupMemberArray(2));
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkAllocation() {
+
+        Random rand = new Random(4711);
+        List<int[]> arrays = new ArrayList<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            int[] members = new int[2 + rand.nextInt(6)];
+            for (int j = 0; j < members.length; j++) {
+                members[j] = rand.nextInt(12);
+            }
+            arrays.add(members);
+        }
+
+        // normalization multiplies it out into an OR of 2187 ANDs
+        CoreExpression andOfOrs = createAndOfOrs(rand, 7);
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        for (int round = 0; round < 10; round++) {
+            long startGcCount = getGcCount();
+            long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            long startTimeNanos = System.nanoTime();
+            MemberArrayRegistry registry = new MemberArrayRegistry();
+            for (int[] members : arrays) {
+                registry.registerMemberArray(members);
+            }
+            long sum = 0;
+            for (int id = 0; id < registry.getNumberOfValidIds(); id++) {
+                sum = sum + registry.lookupMemberArray(id).length;
+            }
+            assertNotEquals(0, sum);
+            long registryMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            long registryKBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / 1024;
+            long registryGcCount = getGcCount() - startGcCount;
+
+            startGcCount = getGcCount();
+            startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+            startTimeNanos = System.nanoTime();
+            EncodedExpressionTree tree = EncodedExpressionTree.fromCoreExpression(andOfOrs);
+            new OrOfAndNormalizer(new ImplicationResolver(null), null).process(tree);
+            assertEquals(2187, tree.membersOf(tree.getRootNode()).length);
+            long normalizeMillis = (System.nanoTime() - startTimeNanos) / 1_000_000;
+            long normalizeKBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / 1024;
+            long normalizeGcCount = getGcCount() - startGcCount;
+
+            LOGGER.info("Round {}: registering {} arrays ({} unique): {} ms, {} KB allocated, {} GCs, normalizing AND of ORs: {} ms, {} KB allocated, {} GCs",
+                    round, arrays.size(), registry.getNumberOfValidIds(), registryMillis, registryKBytes, registryGcCount, normalizeMillis, normalizeKBytes,
+                    normalizeGcCount);
+        }
+
+    }
+
+    @Test
+    @Disabled("Takes a couple of seconds")
+    void testBenchmarkHousekeeping() {
+
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+
+        for (int round = 0; round < 10; round++) {
+            for (boolean compact : new boolean[] { false, true }) {
+                Random rand = new Random(4711);
+                MemberArrayRegistry registry = new MemberArrayRegistry();
+
+                // OR of 20,000 ANDs, in every step 1,000 ANDs get replaced and 50,000 temporary arrays get registered
+                int[] orMembers = new int[20_000];
+                for (int i = 0; i < orMembers.length; i++) {
+                    orMembers[i] = createRandomAndNode(rand, registry);
+                }
+                int rootNode = encodeCombinedExpressionId(registry.registerMemberArray(orMembers.clone()), NodeType.OR);
+
+                long housekeepingNanos = 0;
+                long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+                for (int step = 0; step < 100; step++) {
+                    for (int i = 0; i < 50_000; i++) {
+                        createRandomAndNode(rand, registry);
+                    }
+                    orMembers = registry.lookupMemberArray(CoreExpressionCodec.decodeCombinedExpressionId(rootNode)).clone();
+                    for (int i = 0; i < 1_000; i++) {
+                        orMembers[rand.nextInt(orMembers.length)] = createRandomAndNode(rand, registry);
+                    }
+                    rootNode = encodeCombinedExpressionId(registry.registerMemberArray(orMembers), NodeType.OR);
+                    long startTimeNanos = System.nanoTime();
+                    if (compact) {
+                        rootNode = registry.compact(rootNode);
+                    }
+                    else {
+                        registry.triggerHousekeeping(rootNode);
+                    }
+                    housekeepingNanos = housekeepingNanos + (System.nanoTime() - startTimeNanos);
+                }
+                long allocatedKBytes = (threadMXBean.getThreadAllocatedBytes(threadId) - startBytes) / 1024;
+
+                LOGGER.info("Round {}: {}: highest id: {}, ids in use: {}, housekeeping: {} ms, {} KB allocated in total", round,
+                        compact ? "compact" : "triggerHousekeeping", CoreExpressionCodec.decodeCombinedExpressionId(rootNode),
+                        registry.getNumberOfValidIds(), housekeepingNanos / 1_000_000, allocatedKBytes);
+            }
+        }
+
+    }
+
+    /**
+     * @param members
+     * @return sorted array like in a tree
+     */
+    private static int[] sorted(int... members) {
+        int[] res = members.clone();
+        Arrays.sort(res);
+        return res;
+    }
+
+    private static int createRandomAndNode(Random rand, MemberArrayRegistry registry) {
+        return encodeCombinedExpressionId(registry.registerMemberArray(new int[] { 1 + rand.nextInt(10_000), 1 + rand.nextInt(10_000) }), NodeType.AND);
+    }
+
+    /**
+     * @param rand
+     * @param numberOfOrs
+     * @return AND of ORs with 3 members each
+     */
+    private static CoreExpression createAndOfOrs(Random rand, int numberOfOrs) {
+        List<CoreExpression> andMembers = new ArrayList<>();
+        for (int i = 0; i < numberOfOrs; i++) {
+            List<CoreExpression> orMembers = new ArrayList<>();
+            for (int j = 0; j < 3; j++) {
+                orMembers.add(MatchExpression.of("arg" + i + "_" + j, MatchOperator.EQUALS, Operand.of("" + rand.nextInt(10), false)));
+            }
+            andMembers.add(CombinedExpression.orOf(orMembers));
+        }
+        return CombinedExpression.andOf(andMembers);
+    }
+
+    private static long getGcCount() {
+        long res = 0;
+        for (GarbageCollectorMXBean gcBean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            res = res + Math.max(0, gcBean.getCollectionCount());
+        }
+        return res;
+    }
+
+}